@@ -0,0 +1,104 @@
+package com.g18.assistant.concurrent;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs tasks with the same key one after another, in submission order, on a virtual thread,
+ * while tasks of different keys run in parallel. Keys cost nothing while they have no work.
+ * Bounding the queued work is left to the caller.
+ *
+ * @param <K> The key type, e.g. a chat or sender ID
+ */
+@Slf4j
+public class KeyedSerialExecutor<K> {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    // A key is present only while it has a drainer running, which owns its queue
+    private final Map<K, Queue<Runnable>> queues = new ConcurrentHashMap<>();
+
+    /**
+     * Queue a task behind the earlier tasks of its key
+     *
+     * @param key The key that orders the task
+     * @param task The task to run; exceptions are logged and do not stop later tasks of the key
+     * @throws RejectedExecutionException If the executor has been shut down
+     */
+    public void execute(K key, Runnable task) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Executor has been shut down");
+        }
+        boolean[] created = new boolean[1];
+        Queue<Runnable> queue = queues.compute(key, (k, current) -> {
+            if (current == null) {
+                current = new ArrayDeque<>();
+                created[0] = true;
+            }
+            current.add(task);
+            return current;
+        });
+        if (created[0]) {
+            // Started outside compute, so a rejection cannot surface from inside the map
+            try {
+                executor.execute(() -> drain(key, queue));
+            } catch (RejectedExecutionException e) {
+                // Shut down after the check above; tasks queued behind this one in the meantime go with it
+                queues.remove(key, queue);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * @return Number of keys with queued or running tasks
+     */
+    public int activeKeys() {
+        return queues.size();
+    }
+
+    /**
+     * Stop accepting tasks and wait for queued ones, interrupting them after the timeout
+     *
+     * @return true if all tasks finished within the timeout
+     */
+    public boolean shutdown(Duration timeout) {
+        executor.shutdown();
+        try {
+            if (executor.awaitTermination(timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor.shutdownNow();
+        return false;
+    }
+
+    private void drain(K key, Queue<Runnable> queue) {
+        while (true) {
+            Runnable[] next = new Runnable[1];
+            // Poll inside compute so an empty queue is removed atomically with respect to execute
+            queues.compute(key, (k, current) -> {
+                next[0] = queue.poll();
+                return next[0] != null ? current : null;
+            });
+            if (next[0] == null) {
+                return;
+            }
+            try {
+                next[0].run();
+            } catch (Exception e) {
+                log.error("Unhandled error in task for key {}: {}", key, e.getMessage(), e);
+            }
+        }
+    }
+}
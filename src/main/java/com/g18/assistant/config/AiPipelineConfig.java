@@ -0,0 +1,49 @@
+package com.g18.assistant.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Selects how customer messages are sent to Gemini, globally or per shop
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.ai.pipeline")
+@Data
+public class AiPipelineConfig {
+
+    /**
+     * Mode used by shops without an explicit override
+     */
+    private PipelineMode mode = PipelineMode.TWO_STAGE;
+
+    /**
+     * Per-shop overrides, keyed by shop ID
+     */
+    private Map<Long, PipelineMode> shops = new HashMap<>();
+
+    /**
+     * Start shop, product and category reads on virtual threads as soon as a message arrives,
+     * instead of after intent analysis
+     */
+    private boolean prefetchShopContext = true;
+
+    /**
+     * Stream Gemini replies into Telegram by sending the first fragment and editing the message as text arrives
+     */
+    private boolean streamingReplies = false;
+
+    public PipelineMode modeFor(Long shopId) {
+        return shops.getOrDefault(shopId, mode);
+    }
+
+    public enum PipelineMode {
+        // Intent analysis call, then a second structured call when shop context is needed
+        TWO_STAGE,
+        // Intent call only for greetings, order status and address replies; one structured call otherwise
+        FUSED
+    }
+}
@@ -0,0 +1,37 @@
+package com.g18.assistant.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Selects and sizes the conversation history backend
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.conversation-history")
+@Data
+public class ConversationHistoryConfig {
+
+    /**
+     * Backend: "memory" (single node) or "redis" (shared between nodes)
+     */
+    private String store = "memory";
+
+    /**
+     * Messages kept per conversation, oldest are dropped first
+     */
+    private int maxEntries = 20;
+
+    /**
+     * A conversation idle for this long starts a new session
+     */
+    private Duration sessionTimeout = Duration.ofHours(6);
+
+    /**
+     * Upper bound on message text held by the in-memory store across all conversations
+     */
+    private DataSize memoryCap = DataSize.ofMegabytes(64);
+}
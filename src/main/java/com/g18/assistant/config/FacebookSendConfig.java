@@ -0,0 +1,46 @@
+package com.g18.assistant.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Batching, retry and throttling of outbound Facebook Send API calls
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.facebook.send")
+@Data
+public class FacebookSendConfig {
+
+    /**
+     * Messages combined into one Graph API batch request (Facebook allows at most 50)
+     */
+    private int maxBatchSize = 50;
+
+    /**
+     * How long the dispatcher waits for more messages before sending a batch
+     */
+    private Duration batchLinger = Duration.ofMillis(20);
+
+    /**
+     * Attempts per message, including the first
+     */
+    private int maxAttempts = 4;
+
+    /**
+     * Base of the exponential retry backoff, the actual delay is jittered
+     */
+    private Duration retryBaseDelay = Duration.ofMillis(500);
+
+    /**
+     * Usage percentage reported by Facebook above which sends are slowed down
+     */
+    private int throttleThreshold = 75;
+
+    /**
+     * Pause between batches when usage reaches 100%
+     */
+    private Duration maxThrottleDelay = Duration.ofSeconds(5);
+}
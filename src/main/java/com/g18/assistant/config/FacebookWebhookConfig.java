@@ -0,0 +1,31 @@
+package com.g18.assistant.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Sizing of the asynchronous Facebook webhook pipeline
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.facebook.webhook")
+@Data
+public class FacebookWebhookConfig {
+
+    /**
+     * Payloads and parsed messages waiting to be processed before the endpoint starts answering 503
+     */
+    private int queueCapacity = 1000;
+
+    /**
+     * Messages processed at the same time across all senders
+     */
+    private int workerConcurrency = 32;
+
+    /**
+     * How long a message ID is remembered to drop Facebook redeliveries
+     */
+    private Duration dedupTtl = Duration.ofHours(24);
+}
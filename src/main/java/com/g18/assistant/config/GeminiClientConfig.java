@@ -0,0 +1,41 @@
+package com.g18.assistant.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Connection, deadline and concurrency settings for the Gemini HTTP client
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.gemini.client")
+@Data
+public class GeminiClientConfig {
+
+    /**
+     * Time allowed to open a connection to the Gemini API
+     */
+    private Duration connectTimeout = Duration.ofSeconds(5);
+
+    /**
+     * Deadline for chat calls (generateContent), measured from sending the request
+     */
+    private Duration requestTimeout = Duration.ofSeconds(30);
+
+    /**
+     * Deadline for slow calls such as image generation
+     */
+    private Duration longRequestTimeout = Duration.ofSeconds(120);
+
+    /**
+     * Maximum in-flight requests per API key
+     */
+    private int maxConcurrentPerKey = 16;
+
+    /**
+     * How long a call waits for a free slot before it is rejected
+     */
+    private Duration acquireTimeout = Duration.ofSeconds(10);
+}
@@ -0,0 +1,38 @@
+package com.g18.assistant.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Settings for registering the static per-shop part of chat prompts as Gemini cached contents
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.gemini.context-cache")
+@Data
+public class GeminiContextCacheConfig {
+
+    private boolean enabled = true;
+
+    /**
+     * Lifetime requested for each cached content
+     */
+    private Duration ttl = Duration.ofHours(1);
+
+    /**
+     * A replacement is created this long before the current cached content expires
+     */
+    private Duration refreshMargin = Duration.ofMinutes(5);
+
+    /**
+     * Contexts shorter than this are sent inline; Gemini rejects caches under its minimum token count
+     */
+    private int minContextChars = 4096;
+
+    /**
+     * How long a context whose cache could not be created is sent inline before trying again
+     */
+    private Duration failureBackoff = Duration.ofMinutes(10);
+}
@@ -0,0 +1,34 @@
+package com.g18.assistant.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Settings for the content-addressed product image store
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.images")
+@Data
+public class ImageStoreConfig {
+
+    /**
+     * Store implementation to use ("local" keeps blobs on the filesystem)
+     */
+    private String store = "local";
+
+    /**
+     * Root directory of the local store, blobs live under {@code <dir>/<ab>/<cd>/<sha256>}
+     */
+    private String localDir = "./data/images";
+
+    /**
+     * Move legacy base64 images from the products table into the store in the background
+     */
+    private boolean migrationEnabled = true;
+
+    /**
+     * Products loaded per migration transaction
+     */
+    private int migrationBatchSize = 50;
+}
@@ -0,0 +1,26 @@
+package com.g18.assistant.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Expiry settings for orders waiting on customer information
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.pending-orders")
+@Data
+public class PendingOrderConfig {
+
+    /**
+     * A pending order not completed within this time is abandoned
+     */
+    private Duration ttl = Duration.ofHours(24);
+
+    /**
+     * How long a node trusts its local copy of a pending order before reading Redis again
+     */
+    private Duration nearCacheTtl = Duration.ofSeconds(10);
+}
@@ -0,0 +1,53 @@
+package com.g18.assistant.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Settings for the per-shop in-memory product index used to pick the products put into AI prompts
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.ai.product-index")
+@Data
+public class ProductIndexConfig {
+
+    /**
+     * When disabled, prompts fall back to the first products of the shop
+     */
+    private boolean enabled = true;
+
+    /**
+     * Number of matching products included in a prompt
+     */
+    private int topK = 8;
+
+    /**
+     * A shop's index is rebuilt from the database in the background once it is this old,
+     * to pick up product changes made on other instances
+     */
+    private Duration maxAge = Duration.ofMinutes(10);
+
+    /**
+     * BM25 term frequency saturation
+     */
+    private double k1 = 1.2;
+
+    /**
+     * BM25 length normalization
+     */
+    private double b = 0.75;
+
+    /**
+     * How many times a term in the product name counts compared to one in the description
+     */
+    private int nameWeight = 3;
+
+    private int categoryWeight = 2;
+
+    private int customFieldWeight = 1;
+
+    private int descriptionWeight = 1;
+}
@@ -0,0 +1,34 @@
+package com.g18.assistant.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Settings for the per-shop AI response cache (local L1 in front of Redis L2)
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.ai.response-cache")
+@Data
+public class ResponseCacheConfig {
+
+    private boolean enabled = true;
+
+    /**
+     * How long a cached reply stays valid in Redis and in the local cache
+     */
+    private Duration ttl = Duration.ofMinutes(30);
+
+    /**
+     * Maximum number of replies kept in the local cache, least recently used are evicted first
+     */
+    private int localMaxSize = 2000;
+
+    /**
+     * How often the local copy of a shop's catalog version is re-read from Redis,
+     * so product changes made on other instances are picked up
+     */
+    private Duration versionRefreshInterval = Duration.ofSeconds(5);
+}
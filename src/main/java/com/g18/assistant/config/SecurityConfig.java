@@ -31,6 +31,8 @@ public class SecurityConfig {
         "/api/auth/**",           // Authentication endpoints
         "/api/password/**",       // Password reset endpoints
         "/api/facebook/webhook/**", // Facebook webhook endpoint
+        "/telegram/*",            // Telegram webhook endpoint (verified by secret token)
+        "/api/products/*/image",  // Product images (content-addressed, safe to cache publicly)
         "/v3/api-docs/**",       // Swagger documentation
         "/swagger-ui/**",
         "/swagger-ui.html"
@@ -0,0 +1,76 @@
+package com.g18.assistant.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Settings for embedding-based product retrieval (per-shop HNSW indexes in memory-mapped files)
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.ai.semantic-search")
+@Data
+public class SemanticSearchConfig {
+
+    /**
+     * Disabled by default: indexing a catalog embeds every product once
+     */
+    private boolean enabled = false;
+
+    /**
+     * Embedding implementation ("gemini" calls the embed API, "local" hashes terms and needs no network)
+     */
+    private String embeddingProvider = "gemini";
+
+    /**
+     * Gemini embedding model
+     */
+    private String model = "text-embedding-004";
+
+    /**
+     * Vector size; Gemini truncates its embeddings to this many dimensions
+     */
+    private int dimensions = 768;
+
+    /**
+     * Texts per batchEmbedContents call (Gemini accepts at most 100)
+     */
+    private int embedBatchSize = 100;
+
+    /**
+     * Deadline of one embedding call
+     */
+    private Duration embedTimeout = Duration.ofSeconds(10);
+
+    /**
+     * Directory holding one index file per shop
+     */
+    private String dataDir = "./data/vector-index";
+
+    /**
+     * Neighbors kept per node on upper layers (twice as many on the bottom layer)
+     */
+    private int m = 16;
+
+    /**
+     * Candidate list size while inserting
+     */
+    private int efConstruction = 100;
+
+    /**
+     * Candidate list size while searching
+     */
+    private int efSearch = 64;
+
+    /**
+     * Matches below this cosine similarity are not returned
+     */
+    private double minScore = 0.3;
+
+    /**
+     * Rewrite an index file without its deleted nodes once they exceed this share of all nodes
+     */
+    private double compactDeletedRatio = 0.3;
+}
@@ -0,0 +1,117 @@
+package com.g18.assistant.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Settings shared by all shop Telegram bots
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.telegram")
+@Data
+public class TelegramConfig {
+
+    /**
+     * How bots receive updates: one long-polling session per shop, or the shared webhook endpoint
+     */
+    private UpdateMode mode = UpdateMode.POLLING;
+
+    /**
+     * Public base URL Telegram calls in webhook mode, including the servlet context path,
+     * e.g. https://shop.example.com/assistant
+     */
+    private String webhookBaseUrl;
+
+    /**
+     * Master secret from which each shop's webhook secret token is derived
+     */
+    private String webhookSecret;
+
+    /**
+     * Parallel webhook connections Telegram may open per bot (1-100)
+     */
+    private int webhookMaxConnections = 40;
+
+    /**
+     * Updates a bot may hold queued or in progress before new ones have to wait
+     */
+    private int queueCapacity = 500;
+
+    /**
+     * How long an incoming update waits for queue space before it is dropped
+     */
+    private Duration enqueueTimeout = Duration.ofSeconds(5);
+
+    /**
+     * Messages per second a bot may send across all chats
+     */
+    private double globalSendRate = 30;
+
+    /**
+     * Sustained messages per second to a single chat
+     */
+    private double chatSendRate = 1;
+
+    /**
+     * Messages a chat may receive back to back before the per-chat rate applies
+     */
+    private int chatSendBurst = 3;
+
+    /**
+     * Attempts per outgoing call when Telegram answers 429
+     */
+    private int sendMaxAttempts = 3;
+
+    /**
+     * Buffered writer for incoming Telegram messages
+     */
+    private MessageLog messageLog = new MessageLog();
+
+    public enum UpdateMode {
+        POLLING,
+        WEBHOOK
+    }
+
+    @Data
+    public static class MessageLog {
+
+        /**
+         * Rows written in one batch insert
+         */
+        private int batchSize = 100;
+
+        /**
+         * Longest time a row waits in the buffer before it is flushed
+         */
+        private Duration flushInterval = Duration.ofMillis(200);
+
+        /**
+         * Rows held in memory before appends wait for space
+         */
+        private int bufferCapacity = 10000;
+
+        /**
+         * How long an append waits for buffer space before the row is written directly
+         */
+        private Duration appendTimeout = Duration.ofMillis(100);
+
+        /**
+         * Times a failed batch is put back in the buffer before its rows are written one by one
+         */
+        private int maxWriteAttempts = 5;
+
+        /**
+         * ASYNC returns at once and may lose buffered rows if the process dies,
+         * SYNC waits until the row's batch is committed
+         */
+        private Durability durability = Durability.ASYNC;
+    }
+
+    public enum Durability {
+        ASYNC,
+        SYNC
+    }
+}
@@ -3,8 +3,10 @@ package com.g18.assistant.controller;
 import com.g18.assistant.dto.FacebookBotStatusDto;
 import com.g18.assistant.dto.FacebookWebhookConfigDto;
 import com.g18.assistant.service.FacebookBotService;
+import com.g18.assistant.service.FacebookWebhookService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -15,6 +17,7 @@ import org.springframework.web.bind.annotation.*;
 public class FacebookBotController {
 
     private final FacebookBotService facebookBotService;
+    private final FacebookWebhookService facebookWebhookService;
 
     @PostMapping("/shops/{shopId}/configure")
     public ResponseEntity<FacebookWebhookConfigDto> configureWebhook(@PathVariable Long shopId) {
@@ -68,10 +71,13 @@ public class FacebookBotController {
 
     /**
      * Webhook endpoint that receives messages from Facebook
+     * The payload is only queued here so Facebook gets its 200 without waiting for AI processing
      */
     @PostMapping("/webhook/{shopId}")
     public ResponseEntity<Void> receiveMessage(@PathVariable Long shopId, @RequestBody String requestBody) {
-        facebookBotService.handleIncomingMessage(requestBody);
+        if (!facebookWebhookService.enqueue(requestBody)) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
         return ResponseEntity.ok().build();
     }
 
@@ -0,0 +1,27 @@
+package com.g18.assistant.controller;
+
+import com.g18.assistant.service.MetricsService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/metrics")
+@RequiredArgsConstructor
+@Tag(name = "Metrics", description = "Runtime counters and latencies for bots and AI pipeline")
+public class MetricsController {
+
+    private final MetricsService metricsService;
+
+    @GetMapping
+    @Operation(summary = "Get metrics snapshot", description = "Get all in-process counters, timers and gauges")
+    public ResponseEntity<Map<String, Object>> getMetrics() {
+        return ResponseEntity.ok(metricsService.snapshot());
+    }
+}
@@ -0,0 +1,55 @@
+package com.g18.assistant.controller;
+
+import com.g18.assistant.dto.OrderDTO;
+import com.g18.assistant.dto.response.CursorPageResponse;
+import com.g18.assistant.entity.Order.OrderStatus;
+import com.g18.assistant.service.OrderService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Paged versions of the shop order listings in {@link OrderController}, newest first.
+ * Pass the nextCursor of a page as cursor to get the following one.
+ */
+@RestController
+@RequestMapping("/api/v2/orders")
+@RequiredArgsConstructor
+public class OrderPageController {
+    
+    private final OrderService orderService;
+    
+    @GetMapping("/shop/{shopId}")
+    public ResponseEntity<CursorPageResponse<OrderDTO>> getOrdersByShopId(
+            @PathVariable Long shopId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        CursorPageResponse<OrderDTO> orders = orderService.getOrdersByShopId(shopId, cursor, limit);
+        return ResponseEntity.ok(orders);
+    }
+    
+    @GetMapping("/shop/{shopId}/status/{status}")
+    public ResponseEntity<CursorPageResponse<OrderDTO>> getOrdersByShopIdAndStatus(
+            @PathVariable Long shopId,
+            @PathVariable OrderStatus status,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        CursorPageResponse<OrderDTO> orders = orderService.getOrdersByShopIdAndStatus(shopId, status, cursor, limit);
+        return ResponseEntity.ok(orders);
+    }
+    
+    @GetMapping("/shop/{shopId}/date-range")
+    public ResponseEntity<CursorPageResponse<OrderDTO>> getOrdersByDateRange(
+            @PathVariable Long shopId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        CursorPageResponse<OrderDTO> orders =
+                orderService.getOrdersByDateRange(shopId, startDate, endDate, cursor, limit);
+        return ResponseEntity.ok(orders);
+    }
+}
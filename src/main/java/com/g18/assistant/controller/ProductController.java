@@ -6,6 +6,8 @@ import com.g18.assistant.dto.response.ProductConsultationResponse;
 import com.g18.assistant.dto.response.ProductResponse;
 import com.g18.assistant.entity.Product;
 import com.g18.assistant.repository.ProductRepository;
+import com.g18.assistant.service.ImageStore;
+import com.g18.assistant.service.ProductImageService;
 import com.g18.assistant.service.ProductService;
 import com.g18.assistant.service.ShopService;
 import jakarta.validation.Valid;
@@ -14,12 +16,22 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.NoSuchFileException;
+import java.time.Duration;
 import java.util.List;
 
 @RestController
@@ -31,6 +43,8 @@ public class ProductController {
     private final ProductService productService;
     private final ShopService shopService;
     private final ProductRepository productRepository;
+    private final ImageStore imageStore;
+    private final ProductImageService productImageService;
 
     // Public endpoints
     @GetMapping("/products")
@@ -65,6 +79,39 @@ public class ProductController {
         return ResponseEntity.ok(productService.getProductById(productId));
     }
     
+    @GetMapping("/products/{productId}/image")
+    public ResponseEntity<StreamingResponseBody> getProductImage(
+            @PathVariable Long productId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) throws IOException {
+        
+        String imageHash = productRepository.findImageHashById(productId).orElse(null);
+        if (imageHash == null) {
+            return getLegacyProductImage(productId);
+        }
+        
+        // Blobs are immutable, so the content hash is a strong ETag
+        String etag = "\"" + imageHash + "\"";
+        if (etag.equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        
+        MediaType contentType;
+        long size;
+        try {
+            contentType = detectImageType(imageStore.read(imageHash));
+            size = imageStore.size(imageHash);
+        } catch (NoSuchFileException e) {
+            log.warn("Image {} of product {} is missing from the image store", imageHash, productId);
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.maxAge(Duration.ofDays(7)).cachePublic())
+                .contentType(contentType)
+                .contentLength(size)
+                .body(out -> imageStore.transferTo(imageHash, Channels.newChannel(out)));
+    }
+    
     // Shop owner endpoints
     @PostMapping("/shops/{shopId}/products")
     public ResponseEntity<ProductResponse> createProduct(
@@ -182,6 +229,45 @@ public class ProductController {
         return ResponseEntity.ok(consultationResponses);
     }
     
+    // Products not migrated to the image store yet still serve their inline image
+    private ResponseEntity<StreamingResponseBody> getLegacyProductImage(Long productId) throws IOException {
+        Product product = productRepository.findById(productId).orElse(null);
+        if (product == null || product.getImageBase64() == null || product.getImageBase64().isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        byte[] imageBytes;
+        try (InputStream imageStream = productImageService.openImage(null, product.getImageBase64())) {
+            imageBytes = imageStream.readAllBytes();
+        }
+        return ResponseEntity.ok()
+                .contentType(detectImageType(ByteBuffer.wrap(imageBytes)))
+                .contentLength(imageBytes.length)
+                .body(out -> out.write(imageBytes));
+    }
+    
+    // Sniff the image format from its magic bytes
+    private static MediaType detectImageType(ByteBuffer data) {
+        ByteBuffer header = data.duplicate();
+        byte[] magic = new byte[Math.min(12, header.remaining())];
+        header.get(magic);
+        
+        if (magic.length >= 3 && (magic[0] & 0xFF) == 0xFF && (magic[1] & 0xFF) == 0xD8 && (magic[2] & 0xFF) == 0xFF) {
+            return MediaType.IMAGE_JPEG;
+        }
+        if (magic.length >= 4 && (magic[0] & 0xFF) == 0x89 && magic[1] == 'P' && magic[2] == 'N' && magic[3] == 'G') {
+            return MediaType.IMAGE_PNG;
+        }
+        if (magic.length >= 3 && magic[0] == 'G' && magic[1] == 'I' && magic[2] == 'F') {
+            return MediaType.IMAGE_GIF;
+        }
+        if (magic.length >= 12 && magic[0] == 'R' && magic[1] == 'I' && magic[2] == 'F' && magic[3] == 'F'
+                && magic[8] == 'W' && magic[9] == 'E' && magic[10] == 'B' && magic[11] == 'P') {
+            return MediaType.parseMediaType("image/webp");
+        }
+        return MediaType.APPLICATION_OCTET_STREAM;
+    }
+    
     // Helper method to validate shop ownership
     private void validateShopOwnership(Long userId, Long shopId) {
         if (!shopService.isShopOwner(userId, shopId)) {
@@ -1,17 +1,19 @@
 package com.g18.assistant.controller;
 
 import com.g18.assistant.dto.response.TelegramMessageResponse;
-import com.g18.assistant.entity.TelegramMessage;
-import com.g18.assistant.mapper.TelegramMessageMapper;
+import com.g18.assistant.service.ShopService;
 import com.g18.assistant.service.TelegramBotService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 import java.util.Map;
@@ -24,7 +26,7 @@ import java.util.Map;
 public class TelegramBotController {
     
     private final TelegramBotService telegramBotService;
-    private final TelegramMessageMapper telegramMessageMapper;
+    private final ShopService shopService;
     
     @PostMapping("/start")
     @Operation(summary = "Start Telegram bot", description = "Start a Telegram bot for a shop")
@@ -94,7 +96,8 @@ public class TelegramBotController {
     
     @GetMapping("/messages")
     @Operation(summary = "Get recent messages", 
-               description = "Get recent messages received by a shop's Telegram bot")
+               description = "Get recent messages received by a shop's Telegram bot. "
+                       + "Use /api/v2/shops/{shopId}/telegram/messages to page through older ones.")
     public ResponseEntity<?> getRecentMessages(
             @AuthenticationPrincipal Jwt jwt,
             @PathVariable Long shopId,
@@ -102,8 +105,7 @@ public class TelegramBotController {
         
         try {
             String username = jwt.getSubject();
-            List<TelegramMessage> messages = telegramBotService.getRecentMessages(shopId, username, limit);
-            List<TelegramMessageResponse> responses = telegramMessageMapper.toResponseList(messages);
+            List<TelegramMessageResponse> responses = telegramBotService.getRecentMessages(shopId, username, limit);
             
             return ResponseEntity.ok(responses);
         } catch (SecurityException e) {
@@ -114,6 +116,27 @@ public class TelegramBotController {
         }
     }
     
+    @GetMapping("/messages/export")
+    @Operation(summary = "Export messages", 
+               description = "Stream the full message history of a shop's Telegram bot as newline-delimited JSON")
+    public ResponseEntity<?> exportMessages(
+            @AuthenticationPrincipal Jwt jwt,
+            @PathVariable Long shopId) {
+        
+        try {
+            // Check ownership before the response is committed
+            shopService.validateUserShop(shopId, jwt.getSubject());
+        } catch (SecurityException e) {
+            return ResponseEntity.status(403).body(Map.of("error", e.getMessage()));
+        }
+        
+        StreamingResponseBody body = out -> telegramBotService.exportMessages(shopId, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"telegram-messages-" + shopId + ".ndjson\"")
+                .body(body);
+    }
+    
     @PostMapping("/send")
     @Operation(summary = "Send message", description = "Send a message to a Telegram chat via the shop's bot")
     public ResponseEntity<?> sendMessage(
@@ -0,0 +1,54 @@
+package com.g18.assistant.controller;
+
+import com.g18.assistant.dto.response.CursorPageResponse;
+import com.g18.assistant.dto.response.TelegramMessageResponse;
+import com.g18.assistant.service.TelegramBotService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * Paged version of the message listing in {@link TelegramBotController}
+ */
+@RestController
+@RequestMapping("/api/v2/shops/{shopId}/telegram")
+@RequiredArgsConstructor
+@Slf4j
+@Tag(name = "Telegram Bot", description = "Manage Telegram bots for shops")
+public class TelegramMessagePageController {
+    
+    private final TelegramBotService telegramBotService;
+    
+    @GetMapping("/messages")
+    @Operation(summary = "Get messages", 
+               description = "Get messages received by a shop's Telegram bot, newest first. "
+                       + "Pass the returned nextCursor to get the following page.")
+    public ResponseEntity<?> getMessages(
+            @AuthenticationPrincipal Jwt jwt,
+            @PathVariable Long shopId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        
+        try {
+            String username = jwt.getSubject();
+            CursorPageResponse<TelegramMessageResponse> page =
+                    telegramBotService.getMessages(shopId, username, cursor, limit);
+            
+            return ResponseEntity.ok(page);
+        } catch (SecurityException e) {
+            return ResponseEntity.status(403).body(Map.of("error", e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error retrieving Telegram messages: {}", e.getMessage());
+            return ResponseEntity.internalServerError().body(Map.of("error", "Internal server error"));
+        }
+    }
+}
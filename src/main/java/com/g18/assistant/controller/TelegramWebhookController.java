@@ -0,0 +1,50 @@
+package com.g18.assistant.controller;
+
+import com.g18.assistant.telegram.TelegramBotManager;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+@RestController
+@RequestMapping("/telegram")
+@RequiredArgsConstructor
+@Slf4j
+@Tag(name = "Telegram Webhook", description = "Shared ingress for Telegram bots running in webhook mode")
+public class TelegramWebhookController {
+
+    private static final String SECRET_TOKEN_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+
+    private final TelegramBotManager telegramBotManager;
+
+    /**
+     * Webhook endpoint that receives updates for a shop's bot. The update is only queued here,
+     * so Telegram gets its answer without waiting for AI processing.
+     */
+    @PostMapping("/{shopId}")
+    @Operation(summary = "Receive Telegram update", description = "Verify the secret token and queue the update for the shop's bot")
+    public ResponseEntity<Void> receiveUpdate(
+            @PathVariable Long shopId,
+            @RequestHeader(value = SECRET_TOKEN_HEADER, required = false) String secretToken,
+            @RequestBody Update update) {
+        return switch (telegramBotManager.dispatchWebhookUpdate(shopId, secretToken, update)) {
+            case ACCEPTED -> ResponseEntity.ok().build();
+            case UNAUTHORIZED -> {
+                log.warn("Rejected Telegram webhook call for shop {} with invalid secret token", shopId);
+                yield ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+            }
+            case UNKNOWN_BOT -> ResponseEntity.notFound().build();
+            // Telegram redelivers on a non-2xx answer, which gives the queue time to drain
+            case BUSY -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        };
+    }
+}
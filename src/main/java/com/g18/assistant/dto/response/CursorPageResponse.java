@@ -0,0 +1,40 @@
+package com.g18.assistant.dto.response;
+
+import com.g18.assistant.dto.KeysetCursor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Page of a seek-paginated listing. Pass {@code nextCursor} back to get the following page;
+ * it is null on the last page.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPageResponse<T> {
+    private List<T> content;
+    private int size;
+    private String nextCursor;
+    private boolean last;
+    
+    /**
+     * @param rows Rows fetched with a limit of {@code size + 1}; the extra row only signals another page
+     * @param cursorOf Position of a row in the listing order
+     */
+    public static <T> CursorPageResponse<T> from(List<T> rows, int size, Function<T, KeysetCursor> cursorOf) {
+        boolean last = rows.size() <= size;
+        List<T> content = last ? rows : rows.subList(0, size);
+        return CursorPageResponse.<T>builder()
+                .content(content)
+                .size(content.size())
+                .nextCursor(last ? null : cursorOf.apply(content.get(content.size() - 1)).encode())
+                .last(last)
+                .build();
+    }
+}
@@ -1,6 +1,7 @@
 package com.g18.assistant.dto.response;
 
 import com.g18.assistant.entity.Product;
+import com.g18.assistant.repository.projection.ProductSummary;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -12,7 +13,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class ProductResponse {
@@ -26,12 +27,14 @@ public class ProductResponse {
     private String category;
     private Integer stock;
     private String imageBase64;
+    private String imageHash;
+    private String imageUrl;
     private Map<String, String> customFields;
     private Boolean active;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
     
-    public static ProductResponse fromEntity(Product product) {
+    public static ProductResponse fromEntity(Product product, String imagePathPrefix) {
         return ProductResponse.builder()
                 .id(product.getId())
                 .shopId(product.getShop().getId())
@@ -42,6 +45,8 @@ public class ProductResponse {
                 .category(product.getCategory())
                 .stock(product.getStock())
                 .imageBase64(product.getImageBase64())
+                .imageHash(product.getImageHash())
+                .imageUrl(hasImage(product) ? imageUrl(imagePathPrefix, product.getId()) : null)
                 .customFields(product.getCustomFields() != null 
                     ? new HashMap<>(product.getCustomFields()) 
                     : new HashMap<>())
@@ -51,8 +56,40 @@ public class ProductResponse {
                 .build();
     }
     
-    public static ProductResponse fromEntityWithoutImage(Product product) {
-        ProductResponse response = fromEntity(product);
+    /**
+     * @param imagePathPrefix See ProductImageService.imagePathPrefix
+     */
+    public static String imageUrl(String imagePathPrefix, Long productId) {
+        return imagePathPrefix + productId + "/image";
+    }
+    
+    private static boolean hasImage(Product product) {
+        return product.getImageHash() != null 
+                || (product.getImageBase64() != null && !product.getImageBase64().isEmpty());
+    }
+    
+    public static ProductResponse fromSummary(ProductSummary summary, Map<String, String> customFields,
+                                              String imagePathPrefix) {
+        return ProductResponse.builder()
+                .id(summary.getId())
+                .shopId(summary.getShopId())
+                .shopName(summary.getShopName())
+                .name(summary.getName())
+                .price(summary.getPrice())
+                .description(summary.getDescription())
+                .category(summary.getCategory())
+                .stock(summary.getStock())
+                .imageHash(summary.getImageHash())
+                .imageUrl(summary.getImageHash() != null ? imageUrl(imagePathPrefix, summary.getId()) : null)
+                .customFields(customFields != null ? customFields : new HashMap<>())
+                .active(summary.getActive())
+                .createdAt(summary.getCreatedAt())
+                .updatedAt(summary.getUpdatedAt())
+                .build();
+    }
+    
+    public static ProductResponse fromEntityWithoutImage(Product product, String imagePathPrefix) {
+        ProductResponse response = fromEntity(product, imagePathPrefix);
         response.setImageBase64(null); // Don't send image in list views
         return response;
     }
@@ -37,6 +37,10 @@ public class AccessToken {
     @Column(nullable = false)
     private TokenMethod method;
     
+    // Whether the shop owner started the bot, so every node starts it again after a restart
+    @Builder.Default
+    private Boolean botEnabled = false;
+    
     public enum TokenStatus {
         ACTIVE, EXPIRED, REVOKED
     }
@@ -11,7 +11,9 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
-@Table(name = "customers")
+@Table(name = "customers", indexes = {
+    @Index(name = "idx_customers_shop", columnList = "id_shop, id_customer")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -9,7 +9,9 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "facebook_access_tokens")
+@Table(name = "facebook_access_tokens", indexes = {
+    @Index(name = "idx_facebook_page_id_active", columnList = "page_id, is_active")
+})
 @Data
 @Builder
 @NoArgsConstructor
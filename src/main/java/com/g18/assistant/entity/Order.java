@@ -10,7 +10,11 @@ import org.hibernate.annotations.CreationTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+    @Index(name = "idx_orders_customer_created", columnList = "id_customer, created_at, id_order"),
+    @Index(name = "idx_orders_shop_created", columnList = "id_shop, created_at, id_order"),
+    @Index(name = "idx_orders_shop_status_created", columnList = "id_shop, status, created_at, id_order")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -30,6 +34,11 @@ public class Order {
     @JoinColumn(name = "id_product", nullable = false)
     private Product product;
     
+    // Copy of the customer's shop, so shop listings read one index in order. Filled for older rows by OrderShopBackfillJob.
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "id_shop")
+    private Shop shop;
+    
     @Column(columnDefinition = "TEXT")
     private String note;
     
@@ -44,7 +53,7 @@ public class Order {
     private OrderStatus status;
     
     @CreationTimestamp
-    @Column(name = "created_at")
+    @Column(name = "created_at", nullable = false)
     private LocalDateTime createdAt;
     
     public enum OrderStatus {
@@ -45,9 +45,18 @@ public class Product {
     @Builder.Default
     private Integer stock = 0;
     
+    // Legacy inline image, only kept until the row is migrated to the image store
     @Column(columnDefinition = "LONGTEXT")
     private String imageBase64;
     
+    // SHA-256 key of the image in the image store
+    @Column(name = "image_hash", length = 64)
+    private String imageHash;
+    
+    // Folded copy of the searchable text for the ngram FULLTEXT index, see ProductSearchText
+    @Column(name = "search_text", columnDefinition = "TEXT")
+    private String searchText;
+    
     @ElementCollection
     @CollectionTable(name = "product_custom_fields", 
                     joinColumns = @JoinColumn(name = "product_id", referencedColumnName = "id"))
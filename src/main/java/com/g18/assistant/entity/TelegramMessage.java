@@ -9,15 +9,19 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "telegram_messages")
+@Table(name = "telegram_messages", indexes = {
+    @Index(name = "idx_telegram_messages_shop_received", columnList = "shop_id, received_at, id")
+})
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 public class TelegramMessage {
     
+    // Pooled sequence instead of IDENTITY so Hibernate can batch inserts from the message log
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "telegram_message_seq")
+    @SequenceGenerator(name = "telegram_message_seq", sequenceName = "telegram_messages_seq", allocationSize = 50)
     private Long id;
     
     @ManyToOne
@@ -0,0 +1,22 @@
+package com.g18.assistant.exception;
+
+import lombok.Getter;
+
+/**
+ * Thrown when a Gemini API call fails, times out or is rejected by the local concurrency limit
+ */
+@Getter
+public class GeminiApiException extends RuntimeException {
+
+    private final int statusCode;
+
+    public GeminiApiException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public GeminiApiException(String message, Throwable cause) {
+        super(message, cause);
+        this.statusCode = 0;
+    }
+}
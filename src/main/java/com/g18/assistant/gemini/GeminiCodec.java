@@ -0,0 +1,166 @@
+package com.g18.assistant.gemini;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * Writes generateContent requests and reads generated text with Jackson's streaming API, so
+ * neither side builds a JSON tree per call
+ */
+@Component
+public class GeminiCodec {
+
+    private final JsonFactory jsonFactory;
+    private final ObjectMapper objectMapper;
+
+    public GeminiCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    /**
+     * Serialize a generationConfig once, for use with {@link #encodeRequest}
+     */
+    public GeminiRequestTemplate template(ObjectNode generationConfig) {
+        try {
+            return new GeminiRequestTemplate(objectMapper.writeValueAsString(generationConfig));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Build a request with a single user turn
+     *
+     * @param template The precomputed generationConfig
+     * @param cachedContent Name of a cached content to prepend, or null
+     * @param text The user turn
+     * @return The UTF-8 JSON request body
+     */
+    public byte[] encodeRequest(GeminiRequestTemplate template, String cachedContent, String text) {
+        // Vietnamese text is mostly two or three bytes per char once encoded
+        ByteArrayOutputStream out = new ByteArrayOutputStream(template.size() + text.length() * 2 + 128);
+        try (JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            generator.writeStartObject();
+            if (cachedContent != null) {
+                generator.writeStringField("cachedContent", cachedContent);
+            }
+            generator.writeArrayFieldStart("contents");
+            generator.writeStartObject();
+            generator.writeStringField("role", "user");
+            generator.writeArrayFieldStart("parts");
+            generator.writeStartObject();
+            generator.writeStringField("text", text);
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeFieldName("generationConfig");
+            generator.writeRawValue(template.generationConfig());
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return The text of the first part of the first candidate, "" if that part has no text,
+     *         or null if the response has no candidate part
+     */
+    public String extractText(byte[] responseBody) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(responseBody)) {
+            String[] first = new String[1];
+            readPartTexts(parser, true, text -> first[0] = text);
+            return first[0];
+        }
+    }
+
+    /**
+     * Report the text of every part of the first candidate, e.g. of one server-sent event
+     */
+    public void forEachPartText(String responseChunk, Consumer<String> sink) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(responseChunk)) {
+            readPartTexts(parser, false, sink);
+        }
+    }
+
+    /**
+     * Check a top-level string field of a JSON object without building a tree
+     *
+     * @return true if the field is present with a non-empty string value
+     */
+    public boolean hasNonEmptyField(String json, String field) {
+        try (JsonParser parser = jsonFactory.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return false;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (field.equals(name)) {
+                    return value == JsonToken.VALUE_STRING && !parser.getText().isEmpty();
+                }
+                parser.skipChildren();
+            }
+            return false;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Walks {"candidates":[{"content":{"parts":[{"text":...}, ...]}}, ...]} skipping everything else
+    private static void readPartTexts(JsonParser parser, boolean firstOnly, Consumer<String> sink) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT || !seekField(parser, "candidates", JsonToken.START_ARRAY)) {
+            return;
+        }
+        if (parser.nextToken() != JsonToken.START_OBJECT
+                || !seekField(parser, "content", JsonToken.START_OBJECT)
+                || !seekField(parser, "parts", JsonToken.START_ARRAY)) {
+            return;
+        }
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String text = "";
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("text".equals(name) && value == JsonToken.VALUE_STRING) {
+                    text = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            sink.accept(text);
+            if (firstOnly) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Advance within the current object to the given field, leaving the parser on its value
+     *
+     * @return false if the object ends first or the value has another type
+     */
+    private static boolean seekField(JsonParser parser, String field, JsonToken expected) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (field.equals(name)) {
+                return value == expected;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+}
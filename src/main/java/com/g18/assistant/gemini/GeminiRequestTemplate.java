@@ -0,0 +1,28 @@
+package com.g18.assistant.gemini;
+
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+/**
+ * The static part of a generateContent request (generationConfig with its response schema),
+ * serialized once and copied into each request as raw UTF-8 bytes
+ */
+public final class GeminiRequestTemplate {
+
+    private final SerializableString generationConfig;
+
+    GeminiRequestTemplate(String generationConfigJson) {
+        SerializedString fragment = new SerializedString(generationConfigJson);
+        // Encode now so request threads only ever copy the cached bytes
+        fragment.asUnquotedUTF8();
+        this.generationConfig = fragment;
+    }
+
+    SerializableString generationConfig() {
+        return generationConfig;
+    }
+
+    int size() {
+        return generationConfig.asUnquotedUTF8().length;
+    }
+}
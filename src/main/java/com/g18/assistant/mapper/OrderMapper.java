@@ -33,6 +33,7 @@ public class OrderMapper {
     public Order toEntity(CreateOrderRequest request, Customer customer, Product product) {
         return Order.builder()
                 .customer(customer)
+                .shop(customer.getShop())
                 .product(product)
                 .note(request.getNote())
                 .quantity(request.getQuantity())
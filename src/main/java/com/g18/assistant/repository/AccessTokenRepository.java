@@ -27,4 +27,9 @@ public interface AccessTokenRepository extends JpaRepository<AccessToken, Long>
     List<AccessToken> findByShopAndMethod(Shop shop, AccessToken.TokenMethod method);
     
     Optional<AccessToken> findByShopAndMethodAndStatus(Shop shop, AccessToken.TokenMethod method, AccessToken.TokenStatus status);
+    
+    List<AccessToken> findByMethodAndStatusAndBotEnabledTrue(AccessToken.TokenMethod method, AccessToken.TokenStatus status);
+    
+    Optional<AccessToken> findByShopIdAndMethodAndStatusAndBotEnabledTrue(Long shopId, AccessToken.TokenMethod method,
+                                                                          AccessToken.TokenStatus status);
 } 
\ No newline at end of file
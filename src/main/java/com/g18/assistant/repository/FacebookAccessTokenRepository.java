@@ -2,8 +2,11 @@ package com.g18.assistant.repository;
 
 import com.g18.assistant.entity.FacebookAccessToken;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -11,4 +14,7 @@ public interface FacebookAccessTokenRepository extends JpaRepository<FacebookAcc
     Optional<FacebookAccessToken> findByShopId(Long shopId);
     Optional<FacebookAccessToken> findByShopIdAndActive(Long shopId, boolean active);
     Optional<FacebookAccessToken> findByVerifyToken(String verifyToken);
+
+    @Query("SELECT t.shopId FROM FacebookAccessToken t WHERE t.pageId = :pageId AND t.active = true")
+    List<Long> findActiveShopIdsByPageId(@Param("pageId") String pageId);
 } 
\ No newline at end of file
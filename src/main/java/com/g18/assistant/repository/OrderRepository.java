@@ -1,9 +1,11 @@
 package com.g18.assistant.repository;
 
+import com.g18.assistant.dto.OrderDTO;
 import com.g18.assistant.entity.Customer;
 import com.g18.assistant.entity.Order;
 import com.g18.assistant.entity.Order.OrderStatus;
 import com.g18.assistant.entity.Product;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
@@ -17,13 +19,48 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     List<Order> findByCustomerIdAndStatus(Long customerId, OrderStatus status);
     List<Order> findByProduct(Product product);
     
-    @Query("SELECT o FROM Order o JOIN o.customer c WHERE c.shop.id = :shopId")
-    List<Order> findAllByShopId(Long shopId);
+    // Listings select only the columns of OrderDTO, so no customer, product or product image is loaded
+    String ORDER_PROJECTION = "SELECT new com.g18.assistant.dto.OrderDTO("
+            + "o.id, c.id, c.fullname, p.id, p.name, o.note, o.quantity, o.deliveryUnit, o.status, o.createdAt) "
+            + "FROM Order o JOIN o.customer c JOIN o.product p ";
     
-    @Query("SELECT o FROM Order o JOIN o.customer c WHERE c.shop.id = :shopId AND o.status = :status")
-    List<Order> findAllByShopIdAndStatus(Long shopId, OrderStatus status);
-      @Query("SELECT o FROM Order o JOIN o.customer c WHERE c.shop.id = :shopId AND o.createdAt BETWEEN :startDate AND :endDate")
-    List<Order> findAllByShopIdAndCreatedAtBetween(Long shopId, LocalDateTime startDate, LocalDateTime endDate);
+    String NEWEST_FIRST = "ORDER BY o.createdAt DESC, o.id DESC";
+    
+    // Continues after the (createdAt, id) of the previous page's last row
+    String BEFORE = "AND (o.createdAt < :createdAt OR (o.createdAt = :createdAt AND o.id < :id)) ";
+    
+    @Query(ORDER_PROJECTION + "WHERE o.shop.id = :shopId " + NEWEST_FIRST)
+    List<OrderDTO> findAllByShopId(Long shopId);
+    
+    @Query(ORDER_PROJECTION + "WHERE o.shop.id = :shopId AND o.status = :status " + NEWEST_FIRST)
+    List<OrderDTO> findAllByShopIdAndStatus(Long shopId, OrderStatus status);
+    
+    @Query(ORDER_PROJECTION + "WHERE o.shop.id = :shopId AND o.createdAt BETWEEN :startDate AND :endDate " + NEWEST_FIRST)
+    List<OrderDTO> findAllByShopIdAndCreatedAtBetween(Long shopId, LocalDateTime startDate, LocalDateTime endDate);
+    
+    // Keyset pages: the Latest queries give the first page, the Before queries the pages after a cursor
+    
+    @Query(ORDER_PROJECTION + "WHERE o.shop.id = :shopId " + NEWEST_FIRST)
+    List<OrderDTO> findLatestByShopId(Long shopId, Pageable pageable);
+    
+    @Query(ORDER_PROJECTION + "WHERE o.shop.id = :shopId " + BEFORE + NEWEST_FIRST)
+    List<OrderDTO> findByShopIdBefore(Long shopId, LocalDateTime createdAt, Long id, Pageable pageable);
+    
+    @Query(ORDER_PROJECTION + "WHERE o.shop.id = :shopId AND o.status = :status " + NEWEST_FIRST)
+    List<OrderDTO> findLatestByShopIdAndStatus(Long shopId, OrderStatus status, Pageable pageable);
+    
+    @Query(ORDER_PROJECTION + "WHERE o.shop.id = :shopId AND o.status = :status " + BEFORE + NEWEST_FIRST)
+    List<OrderDTO> findByShopIdAndStatusBefore(Long shopId, OrderStatus status,
+                                               LocalDateTime createdAt, Long id, Pageable pageable);
+    
+    @Query(ORDER_PROJECTION + "WHERE o.shop.id = :shopId AND o.createdAt BETWEEN :startDate AND :endDate " + NEWEST_FIRST)
+    List<OrderDTO> findLatestByShopIdAndCreatedAtBetween(Long shopId, LocalDateTime startDate, LocalDateTime endDate,
+                                                         Pageable pageable);
+    
+    @Query(ORDER_PROJECTION + "WHERE o.shop.id = :shopId AND o.createdAt BETWEEN :startDate AND :endDate "
+            + BEFORE + NEWEST_FIRST)
+    List<OrderDTO> findByShopIdAndCreatedAtBetweenBefore(Long shopId, LocalDateTime startDate, LocalDateTime endDate,
+                                                         LocalDateTime createdAt, Long id, Pageable pageable);
     
     @Query("SELECT o FROM Order o WHERE o.customer.id = :customerId AND o.product.id = :productId AND o.createdAt > :afterTime ORDER BY o.createdAt DESC")
     List<Order> findRecentOrdersByCustomerAndProduct(Long customerId, Long productId, LocalDateTime afterTime);
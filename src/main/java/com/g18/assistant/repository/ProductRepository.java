@@ -2,22 +2,53 @@ package com.g18.assistant.repository;
 
 import com.g18.assistant.entity.Product;
 import com.g18.assistant.entity.Shop;
+import com.g18.assistant.repository.projection.LegacyProductImage;
+import com.g18.assistant.repository.projection.ProductCustomFieldView;
+import com.g18.assistant.repository.projection.ProductSummary;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface ProductRepository extends JpaRepository<Product, Long> {
     
+    String SUMMARY_SELECT = "SELECT p.id AS id, s.id AS shopId, s.name AS shopName, p.name AS name, " +
+           "p.price AS price, p.description AS description, p.category AS category, p.stock AS stock, " +
+           "p.imageHash AS imageHash, " +
+           "p.active AS active, p.createdAt AS createdAt, p.updatedAt AS updatedAt " +
+           "FROM Product p JOIN p.shop s ";
+    
     List<Product> findByShopIdAndActiveTrue(Long shopId);
     
-    Page<Product> findByShopIdAndActiveTrue(Long shopId, Pageable pageable);
+    /**
+     * Find active products of a shop without loading image data
+     * 
+     * @param shopId The shop ID
+     * @param pageable Pagination information
+     * @return Page of product summaries
+     */
+    @Query(value = SUMMARY_SELECT + "WHERE s.id = :shopId AND p.active = true",
+           countQuery = "SELECT COUNT(p) FROM Product p WHERE p.shop.id = :shopId AND p.active = true")
+    Page<ProductSummary> findSummariesByShopId(Long shopId, Pageable pageable);
     
+    /**
+     * Walk the active products of a shop in ID order without loading image data
+     *
+     * @param shopId The shop ID
+     * @param afterId Only products with a larger ID are returned
+     * @param pageable Batch size
+     * @return Product summaries, in ID order
+     */
+    @Query(SUMMARY_SELECT + "WHERE s.id = :shopId AND p.active = true AND p.id > :afterId ORDER BY p.id")
+    List<ProductSummary> findSummariesByShopIdAfter(Long shopId, Long afterId, Pageable pageable);
+
     /**
      * Find a product by ID and shop ID
      * 
@@ -44,19 +75,136 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
      */
     List<Product> findByShopId(Long shopId);
     
-    @Query("SELECT p FROM Product p WHERE p.shop.id = :shopId AND p.active = true AND " +
+    /**
+     * Find active products of a shop whose name, description or category contains the keyword.
+     * Used until the FULLTEXT index exists and every product has search text.
+     */
+    @Query(value = SUMMARY_SELECT + "WHERE s.id = :shopId AND p.active = true AND " +
            "(LOWER(p.name) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
            "LOWER(p.description) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
-           "LOWER(p.category) LIKE LOWER(CONCAT('%', :keyword, '%'))) " +
-           "AND p.active = true")
-    Page<Product> searchProducts(Long shopId, String keyword, Pageable pageable);
+           "LOWER(p.category) LIKE LOWER(CONCAT('%', :keyword, '%')))",
+           countQuery = "SELECT COUNT(p) FROM Product p WHERE p.shop.id = :shopId AND p.active = true AND " +
+           "(LOWER(p.name) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
+           "LOWER(p.description) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
+           "LOWER(p.category) LIKE LOWER(CONCAT('%', :keyword, '%')))")
+    Page<ProductSummary> searchProductSummariesByColumns(Long shopId, String keyword, Pageable pageable);
     
-    @Query("SELECT p FROM Product p WHERE p.active = true AND " +
+    @Query(value = SUMMARY_SELECT + "WHERE p.active = true AND " +
+           "(LOWER(p.name) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
+           "LOWER(p.description) LIKE LOWER(CONCAT('%', :keyword, '%')))",
+           countQuery = "SELECT COUNT(p) FROM Product p WHERE p.active = true AND " +
            "(LOWER(p.name) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
            "LOWER(p.description) LIKE LOWER(CONCAT('%', :keyword, '%')))")
-    Page<Product> searchAllActiveProducts(String keyword, Pageable pageable);
+    Page<ProductSummary> searchAllActiveProductSummariesByColumns(String keyword, Pageable pageable);
+    
+    /**
+     * Find active products of a shop whose folded search text contains the folded keyword.
+     * Only used for keywords too short for the FULLTEXT index.
+     */
+    @Query(value = SUMMARY_SELECT + "WHERE s.id = :shopId AND p.active = true AND p.searchText LIKE CONCAT('%', :foldedKeyword, '%')",
+           countQuery = "SELECT COUNT(p) FROM Product p WHERE p.shop.id = :shopId AND p.active = true AND " +
+           "p.searchText LIKE CONCAT('%', :foldedKeyword, '%')")
+    Page<ProductSummary> searchProductSummaries(Long shopId, String foldedKeyword, Pageable pageable);
+    
+    @Query(value = SUMMARY_SELECT + "WHERE p.active = true AND p.searchText LIKE CONCAT('%', :foldedKeyword, '%')",
+           countQuery = "SELECT COUNT(p) FROM Product p WHERE p.active = true AND p.searchText LIKE CONCAT('%', :foldedKeyword, '%')")
+    Page<ProductSummary> searchAllActiveProductSummaries(String foldedKeyword, Pageable pageable);
+    
+    @Query(value = SUMMARY_SELECT + "WHERE p.active = true",
+           countQuery = "SELECT COUNT(p) FROM Product p WHERE p.active = true")
+    Page<ProductSummary> findActiveSummaries(Pageable pageable);
+    
+    /**
+     * Rank the active products of a shop against a boolean-mode query on the ngram FULLTEXT index
+     * 
+     * @param shopId The shop ID
+     * @param query Query built by ProductSearchText.booleanQuery
+     * @param limit Page size
+     * @param offset Rows to skip
+     * @return Product IDs, most relevant first
+     */
+    @Query(value = "SELECT p.id FROM products p WHERE p.shop_id = :shopId AND p.active = true " +
+           "AND MATCH(p.search_text) AGAINST (:query IN BOOLEAN MODE) " +
+           "ORDER BY MATCH(p.search_text) AGAINST (:query IN BOOLEAN MODE) DESC, p.id LIMIT :limit OFFSET :offset",
+           nativeQuery = true)
+    List<Long> searchShopProductIds(Long shopId, String query, int limit, long offset);
     
-    Page<Product> findByCategoryAndActiveTrue(String category, Pageable pageable);
+    @Query(value = "SELECT COUNT(*) FROM products p WHERE p.shop_id = :shopId AND p.active = true " +
+           "AND MATCH(p.search_text) AGAINST (:query IN BOOLEAN MODE)",
+           nativeQuery = true)
+    long countShopProductMatches(Long shopId, String query);
+    
+    @Query(value = "SELECT p.id FROM products p WHERE p.active = true " +
+           "AND MATCH(p.search_text) AGAINST (:query IN BOOLEAN MODE) " +
+           "ORDER BY MATCH(p.search_text) AGAINST (:query IN BOOLEAN MODE) DESC, p.id LIMIT :limit OFFSET :offset",
+           nativeQuery = true)
+    List<Long> searchActiveProductIds(String query, int limit, long offset);
+    
+    @Query(value = "SELECT COUNT(*) FROM products p WHERE p.active = true " +
+           "AND MATCH(p.search_text) AGAINST (:query IN BOOLEAN MODE)",
+           nativeQuery = true)
+    long countActiveProductMatches(String query);
+    
+    @Query(SUMMARY_SELECT + "WHERE p.id IN :ids")
+    List<ProductSummary> findSummariesByIdIn(Collection<Long> ids);
+    
+    @Query(value = SUMMARY_SELECT + "WHERE p.category = :category AND p.active = true",
+           countQuery = "SELECT COUNT(p) FROM Product p WHERE p.category = :category AND p.active = true")
+    Page<ProductSummary> findSummariesByCategory(String category, Pageable pageable);
+    
+    /**
+     * Load the custom fields of several products in one query
+     * 
+     * @param productIds The product IDs
+     * @return One row per custom field
+     */
+    @Query("SELECT p.id AS productId, KEY(cf) AS fieldName, VALUE(cf) AS fieldValue " +
+           "FROM Product p JOIN p.customFields cf WHERE p.id IN :productIds")
+    List<ProductCustomFieldView> findCustomFieldsByProductIds(Collection<Long> productIds);
+    
+    /**
+     * Find products whose search text has not been filled yet, without loading image data
+     * 
+     * @param afterId Only products with a larger ID are returned
+     * @param pageable Batch size
+     * @return Product summaries to backfill, in ID order
+     */
+    @Query(SUMMARY_SELECT + "WHERE p.searchText IS NULL AND p.id > :afterId ORDER BY p.id")
+    List<ProductSummary> findSummariesWithoutSearchText(Long afterId, Pageable pageable);
+    
+    /**
+     * Fill the search text of one product, leaving the rest of the row untouched.
+     * Skips products that were saved with search text in the meantime.
+     * 
+     * @return Number of rows updated
+     */
+    @Modifying
+    @Query("UPDATE Product p SET p.searchText = :searchText WHERE p.id = :id AND p.searchText IS NULL")
+    int fillSearchText(Long id, String searchText);
+    
+    @Query("SELECT p.imageHash FROM Product p WHERE p.id = :productId")
+    Optional<String> findImageHashById(Long productId);
+    
+    /**
+     * Find products whose image is still stored inline as base64
+     * 
+     * @param afterId Only products with a larger ID are returned
+     * @param pageable Batch size
+     * @return Inline images to migrate, in ID order
+     */
+    @Query("SELECT p.id AS id, p.imageBase64 AS imageBase64 FROM Product p " +
+           "WHERE p.imageHash IS NULL AND p.imageBase64 IS NOT NULL AND p.id > :afterId ORDER BY p.id")
+    List<LegacyProductImage> findLegacyImages(Long afterId, Pageable pageable);
+    
+    /**
+     * Point a product at its migrated image and clear the inline copy, leaving the rest of the row untouched.
+     * Skips products that got a stored image in the meantime.
+     * 
+     * @return Number of rows updated
+     */
+    @Modifying
+    @Query("UPDATE Product p SET p.imageHash = :imageHash, p.imageBase64 = NULL WHERE p.id = :id AND p.imageHash IS NULL")
+    int replaceLegacyImage(Long id, String imageHash);
     
     @Query("SELECT DISTINCT p.category FROM Product p WHERE p.shop.id = :shopId AND p.active = true")
     List<String> findAllCategoriesByShopId(Long shopId);
@@ -1,10 +1,15 @@
 package com.g18.assistant.repository;
 
+import com.g18.assistant.dto.response.TelegramMessageResponse;
 import com.g18.assistant.entity.Shop;
 import com.g18.assistant.entity.TelegramMessage;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
@@ -16,5 +21,25 @@ public interface TelegramMessageRepository extends JpaRepository<TelegramMessage
     
     List<TelegramMessage> findByChatId(Long chatId);
     
-    List<TelegramMessage> findByShopOrderByReceivedAtDesc(Shop shop);
+    // History pages are projected straight to DTOs so long exports don't fill the persistence context
+    String MESSAGE_PROJECTION = "SELECT new com.g18.assistant.dto.response.TelegramMessageResponse("
+            + "m.id, m.shop.id, m.userId, m.username, m.messageText, m.chatId, m.fileUrl, m.fileType, "
+            + "m.receivedAt, m.processed) FROM TelegramMessage m ";
+
+    @Query(MESSAGE_PROJECTION
+            + "WHERE m.shop.id = :shopId ORDER BY m.receivedAt DESC, m.id DESC")
+    List<TelegramMessageResponse> findLatestByShopId(@Param("shopId") Long shopId, Pageable pageable);
+
+    /**
+     * Seek to the rows after (receivedAt, id) in newest-first order, served by
+     * idx_telegram_messages_shop_received without scanning skipped rows
+     */
+    @Query(MESSAGE_PROJECTION
+            + "WHERE m.shop.id = :shopId "
+            + "AND (m.receivedAt < :receivedAt OR (m.receivedAt = :receivedAt AND m.id < :id)) "
+            + "ORDER BY m.receivedAt DESC, m.id DESC")
+    List<TelegramMessageResponse> findByShopIdBefore(@Param("shopId") Long shopId,
+                                                     @Param("receivedAt") LocalDateTime receivedAt,
+                                                     @Param("id") Long id,
+                                                     Pageable pageable);
 } 
\ No newline at end of file
@@ -0,0 +1,11 @@
+package com.g18.assistant.repository.projection;
+
+/**
+ * A product image still stored inline as base64, read for migration to the image store
+ */
+public interface LegacyProductImage {
+
+    Long getId();
+
+    String getImageBase64();
+}
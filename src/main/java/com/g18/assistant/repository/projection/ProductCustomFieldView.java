@@ -0,0 +1,13 @@
+package com.g18.assistant.repository.projection;
+
+/**
+ * One custom field row of a product, loaded in bulk for a page of summaries
+ */
+public interface ProductCustomFieldView {
+
+    Long getProductId();
+
+    String getFieldName();
+
+    String getFieldValue();
+}
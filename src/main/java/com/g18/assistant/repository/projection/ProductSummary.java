@@ -0,0 +1,34 @@
+package com.g18.assistant.repository.projection;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Product columns needed by list and search views, without the LONGTEXT image
+ */
+public interface ProductSummary {
+
+    Long getId();
+
+    Long getShopId();
+
+    String getShopName();
+
+    String getName();
+
+    BigDecimal getPrice();
+
+    String getDescription();
+
+    String getCategory();
+
+    Integer getStock();
+
+    String getImageHash();
+
+    Boolean getActive();
+
+    LocalDateTime getCreatedAt();
+
+    LocalDateTime getUpdatedAt();
+}
@@ -0,0 +1,584 @@
+package com.g18.assistant.search;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * HNSW graph over unit vectors (cosine similarity), kept in a memory-mapped file so vectors and
+ * neighbor lists live off-heap and survive restarts. Every node is a fixed-size record: product ID,
+ * version, level, deleted flag, vector, then the neighbor lists of the bottom and upper layers.
+ * Replaced or removed products stay in the graph as deleted nodes until the file is compacted.
+ * Files not closed cleanly are discarded on open, since a crash may leave half-linked nodes.
+ */
+public final class HnswIndex implements Closeable {
+
+    private static final int MAGIC = 0x484E5357;
+    private static final int FORMAT_VERSION = 1;
+    // Layers above the bottom one; with M = 16 a node reaches layer 6 with probability 16^-6
+    private static final int MAX_UPPER_LEVELS = 6;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static final int HEADER_SIZE = 64;
+    private static final int H_MAGIC = 0;
+    private static final int H_FORMAT = 4;
+    private static final int H_DIMENSIONS = 8;
+    private static final int H_M = 12;
+    private static final int H_COUNT = 16;
+    private static final int H_ENTRY_POINT = 20;
+    private static final int H_MAX_LEVEL = 24;
+    private static final int H_DELETED = 28;
+    private static final int H_PROVIDER = 32;
+    private static final int H_CLEAN = 40;
+
+    private static final int R_PRODUCT = 0;
+    private static final int R_VERSION = 8;
+    private static final int R_LEVEL = 16;
+    private static final int R_DELETED = 20;
+    private static final int R_VECTOR = 24;
+
+    private final Path path;
+    private final int dimensions;
+    private final int m;
+    private final int maxNeighbors0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final int level0Offset;
+    private final int upperOffset;
+    private final int recordSize;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Integer> nodeByProduct = new HashMap<>();
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private boolean dirty;
+
+    /**
+     * @param productId The product
+     * @param score Cosine similarity to the query
+     */
+    public record Match(long productId, float score) {
+    }
+
+    @FunctionalInterface
+    public interface NodeVisitor {
+        void visit(long productId, long version, float[] vector);
+    }
+
+    private record Candidate(int node, float similarity) {
+    }
+
+    private HnswIndex(Path path, int dimensions, int m, int efConstruction, FileChannel channel) {
+        this.path = path;
+        this.dimensions = dimensions;
+        this.m = m;
+        this.maxNeighbors0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.level0Offset = R_VECTOR + 4 * dimensions;
+        this.upperOffset = level0Offset + 4 * (1 + maxNeighbors0);
+        this.recordSize = upperOffset + MAX_UPPER_LEVELS * 4 * (1 + m);
+        this.channel = channel;
+    }
+
+    /**
+     * Open the index file, or start an empty one when it is missing, was built with other parameters
+     * or by another embedding provider, or was not closed cleanly
+     *
+     * @param providerFingerprint Hash of the embedding provider ID
+     */
+    public static HnswIndex open(Path path, int dimensions, int m, int efConstruction, long providerFingerprint)
+            throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        HnswIndex index = new HnswIndex(path, dimensions, m, efConstruction, channel);
+        try {
+            if (!index.load(providerFingerprint)) {
+                index.reset(providerFingerprint);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return index;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    /**
+     * @return Number of products in the index
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodeByProduct.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Share of graph nodes that belong to replaced or removed products
+     */
+    public double deletedRatio() {
+        lock.readLock().lock();
+        try {
+            int count = buffer.getInt(H_COUNT);
+            return count == 0 ? 0 : (double) buffer.getInt(H_DELETED) / count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Version stored with each indexed product, keyed by product ID
+     */
+    public Map<Long, Long> versions() {
+        lock.readLock().lock();
+        try {
+            Map<Long, Long> versions = new HashMap<>(nodeByProduct.size() * 2);
+            nodeByProduct.forEach((productId, node) -> versions.put(productId, buffer.getLong(record(node) + R_VERSION)));
+            return versions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Add a product, replacing its previous vector
+     *
+     * @param version Stored with the node so callers can tell whether it is current
+     */
+    public void put(long productId, long version, float[] vector) throws IOException {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected a " + dimensions + "-dimensional vector, got " + vector.length);
+        }
+        float[] unit = normalize(vector);
+
+        lock.writeLock().lock();
+        try {
+            markDirty();
+            Integer previous = nodeByProduct.remove(productId);
+            if (previous != null) {
+                markDeleted(previous);
+            }
+
+            int count = buffer.getInt(H_COUNT);
+            ensureCapacity(count + 1);
+            int node = count;
+            int level = randomLevel();
+            writeNode(node, productId, version, level, unit);
+            buffer.putInt(H_COUNT, count + 1);
+            nodeByProduct.put(productId, node);
+
+            int entryPoint = buffer.getInt(H_ENTRY_POINT);
+            if (entryPoint < 0) {
+                buffer.putInt(H_ENTRY_POINT, node);
+                buffer.putInt(H_MAX_LEVEL, level);
+                return;
+            }
+
+            int maxLevel = buffer.getInt(H_MAX_LEVEL);
+            int current = entryPoint;
+            for (int layer = maxLevel; layer > level; layer--) {
+                current = greedyClosest(unit, current, layer);
+            }
+            for (int layer = Math.min(level, maxLevel); layer >= 0; layer--) {
+                List<Candidate> candidates = searchLayer(unit, current, efConstruction, layer);
+                List<Integer> neighbors = selectNeighbors(candidates, m);
+                setNeighbors(node, layer, neighbors);
+                for (int neighbor : neighbors) {
+                    link(neighbor, node, layer);
+                }
+                current = candidates.get(0).node();
+            }
+            if (level > maxLevel) {
+                buffer.putInt(H_ENTRY_POINT, node);
+                buffer.putInt(H_MAX_LEVEL, level);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return false if the product was not indexed
+     */
+    public boolean remove(long productId) {
+        lock.writeLock().lock();
+        try {
+            Integer node = nodeByProduct.remove(productId);
+            if (node == null) {
+                return false;
+            }
+            markDirty();
+            markDeleted(node);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Find the products closest to a query vector
+     *
+     * @param k Maximum number of matches
+     * @param ef Candidate list size; larger finds more of the true nearest neighbors
+     * @return Matches, most similar first
+     */
+    public List<Match> search(float[] query, int k, int ef) {
+        if (query.length != dimensions) {
+            throw new IllegalArgumentException("Expected a " + dimensions + "-dimensional vector, got " + query.length);
+        }
+        float[] unit = normalize(query);
+
+        lock.readLock().lock();
+        try {
+            int entryPoint = buffer.getInt(H_ENTRY_POINT);
+            if (entryPoint < 0 || nodeByProduct.isEmpty()) {
+                return List.of();
+            }
+            int current = entryPoint;
+            for (int layer = buffer.getInt(H_MAX_LEVEL); layer > 0; layer--) {
+                current = greedyClosest(unit, current, layer);
+            }
+
+            List<Match> matches = new ArrayList<>(k);
+            for (Candidate candidate : searchLayer(unit, current, Math.max(ef, k), 0)) {
+                int record = record(candidate.node());
+                if (buffer.getInt(record + R_DELETED) != 0) {
+                    continue;
+                }
+                matches.add(new Match(buffer.getLong(record + R_PRODUCT), candidate.similarity()));
+                if (matches.size() == k) {
+                    break;
+                }
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Visit every indexed product with its stored vector, e.g. to copy them into a compacted index
+     */
+    public void forEach(NodeVisitor visitor) {
+        lock.readLock().lock();
+        try {
+            for (int node : nodeByProduct.values()) {
+                int record = record(node);
+                visitor.visit(buffer.getLong(record + R_PRODUCT), buffer.getLong(record + R_VERSION), readVector(node));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Write changes to disk and mark the file consistent, so it is reused after an unclean shutdown
+     * that happens before the next change
+     */
+    public void flush() {
+        lock.writeLock().lock();
+        try {
+            if (dirty) {
+                buffer.force();
+                buffer.putInt(H_CLEAN, 1);
+                buffer.force();
+                dirty = false;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    private boolean load(long providerFingerprint) throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < HEADER_SIZE + recordSize) {
+            return false;
+        }
+        capacity = (int) Math.min(Integer.MAX_VALUE, (fileSize - HEADER_SIZE) / recordSize);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * recordSize);
+        if (buffer.getInt(H_MAGIC) != MAGIC || buffer.getInt(H_FORMAT) != FORMAT_VERSION
+                || buffer.getInt(H_DIMENSIONS) != dimensions || buffer.getInt(H_M) != m
+                || buffer.getLong(H_PROVIDER) != providerFingerprint || buffer.getInt(H_CLEAN) != 1
+                || buffer.getInt(H_COUNT) > capacity) {
+            return false;
+        }
+
+        int count = buffer.getInt(H_COUNT);
+        for (int node = 0; node < count; node++) {
+            int record = record(node);
+            if (buffer.getInt(record + R_DELETED) == 0) {
+                nodeByProduct.put(buffer.getLong(record + R_PRODUCT), node);
+            }
+        }
+        return true;
+    }
+
+    private void reset(long providerFingerprint) throws IOException {
+        channel.truncate(0);
+        capacity = INITIAL_CAPACITY;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * recordSize);
+        buffer.putInt(H_MAGIC, MAGIC);
+        buffer.putInt(H_FORMAT, FORMAT_VERSION);
+        buffer.putInt(H_DIMENSIONS, dimensions);
+        buffer.putInt(H_M, m);
+        buffer.putInt(H_COUNT, 0);
+        buffer.putInt(H_ENTRY_POINT, -1);
+        buffer.putInt(H_MAX_LEVEL, 0);
+        buffer.putInt(H_DELETED, 0);
+        buffer.putLong(H_PROVIDER, providerFingerprint);
+        buffer.putInt(H_CLEAN, 1);
+        nodeByProduct.clear();
+        buffer.force();
+    }
+
+    private void markDirty() {
+        if (!dirty) {
+            buffer.putInt(H_CLEAN, 0);
+            dirty = true;
+        }
+    }
+
+    private void ensureCapacity(int nodes) throws IOException {
+        if (nodes <= capacity) {
+            return;
+        }
+        long newCapacity = Math.max(nodes, (long) capacity * 2);
+        long size = HEADER_SIZE + newCapacity * recordSize;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Vector index " + path + " exceeds the 2 GB mapping limit");
+        }
+        buffer.force();
+        // Mapping past the end grows the file
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        capacity = (int) newCapacity;
+    }
+
+    private int randomLevel() {
+        double uniform = 1.0 - ThreadLocalRandom.current().nextDouble();
+        return Math.min(MAX_UPPER_LEVELS, (int) (-Math.log(uniform) * levelMultiplier));
+    }
+
+    private void writeNode(int node, long productId, long version, int level, float[] vector) {
+        int record = record(node);
+        buffer.putLong(record + R_PRODUCT, productId);
+        buffer.putLong(record + R_VERSION, version);
+        buffer.putInt(record + R_LEVEL, level);
+        buffer.putInt(record + R_DELETED, 0);
+        for (int i = 0; i < dimensions; i++) {
+            buffer.putFloat(record + R_VECTOR + 4 * i, vector[i]);
+        }
+        buffer.putInt(record + level0Offset, 0);
+        for (int layer = 1; layer <= MAX_UPPER_LEVELS; layer++) {
+            buffer.putInt(neighborsOffset(node, layer), 0);
+        }
+    }
+
+    private void markDeleted(int node) {
+        int record = record(node);
+        if (buffer.getInt(record + R_DELETED) == 0) {
+            buffer.putInt(record + R_DELETED, 1);
+            buffer.putInt(H_DELETED, buffer.getInt(H_DELETED) + 1);
+        }
+    }
+
+    private int greedyClosest(float[] query, int start, int layer) {
+        int current = start;
+        float best = similarity(query, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int offset = neighborsOffset(current, layer);
+            int count = buffer.getInt(offset);
+            for (int i = 0; i < count; i++) {
+                int neighbor = buffer.getInt(offset + 4 + 4 * i);
+                float similarity = similarity(query, neighbor);
+                if (similarity > best) {
+                    best = similarity;
+                    current = neighbor;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Best-first search of one layer
+     *
+     * @return Up to ef nodes, most similar first
+     */
+    private List<Candidate> searchLayer(float[] query, int entryPoint, int ef, int layer) {
+        BitSet visited = new BitSet(buffer.getInt(H_COUNT));
+        PriorityQueue<Candidate> toVisit = new PriorityQueue<>(Comparator.comparingDouble(Candidate::similarity).reversed());
+        PriorityQueue<Candidate> found = new PriorityQueue<>(Comparator.comparingDouble(Candidate::similarity));
+
+        Candidate start = new Candidate(entryPoint, similarity(query, entryPoint));
+        visited.set(entryPoint);
+        toVisit.add(start);
+        found.add(start);
+        while (!toVisit.isEmpty()) {
+            Candidate closest = toVisit.poll();
+            if (found.size() >= ef && closest.similarity() < found.peek().similarity()) {
+                break;
+            }
+            int offset = neighborsOffset(closest.node(), layer);
+            int count = buffer.getInt(offset);
+            for (int i = 0; i < count; i++) {
+                int neighbor = buffer.getInt(offset + 4 + 4 * i);
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                float similarity = similarity(query, neighbor);
+                if (found.size() < ef || similarity > found.peek().similarity()) {
+                    Candidate candidate = new Candidate(neighbor, similarity);
+                    toVisit.add(candidate);
+                    found.add(candidate);
+                    if (found.size() > ef) {
+                        found.poll();
+                    }
+                }
+            }
+        }
+
+        List<Candidate> result = new ArrayList<>(found);
+        result.sort(Comparator.comparingDouble(Candidate::similarity).reversed());
+        return result;
+    }
+
+    /**
+     * Neighbor selection heuristic: skip a candidate that is closer to an already selected neighbor than
+     * to the new node, so links spread across clusters; fill up with the skipped ones if needed
+     */
+    private List<Integer> selectNeighbors(List<Candidate> candidates, int max) {
+        List<Integer> selected = new ArrayList<>(max);
+        List<Integer> skipped = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            if (selected.size() == max) {
+                break;
+            }
+            boolean diverse = true;
+            for (int chosen : selected) {
+                if (similarity(candidate.node(), chosen) > candidate.similarity()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            (diverse ? selected : skipped).add(candidate.node());
+        }
+        for (int i = 0; i < skipped.size() && selected.size() < max; i++) {
+            selected.add(skipped.get(i));
+        }
+        return selected;
+    }
+
+    private void setNeighbors(int node, int layer, List<Integer> neighbors) {
+        int offset = neighborsOffset(node, layer);
+        buffer.putInt(offset, neighbors.size());
+        for (int i = 0; i < neighbors.size(); i++) {
+            buffer.putInt(offset + 4 + 4 * i, neighbors.get(i));
+        }
+    }
+
+    /**
+     * Add a back link from an existing node, re-selecting its neighbors when the list is full
+     */
+    private void link(int node, int newNeighbor, int layer) {
+        int max = layer == 0 ? maxNeighbors0 : m;
+        int offset = neighborsOffset(node, layer);
+        int count = buffer.getInt(offset);
+        if (count < max) {
+            buffer.putInt(offset + 4 + 4 * count, newNeighbor);
+            buffer.putInt(offset, count + 1);
+            return;
+        }
+
+        List<Candidate> candidates = new ArrayList<>(count + 1);
+        for (int i = 0; i < count; i++) {
+            int neighbor = buffer.getInt(offset + 4 + 4 * i);
+            candidates.add(new Candidate(neighbor, similarity(node, neighbor)));
+        }
+        candidates.add(new Candidate(newNeighbor, similarity(node, newNeighbor)));
+        candidates.sort(Comparator.comparingDouble(Candidate::similarity).reversed());
+        setNeighbors(node, layer, selectNeighbors(candidates, max));
+    }
+
+    private int neighborsOffset(int node, int layer) {
+        return layer == 0
+                ? record(node) + level0Offset
+                : record(node) + upperOffset + (layer - 1) * 4 * (1 + m);
+    }
+
+    private int record(int node) {
+        return HEADER_SIZE + node * recordSize;
+    }
+
+    private float similarity(float[] query, int node) {
+        int base = record(node) + R_VECTOR;
+        float dot = 0;
+        for (int i = 0; i < dimensions; i++) {
+            dot += query[i] * buffer.getFloat(base + 4 * i);
+        }
+        return dot;
+    }
+
+    private float similarity(int a, int b) {
+        int baseA = record(a) + R_VECTOR;
+        int baseB = record(b) + R_VECTOR;
+        float dot = 0;
+        for (int i = 0; i < dimensions; i++) {
+            dot += buffer.getFloat(baseA + 4 * i) * buffer.getFloat(baseB + 4 * i);
+        }
+        return dot;
+    }
+
+    private float[] readVector(int node) {
+        int base = record(node) + R_VECTOR;
+        float[] vector = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = buffer.getFloat(base + 4 * i);
+        }
+        return vector;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        float[] unit = new float[vector.length];
+        if (norm == 0) {
+            return unit;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            unit[i] = vector[i] * scale;
+        }
+        return unit;
+    }
+}
@@ -0,0 +1,93 @@
+package com.g18.assistant.search;
+
+import com.g18.assistant.entity.Product;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the folded products.search_text column and the FULLTEXT queries run against it
+ */
+public final class ProductSearchText {
+
+    // Must match the server's ngram_token_size; shorter words cannot be found through the index
+    public static final int NGRAM_TOKEN_SIZE = 2;
+
+    private ProductSearchText() {
+    }
+
+    /**
+     * @return Name, category, description and custom fields, lowercase and without diacritics
+     */
+    public static String of(Product product) {
+        return of(product.getName(), product.getCategory(), product.getDescription(), product.getCustomFields());
+    }
+
+    /**
+     * @return The same text as {@link #of(Product)}, built from columns read without the entity
+     */
+    public static String of(String name, String category, String description, Map<String, String> customFields) {
+        StringBuilder text = new StringBuilder();
+        append(text, name);
+        append(text, category);
+        append(text, description);
+        if (customFields != null) {
+            for (Map.Entry<String, String> field : customFields.entrySet()) {
+                append(text, field.getKey());
+                append(text, field.getValue());
+            }
+        }
+        return VietnameseTextAnalyzer.fold(text.toString());
+    }
+
+    /**
+     * Turn a keyword into a boolean-mode query requiring every word, e.g. "Áo khoác" → +"ao" +"khoac"
+     *
+     * @return The query, or null when no word is long enough for the ngram index
+     */
+    public static String booleanQuery(String keyword) {
+        List<String> words = words(keyword);
+        if (words.isEmpty() || words.stream().anyMatch(word -> word.length() < NGRAM_TOKEN_SIZE)) {
+            return null;
+        }
+        StringBuilder query = new StringBuilder();
+        for (String word : words) {
+            if (!query.isEmpty()) {
+                query.append(' ');
+            }
+            query.append("+\"").append(word).append('"');
+        }
+        return query.toString();
+    }
+
+    /**
+     * @return The keyword folded like search_text, for substring matching
+     */
+    public static String foldedKeyword(String keyword) {
+        return String.join(" ", words(keyword));
+    }
+
+    // Folded words, with boolean-mode operators and other punctuation removed
+    private static List<String> words(String keyword) {
+        List<String> words = new ArrayList<>();
+        if (keyword == null) {
+            return words;
+        }
+        for (String word : VietnameseTextAnalyzer.fold(keyword).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    private static void append(StringBuilder text, String value) {
+        if (value != null && !value.isBlank()) {
+            if (!text.isEmpty()) {
+                text.append(' ');
+            }
+            text.append(value);
+        }
+    }
+}
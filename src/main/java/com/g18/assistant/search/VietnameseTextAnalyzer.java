@@ -0,0 +1,85 @@
+package com.g18.assistant.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Turns Vietnamese (or English) text into index terms: lowercase, diacritics folded
+ * ("Áo khoác đỏ" → "ao", "khoac", "do"), common function words dropped, plus a bigram for
+ * each pair of adjacent syllables so multi-syllable words like "ao_khoac" rank above
+ * products that only share one syllable
+ */
+public final class VietnameseTextAnalyzer {
+
+    // Words that appear in almost every customer message, matched before folding: folded, many of them
+    // collide with product words (bạn/bàn → "ban", có/cổ/cỏ → "co", mua/mùa, tôi/tỏi, chị/chỉ, còn/con,
+    // hàng/hãng). Unaccented spellings are listed only where no product word folds to them.
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "à", "ạ", "ơi", "nhé", "nha", "hả", "hở", "với", "của", "và", "là", "thì", "mà",
+            "có", "không", "khong", "ko", "k", "gì", "nào", "này", "kia", "cho", "tôi", "mình",
+            "bạn", "em", "anh", "chị", "shop", "cái", "chiếc", "chiec", "những", "các", "một", "được",
+            "cần", "muốn", "muon", "mua", "xem", "hỏi", "còn", "hàng", "ở", "để", "thử", "giúp", "giup",
+            "and", "or", "of", "to", "for", "is", "i", "you", "me", "my");
+
+    private VietnameseTextAnalyzer() {
+    }
+
+    /**
+     * Lowercase and strip diacritics, mapping đ to d
+     */
+    public static String fold(String text) {
+        String decomposed = Normalizer.normalize(text.toLowerCase(), Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            folded.append(c == 'đ' ? 'd' : c);
+        }
+        return folded.toString();
+    }
+
+    /**
+     * @return Syllable terms followed by bigram terms, with repeats (callers count frequencies)
+     */
+    public static List<String> analyze(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null || text.isBlank()) {
+            return terms;
+        }
+
+        // Composed form, so each accented letter is one char and stop words compare as written
+        String lower = Normalizer.normalize(text.toLowerCase(), Normalizer.Form.NFC);
+        List<String> syllables = new ArrayList<>();
+        List<Boolean> stopWords = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length() && (Character.isLetterOrDigit(lower.charAt(i))
+                    || Character.getType(lower.charAt(i)) == Character.NON_SPACING_MARK);
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                String word = lower.substring(start, i);
+                syllables.add(fold(word));
+                stopWords.add(STOP_WORDS.contains(word));
+                start = -1;
+            }
+        }
+
+        for (int i = 0; i < syllables.size(); i++) {
+            if (!stopWords.get(i)) {
+                terms.add(syllables.get(i));
+            }
+        }
+        // Bigrams span stop words too, so "ao so mi" still yields "so_mi"
+        for (int i = 1; i < syllables.size(); i++) {
+            if (!stopWords.get(i - 1) || !stopWords.get(i)) {
+                terms.add(syllables.get(i - 1) + "_" + syllables.get(i));
+            }
+        }
+        return terms;
+    }
+}
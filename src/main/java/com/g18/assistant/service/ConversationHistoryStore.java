@@ -0,0 +1,36 @@
+package com.g18.assistant.service;
+
+import java.util.List;
+
+/**
+ * Storage backend for {@link ConversationHistoryService}. Implementations keep at most
+ * the configured number of entries per conversation and drop conversations that have
+ * been idle longer than the session timeout.
+ */
+public interface ConversationHistoryStore {
+
+    /**
+     * Append an entry to a conversation, starting a new session if the previous one timed out
+     *
+     * @param key The conversation key (shopId:customerId)
+     * @param entry The entry to append
+     */
+    void append(String key, ConversationHistoryService.ConversationEntry entry);
+
+    /**
+     * Get the most recent entries of a conversation
+     *
+     * @param key The conversation key
+     * @param limit Maximum entries to return
+     * @param notBeforeMillis Entries older than this epoch-millisecond time are left out
+     * @return Read-only entries in chronological order, oldest first
+     */
+    List<ConversationHistoryService.ConversationEntry> getRecent(String key, int limit, long notBeforeMillis);
+
+    /**
+     * Remove a conversation
+     *
+     * @param key The conversation key
+     */
+    void clear(String key);
+}
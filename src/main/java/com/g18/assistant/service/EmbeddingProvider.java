@@ -0,0 +1,32 @@
+package com.g18.assistant.service;
+
+import java.util.List;
+
+/**
+ * Turns text into fixed-size vectors for semantic product search
+ */
+public interface EmbeddingProvider {
+
+    /**
+     * Identifies the model and vector size; stored vectors produced under another ID are discarded
+     */
+    String id();
+
+    int dimensions();
+
+    /**
+     * Embed product texts for indexing
+     *
+     * @param texts The texts
+     * @return One vector per text, in the same order
+     */
+    List<float[]> embedDocuments(List<String> texts);
+
+    /**
+     * Embed a customer message for searching
+     *
+     * @param text The message
+     * @return Its vector
+     */
+    float[] embedQuery(String text);
+}
@@ -10,6 +10,9 @@ public interface FacebookBotService {
     void startBot(Long shopId);
     void stopBot(Long shopId);
     FacebookBotStatusDto getBotStatus(Long shopId);
-    void handleIncomingMessage(String requestBody);
+    /**
+     * Answer one text message a customer sent to a Facebook page
+     */
+    void processMessage(String pageId, String senderId, String messageText);
     void sendMessage(Long shopId, String recipientId, String message);
 } 
\ No newline at end of file
@@ -0,0 +1,19 @@
+package com.g18.assistant.service;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Outbound Facebook Send API dispatcher, one queue per page access token
+ */
+public interface FacebookSendService {
+
+    /**
+     * Queue a text message for a Messenger user. Messages to the same recipient are delivered in order.
+     *
+     * @param accessToken The page access token
+     * @param recipientId The page-scoped ID of the recipient
+     * @param text The message text
+     * @return Future completed when Facebook accepted the message, or failed after the last retry
+     */
+    CompletableFuture<Void> send(String accessToken, String recipientId, String text);
+}
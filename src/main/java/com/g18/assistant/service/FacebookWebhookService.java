@@ -0,0 +1,15 @@
+package com.g18.assistant.service;
+
+/**
+ * Accepts Facebook webhook payloads and processes them off the request thread
+ */
+public interface FacebookWebhookService {
+
+    /**
+     * Queue a raw webhook payload for processing
+     *
+     * @param requestBody The webhook request body as received
+     * @return true if the payload was queued, false if the queue is full
+     */
+    boolean enqueue(String requestBody);
+}
@@ -0,0 +1,82 @@
+package com.g18.assistant.service;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Shared HTTP client for the Gemini REST API with pooled HTTP/2 connections,
+ * per-call deadlines and bounded concurrency per API key
+ */
+public interface GeminiClient {
+
+    /**
+     * Call generateContent on the configured API key with the default deadline
+     *
+     * @param modelId The model ID (e.g. "gemini-2.5-flash-preview-04-17")
+     * @param requestBody The JSON request body
+     * @return Future completing with the raw JSON response body
+     */
+    CompletableFuture<String> generateContentAsync(String modelId, String requestBody);
+
+    /**
+     * Blocking variant of {@link #generateContentAsync(String, String)}
+     *
+     * @param modelId The model ID
+     * @param requestBody The JSON request body
+     * @return The raw JSON response body
+     */
+    String generateContent(String modelId, String requestBody);
+
+    /**
+     * Call generateContent with a pre-encoded UTF-8 request, keeping the response as raw bytes
+     *
+     * @param modelId The model ID
+     * @param requestBody The UTF-8 JSON request body
+     * @return The raw UTF-8 JSON response body
+     */
+    byte[] generateContent(String modelId, byte[] requestBody);
+
+    /**
+     * Call streamGenerateContent over server-sent events, reporting each text chunk as it arrives
+     *
+     * @param modelId The model ID
+     * @param requestBody The JSON request body
+     * @param onChunk Receives each generated text fragment in order
+     * @return Future completing with the concatenated generated text
+     */
+    CompletableFuture<String> streamGenerateContentAsync(String modelId, String requestBody, Consumer<String> onChunk);
+
+    /**
+     * Variant of {@link #streamGenerateContentAsync(String, String, Consumer)} for a pre-encoded UTF-8 request
+     */
+    CompletableFuture<String> streamGenerateContentAsync(String modelId, byte[] requestBody, Consumer<String> onChunk);
+
+    /**
+     * POST a JSON body to a model method (e.g. "generateContent", "streamGenerateContent")
+     *
+     * @param apiKey The API key used for the call and its concurrency limit
+     * @param modelId The model ID
+     * @param method The model method name
+     * @param requestBody The JSON request body
+     * @param timeout Deadline for the whole call
+     * @return Future completing with the raw response body, or failing with GeminiApiException
+     */
+    CompletableFuture<String> postAsync(String apiKey, String modelId, String method, String requestBody, Duration timeout);
+
+    /**
+     * Create a cached content (POST cachedContents) on the configured API key
+     *
+     * @param requestBody The JSON CachedContent resource (model, contents, ttl)
+     * @return Future completing with the raw JSON of the created resource
+     */
+    CompletableFuture<String> createCachedContentAsync(String requestBody);
+
+    /**
+     * Delete a cached content
+     *
+     * @param name The resource name, e.g. "cachedContents/abc"
+     * @return Future completing when Gemini has accepted the deletion
+     */
+    CompletableFuture<Void> deleteCachedContentAsync(String name);
+}
@@ -0,0 +1,27 @@
+package com.g18.assistant.service;
+
+/**
+ * Keeps long, rarely changing prompt prefixes registered as Gemini cached contents so requests
+ * can reference them by name instead of re-sending them
+ */
+public interface GeminiContextCache {
+
+    /**
+     * Look up the cached content holding a prompt prefix. When the prefix changed or its cache is
+     * close to expiring, a new one is created in the background.
+     *
+     * @param scope Identifies the prompt slot, e.g. "chat:12"; a scope holds one cached content at a time
+     * @param modelId The model the cached content is created for and must be used with
+     * @param context The static prompt prefix
+     * @return The cached content name (e.g. "cachedContents/abc"), or null to send the prefix inline
+     */
+    String resolve(String scope, String modelId, String context);
+
+    /**
+     * Forget a cached content Gemini no longer accepts, so the next call creates a new one
+     *
+     * @param scope The prompt slot
+     * @param name The cached content name that was rejected
+     */
+    void invalidate(String scope, String name);
+}
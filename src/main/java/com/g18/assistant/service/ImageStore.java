@@ -0,0 +1,61 @@
+package com.g18.assistant.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Content-addressed blob store for image bytes. Blobs are immutable and keyed by the
+ * lowercase hex SHA-256 of their content, so identical images are stored once.
+ */
+public interface ImageStore {
+
+    /**
+     * Store raw image bytes
+     *
+     * @param data The image bytes
+     * @return The SHA-256 hex key of the content
+     */
+    String save(byte[] data) throws IOException;
+
+    /**
+     * Check whether a blob exists
+     *
+     * @param hash The SHA-256 hex key
+     * @return true if the blob is stored
+     */
+    boolean exists(String hash);
+
+    /**
+     * Get the size of a blob in bytes
+     *
+     * @param hash The SHA-256 hex key
+     * @return The blob size
+     */
+    long size(String hash) throws IOException;
+
+    /**
+     * Read a blob as a read-only buffer (memory-mapped for the local store)
+     *
+     * @param hash The SHA-256 hex key
+     * @return Read-only buffer over the blob content
+     */
+    ByteBuffer read(String hash) throws IOException;
+
+    /**
+     * Open a blob as a stream
+     *
+     * @param hash The SHA-256 hex key
+     * @return Stream over the blob content, to be closed by the caller
+     */
+    InputStream openStream(String hash) throws IOException;
+
+    /**
+     * Copy a blob to a channel without staging it in a heap buffer
+     *
+     * @param hash The SHA-256 hex key
+     * @param target The destination channel
+     */
+    void transferTo(String hash, WritableByteChannel target) throws IOException;
+}
@@ -0,0 +1,63 @@
+package com.g18.assistant.service;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Lightweight in-process metrics registry for counters, latencies and gauges
+ */
+public interface MetricsService {
+
+    /**
+     * Increment a named counter by one
+     *
+     * @param name The counter name (e.g. "ai.cache.hit")
+     */
+    void increment(String name);
+
+    /**
+     * Increment a named counter by the given amount
+     *
+     * @param name The counter name
+     * @param amount The amount to add
+     */
+    void increment(String name, long amount);
+
+    /**
+     * Record a latency sample for a named timer
+     *
+     * @param name The timer name (e.g. "ai.pipeline.fused")
+     * @param nanos The elapsed time in nanoseconds
+     */
+    void recordLatency(String name, long nanos);
+
+    /**
+     * Register a gauge whose value is read on every snapshot
+     *
+     * @param name The gauge name (e.g. "telegram.queue.depth")
+     * @param supplier Supplier of the current value
+     */
+    void registerGauge(String name, Supplier<Number> supplier);
+
+    /**
+     * Remove a previously registered gauge
+     *
+     * @param name The gauge name
+     */
+    void removeGauge(String name);
+
+    /**
+     * Get the current value of a counter
+     *
+     * @param name The counter name
+     * @return The counter value, 0 if it has never been incremented
+     */
+    long getCount(String name);
+
+    /**
+     * Take a snapshot of all counters, timers and gauges
+     *
+     * @return Map of metric name to value (timers expose count, avg_ms and max_ms)
+     */
+    Map<String, Object> snapshot();
+}
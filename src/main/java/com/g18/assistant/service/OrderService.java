@@ -3,6 +3,7 @@ package com.g18.assistant.service;
 import com.g18.assistant.dto.OrderDTO;
 import com.g18.assistant.dto.request.CreateOrderRequest;
 import com.g18.assistant.dto.request.UpdateOrderStatusRequest;
+import com.g18.assistant.dto.response.CursorPageResponse;
 import com.g18.assistant.entity.Order.OrderStatus;
 
 import java.time.LocalDateTime;
@@ -15,6 +16,14 @@ public interface OrderService {
     List<OrderDTO> getOrdersByCustomerId(Long customerId);
     List<OrderDTO> getOrdersByShopIdAndStatus(Long shopId, OrderStatus status);
     List<OrderDTO> getOrdersByDateRange(Long shopId, LocalDateTime startDate, LocalDateTime endDate);
+    
+    /**
+     * Paged listings, newest first. Pass the nextCursor of a page to get the following one.
+     */
+    CursorPageResponse<OrderDTO> getOrdersByShopId(Long shopId, String cursor, int limit);
+    CursorPageResponse<OrderDTO> getOrdersByShopIdAndStatus(Long shopId, OrderStatus status, String cursor, int limit);
+    CursorPageResponse<OrderDTO> getOrdersByDateRange(Long shopId, LocalDateTime startDate, LocalDateTime endDate,
+                                                      String cursor, int limit);
     OrderDTO updateOrderStatus(Long id, UpdateOrderStatusRequest request);
     void deleteOrder(Long id);
     List<OrderDTO> findRecentOrdersByCustomerAndProduct(Long customerId, Long productId, LocalDateTime afterTime);
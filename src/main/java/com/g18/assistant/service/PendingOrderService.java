@@ -107,6 +107,13 @@ public interface PendingOrderService {
      */
     PendingOrderInfo getPendingOrder(String customerKey);
     
+    /**
+     * Atomically retrieve and remove a pending order, so only one caller can complete it
+     *
+     * @return The pending order, or null if none exists or another caller already took it
+     */
+    PendingOrderInfo takePendingOrder(String customerKey);
+    
     /**
      * Remove a pending order
      */
@@ -118,7 +125,7 @@ public interface PendingOrderService {
     boolean hasPendingOrder(String customerKey);
     
     /**
-     * Get all pending orders (for monitoring/debugging)
+     * Get all unexpired pending orders (for monitoring/debugging)
      */
     java.util.Map<String, PendingOrderInfo> getAllPendingOrders();
     
@@ -0,0 +1,50 @@
+package com.g18.assistant.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Stores product images in the {@link ImageStore} and reads them back,
+ * falling back to the legacy base64 column for rows that are not migrated yet
+ */
+public interface ProductImageService {
+
+    /**
+     * Decode a base64 image and store its bytes
+     *
+     * @param imageBase64 The base64 image from the API request
+     * @return The SHA-256 key of the stored image, null if no image was given
+     */
+    String storeBase64(String imageBase64);
+
+    /**
+     * Open a product image for reading
+     *
+     * @param imageHash The stored image key, may be null
+     * @param legacyImageBase64 The legacy base64 image, used when there is no key
+     * @return Stream over the image bytes, or null if the product has no image
+     */
+    InputStream openImage(String imageHash, String legacyImageBase64) throws IOException;
+
+    /**
+     * Read a stored image back as base64, for API responses that still embed the image
+     *
+     * @param imageHash The stored image key
+     * @return The base64 image, or null if it is missing from the store
+     */
+    String readBase64(String imageHash);
+
+    /**
+     * Prefix of product image links, including the servlet context path (e.g. "/assistant/api/products/")
+     */
+    String imagePathPrefix();
+
+    /**
+     * Move one batch of legacy base64 images into the store
+     *
+     * @param afterId Only products with a larger ID are migrated
+     * @param batchSize Maximum products to migrate
+     * @return The last product ID processed, or null when nothing is left
+     */
+    Long migrateLegacyImages(Long afterId, int batchSize);
+}
@@ -0,0 +1,56 @@
+package com.g18.assistant.service;
+
+import com.g18.assistant.dto.response.ProductResponse;
+
+import java.util.List;
+
+/**
+ * Per-shop in-memory BM25 index over product name, category, description and custom fields.
+ * A shop is loaded from the database on its first search and kept current by product writes.
+ */
+public interface ProductSearchIndex {
+
+    /**
+     * Find the active products of a shop that best match a customer message
+     *
+     * @param shopId The shop ID
+     * @param query The customer message
+     * @param limit Maximum number of products
+     * @return Matching products, best first; empty if nothing matches
+     */
+    List<ProductResponse> search(Long shopId, String query, int limit);
+
+    /**
+     * Look up indexed products, e.g. the IDs returned by semantic search
+     *
+     * @param shopId The shop ID
+     * @param productIds The product IDs
+     * @return The active products among them, in the given order
+     */
+    List<ProductResponse> findByIds(Long shopId, List<Long> productIds);
+
+    /**
+     * Add or re-index a product. Inactive products are removed.
+     * Inside a transaction the change is applied after commit.
+     *
+     * @param product The product as saved
+     */
+    void upsert(ProductResponse product);
+
+    /**
+     * Remove a product from its shop's index
+     *
+     * @param shopId The shop ID
+     * @param productId The product ID
+     */
+    void remove(Long shopId, Long productId);
+
+    /**
+     * Update the stock shown for an indexed product without re-indexing its text
+     *
+     * @param shopId The shop ID
+     * @param productId The product ID
+     * @param stock The new stock
+     */
+    void updateStock(Long shopId, Long productId, Integer stock);
+}
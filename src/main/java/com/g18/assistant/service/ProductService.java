@@ -21,8 +21,15 @@ public interface ProductService {
     
     PageResponse<ProductResponse> getShopProducts(Long shopId, Pageable pageable);
     
+    /**
+     * Search the active products of a shop, diacritic-insensitively. Results are ranked by relevance,
+     * so the sort of the pageable is ignored; a blank keyword lists the shop's products.
+     */
     PageResponse<ProductResponse> searchShopProducts(Long shopId, String keyword, Pageable pageable);
     
+    /**
+     * Search the active products of all shops, ranked like {@link #searchShopProducts}
+     */
     PageResponse<ProductResponse> searchAllProducts(String keyword, Pageable pageable);
     
     PageResponse<ProductResponse> getProductsByCategory(String category, Pageable pageable);
@@ -30,4 +37,19 @@ public interface ProductService {
     List<String> getShopCategories(Long shopId);
     
     void updateProductStock(Long shopId, Long productId, Integer quantity);
+    
+    /**
+     * Fill the search text of one batch of products created before full-text search
+     * 
+     * @param afterId Only products with a larger ID are processed
+     * @param batchSize Maximum number of products in this batch
+     * @return The last processed product ID, or null when no product is left
+     */
+    Long backfillSearchText(Long afterId, int batchSize);
+    
+    /**
+     * Switch keyword search to the FULLTEXT index once it exists and every product has search text.
+     * Until then searches use LIKE on name, description and category.
+     */
+    void enableFulltextSearch();
 } 
\ No newline at end of file
@@ -0,0 +1,38 @@
+package com.g18.assistant.service;
+
+import com.g18.assistant.dto.response.ProductResponse;
+
+import java.util.List;
+
+/**
+ * Per-shop semantic product index: product texts are embedded by the {@link EmbeddingProvider} and
+ * stored in an HNSW graph on disk. Indexes follow product writes and are reconciled with the database
+ * in the background.
+ */
+public interface ProductVectorIndex {
+
+    /**
+     * Find the products whose description is closest in meaning to a customer message
+     *
+     * @param shopId The shop ID
+     * @param query The customer message
+     * @param limit Maximum number of products
+     * @return Product IDs, most similar first; empty while the shop is still being indexed
+     */
+    List<Long> search(Long shopId, String query, int limit);
+
+    /**
+     * Embed and index a product in the background. Inside a transaction this starts after commit.
+     *
+     * @param product The product as saved
+     */
+    void upsert(ProductResponse product);
+
+    /**
+     * Remove a product from its shop's index
+     *
+     * @param shopId The shop ID
+     * @param productId The product ID
+     */
+    void remove(Long shopId, Long productId);
+}
@@ -0,0 +1,43 @@
+package com.g18.assistant.service;
+
+/**
+ * Per-shop cache of AI replies to repeated, non-personal questions.
+ * Entries are keyed on the normalized message text and the shop's product catalog version.
+ */
+public interface ResponseCacheService {
+
+    /**
+     * Check whether a message may be answered from the cache.
+     * Order, address, phone and conversation-referencing messages are never cached.
+     *
+     * @param message The customer message
+     * @return true if the message is generic enough to share a reply across customers
+     */
+    boolean isCacheable(String message);
+
+    /**
+     * Look up a cached reply
+     *
+     * @param shopId The shop ID
+     * @param message The customer message
+     * @return The cached structured AI response, or null on a miss
+     */
+    String get(Long shopId, String message);
+
+    /**
+     * Store a reply for the current catalog version
+     *
+     * @param shopId The shop ID
+     * @param message The customer message
+     * @param response The structured AI response
+     */
+    void put(Long shopId, String message, String response);
+
+    /**
+     * Invalidate all cached replies of a shop by bumping its catalog version.
+     * Inside a transaction the bump happens after commit.
+     *
+     * @param shopId The shop ID
+     */
+    void invalidateShop(Long shopId);
+}
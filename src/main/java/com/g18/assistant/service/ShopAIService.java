@@ -2,6 +2,8 @@ package com.g18.assistant.service;
 
 import com.g18.assistant.entity.Product;
 
+import java.util.function.Consumer;
+
 /**
  * Service for handling AI-powered chat interactions for shop bots
  */
@@ -18,6 +20,20 @@ public interface ShopAIService {
      */
     String processCustomerMessage(Long shopId, String customerId, String customerName, String message);
     
+    /**
+     * Process a customer message like {@link #processCustomerMessage}, streaming the reply text while Gemini generates it.
+     * Structured fields (intent, action_details) are only available in the returned response.
+     * 
+     * @param shopId The ID of the shop
+     * @param customerId The ID of the customer (or null if not registered)
+     * @param customerName The name of the customer
+     * @param message The message from the customer
+     * @param onPartialText Receives the response text decoded so far each time it grows (never called for replies answered without streaming)
+     * @return Structured AI response with action recommendations
+     */
+    String processCustomerMessageStreaming(Long shopId, String customerId, String customerName, String message,
+                                           Consumer<String> onPartialText);
+    
     /**
      * Get product recommendations based on customer query
      * 
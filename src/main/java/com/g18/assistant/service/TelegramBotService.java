@@ -1,8 +1,11 @@
 package com.g18.assistant.service;
 
+import com.g18.assistant.dto.response.CursorPageResponse;
+import com.g18.assistant.dto.response.TelegramMessageResponse;
 import com.g18.assistant.entity.Shop;
-import com.g18.assistant.entity.TelegramMessage;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 public interface TelegramBotService {
@@ -35,14 +38,34 @@ public interface TelegramBotService {
     boolean getBotStatus(Long shopId, String username);
     
     /**
-     * Get recent messages received by a shop's Telegram bot
+     * Get the most recent messages received by a shop's Telegram bot, newest first
      * 
      * @param shopId The ID of the shop
      * @param username The username of the shop owner
-     * @param limit The maximum number of messages to return (default 50)
-     * @return List of telegram messages
+     * @param limit The maximum number of messages to return (capped at 100)
+     * @return The messages
      */
-    List<TelegramMessage> getRecentMessages(Long shopId, String username, int limit);
+    List<TelegramMessageResponse> getRecentMessages(Long shopId, String username, int limit);
+    
+    /**
+     * Get a page of messages received by a shop's Telegram bot, newest first
+     * 
+     * @param shopId The ID of the shop
+     * @param username The username of the shop owner
+     * @param cursor The nextCursor of the previous page, or null for the first page
+     * @param limit The maximum number of messages to return (capped at 100)
+     * @return The page of messages and the cursor of the next one
+     */
+    CursorPageResponse<TelegramMessageResponse> getMessages(Long shopId, String username, String cursor, int limit);
+    
+    /**
+     * Write a shop's whole message history as newline-delimited JSON, newest first, reading it
+     * in keyset chunks so only one chunk is held in memory. Ownership must be checked by the caller.
+     * 
+     * @param shopId The ID of the shop
+     * @param out The stream to write to
+     */
+    void exportMessages(Long shopId, OutputStream out) throws IOException;
     
     /**
      * Send a message to a Telegram chat
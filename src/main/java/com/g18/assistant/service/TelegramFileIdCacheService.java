@@ -0,0 +1,38 @@
+package com.g18.assistant.service;
+
+/**
+ * Remembers the file_id Telegram assigns to uploaded product photos, so later sends can
+ * reference the file instead of uploading the bytes again. File IDs are only valid for
+ * the bot that uploaded them, so entries are scoped per bot.
+ */
+public interface TelegramFileIdCacheService {
+
+    /**
+     * Get the cached file_id for a product image
+     *
+     * @param botId The Telegram bot ID (numeric prefix of the bot token)
+     * @param productId The product ID
+     * @param imageHash The SHA-256 key of the image, so a changed image is uploaded again
+     * @return The file_id, or null if the image was not uploaded through this bot yet
+     */
+    String get(String botId, Long productId, String imageHash);
+
+    /**
+     * Remember the file_id returned for an upload
+     *
+     * @param botId The Telegram bot ID
+     * @param productId The product ID
+     * @param imageHash The SHA-256 key of the image
+     * @param fileId The file_id returned by Telegram
+     */
+    void put(String botId, Long productId, String imageHash, String fileId);
+
+    /**
+     * Forget a file_id that Telegram no longer accepts
+     *
+     * @param botId The Telegram bot ID
+     * @param productId The product ID
+     * @param imageHash The SHA-256 key of the image
+     */
+    void evict(String botId, Long productId, String imageHash);
+}
@@ -0,0 +1,22 @@
+package com.g18.assistant.service;
+
+import com.g18.assistant.entity.TelegramMessage;
+
+/**
+ * Append-only log of incoming Telegram messages, written in batches off the hot path
+ */
+public interface TelegramMessageLog {
+
+    /**
+     * Append a message. Depending on the configured durability this returns once the row is
+     * buffered or once its batch is committed.
+     *
+     * @param message The message to store
+     */
+    void append(TelegramMessage message);
+
+    /**
+     * Write all buffered messages now
+     */
+    void flush();
+}
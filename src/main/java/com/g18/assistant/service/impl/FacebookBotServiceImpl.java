@@ -3,11 +3,11 @@ package com.g18.assistant.service.impl;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.g18.assistant.dto.FacebookBotStatusDto;
-import com.g18.assistant.dto.FacebookMessageDto;
 import com.g18.assistant.dto.FacebookWebhookConfigDto;
 import com.g18.assistant.entity.FacebookAccessToken;
 import com.g18.assistant.repository.FacebookAccessTokenRepository;
 import com.g18.assistant.service.FacebookBotService;
+import com.g18.assistant.service.FacebookSendService;
 import com.g18.assistant.service.ShopAIService;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
@@ -22,9 +22,11 @@ import org.springframework.web.client.RestTemplate;
 
 import java.security.SecureRandom;
 import java.util.Base64;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @RequiredArgsConstructor
@@ -35,12 +37,18 @@ public class FacebookBotServiceImpl implements FacebookBotService {
     private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper;
     private final ShopAIService shopAIService;
+    private final FacebookSendService facebookSendService;
     
     @Value("${app.facebook.api.url:https://graph.facebook.com/v18.0}")
     private String facebookApiUrl;
     
     @Value("${app.base.url}")
     private String baseUrl;
+    
+    // Other nodes only learn about saveAccessToken/stopBot when their entry ages out
+    private static final long PAGE_CACHE_TTL_NANOS = TimeUnit.MINUTES.toNanos(1);
+    
+    private final Map<String, CachedShop> shopIdsByPageId = new ConcurrentHashMap<>();
 
     @Override
     public FacebookWebhookConfigDto configureWebhook(Long shopId) {
@@ -88,9 +96,11 @@ public class FacebookBotServiceImpl implements FacebookBotService {
         FacebookAccessToken tokenEntity = facebookAccessTokenRepository.findByShopId(shopId)
                 .orElseThrow(() -> new EntityNotFoundException("Facebook configuration not found for shop: " + shopId));
         
+        invalidatePage(tokenEntity.getPageId());
         tokenEntity.setAccessToken(accessToken);
         tokenEntity.setPageId(pageId);
         facebookAccessTokenRepository.save(tokenEntity);
+        invalidatePage(pageId);
     }
 
     @Override
@@ -104,6 +114,7 @@ public class FacebookBotServiceImpl implements FacebookBotService {
         
         tokenEntity.setActive(true);
         facebookAccessTokenRepository.save(tokenEntity);
+        invalidatePage(tokenEntity.getPageId());
         
         // Subscribe to webhook events
         subscribeToWebhook(tokenEntity.getAccessToken());
@@ -116,6 +127,7 @@ public class FacebookBotServiceImpl implements FacebookBotService {
         
         tokenEntity.setActive(false);
         facebookAccessTokenRepository.save(tokenEntity);
+        invalidatePage(tokenEntity.getPageId());
         
         // Unsubscribe from webhook events if needed
         // unsubscribeFromWebhook(tokenEntity.getAccessToken());
@@ -134,104 +146,91 @@ public class FacebookBotServiceImpl implements FacebookBotService {
     }
 
     @Override
-    public void handleIncomingMessage(String requestBody) {
+    public void processMessage(String pageId, String senderId, String messageText) {
+        log.info("Received message from {}: {}", senderId, messageText);
+        
+        // Get the shop ID from page ID
+        Long shopId = findShopIdByPageId(pageId);
+        if (shopId == null) {
+            log.warn("Could not find shop for page ID: {}", pageId);
+            return;
+        }
+        
+        // Process message with AI service
         try {
-            FacebookMessageDto messageDto = objectMapper.readValue(requestBody, FacebookMessageDto.class);
+            // Call our AI service to get a response
+            String aiResponse = shopAIService.processCustomerMessage(
+                    shopId, senderId, "Facebook User", messageText);
+            
+            // Parse the AI response
+            JsonNode responseJson = objectMapper.readTree(aiResponse);
             
-            if (messageDto.getObject() == null || !messageDto.getObject().equals("page")) {
-                log.warn("Received non-page event: {}", messageDto.getObject());
+            // Check if there was an error
+            if (responseJson.has("error") && responseJson.get("error").asBoolean()) {
+                log.error("AI error: {}", responseJson.get("message").asText());
+                sendMessage(shopId, senderId, "I'm sorry, I'm having trouble understanding your request right now. Please try again later.");
                 return;
             }
             
-            if (messageDto.getEntries() == null || messageDto.getEntries().isEmpty()) {
-                log.warn("No entries in the webhook event");
-                return;
+            // Extract the human-readable response text
+            String responseText = responseJson.has("response_text") ? 
+                    responseJson.get("response_text").asText() : 
+                    "Thank you for your message. I'll get back to you soon.";
+            
+            // Send the response to the user
+            sendMessage(shopId, senderId, responseText);
+            
+            // Log detected intent for monitoring
+            if (responseJson.has("detected_intent")) {
+                String intent = responseJson.get("detected_intent").asText();
+                log.info("AI detected intent for Shop {}, User {}: {}", 
+                        shopId, senderId, intent);
             }
             
-            // Process each messaging event
-            for (FacebookMessageDto.Entry entry : messageDto.getEntries()) {
-                if (entry.getMessaging() == null || entry.getMessaging().isEmpty()) {
-                    continue;
-                }
-                
-                for (FacebookMessageDto.Messaging messaging : entry.getMessaging()) {
-                    if (messaging.getMessage() == null || messaging.getMessage().getText() == null) {
-                        continue;
-                    }
-                    
-                    String senderId = messaging.getSender().getId();
-                    String recipientId = messaging.getRecipient().getId();
-                    String messageText = messaging.getMessage().getText();
-                    
-                    log.info("Received message from {}: {}", senderId, messageText);
-                    
-                    // Get the shop ID from page ID
-                    Long shopId = findShopIdByPageId(recipientId);
-                    
-                    if (shopId != null) {
-                        // Process message with AI service
-                        try {
-                            // Call our AI service to get a response
-                            String aiResponse = shopAIService.processCustomerMessage(
-                                    shopId, senderId, "Facebook User", messageText);
-                            
-                            // Parse the AI response
-                            JsonNode responseJson = objectMapper.readTree(aiResponse);
-                            
-                            // Check if there was an error
-                            if (responseJson.has("error") && responseJson.get("error").asBoolean()) {
-                                log.error("AI error: {}", responseJson.get("message").asText());
-                                sendMessage(shopId, senderId, "I'm sorry, I'm having trouble understanding your request right now. Please try again later.");
-                                return;
-                            }
-                            
-                            // Extract the human-readable response text
-                            String responseText = responseJson.has("response_text") ? 
-                                    responseJson.get("response_text").asText() : 
-                                    "Thank you for your message. I'll get back to you soon.";
-                            
-                            // Send the response to the user
-                            sendMessage(shopId, senderId, responseText);
-                            
-                            // Log detected intent for monitoring
-                            if (responseJson.has("detected_intent")) {
-                                String intent = responseJson.get("detected_intent").asText();
-                                log.info("AI detected intent for Shop {}, User {}: {}", 
-                                        shopId, senderId, intent);
-                            }
-                            
-                            // Handle any actions that need to be performed
-                            if (responseJson.has("action_required") && responseJson.get("action_required").asBoolean()) {
-                                log.info("AI indicates action required for Shop {}, User {}", 
-                                        shopId, senderId);
-                                // In a real implementation, we would act on the action_details
-                                // For example, creating orders, checking status, etc.
-                            }
-                            
-                        } catch (Exception e) {
-                            log.error("Error processing message with AI: {}", e.getMessage(), e);
-                            sendMessage(shopId, senderId, "I'm sorry, I couldn't process your request. Please try again later.");
-                        }
-                    } else {
-                        log.warn("Could not find shop for page ID: {}", recipientId);
-                    }
-                }
+            // Handle any actions that need to be performed
+            if (responseJson.has("action_required") && responseJson.get("action_required").asBoolean()) {
+                log.info("AI indicates action required for Shop {}, User {}", 
+                        shopId, senderId);
+                // In a real implementation, we would act on the action_details
+                // For example, creating orders, checking status, etc.
             }
+            
         } catch (Exception e) {
-            log.error("Error processing Facebook message: {}", e.getMessage(), e);
+            log.error("Error processing message with AI: {}", e.getMessage(), e);
+            sendMessage(shopId, senderId, "I'm sorry, I couldn't process your request. Please try again later.");
         }
     }
     
-    // Helper method to find a shop ID from a Facebook page ID
-    // In a real implementation, you would have a mapping table or service
+    /**
+     * Resolve the shop that owns a Facebook page, from the local map when possible
+     */
     private Long findShopIdByPageId(String pageId) {
-        // For demo purposes, we'll try to find a shop that has this page configured
-        // In reality, you would have a more robust mapping mechanism
-        Optional<FacebookAccessToken> tokenEntity = facebookAccessTokenRepository.findAll().stream()
-                .filter(FacebookAccessToken::isActive)
-                .findFirst();
-                
-        return tokenEntity.map(FacebookAccessToken::getShopId).orElse(null);
+        if (pageId == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        CachedShop cached = shopIdsByPageId.get(pageId);
+        if (cached != null && now - cached.loadedNanos < PAGE_CACHE_TTL_NANOS) {
+            return cached.shopId;
+        }
+        
+        List<Long> shopIds = facebookAccessTokenRepository.findActiveShopIdsByPageId(pageId);
+        if (shopIds.isEmpty()) {
+            // Unknown pages are not cached, so a bot started on another node is picked up at once
+            shopIdsByPageId.remove(pageId);
+            return null;
+        }
+        if (shopIds.size() > 1) {
+            log.warn("Facebook page {} is active for several shops {}, routing to the first", pageId, shopIds);
+        }
+        shopIdsByPageId.put(pageId, new CachedShop(shopIds.get(0), now));
+        return shopIds.get(0);
+    }
+    
+    private void invalidatePage(String pageId) {
+        if (pageId != null) {
+            shopIdsByPageId.remove(pageId);
+        }
     }
 
     @Override
@@ -239,25 +238,9 @@ public class FacebookBotServiceImpl implements FacebookBotService {
         FacebookAccessToken tokenEntity = facebookAccessTokenRepository.findByShopIdAndActive(shopId, true)
                 .orElseThrow(() -> new EntityNotFoundException("Active Facebook configuration not found for shop: " + shopId));
         
-        String url = facebookApiUrl + "/me/messages?access_token=" + tokenEntity.getAccessToken();
-        
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        
-        Map<String, Object> recipientMap = new HashMap<>();
-        recipientMap.put("id", recipientId);
-        
-        Map<String, Object> messageMap = new HashMap<>();
-        messageMap.put("text", message);
-        
-        Map<String, Object> requestBody = new HashMap<>();
-        requestBody.put("recipient", recipientMap);
-        requestBody.put("message", messageMap);
-        
-        HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
-        
         try {
-            restTemplate.exchange(url, HttpMethod.POST, entity, String.class);
+            // Wait for delivery so callers keep seeing send failures; the dispatcher batches concurrent replies
+            facebookSendService.send(tokenEntity.getAccessToken(), recipientId, message).join();
         } catch (Exception e) {
             log.error("Error sending message to Facebook: {}", e.getMessage(), e);
             throw new RuntimeException("Failed to send message to Facebook", e);
@@ -285,4 +268,7 @@ public class FacebookBotServiceImpl implements FacebookBotService {
         new SecureRandom().nextBytes(randomBytes);
         return Base64.getUrlEncoder().withoutPadding().encodeToString(randomBytes);
     }
-} 
\ No newline at end of file
+    
+    private record CachedShop(Long shopId, long loadedNanos) {
+    }
+}
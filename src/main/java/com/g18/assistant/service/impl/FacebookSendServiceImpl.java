@@ -0,0 +1,460 @@
+package com.g18.assistant.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.g18.assistant.config.FacebookSendConfig;
+import com.g18.assistant.service.FacebookSendService;
+import com.g18.assistant.service.MetricsService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.URLEncoder;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One sender per page access token, running on a virtual thread. Queued messages are combined
+ * into Graph API batch requests with at most one message per recipient, so a recipient's
+ * messages keep their order. Usage headers returned by Facebook slow the sender down before
+ * the page hits its rate limit; app-wide usage slows down every page.
+ * A message is only retried when Facebook certainly did not deliver it, never after a timeout.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FacebookSendServiceImpl implements FacebookSendService {
+
+    // Graph API error codes for app, page and Messenger rate limits
+    private static final Set<Integer> RATE_LIMIT_CODES = Set.of(4, 17, 32, 613, 80006);
+    private static final long IDLE_TIMEOUT_SECONDS = 60;
+
+    private final RestTemplate restTemplate;
+    private final ObjectMapper objectMapper;
+    private final FacebookSendConfig sendConfig;
+    private final MetricsService metricsService;
+
+    @Value("${app.facebook.api.url:https://graph.facebook.com/v18.0}")
+    private String facebookApiUrl;
+
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+    // A page is present only while its sender is running
+    private final Map<String, PageSender> pages = new ConcurrentHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    // X-App-Usage counts calls of the whole app, so its pause holds back every page
+    private final AtomicLong appPausedUntilNanos = new AtomicLong(System.nanoTime());
+
+    @PostConstruct
+    public void init() {
+        metricsService.registerGauge("facebook.send.queue.depth", queued::get);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        senders.shutdownNow();
+    }
+
+    @Override
+    public CompletableFuture<Void> send(String accessToken, String recipientId, String text) {
+        OutboundMessage message = new OutboundMessage(recipientId, text, System.nanoTime());
+        queued.incrementAndGet();
+        pages.compute(accessToken, (token, page) -> {
+            if (page == null) {
+                page = new PageSender(token);
+                PageSender started = page;
+                senders.execute(() -> run(started));
+            }
+            page.queue.add(message);
+            return page;
+        });
+        return message.result;
+    }
+
+    private void run(PageSender page) {
+        try {
+            while (true) {
+                if (page.pending.isEmpty()) {
+                    OutboundMessage first = page.queue.poll(IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                    if (first == null) {
+                        if (retire(page)) {
+                            return;
+                        }
+                        continue;
+                    }
+                    page.pending.add(first);
+                    // Give concurrent replies a moment to join the same batch
+                    Thread.sleep(sendConfig.getBatchLinger().toMillis());
+                }
+                page.queue.drainTo(page.pending);
+
+                long now = System.nanoTime();
+                long resumeAt = Math.max(page.pausedUntilNanos, appPausedUntilNanos.get());
+                if (now < resumeAt) {
+                    TimeUnit.NANOSECONDS.sleep(resumeAt - now);
+                    continue;
+                }
+
+                List<OutboundMessage> batch = nextBatch(page, now);
+                if (batch.isEmpty()) {
+                    // Everything left is waiting for a retry, but new messages for other recipients may go first
+                    OutboundMessage next = page.queue.poll(Math.max(1, earliestRetry(page) - now), TimeUnit.NANOSECONDS);
+                    if (next != null) {
+                        page.pending.add(next);
+                    }
+                    continue;
+                }
+                deliver(page, batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            page.queue.drainTo(page.pending);
+            page.pending.forEach(message -> complete(message, new IllegalStateException("Facebook sender stopped")));
+        }
+    }
+
+    /**
+     * Remove an idle sender, unless a message arrived in the meantime
+     */
+    private boolean retire(PageSender page) {
+        boolean[] removed = new boolean[1];
+        pages.compute(page.accessToken, (token, current) -> {
+            removed[0] = current == page && page.queue.isEmpty();
+            return removed[0] ? null : current;
+        });
+        return removed[0];
+    }
+
+    /**
+     * Pick due messages, at most one per recipient and only the oldest one of each recipient
+     */
+    private List<OutboundMessage> nextBatch(PageSender page, long now) {
+        List<OutboundMessage> batch = new ArrayList<>();
+        Set<String> seenRecipients = new HashSet<>();
+        Iterator<OutboundMessage> iterator = page.pending.iterator();
+        while (iterator.hasNext() && batch.size() < sendConfig.getMaxBatchSize()) {
+            OutboundMessage message = iterator.next();
+            if (!seenRecipients.add(message.recipientId) || message.notBeforeNanos > now) {
+                continue;
+            }
+            batch.add(message);
+            iterator.remove();
+        }
+        return batch;
+    }
+
+    /**
+     * When the next message can be sent. Only the oldest message of each recipient counts: a later one that
+     * is already due still waits for it, so counting it would make the sender spin until the retry.
+     */
+    private long earliestRetry(PageSender page) {
+        long earliest = Long.MAX_VALUE;
+        Set<String> seenRecipients = new HashSet<>();
+        for (OutboundMessage message : page.pending) {
+            if (seenRecipients.add(message.recipientId)) {
+                earliest = Math.min(earliest, message.notBeforeNanos);
+            }
+        }
+        return earliest;
+    }
+
+    private void deliver(PageSender page, List<OutboundMessage> batch) {
+        long started = System.nanoTime();
+        List<Outcome> outcomes;
+        try {
+            ResponseEntity<String> response = batch.size() == 1
+                    ? sendSingle(page.accessToken, batch.get(0))
+                    : sendBatch(page.accessToken, batch);
+            applyUsageHeaders(page, response.getHeaders());
+            outcomes = batch.size() == 1 ? List.of(Outcome.SENT) : batchOutcomes(response.getBody(), batch.size());
+        } catch (HttpStatusCodeException e) {
+            applyUsageHeaders(page, e.getResponseHeaders());
+            Outcome outcome = classify(e.getStatusCode().value(), e.getResponseBodyAsString());
+            outcomes = new ArrayList<>();
+            for (int i = 0; i < batch.size(); i++) {
+                outcomes.add(outcome);
+            }
+        } catch (Exception e) {
+            log.warn("Error calling Facebook Send API: {}", e.getMessage());
+            // Only a failed connection proves nothing was sent; after a timeout the messages may have gone out
+            Outcome outcome = isNotConnected(e) ? Outcome.RETRY : Outcome.UNKNOWN;
+            outcomes = new ArrayList<>();
+            for (int i = 0; i < batch.size(); i++) {
+                outcomes.add(outcome);
+            }
+        }
+        metricsService.recordLatency("facebook.send.latency", System.nanoTime() - started);
+        if (batch.size() > 1) {
+            metricsService.increment("facebook.send.batch");
+        }
+
+        Deque<OutboundMessage> retries = new ArrayDeque<>();
+        for (int i = 0; i < batch.size(); i++) {
+            OutboundMessage message = batch.get(i);
+            Outcome outcome = outcomes.get(i);
+            if (outcome == Outcome.RATE_LIMITED) {
+                pause(page, backoffNanos(message.attempts + 1));
+            }
+            if (outcome == Outcome.SENT) {
+                metricsService.increment("facebook.send.sent");
+                complete(message, null);
+            } else if ((outcome == Outcome.RETRY || outcome == Outcome.RATE_LIMITED)
+                    && ++message.attempts < sendConfig.getMaxAttempts()) {
+                metricsService.increment("facebook.send.retried");
+                message.notBeforeNanos = System.nanoTime() + backoffNanos(message.attempts);
+                retries.addFirst(message);
+            } else if (outcome == Outcome.UNKNOWN) {
+                metricsService.increment("facebook.send.unknown");
+                complete(message, new IllegalStateException("Delivery of message to " + message.recipientId
+                        + " is unknown, not retried to avoid sending it twice"));
+            } else {
+                metricsService.increment("facebook.send.failed");
+                complete(message, new IllegalStateException("Facebook rejected message to " + message.recipientId));
+            }
+        }
+        // Retried messages are each the oldest of their recipient, so they go back in front
+        retries.forEach(page.pending::addFirst);
+    }
+
+    private ResponseEntity<String> sendSingle(String accessToken, OutboundMessage message) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("messaging_type", "RESPONSE");
+        body.putObject("recipient").put("id", message.recipientId);
+        body.putObject("message").put("text", message.text);
+
+        String url = facebookApiUrl + "/me/messages?access_token=" + accessToken;
+        return restTemplate.exchange(url, HttpMethod.POST, new HttpEntity<>(body.toString(), headers), String.class);
+    }
+
+    private ResponseEntity<String> sendBatch(String accessToken, List<OutboundMessage> batch) {
+        ArrayNode requests = objectMapper.createArrayNode();
+        for (OutboundMessage message : batch) {
+            ObjectNode recipient = objectMapper.createObjectNode().put("id", message.recipientId);
+            ObjectNode content = objectMapper.createObjectNode().put("text", message.text);
+            requests.addObject()
+                    .put("method", "POST")
+                    .put("relative_url", "me/messages")
+                    .put("body", "messaging_type=RESPONSE"
+                            + "&recipient=" + URLEncoder.encode(recipient.toString(), StandardCharsets.UTF_8)
+                            + "&message=" + URLEncoder.encode(content.toString(), StandardCharsets.UTF_8));
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+        MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+        form.add("access_token", accessToken);
+        form.add("include_headers", "false");
+        form.add("batch", requests.toString());
+
+        return restTemplate.exchange(facebookApiUrl + "/", HttpMethod.POST, new HttpEntity<>(form, headers), String.class);
+    }
+
+    private List<Outcome> batchOutcomes(String responseBody, int size) {
+        List<Outcome> outcomes = new ArrayList<>(size);
+        JsonNode responses;
+        try {
+            responses = objectMapper.readTree(responseBody);
+        } catch (Exception e) {
+            responses = objectMapper.createArrayNode();
+        }
+        for (int i = 0; i < size; i++) {
+            JsonNode item = responses.path(i);
+            // A null entry means Facebook timed out on that request, which may still have been delivered
+            outcomes.add(item.isMissingNode() || item.isNull()
+                    ? Outcome.UNKNOWN
+                    : classify(item.path("code").asInt(), item.path("body").asText()));
+        }
+        return outcomes;
+    }
+
+    private Outcome classify(int statusCode, String body) {
+        if (statusCode >= 200 && statusCode < 300) {
+            return Outcome.SENT;
+        }
+        int errorCode = -1;
+        try {
+            errorCode = objectMapper.readTree(body).path("error").path("code").asInt(-1);
+        } catch (Exception ignored) {
+            // Not a Graph API error body
+        }
+        if (RATE_LIMIT_CODES.contains(errorCode) || statusCode == 429) {
+            return Outcome.RATE_LIMITED;
+        }
+        // A Graph API error body means the request was refused; a bare 5xx may come from a proxy after delivery
+        if (statusCode >= 500 && errorCode != -1) {
+            return Outcome.RETRY;
+        }
+        log.warn("Facebook Send API rejected message with status {}: {}", statusCode, body);
+        return Outcome.FAILED;
+    }
+
+    /**
+     * Read X-Business-Use-Case-Usage, X-Page-Usage and X-App-Usage and slow down as usage nears 100%
+     */
+    private void applyUsageHeaders(PageSender page, HttpHeaders headers) {
+        if (headers == null) {
+            return;
+        }
+        int usage = 0;
+        int appUsage = 0;
+        long regainMinutes = 0;
+        try {
+            String businessUsage = headers.getFirst("X-Business-Use-Case-Usage");
+            if (businessUsage != null) {
+                for (JsonNode entries : objectMapper.readTree(businessUsage)) {
+                    for (JsonNode entry : entries) {
+                        usage = Math.max(usage, maxUsage(entry));
+                        regainMinutes = Math.max(regainMinutes, entry.path("estimated_time_to_regain_access").asLong());
+                    }
+                }
+            }
+            String pageUsage = headers.getFirst("X-Page-Usage");
+            if (pageUsage != null) {
+                usage = Math.max(usage, maxUsage(objectMapper.readTree(pageUsage)));
+            }
+            String appUsageHeader = headers.getFirst("X-App-Usage");
+            if (appUsageHeader != null) {
+                appUsage = maxUsage(objectMapper.readTree(appUsageHeader));
+            }
+        } catch (Exception e) {
+            log.debug("Unreadable Facebook usage header: {}", e.getMessage());
+            return;
+        }
+
+        if (regainMinutes > 0) {
+            log.warn("Facebook throttled page sends, pausing for {} minutes", regainMinutes);
+            pause(page, TimeUnit.MINUTES.toNanos(regainMinutes));
+        } else {
+            pause(page, throttleNanos(usage));
+        }
+        long appDelay = throttleNanos(appUsage);
+        if (appDelay > 0) {
+            metricsService.increment("facebook.send.throttled.app");
+            long until = System.nanoTime() + appDelay;
+            appPausedUntilNanos.accumulateAndGet(until, Math::max);
+        }
+    }
+
+    /**
+     * Delay growing from zero at the throttle threshold to the maximum at 100% usage
+     */
+    private long throttleNanos(int usage) {
+        int threshold = sendConfig.getThrottleThreshold();
+        if (usage < threshold) {
+            return 0;
+        }
+        double pressure = Math.min(1.0, (usage - threshold) / (double) Math.max(1, 100 - threshold));
+        return (long) (sendConfig.getMaxThrottleDelay().toNanos() * pressure);
+    }
+
+    private static boolean isNotConnected(Exception e) {
+        Throwable cause = e instanceof ResourceAccessException ? e.getCause() : e;
+        return cause instanceof ConnectException || cause instanceof UnknownHostException
+                || cause instanceof NoRouteToHostException;
+    }
+
+    private static int maxUsage(JsonNode usage) {
+        return Math.max(usage.path("call_count").asInt(),
+                Math.max(usage.path("total_cputime").asInt(), usage.path("total_time").asInt()));
+    }
+
+    private void pause(PageSender page, long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        metricsService.increment("facebook.send.throttled");
+        page.pausedUntilNanos = Math.max(page.pausedUntilNanos, System.nanoTime() + nanos);
+    }
+
+    /**
+     * Exponential backoff with full jitter
+     */
+    private long backoffNanos(int attempt) {
+        long ceiling = sendConfig.getRetryBaseDelay().toNanos() << Math.min(attempt, 10);
+        return ThreadLocalRandom.current().nextLong(0, ceiling + 1);
+    }
+
+    private void complete(OutboundMessage message, Exception error) {
+        queued.decrementAndGet();
+        metricsService.recordLatency("facebook.send.end_to_end", System.nanoTime() - message.enqueuedNanos);
+        if (error == null) {
+            message.result.complete(null);
+        } else {
+            message.result.completeExceptionally(error);
+        }
+    }
+
+    private enum Outcome {
+        SENT,
+        RETRY,
+        RATE_LIMITED,
+        // Timed out or lost; Facebook may have delivered it
+        UNKNOWN,
+        FAILED
+    }
+
+    private static final class PageSender {
+        private final String accessToken;
+        private final BlockingQueue<OutboundMessage> queue = new LinkedBlockingQueue<>();
+        // Only touched by the sender thread
+        private final Deque<OutboundMessage> pending = new ArrayDeque<>();
+        private long pausedUntilNanos = System.nanoTime();
+
+        private PageSender(String accessToken) {
+            this.accessToken = accessToken;
+        }
+    }
+
+    private static final class OutboundMessage {
+        private final String recipientId;
+        private final String text;
+        private final long enqueuedNanos;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private int attempts;
+        private long notBeforeNanos;
+
+        private OutboundMessage(String recipientId, String text, long enqueuedNanos) {
+            this.recipientId = recipientId;
+            this.text = text;
+            this.enqueuedNanos = enqueuedNanos;
+            this.notBeforeNanos = enqueuedNanos;
+        }
+    }
+}
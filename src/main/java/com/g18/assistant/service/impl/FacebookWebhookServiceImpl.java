@@ -0,0 +1,195 @@
+package com.g18.assistant.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.g18.assistant.concurrent.KeyedSerialExecutor;
+import com.g18.assistant.config.FacebookWebhookConfig;
+import com.g18.assistant.dto.FacebookMessageDto;
+import com.g18.assistant.service.FacebookBotService;
+import com.g18.assistant.service.FacebookWebhookService;
+import com.g18.assistant.service.MetricsService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Two-stage webhook pipeline: a single parser keeps payloads in arrival order and drops
+ * redelivered message IDs, then each sender's messages run one after another on a virtual
+ * thread while different senders are processed in parallel. Payloads and parsed messages share
+ * one bound, so the endpoint answers 503 once too much work is waiting in either stage.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FacebookWebhookServiceImpl implements FacebookWebhookService {
+
+    private static final String MID_PREFIX = "facebook_mid:";
+
+    private final FacebookBotService facebookBotService;
+    private final FacebookWebhookConfig webhookConfig;
+    private final ObjectMapper objectMapper;
+    private final MetricsService metricsService;
+    private final RedisTemplate<String, String> redisTemplateString;
+
+    // Bounded by the pending count below rather than by the queue itself
+    private final BlockingQueue<RawPayload> payloads = new LinkedBlockingQueue<>();
+    private final KeyedSerialExecutor<String> senders = new KeyedSerialExecutor<>();
+    // Payloads waiting for the parser plus parsed messages not yet processed
+    private final AtomicInteger pending = new AtomicInteger();
+    private Semaphore workerPermits;
+    private Thread parser;
+
+    @PostConstruct
+    public void init() {
+        workerPermits = new Semaphore(webhookConfig.getWorkerConcurrency());
+        parser = Thread.ofVirtual().name("facebook-webhook-parser").start(this::parseLoop);
+        metricsService.registerGauge("facebook.webhook.queue.depth", pending::get);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        parser.interrupt();
+        senders.shutdown(Duration.ofSeconds(10));
+    }
+
+    @Override
+    public boolean enqueue(String requestBody) {
+        if (pending.incrementAndGet() > webhookConfig.getQueueCapacity()) {
+            pending.decrementAndGet();
+            metricsService.increment("facebook.webhook.rejected");
+            log.warn("Facebook webhook queue is full, rejecting payload");
+            return false;
+        }
+        payloads.add(new RawPayload(requestBody, System.nanoTime()));
+        metricsService.increment("facebook.webhook.received");
+        return true;
+    }
+
+    private void parseLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                RawPayload payload = payloads.take();
+                try {
+                    dispatch(payload);
+                } finally {
+                    // The payload's own slot; each message submitted holds one until it is processed
+                    pending.decrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("Error parsing Facebook webhook payload: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void dispatch(RawPayload payload) throws Exception {
+        FacebookMessageDto messageDto = objectMapper.readValue(payload.body, FacebookMessageDto.class);
+
+        if (messageDto.getObject() == null || !messageDto.getObject().equals("page")) {
+            log.warn("Received non-page event: {}", messageDto.getObject());
+            return;
+        }
+
+        if (messageDto.getEntries() == null || messageDto.getEntries().isEmpty()) {
+            log.warn("No entries in the webhook event");
+            return;
+        }
+
+        for (FacebookMessageDto.Entry entry : messageDto.getEntries()) {
+            if (entry.getMessaging() == null) {
+                continue;
+            }
+            for (FacebookMessageDto.Messaging messaging : entry.getMessaging()) {
+                if (messaging.getMessage() == null || messaging.getMessage().getText() == null) {
+                    continue;
+                }
+                if (messaging.getRecipient() == null || messaging.getRecipient().getId() == null
+                        || messaging.getSender() == null || messaging.getSender().getId() == null) {
+                    log.warn("Skipping Facebook message without sender or recipient");
+                    continue;
+                }
+                String mid = messaging.getMessage().getMid();
+                if (isDuplicate(mid)) {
+                    metricsService.increment("facebook.webhook.duplicate");
+                    continue;
+                }
+                submit(new MessageEvent(messaging.getRecipient().getId(), messaging.getSender().getId(),
+                        messaging.getMessage().getText(), payload.receivedNanos));
+            }
+        }
+    }
+
+    /**
+     * Facebook redelivers when it misses our answer, possibly to another node, so seen message
+     * IDs are recorded in Redis. If Redis is unreachable the message is processed anyway.
+     */
+    private boolean isDuplicate(String mid) {
+        if (mid == null) {
+            return false;
+        }
+        try {
+            Boolean first = redisTemplateString.opsForValue()
+                    .setIfAbsent(MID_PREFIX + mid, "1", webhookConfig.getDedupTtl());
+            return Boolean.FALSE.equals(first);
+        } catch (Exception e) {
+            log.warn("Error checking Facebook message ID {}: {}", mid, e.getMessage());
+            return false;
+        }
+    }
+
+    private void submit(MessageEvent event) {
+        pending.incrementAndGet();
+        try {
+            senders.execute(event.pageId + ":" + event.senderId, () -> process(event));
+        } catch (RejectedExecutionException e) {
+            // Shutting down; the payload was already answered, so the message is lost like a failed one
+            pending.decrementAndGet();
+            metricsService.increment("facebook.webhook.failed");
+            log.warn("Dropped Facebook message from {} during shutdown", event.senderId);
+        }
+    }
+
+    /**
+     * The webhook was answered 200 when the payload was queued, so Facebook never redelivers it:
+     * a message that fails here is logged, counted and dropped
+     */
+    private void process(MessageEvent event) {
+        try {
+            workerPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.decrementAndGet();
+            metricsService.increment("facebook.webhook.failed");
+            return;
+        }
+        try {
+            metricsService.recordLatency("facebook.webhook.queue.lag", System.nanoTime() - event.receivedNanos);
+            facebookBotService.processMessage(event.pageId, event.senderId, event.text);
+            metricsService.increment("facebook.webhook.processed");
+        } catch (Exception e) {
+            metricsService.increment("facebook.webhook.failed");
+            log.error("Error processing Facebook message from {}, dropping it: {}", event.senderId, e.getMessage(), e);
+        } finally {
+            workerPermits.release();
+            // Counted until here, so messages waiting for a permit stay within queue-capacity
+            pending.decrementAndGet();
+            metricsService.recordLatency("facebook.webhook.end_to_end", System.nanoTime() - event.receivedNanos);
+        }
+    }
+
+    private record RawPayload(String body, long receivedNanos) {
+    }
+
+    private record MessageEvent(String pageId, String senderId, String text, long receivedNanos) {
+    }
+}
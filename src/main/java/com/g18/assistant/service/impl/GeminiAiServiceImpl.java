@@ -5,11 +5,14 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.g18.assistant.config.GeminiClientConfig;
 import com.g18.assistant.dto.request.ImageGenerationRequest;
 import com.g18.assistant.dto.request.ProductRequest;
 import com.g18.assistant.dto.response.ImageGenerationResponse;
 import com.g18.assistant.dto.response.ProductResponse;
 import com.g18.assistant.service.GeminiAiService;
+import com.g18.assistant.service.GeminiClient;
+import com.g18.assistant.service.ProductImageService;
 import com.g18.assistant.service.ProductService;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
@@ -26,10 +29,11 @@ import org.springframework.web.client.RestTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.util.Base64;
 import java.util.UUID;
@@ -41,6 +45,9 @@ public class GeminiAiServiceImpl implements GeminiAiService {
 
     private final ProductService productService;
     private final RestTemplate restTemplate;
+    private final GeminiClient geminiClient;
+    private final GeminiClientConfig geminiClientConfig;
+    private final ProductImageService productImageService;
     private final ObjectMapper objectMapper;
 
     @Value("${app.gemini.api-key}")
@@ -64,16 +71,15 @@ public class GeminiAiServiceImpl implements GeminiAiService {
             log.info("Processing image generation request for product ID: {}, prompt: {}", 
                     product.getId(), request.getPrompt());
             
-            // Check if product has image
-            if (product.getImageBase64() == null || product.getImageBase64().isEmpty()) {
-                throw new IllegalStateException("Product has no image to modify");
-            }
-            
-            // Save the base64 image to a temporary file
-            byte[] imageData = Base64.getDecoder().decode(product.getImageBase64());
+            // Copy the stored image to a temporary file for upload
             File tempImageFile = File.createTempFile("product_image_", ".png");
-            try (FileOutputStream fos = new FileOutputStream(tempImageFile)) {
-                fos.write(imageData);
+            try (InputStream imageStream = productImageService.openImage(product.getImageHash(), product.getImageBase64())) {
+                // Check if product has image
+                if (imageStream == null) {
+                    Files.deleteIfExists(tempImageFile.toPath());
+                    throw new IllegalStateException("Product has no image to modify");
+                }
+                Files.copy(imageStream, tempImageFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
             }
             log.info("Saved product image to temporary file: {}", tempImageFile.getAbsolutePath());
             
@@ -84,41 +90,30 @@ public class GeminiAiServiceImpl implements GeminiAiService {
             // 2. Create the image generation request
             // Using the stream generation API for better compatibility with the Python example
             String modelId = request.getModelId() != null ? request.getModelId() : defaultModelId;
-            String apiEndpoint = String.format("%s/%s:streamGenerateContent?key=%s", 
-                    geminiApiBaseUrl, modelId, geminiApiKey);
             
             // 3. Create the request body in the format the API expects
             ObjectNode requestBody = createRequestBodyForStreamGeneration(fileUri, request.getPrompt());
             
-            // 4. Make the API request
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            
-            HttpEntity<String> entity = new HttpEntity<>(objectMapper.writeValueAsString(requestBody), headers);
-            log.info("Sending request to Gemini API at: {}", apiEndpoint);
-            
-            ResponseEntity<String> response = restTemplate.exchange(
-                apiEndpoint,
-                HttpMethod.POST,
-                entity,
-                String.class
-            );
+            // 4. Make the API request through the shared Gemini client (image generation gets the long deadline)
+            log.info("Sending image generation request to Gemini model: {}", modelId);
+            String responseBody = geminiClient.postAsync(geminiApiKey, modelId, "streamGenerateContent",
+                    objectMapper.writeValueAsString(requestBody), geminiClientConfig.getLongRequestTimeout()).join();
             
-            log.debug("Received response from Gemini API: {}", response.getBody());
+            log.debug("Received response from Gemini API: {}", responseBody);
             
             // 5. Process the response and extract the image
-            byte[] generatedImageBytes = processStreamingResponse(response.getBody());
+            byte[] generatedImageBytes = processStreamingResponse(responseBody);
             
             if (generatedImageBytes == null) {
                 // Fallback to regular extraction if streaming processing failed
-                generatedImageBytes = extractImageFromResponse(response.getBody());
+                generatedImageBytes = extractImageFromResponse(responseBody);
             }
             
             if (generatedImageBytes == null) {
                 log.error("No image data found in the Gemini API response");
                 return ImageGenerationResponse.builder()
                         .productId(request.getProductId())
-                        .originalImageUrl("/api/products/" + product.getId() + "/image")
+                        .originalImageUrl(ProductResponse.imageUrl(productImageService.imagePathPrefix(), product.getId()))
                         .prompt(request.getPrompt())
                         .generatedAt(LocalDateTime.now())
                         .status("ERROR")
@@ -147,7 +142,7 @@ public class GeminiAiServiceImpl implements GeminiAiService {
                 log.error("Failed to update product with generated image: {}", e.getMessage(), e);
                 return ImageGenerationResponse.builder()
                         .productId(request.getProductId())
-                        .originalImageUrl("/api/products/" + product.getId() + "/image")
+                        .originalImageUrl(ProductResponse.imageUrl(productImageService.imagePathPrefix(), product.getId()))
                         .generatedImageUrl(null)
                         .prompt(request.getPrompt())
                         .generatedAt(LocalDateTime.now())
@@ -159,8 +154,8 @@ public class GeminiAiServiceImpl implements GeminiAiService {
             // 8. Return successful response
             return ImageGenerationResponse.builder()
                     .productId(request.getProductId())
-                    .originalImageUrl("/api/products/" + product.getId() + "/image")
-                    .generatedImageUrl("/api/products/" + product.getId() + "/image?t=" + System.currentTimeMillis())
+                    .originalImageUrl(ProductResponse.imageUrl(productImageService.imagePathPrefix(), product.getId()))
+                    .generatedImageUrl(ProductResponse.imageUrl(productImageService.imagePathPrefix(), product.getId()) + "?t=" + System.currentTimeMillis())
                     .prompt(request.getPrompt())
                     .generatedAt(LocalDateTime.now())
                     .status("SUCCESS")
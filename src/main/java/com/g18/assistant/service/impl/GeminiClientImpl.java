@@ -0,0 +1,343 @@
+package com.g18.assistant.service.impl;
+
+import com.g18.assistant.config.GeminiClientConfig;
+import com.g18.assistant.exception.GeminiApiException;
+import com.g18.assistant.gemini.GeminiCodec;
+import com.g18.assistant.service.GeminiClient;
+import com.g18.assistant.service.MetricsService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class GeminiClientImpl implements GeminiClient {
+
+    private final GeminiClientConfig clientConfig;
+    private final MetricsService metricsService;
+    private final GeminiCodec geminiCodec;
+
+    @Value("${app.gemini.api-key}")
+    private String geminiApiKey;
+
+    @Value("${app.gemini.api-url}")
+    private String geminiApiUrl;
+
+    // Calls block on virtual threads, so slow responses never hold a servlet or polling thread
+    private final ExecutorService callExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, Semaphore> permitsByKey = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // Closes stalled response streams at their deadline
+    private final ScheduledExecutorService deadlineTimer = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("gemini-deadline").daemon().factory());
+
+    private HttpClient httpClient;
+    // cachedContents is a sibling collection of models under the same API version
+    private String resourceBaseUrl;
+
+    @PostConstruct
+    public void init() {
+        resourceBaseUrl = geminiApiUrl.endsWith("/models")
+                ? geminiApiUrl.substring(0, geminiApiUrl.length() - "/models".length())
+                : geminiApiUrl;
+        // A single HttpClient keeps a pool of HTTP/2 connections that all calls multiplex over
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(clientConfig.getConnectTimeout())
+                .executor(callExecutor)
+                .build();
+        metricsService.registerGauge("gemini.http.inflight", inFlight::get);
+        log.info("Initialized Gemini HTTP client (max {} concurrent calls per key)", clientConfig.getMaxConcurrentPerKey());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        httpClient.close();
+        callExecutor.shutdown();
+        deadlineTimer.shutdownNow();
+    }
+
+    @Override
+    public CompletableFuture<String> generateContentAsync(String modelId, String requestBody) {
+        return postAsync(geminiApiKey, modelId, "generateContent", requestBody, clientConfig.getRequestTimeout());
+    }
+
+    @Override
+    public String generateContent(String modelId, String requestBody) {
+        try {
+            return generateContentAsync(modelId, requestBody).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new GeminiApiException("Gemini call failed", e.getCause());
+        }
+    }
+
+    @Override
+    public byte[] generateContent(String modelId, byte[] requestBody) {
+        CompletableFuture<byte[]> call = CompletableFuture.supplyAsync(() -> withPermit(geminiApiKey, "generateContent", () -> {
+            HttpResponse<byte[]> response = sendWithin(
+                    buildRequest(geminiApiKey, modelId, "generateContent", null,
+                            HttpRequest.BodyPublishers.ofByteArray(requestBody), clientConfig.getRequestTimeout()),
+                    HttpResponse.BodyHandlers.ofByteArray(), clientConfig.getRequestTimeout());
+
+            if (response.statusCode() / 100 != 2) {
+                throw statusError("generateContent", response.statusCode(), new String(response.body(), StandardCharsets.UTF_8));
+            }
+            return response.body();
+        }), callExecutor);
+        try {
+            return call.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new GeminiApiException("Gemini call failed", e.getCause());
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> streamGenerateContentAsync(String modelId, String requestBody, Consumer<String> onChunk) {
+        return streamGenerateContentAsync(modelId, requestBody.getBytes(StandardCharsets.UTF_8), onChunk);
+    }
+
+    @Override
+    public CompletableFuture<String> streamGenerateContentAsync(String modelId, byte[] requestBody, Consumer<String> onChunk) {
+        Duration timeout = clientConfig.getRequestTimeout();
+        return withDeadline(CompletableFuture.supplyAsync(() -> withPermit(geminiApiKey, "streamGenerateContent", () -> {
+            long deadline = System.nanoTime() + timeout.toNanos();
+            HttpResponse<InputStream> response = httpClient.send(
+                    buildRequest(geminiApiKey, modelId, "streamGenerateContent", "alt=sse",
+                            HttpRequest.BodyPublishers.ofByteArray(requestBody), timeout),
+                    HttpResponse.BodyHandlers.ofInputStream());
+
+            // The request timeout only covers the response headers. Closing the body from a timer also
+            // ends a read that is blocked on a stalled stream, so the permit is always released.
+            InputStream body = response.body();
+            AtomicBoolean expired = new AtomicBoolean();
+            ScheduledFuture<?> expiry = deadlineTimer.schedule(() -> {
+                expired.set(true);
+                closeQuietly(body);
+            }, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+                if (response.statusCode() / 100 != 2) {
+                    throw statusError("streamGenerateContent", response.statusCode(), reader.lines().collect(Collectors.joining("\n")));
+                }
+
+                StringBuilder text = new StringBuilder();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.startsWith("data:")) {
+                        continue;
+                    }
+                    geminiCodec.forEachPartText(line.substring(5).trim(), chunk -> {
+                        if (!chunk.isEmpty()) {
+                            text.append(chunk);
+                            onChunk.accept(chunk);
+                        }
+                    });
+                }
+                // A closed body can also look like a normal end of stream
+                if (expired.get()) {
+                    throw new HttpTimeoutException("stream deadline exceeded");
+                }
+                return text.toString();
+            } catch (IOException | UncheckedIOException e) {
+                if (expired.get()) {
+                    throw new HttpTimeoutException("stream deadline exceeded");
+                }
+                throw e;
+            } finally {
+                expiry.cancel(false);
+            }
+        }), callExecutor), "streamGenerateContent", timeout);
+    }
+
+    @Override
+    public CompletableFuture<String> postAsync(String apiKey, String modelId, String method, String requestBody, Duration timeout) {
+        return withDeadline(CompletableFuture.supplyAsync(() -> withPermit(apiKey, method, () -> {
+            HttpResponse<String> response = sendWithin(
+                    buildRequest(apiKey, modelId, method, null,
+                            HttpRequest.BodyPublishers.ofString(requestBody, StandardCharsets.UTF_8), timeout),
+                    HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8), timeout);
+
+            if (response.statusCode() / 100 != 2) {
+                throw statusError(method, response.statusCode(), response.body());
+            }
+            return response.body();
+        }), callExecutor), method, timeout);
+    }
+
+    @Override
+    public CompletableFuture<String> createCachedContentAsync(String requestBody) {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(resourceBaseUrl + "/cachedContents?key=" + geminiApiKey))
+                .timeout(clientConfig.getRequestTimeout())
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(requestBody, StandardCharsets.UTF_8))
+                .build();
+        return sendResourceAsync("cachedContents.create", request);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteCachedContentAsync(String name) {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(resourceBaseUrl + "/" + name + "?key=" + geminiApiKey))
+                .timeout(clientConfig.getRequestTimeout())
+                .DELETE()
+                .build();
+        return sendResourceAsync("cachedContents.delete", request).thenApply(body -> null);
+    }
+
+    private CompletableFuture<String> sendResourceAsync(String method, HttpRequest request) {
+        return CompletableFuture.supplyAsync(() -> withPermit(geminiApiKey, method, () -> {
+            HttpResponse<String> response = sendWithin(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8),
+                    clientConfig.getRequestTimeout());
+            if (response.statusCode() / 100 != 2) {
+                throw statusError(method, response.statusCode(), response.body());
+            }
+            return response.body();
+        }), callExecutor);
+    }
+
+    /**
+     * Send and read the whole response within the timeout. HttpRequest.timeout only covers the response
+     * headers, so a body that stalls would otherwise block the caller and its permit forever.
+     */
+    private <T> HttpResponse<T> sendWithin(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler, Duration timeout)
+            throws IOException, InterruptedException {
+        CompletableFuture<HttpResponse<T>> exchange = httpClient.sendAsync(request, bodyHandler);
+        try {
+            return exchange.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // Cancelling aborts the exchange, including the body read
+            exchange.cancel(true);
+            throw new HttpTimeoutException("response not received within " + timeout);
+        } catch (InterruptedException e) {
+            exchange.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Fail the call with a GeminiApiException once the timeout plus the wait for a permit has passed,
+     * whatever the call is blocked on
+     */
+    private <T> CompletableFuture<T> withDeadline(CompletableFuture<T> call, String method, Duration timeout) {
+        return call.orTimeout(timeout.plus(clientConfig.getAcquireTimeout()).toMillis(), TimeUnit.MILLISECONDS)
+                .exceptionallyCompose(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof TimeoutException) {
+                        metricsService.increment("gemini.http.timeouts");
+                        return CompletableFuture.failedFuture(new GeminiApiException("Gemini " + method + " call timed out", cause));
+                    }
+                    return CompletableFuture.failedFuture(e);
+                });
+    }
+
+    private static void closeQuietly(InputStream body) {
+        try {
+            body.close();
+        } catch (IOException e) {
+            // Only called to abort a stalled read
+        }
+    }
+
+    private HttpRequest buildRequest(String apiKey, String modelId, String method, String query,
+                                     HttpRequest.BodyPublisher requestBody, Duration timeout) {
+        String url = String.format("%s/%s:%s?%skey=%s", geminiApiUrl, modelId, method, query != null ? query + "&" : "", apiKey);
+        return HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .timeout(timeout)
+                .header("Content-Type", "application/json")
+                .POST(requestBody)
+                .build();
+    }
+
+    private GeminiApiException statusError(String method, int statusCode, String body) {
+        log.error("Gemini API {} returned status {}: {}", method, statusCode, body);
+        return new GeminiApiException(statusCode, "Gemini API returned status " + statusCode);
+    }
+
+    /**
+     * Run a call while holding one of the API key's concurrency permits, recording latency and failures
+     */
+    private <T> T withPermit(String apiKey, String method, GeminiCall<T> call) {
+        Semaphore permits = permitsByKey.computeIfAbsent(apiKey, k -> new Semaphore(clientConfig.getMaxConcurrentPerKey()));
+        try {
+            if (!permits.tryAcquire(clientConfig.getAcquireTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                metricsService.increment("gemini.http.rejected");
+                throw new GeminiApiException(429, "Too many concurrent Gemini calls for this API key");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GeminiApiException("Interrupted while waiting for a Gemini call slot", e);
+        }
+
+        inFlight.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            return call.execute();
+        } catch (GeminiApiException e) {
+            metricsService.increment("gemini.http.errors");
+            throw e;
+        } catch (HttpTimeoutException e) {
+            metricsService.increment("gemini.http.timeouts");
+            throw new GeminiApiException("Gemini " + method + " call timed out", e);
+        } catch (IOException e) {
+            metricsService.increment("gemini.http.errors");
+            throw new GeminiApiException("Gemini call failed: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GeminiApiException("Interrupted during Gemini call", e);
+        } finally {
+            inFlight.decrementAndGet();
+            permits.release();
+            metricsService.recordLatency("gemini.http." + method, System.nanoTime() - start);
+        }
+    }
+
+    @FunctionalInterface
+    private interface GeminiCall<T> {
+        T execute() throws IOException, InterruptedException;
+    }
+}
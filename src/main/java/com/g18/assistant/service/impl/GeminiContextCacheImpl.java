@@ -0,0 +1,174 @@
+package com.g18.assistant.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.g18.assistant.config.GeminiContextCacheConfig;
+import com.g18.assistant.service.GeminiClient;
+import com.g18.assistant.service.GeminiContextCache;
+import com.g18.assistant.service.MetricsService;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cached contents are keyed by a fingerprint of the model and the prompt prefix, so any change to
+ * the shop or its catalog produces a new cache without explicit invalidation. Creation runs in the
+ * background; until it completes the prefix is sent inline.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class GeminiContextCacheImpl implements GeminiContextCache {
+
+    // A cached content is not handed out when it would expire during the call that uses it
+    private static final long USE_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    // Other callers go inline for at most this long while a cache is being created
+    private static final long CREATE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final GeminiClient geminiClient;
+    private final GeminiContextCacheConfig cacheConfig;
+    private final ObjectMapper objectMapper;
+    private final MetricsService metricsService;
+
+    private final Map<String, CacheEntry> entries = new ConcurrentHashMap<>();
+
+    @PreDestroy
+    public void shutdown() {
+        // Best effort: stop paying for storage of caches nobody will reference any more
+        CompletableFuture<?>[] deletions = entries.values().stream()
+                .filter(entry -> entry.name != null)
+                .map(entry -> geminiClient.deleteCachedContentAsync(entry.name))
+                .toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.allOf(deletions).get(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.warn("Not all Gemini cached contents were deleted on shutdown: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public String resolve(String scope, String modelId, String context) {
+        if (!cacheConfig.isEnabled() || context.length() < cacheConfig.getMinContextChars()) {
+            return null;
+        }
+
+        String fingerprint = fingerprint(modelId, context);
+        long now = System.currentTimeMillis();
+        long refreshMargin = cacheConfig.getRefreshMargin().toMillis();
+        boolean[] claimed = new boolean[1];
+        String[] superseded = new String[1];
+        CacheEntry entry = entries.compute(scope, (key, current) -> {
+            boolean sameContext = current != null && current.fingerprint.equals(fingerprint);
+            if (sameContext && (current.retryAfter > now || !current.needsRefresh(now, refreshMargin))) {
+                return current;
+            }
+            claimed[0] = true;
+            if (!sameContext && current != null) {
+                superseded[0] = current.name;
+            }
+            // While refreshing, keep handing out the current cache until it really expires
+            return sameContext
+                    ? new CacheEntry(fingerprint, current.name, current.expiresAt, now + CREATE_TIMEOUT_MILLIS)
+                    : new CacheEntry(fingerprint, null, 0, now + CREATE_TIMEOUT_MILLIS);
+        });
+
+        if (superseded[0] != null) {
+            // Calls still holding the old name fail once and are retried inline by the caller
+            geminiClient.deleteCachedContentAsync(superseded[0]);
+        }
+        if (claimed[0]) {
+            create(scope, modelId, context, entry);
+        }
+        if (entry.isUsable(now)) {
+            metricsService.increment("gemini.context_cache.hit");
+            return entry.name;
+        }
+        metricsService.increment("gemini.context_cache.miss");
+        return null;
+    }
+
+    @Override
+    public void invalidate(String scope, String name) {
+        entries.computeIfPresent(scope, (key, current) -> name.equals(current.name) ? null : current);
+        metricsService.increment("gemini.context_cache.invalidated");
+    }
+
+    private void create(String scope, String modelId, String context, CacheEntry claim) {
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("model", "models/" + modelId);
+        body.put("displayName", scope);
+        body.put("ttl", cacheConfig.getTtl().toSeconds() + "s");
+        ObjectNode content = body.putArray("contents").addObject();
+        content.put("role", "user");
+        content.putArray("parts").addObject().put("text", context);
+
+        long requestedAt = System.currentTimeMillis();
+        geminiClient.createCachedContentAsync(body.toString()).whenComplete((response, error) -> {
+            String name = error == null ? parseName(response) : null;
+            if (name == null) {
+                metricsService.increment("gemini.context_cache.create_failed");
+                log.warn("Could not create Gemini cached content for {}, sending it inline for {}: {}",
+                        scope, cacheConfig.getFailureBackoff(), error != null ? error.getMessage() : "no name in response");
+                long retryAfter = System.currentTimeMillis() + cacheConfig.getFailureBackoff().toMillis();
+                entries.replace(scope, claim, new CacheEntry(claim.fingerprint, claim.name, claim.expiresAt, retryAfter));
+                return;
+            }
+
+            // Expiry counted from before the request, so it is never later than Gemini's own
+            long expiresAt = requestedAt + cacheConfig.getTtl().toMillis();
+            metricsService.increment("gemini.context_cache.created");
+            log.info("Created Gemini cached content {} for {} ({} chars)", name, scope, context.length());
+            if (!entries.replace(scope, claim, new CacheEntry(claim.fingerprint, name, expiresAt, 0))) {
+                // The context changed again while this one was being created
+                geminiClient.deleteCachedContentAsync(name);
+            }
+        });
+    }
+
+    private String parseName(String response) {
+        try {
+            String name = objectMapper.readTree(response).path("name").asText(null);
+            return name != null && !name.isEmpty() ? name : null;
+        } catch (Exception e) {
+            log.warn("Unreadable Gemini cached content response: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static String fingerprint(String modelId, String context) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(modelId.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(context.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * @param name The cached content, or null while none has been created for this fingerprint
+     * @param retryAfter Until then no new creation is attempted (one is running or the last one failed)
+     */
+    private record CacheEntry(String fingerprint, String name, long expiresAt, long retryAfter) {
+
+        boolean isUsable(long now) {
+            return name != null && expiresAt - now > USE_MARGIN_MILLIS;
+        }
+
+        boolean needsRefresh(long now, long refreshMargin) {
+            return name == null || expiresAt - now <= refreshMargin;
+        }
+    }
+}
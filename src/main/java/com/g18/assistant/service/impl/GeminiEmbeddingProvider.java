@@ -0,0 +1,109 @@
+package com.g18.assistant.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.g18.assistant.config.SemanticSearchConfig;
+import com.g18.assistant.exception.GeminiApiException;
+import com.g18.assistant.service.EmbeddingProvider;
+import com.g18.assistant.service.GeminiClient;
+import com.g18.assistant.service.MetricsService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Embeddings from the Gemini batchEmbedContents API, with document and query task types
+ */
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "app.ai.semantic-search", name = "embedding-provider", havingValue = "gemini", matchIfMissing = true)
+public class GeminiEmbeddingProvider implements EmbeddingProvider {
+
+    private final GeminiClient geminiClient;
+    private final ObjectMapper objectMapper;
+    private final SemanticSearchConfig searchConfig;
+    private final MetricsService metricsService;
+
+    @Value("${app.gemini.api-key}")
+    private String geminiApiKey;
+
+    @Override
+    public String id() {
+        return "gemini:" + searchConfig.getModel() + ":" + searchConfig.getDimensions();
+    }
+
+    @Override
+    public int dimensions() {
+        return searchConfig.getDimensions();
+    }
+
+    @Override
+    public List<float[]> embedDocuments(List<String> texts) {
+        List<float[]> vectors = new ArrayList<>(texts.size());
+        int batchSize = searchConfig.getEmbedBatchSize();
+        for (int from = 0; from < texts.size(); from += batchSize) {
+            vectors.addAll(embed(texts.subList(from, Math.min(texts.size(), from + batchSize)), "RETRIEVAL_DOCUMENT"));
+        }
+        return vectors;
+    }
+
+    @Override
+    public float[] embedQuery(String text) {
+        return embed(List.of(text), "RETRIEVAL_QUERY").get(0);
+    }
+
+    private List<float[]> embed(List<String> texts, String taskType) {
+        ObjectNode body = objectMapper.createObjectNode();
+        ArrayNode requests = body.putArray("requests");
+        for (String text : texts) {
+            ObjectNode request = requests.addObject();
+            request.put("model", "models/" + searchConfig.getModel());
+            request.putObject("content").putArray("parts").addObject().put("text", text);
+            request.put("taskType", taskType);
+            request.put("outputDimensionality", searchConfig.getDimensions());
+        }
+
+        String response;
+        try {
+            response = geminiClient.postAsync(geminiApiKey, searchConfig.getModel(), "batchEmbedContents",
+                    body.toString(), searchConfig.getEmbedTimeout()).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new GeminiApiException("Gemini embedding call failed", e.getCause());
+        }
+        metricsService.increment("embedding.gemini.texts", texts.size());
+
+        // Malformed responses are reported like a bad gateway
+        try {
+            JsonNode embeddings = objectMapper.readTree(response).path("embeddings");
+            if (embeddings.size() != texts.size()) {
+                throw new GeminiApiException(502, "Gemini returned " + embeddings.size() + " embeddings for " + texts.size() + " texts");
+            }
+            List<float[]> vectors = new ArrayList<>(texts.size());
+            for (JsonNode embedding : embeddings) {
+                JsonNode values = embedding.path("values");
+                if (values.size() != searchConfig.getDimensions()) {
+                    throw new GeminiApiException(502, "Gemini returned a " + values.size() + "-dimensional embedding");
+                }
+                float[] vector = new float[values.size()];
+                for (int i = 0; i < vector.length; i++) {
+                    vector[i] = (float) values.get(i).asDouble();
+                }
+                vectors.add(vector);
+            }
+            return vectors;
+        } catch (IOException e) {
+            throw new GeminiApiException("Unreadable Gemini embedding response", e);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.g18.assistant.service.impl;
+
+import com.g18.assistant.config.ConversationHistoryConfig;
+import com.g18.assistant.service.ConversationHistoryService.ConversationEntry;
+import com.g18.assistant.service.ConversationHistoryStore;
+import com.g18.assistant.service.MetricsService;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-node history store: one lock-free-read ring buffer per conversation, a global cap on
+ * retained message bytes and a periodic sweep of idle conversations
+ */
+@Service
+@ConditionalOnProperty(prefix = "app.conversation-history", name = "store", havingValue = "memory", matchIfMissing = true)
+@RequiredArgsConstructor
+@Slf4j
+public class InMemoryConversationHistoryStore implements ConversationHistoryStore {
+
+    // Rough per-entry overhead on top of the message characters
+    private static final long ENTRY_OVERHEAD_BYTES = 96;
+
+    private final ConversationHistoryConfig historyConfig;
+    private final MetricsService metricsService;
+
+    private final Map<String, Conversation> conversations = new ConcurrentHashMap<>();
+    private final AtomicLong retainedBytes = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        metricsService.registerGauge("history.memory.conversations", conversations::size);
+        metricsService.registerGauge("history.memory.bytes", retainedBytes::get);
+    }
+
+    @Override
+    public void append(String key, ConversationEntry entry) {
+        long now = System.currentTimeMillis();
+        long sessionTimeoutMillis = historyConfig.getSessionTimeout().toMillis();
+        while (true) {
+            Conversation conversation = conversations.computeIfAbsent(key, k -> new Conversation(historyConfig.getMaxEntries()));
+            long delta = conversation.append(entry, now, sessionTimeoutMillis);
+            // A sweep or eviction retired the conversation before we got to it, retry on a fresh one
+            if (delta != Conversation.RETIRED) {
+                retainedBytes.addAndGet(delta);
+                break;
+            }
+            conversations.remove(key, conversation);
+        }
+
+        if (retainedBytes.get() > historyConfig.getMemoryCap().toBytes()) {
+            evictLeastRecentlyUsed();
+        }
+    }
+
+    @Override
+    public List<ConversationEntry> getRecent(String key, int limit, long notBeforeMillis) {
+        Conversation conversation = conversations.get(key);
+        if (conversation == null) {
+            return List.of();
+        }
+        return conversation.recent(limit, notBeforeMillis);
+    }
+
+    @Override
+    public void clear(String key) {
+        Conversation conversation = conversations.remove(key);
+        if (conversation != null) {
+            retainedBytes.addAndGet(-conversation.retire());
+        }
+    }
+
+    /**
+     * Drop conversations that have been idle longer than the session timeout
+     */
+    @Scheduled(fixedDelay = 60000) // Run every minute
+    public void sweepIdleConversations() {
+        long cutoff = System.currentTimeMillis() - historyConfig.getSessionTimeout().toMillis();
+        int removed = 0;
+        for (Map.Entry<String, Conversation> entry : conversations.entrySet()) {
+            Conversation conversation = entry.getValue();
+            if (conversation.lastActivityMillis() <= cutoff && conversations.remove(entry.getKey(), conversation)) {
+                retainedBytes.addAndGet(-conversation.retire());
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            metricsService.increment("history.memory.swept", removed);
+            log.debug("Swept {} idle conversations", removed);
+        }
+    }
+
+    /**
+     * Evict the least recently active conversations until retained bytes are 10% below the cap
+     */
+    private synchronized void evictLeastRecentlyUsed() {
+        long target = historyConfig.getMemoryCap().toBytes() * 9 / 10;
+        if (retainedBytes.get() <= target) {
+            return;
+        }
+
+        List<Map.Entry<String, Conversation>> byActivity = new ArrayList<>(conversations.entrySet());
+        byActivity.sort(Comparator.comparingLong(e -> e.getValue().lastActivityMillis()));
+
+        int evicted = 0;
+        for (Map.Entry<String, Conversation> entry : byActivity) {
+            if (retainedBytes.get() <= target) {
+                break;
+            }
+            if (conversations.remove(entry.getKey(), entry.getValue())) {
+                retainedBytes.addAndGet(-entry.getValue().retire());
+                evicted++;
+            }
+        }
+        metricsService.increment("history.memory.evicted", evicted);
+        log.warn("Conversation history reached its memory cap, evicted {} conversations", evicted);
+    }
+
+    private static long sizeOf(ConversationEntry entry) {
+        return ENTRY_OVERHEAD_BYTES + 2L * (entry.message != null ? entry.message.length() : 0);
+    }
+
+    /**
+     * Array-backed ring buffer with parallel primitive timestamps. Appends are serialized by a
+     * writer flag and published through the volatile {@code end} sequence, so readers never lock.
+     * Slots are sized at twice the retained window, which leaves a full window of appends before
+     * a reader's snapshot can be overwritten.
+     */
+    private static final class Conversation {
+        private static final long RETIRED = Long.MIN_VALUE;
+
+        private final int maxEntries;
+        private final int capacity;
+        private final ConversationEntry[] entries;
+        private final long[] timestamps;
+        private final AtomicBoolean writing = new AtomicBoolean();
+
+        private volatile long first; // sequence of the oldest retained entry
+        private volatile long end; // sequence of the next entry to write
+        private volatile long bytes;
+        private volatile long lastActivityMillis = System.currentTimeMillis();
+        private boolean retired; // guarded by the writer flag
+
+        private Conversation(int maxEntries) {
+            this.maxEntries = Math.max(1, maxEntries);
+            this.capacity = this.maxEntries * 2;
+            this.entries = new ConversationEntry[capacity];
+            this.timestamps = new long[capacity];
+        }
+
+        /**
+         * @return Change in retained bytes, or {@link #RETIRED} if the conversation was already dropped
+         */
+        private long append(ConversationEntry entry, long now, long sessionTimeoutMillis) {
+            lockWriter();
+            try {
+                if (retired) {
+                    return RETIRED;
+                }
+                long before = bytes;
+                long retainedBytes = before;
+                long start = first;
+                long next = end;
+
+                // If the previous session timed out, start over in O(1) by moving the window start
+                if (next > start && now - timestamps[slot(next - 1)] >= sessionTimeoutMillis) {
+                    start = next;
+                    retainedBytes = 0;
+                } else if (next - start == maxEntries) {
+                    retainedBytes -= sizeOf(entries[slot(start)]);
+                    start++;
+                }
+
+                int slot = slot(next);
+                entries[slot] = entry;
+                timestamps[slot] = now;
+                retainedBytes += sizeOf(entry);
+
+                first = start;
+                bytes = retainedBytes;
+                lastActivityMillis = now;
+                end = next + 1;
+                return retainedBytes - before;
+            } finally {
+                writing.set(false);
+            }
+        }
+
+        /**
+         * Mark the conversation as dropped so late appends go to a fresh one
+         *
+         * @return Bytes retained at the time it was retired
+         */
+        private long retire() {
+            lockWriter();
+            try {
+                retired = true;
+                return bytes;
+            } finally {
+                writing.set(false);
+            }
+        }
+
+        private List<ConversationEntry> recent(int limit, long notBeforeMillis) {
+            long e = end;
+            long from = Math.max(first, e - Math.min(limit, maxEntries));
+            // Timestamps are appended in order, so expired entries form a prefix
+            while (from < e && timestamps[slot(from)] < notBeforeMillis) {
+                from++;
+            }
+            if (from >= e || e - from > maxEntries) {
+                return List.of();
+            }
+            return new SnapshotView(this, from, (int) (e - from));
+        }
+
+        private ConversationEntry entryAt(long sequence) {
+            ConversationEntry entry = entries[slot(sequence)];
+            // The writer may have lapped this slot while the view was held
+            if (end - sequence >= capacity) {
+                throw new ConcurrentModificationException("Conversation history advanced past this snapshot");
+            }
+            return entry;
+        }
+
+        private int slot(long sequence) {
+            return (int) (sequence % capacity);
+        }
+
+        private void lockWriter() {
+            while (!writing.compareAndSet(false, true)) {
+                Thread.onSpinWait();
+            }
+        }
+
+        private long lastActivityMillis() {
+            return lastActivityMillis;
+        }
+    }
+
+    /**
+     * Read-only view over a range of ring buffer sequences, without copying entries
+     */
+    private static final class SnapshotView extends AbstractList<ConversationEntry> implements RandomAccess {
+        private final Conversation conversation;
+        private final long from;
+        private final int size;
+
+        private SnapshotView(Conversation conversation, long from, int size) {
+            this.conversation = conversation;
+            this.from = from;
+            this.size = size;
+        }
+
+        @Override
+        public ConversationEntry get(int index) {
+            Objects.checkIndex(index, size);
+            return conversation.entryAt(from + index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.g18.assistant.service.impl;
+
+import com.g18.assistant.config.SemanticSearchConfig;
+import com.g18.assistant.search.VietnameseTextAnalyzer;
+import com.g18.assistant.service.EmbeddingProvider;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Deterministic stand-in for a real embedding model: hashes the analyzed terms of a text into a
+ * signed bag-of-words vector. Needs no network, so local runs and tests get stable vectors; it only
+ * finds products that share words with the query.
+ */
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "app.ai.semantic-search", name = "embedding-provider", havingValue = "local")
+public class LocalEmbeddingProvider implements EmbeddingProvider {
+
+    private final SemanticSearchConfig searchConfig;
+
+    @Override
+    public String id() {
+        // v2: stop words are matched before folding, so stored vectors of the old terms are rebuilt
+        return "local-hash-v2:" + searchConfig.getDimensions();
+    }
+
+    @Override
+    public int dimensions() {
+        return searchConfig.getDimensions();
+    }
+
+    @Override
+    public List<float[]> embedDocuments(List<String> texts) {
+        List<float[]> vectors = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            vectors.add(embedQuery(text));
+        }
+        return vectors;
+    }
+
+    @Override
+    public float[] embedQuery(String text) {
+        float[] vector = new float[searchConfig.getDimensions()];
+        CRC32 crc = new CRC32();
+        for (String term : VietnameseTextAnalyzer.analyze(text)) {
+            crc.reset();
+            crc.update(term.getBytes(StandardCharsets.UTF_8));
+            long hash = crc.getValue();
+            // Low bits pick the dimension, one high bit the sign, so colliding terms tend to cancel out
+            int dimension = (int) (hash % vector.length);
+            vector[dimension] += (hash & 0x80000000L) != 0 ? 1f : -1f;
+        }
+        return vector;
+    }
+}
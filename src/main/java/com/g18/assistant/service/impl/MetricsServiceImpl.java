@@ -0,0 +1,91 @@
+package com.g18.assistant.service.impl;
+
+import com.g18.assistant.service.MetricsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+@Service
+@Slf4j
+public class MetricsServiceImpl implements MetricsService {
+
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, Supplier<Number>> gauges = new ConcurrentHashMap<>();
+
+    @Override
+    public void increment(String name) {
+        increment(name, 1);
+    }
+
+    @Override
+    public void increment(String name, long amount) {
+        counters.computeIfAbsent(name, k -> new LongAdder()).add(amount);
+    }
+
+    @Override
+    public void recordLatency(String name, long nanos) {
+        timers.computeIfAbsent(name, k -> new Timer()).record(nanos);
+    }
+
+    @Override
+    public void registerGauge(String name, Supplier<Number> supplier) {
+        gauges.put(name, supplier);
+    }
+
+    @Override
+    public void removeGauge(String name) {
+        gauges.remove(name);
+    }
+
+    @Override
+    public long getCount(String name) {
+        LongAdder counter = counters.get(name);
+        return counter != null ? counter.sum() : 0;
+    }
+
+    @Override
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new TreeMap<>();
+
+        counters.forEach((name, counter) -> result.put(name, counter.sum()));
+
+        timers.forEach((name, timer) -> {
+            long count = timer.count.sum();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("count", count);
+            stats.put("avg_ms", count > 0 ? timer.totalNanos.sum() / count / 1_000_000.0 : 0.0);
+            stats.put("max_ms", timer.maxNanos.get() / 1_000_000.0);
+            result.put(name, stats);
+        });
+
+        gauges.forEach((name, supplier) -> {
+            try {
+                result.put(name, supplier.get());
+            } catch (Exception e) {
+                log.warn("Error reading gauge {}: {}", name, e.getMessage());
+            }
+        });
+
+        return result;
+    }
+
+    private static final class Timer {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        private void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package com.g18.assistant.service.impl;
 
+import com.g18.assistant.dto.KeysetCursor;
 import com.g18.assistant.dto.OrderDTO;
 import com.g18.assistant.dto.request.CreateOrderRequest;
 import com.g18.assistant.dto.request.UpdateOrderStatusRequest;
+import com.g18.assistant.dto.response.CursorPageResponse;
 import com.g18.assistant.entity.Customer;
 import com.g18.assistant.entity.Order;
 import com.g18.assistant.entity.Order.OrderStatus;
@@ -13,7 +15,10 @@ import com.g18.assistant.repository.CustomerRepository;
 import com.g18.assistant.repository.OrderRepository;
 import com.g18.assistant.repository.ProductRepository;
 import com.g18.assistant.service.OrderService;
+import com.g18.assistant.service.ProductSearchIndex;
+import com.g18.assistant.service.ResponseCacheService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -25,10 +30,14 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class OrderServiceImpl implements OrderService {
     
+    private static final int MAX_PAGE_SIZE = 100;
+    
     private final OrderRepository orderRepository;
     private final CustomerRepository customerRepository;
     private final ProductRepository productRepository;
     private final OrderMapper orderMapper;
+    private final ResponseCacheService responseCacheService;
+    private final ProductSearchIndex productSearchIndex;
     
     @Override
     @Transactional
@@ -52,6 +61,8 @@ public class OrderServiceImpl implements OrderService {
         // Reduce product stock
         product.setStock(product.getStock() - request.getQuantity());
         productRepository.save(product);
+        responseCacheService.invalidateShop(product.getShop().getId());
+        productSearchIndex.updateStock(product.getShop().getId(), product.getId(), product.getStock());
         
         Order order = orderMapper.toEntity(request, customer, product);
         Order savedOrder = orderRepository.save(order);
@@ -67,10 +78,7 @@ public class OrderServiceImpl implements OrderService {
     
     @Override
     public List<OrderDTO> getOrdersByShopId(Long shopId) {
-        List<Order> orders = orderRepository.findAllByShopId(shopId);
-        return orders.stream()
-                .map(orderMapper::toDTO)
-                .collect(Collectors.toList());
+        return orderRepository.findAllByShopId(shopId);
     }
     
     @Override
@@ -86,18 +94,55 @@ public class OrderServiceImpl implements OrderService {
     
     @Override
     public List<OrderDTO> getOrdersByShopIdAndStatus(Long shopId, OrderStatus status) {
-        List<Order> orders = orderRepository.findAllByShopIdAndStatus(shopId, status);
-        return orders.stream()
-                .map(orderMapper::toDTO)
-                .collect(Collectors.toList());
+        return orderRepository.findAllByShopIdAndStatus(shopId, status);
     }
     
     @Override
     public List<OrderDTO> getOrdersByDateRange(Long shopId, LocalDateTime startDate, LocalDateTime endDate) {
-        List<Order> orders = orderRepository.findAllByShopIdAndCreatedAtBetween(shopId, startDate, endDate);
-        return orders.stream()
-                .map(orderMapper::toDTO)
-                .collect(Collectors.toList());
+        return orderRepository.findAllByShopIdAndCreatedAtBetween(shopId, startDate, endDate);
+    }
+    
+    @Override
+    public CursorPageResponse<OrderDTO> getOrdersByShopId(Long shopId, String cursor, int limit) {
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        int size = pageSize(limit);
+        PageRequest page = PageRequest.of(0, size + 1);
+        List<OrderDTO> rows = after == null
+                ? orderRepository.findLatestByShopId(shopId, page)
+                : orderRepository.findByShopIdBefore(shopId, after.timestamp(), after.id(), page);
+        return CursorPageResponse.from(rows, size, OrderServiceImpl::cursorOf);
+    }
+    
+    @Override
+    public CursorPageResponse<OrderDTO> getOrdersByShopIdAndStatus(Long shopId, OrderStatus status, String cursor, int limit) {
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        int size = pageSize(limit);
+        PageRequest page = PageRequest.of(0, size + 1);
+        List<OrderDTO> rows = after == null
+                ? orderRepository.findLatestByShopIdAndStatus(shopId, status, page)
+                : orderRepository.findByShopIdAndStatusBefore(shopId, status, after.timestamp(), after.id(), page);
+        return CursorPageResponse.from(rows, size, OrderServiceImpl::cursorOf);
+    }
+    
+    @Override
+    public CursorPageResponse<OrderDTO> getOrdersByDateRange(Long shopId, LocalDateTime startDate, LocalDateTime endDate,
+                                                             String cursor, int limit) {
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        int size = pageSize(limit);
+        PageRequest page = PageRequest.of(0, size + 1);
+        List<OrderDTO> rows = after == null
+                ? orderRepository.findLatestByShopIdAndCreatedAtBetween(shopId, startDate, endDate, page)
+                : orderRepository.findByShopIdAndCreatedAtBetweenBefore(
+                        shopId, startDate, endDate, after.timestamp(), after.id(), page);
+        return CursorPageResponse.from(rows, size, OrderServiceImpl::cursorOf);
+    }
+    
+    private static int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+    
+    private static KeysetCursor cursorOf(OrderDTO order) {
+        return new KeysetCursor(order.getCreatedAt(), order.getId());
     }
     
     @Override
@@ -116,6 +161,8 @@ public class OrderServiceImpl implements OrderService {
             // Reduce product stock again
             product.setStock(product.getStock() - order.getQuantity());
             productRepository.save(product);
+            responseCacheService.invalidateShop(product.getShop().getId());
+            productSearchIndex.updateStock(product.getShop().getId(), product.getId(), product.getStock());
         }
         
         // If order is being cancelled, restore the product stock
@@ -123,6 +170,8 @@ public class OrderServiceImpl implements OrderService {
             Product product = order.getProduct();
             product.setStock(product.getStock() + order.getQuantity());
             productRepository.save(product);
+            responseCacheService.invalidateShop(product.getShop().getId());
+            productSearchIndex.updateStock(product.getShop().getId(), product.getId(), product.getStock());
         }
         
         order.setStatus(request.getStatus());
@@ -140,6 +189,8 @@ public class OrderServiceImpl implements OrderService {
             Product product = order.getProduct();
             product.setStock(product.getStock() + order.getQuantity());
             productRepository.save(product);
+            responseCacheService.invalidateShop(product.getShop().getId());
+            productSearchIndex.updateStock(product.getShop().getId(), product.getId(), product.getStock());
         }
         
         orderRepository.delete(order);
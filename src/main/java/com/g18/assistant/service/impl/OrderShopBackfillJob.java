@@ -0,0 +1,66 @@
+package com.g18.assistant.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Background job that completes V14 on databases set up by ddl-auto: copies the customer's shop onto
+ * older orders range by range, then gives orders without a creation time one and makes created_at NOT NULL
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OrderShopBackfillJob {
+
+    private static final int BATCH_SIZE = 1000;
+    // Rows without a creation time sort after all real orders, as in V14
+    private static final String MISSING_CREATED_AT = "1970-01-02 00:00:00";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // New orders always get their shop and creation time, so once a full pass finds nothing the job can stop
+    private volatile boolean finished = false;
+
+    @Scheduled(initialDelay = 10000, fixedDelay = 300000) // Run every 5 minutes until done
+    public void backfillOrders() {
+        if (finished) {
+            return;
+        }
+
+        try {
+            Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id_order) FROM orders", Long.class);
+            int updated = 0;
+            for (long from = 0; maxId != null && from < maxId; from += BATCH_SIZE) {
+                updated += jdbcTemplate.update(
+                        "UPDATE orders o JOIN customers c ON c.id_customer = o.id_customer SET o.id_shop = c.id_shop "
+                                + "WHERE o.id_shop IS NULL AND o.id_order > ? AND o.id_order <= ?",
+                        from, from + BATCH_SIZE);
+            }
+            ensureCreatedAtNotNull();
+            finished = true;
+            if (updated > 0) {
+                log.info("Filled the shop of {} older orders", updated);
+            }
+        } catch (Exception e) {
+            log.error("Error backfilling order shops, will retry on next run", e);
+        }
+    }
+
+    private void ensureCreatedAtNotNull() {
+        List<String> columnType = jdbcTemplate.queryForList(
+                "SELECT column_type FROM information_schema.columns WHERE table_schema = DATABASE() "
+                        + "AND table_name = 'orders' AND column_name = 'created_at' AND is_nullable = 'YES'", String.class);
+        if (columnType.isEmpty()) {
+            return;
+        }
+
+        int missing = jdbcTemplate.update("UPDATE orders SET created_at = ? WHERE created_at IS NULL", MISSING_CREATED_AT);
+        jdbcTemplate.execute("ALTER TABLE orders MODIFY created_at " + columnType.get(0) + " NOT NULL");
+        log.info("Made orders.created_at NOT NULL ({} orders had no creation time)", missing);
+    }
+}
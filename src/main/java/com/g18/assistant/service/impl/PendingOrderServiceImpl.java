@@ -1,59 +1,271 @@
 package com.g18.assistant.service.impl;
 
+import com.g18.assistant.config.PendingOrderConfig;
+import com.g18.assistant.service.MetricsService;
 import com.g18.assistant.service.PendingOrderService;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Redis-backed pending orders: one hash per order with its own expiry, plus a sorted set of
+ * order keys scored by expiry time for listing and sweeping
+ */
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class PendingOrderServiceImpl implements PendingOrderService {
-    
-    private final Map<String, PendingOrderInfo> pendingOrders = new ConcurrentHashMap<>();
-    
+
+    private static final String ORDER_PREFIX = "pending_order:";
+    private static final String INDEX_KEY = "pending_orders:index";
+
+    // KEYS[1] order hash, KEYS[2] index; ARGV[1] ttl millis, ARGV[2] expiry epoch millis, then field/value pairs
+    private static final RedisScript<Long> STORE_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('DEL', KEYS[1]) " +
+            "redis.call('HSET', KEYS[1], unpack(ARGV, 3)) " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[1]) " +
+            "redis.call('ZADD', KEYS[2], ARGV[2], KEYS[1]) " +
+            "return 1", Long.class);
+
+    // KEYS[1] order hash, KEYS[2] index; returns the hash as a flat field/value list
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> TAKE_SCRIPT = new DefaultRedisScript<>(
+            "local fields = redis.call('HGETALL', KEYS[1]) " +
+            "redis.call('DEL', KEYS[1]) " +
+            "redis.call('ZREM', KEYS[2], KEYS[1]) " +
+            "return fields", List.class);
+
+    private final RedisTemplate<String, String> redisTemplateString;
+    private final PendingOrderConfig pendingOrderConfig;
+    private final MetricsService metricsService;
+
+    // Positive entries only, a miss always goes to Redis so an order stored on another node is seen
+    private final Map<String, NearCacheEntry> nearCache = new ConcurrentHashMap<>();
+
     @Override
     public void storePendingOrder(String customerKey, Long customerId, Long productId, Integer quantity, OrderSource source) {
         storePendingOrder(customerKey, customerId, productId, quantity, null, source);
     }
-    
+
     @Override
     public void storePendingOrder(String customerKey, Long customerId, Long productId, Integer quantity, String note, OrderSource source) {
         PendingOrderInfo orderInfo = new PendingOrderInfo(customerId, productId, quantity, source);
         orderInfo.setNote(note);
-        pendingOrders.put(customerKey, orderInfo);
-        log.info("Stored pending order for customer key: {} with product ID: {} and quantity: {}", 
+
+        long ttlMillis = pendingOrderConfig.getTtl().toMillis();
+        long expiresAt = System.currentTimeMillis() + ttlMillis;
+
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(ttlMillis));
+        args.add(String.valueOf(expiresAt));
+        serialize(orderInfo, expiresAt, args);
+
+        redisTemplateString.execute(STORE_SCRIPT, List.of(orderKey(customerKey), INDEX_KEY), args.toArray());
+        cacheLocally(customerKey, orderInfo, expiresAt);
+        metricsService.increment("pending_order.stored");
+        log.info("Stored pending order for customer key: {} with product ID: {} and quantity: {}",
                 customerKey, productId, quantity);
     }
-    
+
     @Override
     public PendingOrderInfo getPendingOrder(String customerKey) {
-        return pendingOrders.get(customerKey);
+        long now = System.currentTimeMillis();
+        NearCacheEntry cached = nearCache.get(customerKey);
+        if (cached != null) {
+            if (cached.validUntil > now) {
+                return cached.orderInfo;
+            }
+            nearCache.remove(customerKey, cached);
+        }
+
+        String key = orderKey(customerKey);
+        Map<Object, Object> fields = redisTemplateString.execute((RedisCallback<Map<Object, Object>>) connection -> {
+            Map<byte[], byte[]> raw = connection.hashCommands().hGetAll(StringRedisSerializer.UTF_8.serialize(key));
+            return raw != null ? decode(raw) : null;
+        });
+        PendingOrderInfo orderInfo = deserialize(fields);
+        if (orderInfo != null && fields.get("expiresAt") != null) {
+            cacheLocally(customerKey, orderInfo, Long.parseLong(fields.get("expiresAt").toString()));
+        }
+        return orderInfo;
+    }
+
+    @Override
+    public PendingOrderInfo takePendingOrder(String customerKey) {
+        nearCache.remove(customerKey);
+        List<?> flat = redisTemplateString.execute(TAKE_SCRIPT, List.of(orderKey(customerKey), INDEX_KEY));
+
+        Map<Object, Object> fields = new HashMap<>();
+        if (flat != null) {
+            for (int i = 0; i + 1 < flat.size(); i += 2) {
+                fields.put(flat.get(i), flat.get(i + 1));
+            }
+        }
+        PendingOrderInfo orderInfo = deserialize(fields);
+        if (orderInfo != null) {
+            metricsService.increment("pending_order.taken");
+            log.info("Took pending order for customer key: {}", customerKey);
+        }
+        return orderInfo;
     }
-    
+
     @Override
     public void removePendingOrder(String customerKey) {
-        PendingOrderInfo removed = pendingOrders.remove(customerKey);
-        if (removed != null) {
+        nearCache.remove(customerKey);
+        String key = orderKey(customerKey);
+        Boolean removed = redisTemplateString.delete(key);
+        redisTemplateString.opsForZSet().remove(INDEX_KEY, key);
+        if (Boolean.TRUE.equals(removed)) {
             log.info("Removed pending order for customer key: {}", customerKey);
         }
     }
-    
+
     @Override
     public boolean hasPendingOrder(String customerKey) {
-        return pendingOrders.containsKey(customerKey);
+        return getPendingOrder(customerKey) != null;
     }
-    
+
     @Override
     public Map<String, PendingOrderInfo> getAllPendingOrders() {
-        return Map.copyOf(pendingOrders);
+        Set<String> keys = redisTemplateString.opsForZSet()
+                .rangeByScore(INDEX_KEY, System.currentTimeMillis(), Double.POSITIVE_INFINITY);
+        if (keys == null || keys.isEmpty()) {
+            return Map.of();
+        }
+
+        List<String> orderedKeys = new ArrayList<>(keys);
+        List<Object> results = redisTemplateString.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : orderedKeys) {
+                connection.hashCommands().hGetAll(StringRedisSerializer.UTF_8.serialize(key));
+            }
+            return null;
+        }, StringRedisSerializer.UTF_8);
+
+        Map<String, PendingOrderInfo> orders = new HashMap<>();
+        for (int i = 0; i < orderedKeys.size(); i++) {
+            @SuppressWarnings("unchecked")
+            Map<Object, Object> fields = (Map<Object, Object>) results.get(i);
+            PendingOrderInfo orderInfo = deserialize(fields);
+            if (orderInfo != null) {
+                orders.put(orderedKeys.get(i).substring(ORDER_PREFIX.length()), orderInfo);
+            }
+        }
+        return Collections.unmodifiableMap(orders);
     }
-    
+
     @Override
     public void clearAllPendingOrders() {
-        int size = pendingOrders.size();
-        pendingOrders.clear();
+        Set<String> keys = redisTemplateString.opsForZSet().range(INDEX_KEY, 0, -1);
+        int size = keys != null ? keys.size() : 0;
+        if (size > 0) {
+            redisTemplateString.delete(keys);
+        }
+        redisTemplateString.delete(INDEX_KEY);
+        nearCache.clear();
         log.info("Cleared {} pending orders", size);
     }
-}
\ No newline at end of file
+
+    /**
+     * Drop index entries whose order hash has already expired in Redis, and stale local copies
+     */
+    @Scheduled(fixedDelay = 60000) // Run every minute
+    public void sweepExpiredOrders() {
+        long now = System.currentTimeMillis();
+        nearCache.entrySet().removeIf(entry -> entry.getValue().validUntil <= now);
+        try {
+            Long expired = redisTemplateString.opsForZSet().removeRangeByScore(INDEX_KEY, Double.NEGATIVE_INFINITY, now);
+            if (expired != null && expired > 0) {
+                metricsService.increment("pending_order.expired", expired);
+                log.info("Swept {} expired pending orders", expired);
+            }
+        } catch (Exception e) {
+            log.warn("Error sweeping expired pending orders: {}", e.getMessage());
+        }
+    }
+
+    private void cacheLocally(String customerKey, PendingOrderInfo orderInfo, long expiresAt) {
+        long validUntil = Math.min(expiresAt, System.currentTimeMillis() + pendingOrderConfig.getNearCacheTtl().toMillis());
+        nearCache.put(customerKey, new NearCacheEntry(orderInfo, validUntil));
+    }
+
+    private static String orderKey(String customerKey) {
+        return ORDER_PREFIX + customerKey;
+    }
+
+    private static void serialize(PendingOrderInfo orderInfo, long expiresAt, List<String> out) {
+        out.add("expiresAt");
+        out.add(String.valueOf(expiresAt));
+        out.add("customerId");
+        out.add(String.valueOf(orderInfo.getCustomerId()));
+        out.add("productId");
+        out.add(String.valueOf(orderInfo.getProductId()));
+        out.add("quantity");
+        out.add(String.valueOf(orderInfo.getQuantity()));
+        out.add("source");
+        out.add(orderInfo.getSource().name());
+        out.add("createdAt");
+        out.add(String.valueOf(orderInfo.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()));
+        if (orderInfo.getNote() != null) {
+            out.add("note");
+            out.add(orderInfo.getNote());
+        }
+    }
+
+    private static Map<Object, Object> decode(Map<byte[], byte[]> raw) {
+        Map<Object, Object> fields = new HashMap<>();
+        raw.forEach((field, value) -> fields.put(
+                StringRedisSerializer.UTF_8.deserialize(field), StringRedisSerializer.UTF_8.deserialize(value)));
+        return fields;
+    }
+
+    /**
+     * @return The order, or null if the hash is missing or unreadable
+     */
+    private static PendingOrderInfo deserialize(Map<Object, Object> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return null;
+        }
+        try {
+            PendingOrderInfo orderInfo = new PendingOrderInfo(
+                    parseLong(fields.get("customerId")),
+                    parseLong(fields.get("productId")),
+                    fields.get("quantity") != null ? Integer.valueOf(fields.get("quantity").toString()) : null,
+                    OrderSource.valueOf(fields.get("source").toString()));
+            Object note = fields.get("note");
+            orderInfo.setNote(note != null ? note.toString() : null);
+            Object createdAt = fields.get("createdAt");
+            if (createdAt != null) {
+                orderInfo.setCreatedAt(LocalDateTime.ofInstant(
+                        Instant.ofEpochMilli(Long.parseLong(createdAt.toString())), ZoneId.systemDefault()));
+            }
+            return orderInfo;
+        } catch (Exception e) {
+            log.warn("Skipping unreadable pending order: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static Long parseLong(Object value) {
+        return value != null && !"null".equals(value.toString()) ? Long.valueOf(value.toString()) : null;
+    }
+
+    private record NearCacheEntry(PendingOrderInfo orderInfo, long validUntil) {
+    }
+}
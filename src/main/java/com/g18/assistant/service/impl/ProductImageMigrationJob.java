@@ -0,0 +1,47 @@
+package com.g18.assistant.service.impl;
+
+import com.g18.assistant.config.ImageStoreConfig;
+import com.g18.assistant.service.ProductImageService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Background job that moves legacy base64 product images into the image store, one batch per transaction
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ProductImageMigrationJob {
+
+    private final ProductImageService productImageService;
+    private final ImageStoreConfig imageStoreConfig;
+
+    // New writes never use the legacy column, so once a full pass finds nothing the job can stop.
+    // Rows that failed keep their legacy image and are retried by the next pass.
+    private volatile boolean finished = false;
+
+    @Scheduled(initialDelay = 30000, fixedDelay = 300000) // Run every 5 minutes until done
+    public void migrateLegacyImages() {
+        if (finished || !imageStoreConfig.isMigrationEnabled()) {
+            return;
+        }
+
+        Long lastId = 0L;
+        int batches = 0;
+        try {
+            while ((lastId = productImageService.migrateLegacyImages(lastId, imageStoreConfig.getMigrationBatchSize())) != null) {
+                batches++;
+            }
+            if (batches == 0) {
+                finished = true;
+                log.info("No legacy product images left to migrate");
+            } else {
+                log.info("Finished a product image migration pass ({} batches)", batches);
+            }
+        } catch (Exception e) {
+            log.error("Error migrating product images, will retry on next run", e);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.g18.assistant.service.impl;
+
+import com.g18.assistant.repository.ProductRepository;
+import com.g18.assistant.repository.projection.LegacyProductImage;
+import com.g18.assistant.service.ImageStore;
+import com.g18.assistant.service.ProductImageService;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.List;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ProductImageServiceImpl implements ProductImageService {
+
+    private final ImageStore imageStore;
+    private final ProductRepository productRepository;
+
+    @Value("${server.servlet.context-path:}")
+    private String contextPath;
+
+    private String imagePathPrefix;
+
+    @PostConstruct
+    public void init() {
+        imagePathPrefix = contextPath.replaceAll("/+$", "") + "/api/products/";
+    }
+
+    @Override
+    public String storeBase64(String imageBase64) {
+        if (imageBase64 == null || imageBase64.isEmpty()) {
+            return null;
+        }
+        try {
+            return imageStore.save(Base64.getMimeDecoder().decode(stripDataUrlPrefix(imageBase64)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to store product image", e);
+        }
+    }
+
+    @Override
+    public InputStream openImage(String imageHash, String legacyImageBase64) throws IOException {
+        if (imageHash != null) {
+            return imageStore.openStream(imageHash);
+        }
+        if (legacyImageBase64 != null && !legacyImageBase64.isEmpty()) {
+            return new ByteArrayInputStream(Base64.getMimeDecoder().decode(stripDataUrlPrefix(legacyImageBase64)));
+        }
+        return null;
+    }
+
+    @Override
+    public String readBase64(String imageHash) {
+        if (imageHash == null || !imageStore.exists(imageHash)) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = imageStore.read(imageHash);
+            return Base64.getEncoder().encodeToString(toArray(buffer));
+        } catch (IOException e) {
+            log.error("Error reading image {} from store: {}", imageHash, e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public String imagePathPrefix() {
+        return imagePathPrefix;
+    }
+
+    @Override
+    @Transactional
+    public Long migrateLegacyImages(Long afterId, int batchSize) {
+        List<LegacyProductImage> images = productRepository.findLegacyImages(afterId, PageRequest.of(0, batchSize));
+        if (images.isEmpty()) {
+            return null;
+        }
+
+        Long lastId = afterId;
+        for (LegacyProductImage image : images) {
+            lastId = image.getId();
+            try {
+                // Only the two image columns are written, so edits saved during the batch are kept
+                productRepository.replaceLegacyImage(image.getId(), storeBase64(image.getImageBase64()));
+            } catch (IllegalArgumentException | UncheckedIOException e) {
+                // Keep the legacy value so the product still has its image, and move on
+                log.warn("Could not migrate image of product {}: {}", image.getId(), e.getMessage());
+            }
+        }
+        log.info("Migrated images of {} products to the image store (up to product ID {})", images.size(), lastId);
+        return lastId;
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Accept both plain base64 and data URLs ("data:image/png;base64,...")
+     */
+    private static String stripDataUrlPrefix(String imageBase64) {
+        int comma = imageBase64.indexOf(',');
+        return imageBase64.startsWith("data:") && comma > 0 ? imageBase64.substring(comma + 1) : imageBase64;
+    }
+}
@@ -0,0 +1,390 @@
+package com.g18.assistant.service.impl;
+
+import com.g18.assistant.config.ProductIndexConfig;
+import com.g18.assistant.dto.response.ProductResponse;
+import com.g18.assistant.repository.ProductRepository;
+import com.g18.assistant.repository.projection.ProductCustomFieldView;
+import com.g18.assistant.repository.projection.ProductSummary;
+import com.g18.assistant.search.VietnameseTextAnalyzer;
+import com.g18.assistant.service.MetricsService;
+import com.g18.assistant.service.ProductImageService;
+import com.g18.assistant.service.ProductSearchIndex;
+import com.g18.assistant.util.Transactions;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * Shops are indexed lazily on their first search. Product writes update the index in place after
+ * commit; a write to a shop whose index is still loading drops that load so the next search starts over.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ProductSearchIndexImpl implements ProductSearchIndex {
+
+    private static final int LOAD_BATCH_SIZE = 500;
+
+    private final ProductRepository productRepository;
+    private final ProductImageService productImageService;
+    private final ProductIndexConfig indexConfig;
+    private final MetricsService metricsService;
+
+    private final Map<Long, CompletableFuture<ShopIndex>> shops = new ConcurrentHashMap<>();
+    private final ExecutorService refreshExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @PostConstruct
+    public void init() {
+        metricsService.registerGauge("product_index.shops", shops::size);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdown();
+    }
+
+    @Override
+    public List<ProductResponse> search(Long shopId, String query, int limit) {
+        if (!indexConfig.isEnabled() || query == null || query.isBlank() || limit <= 0) {
+            return List.of();
+        }
+        List<String> terms = VietnameseTextAnalyzer.analyze(query);
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+
+        ShopIndex index = indexFor(shopId);
+        if (System.currentTimeMillis() - index.builtAt > indexConfig.getMaxAge().toMillis()) {
+            refreshInBackground(shopId, index);
+        }
+
+        long start = System.nanoTime();
+        List<ProductResponse> results = index.search(terms, limit, indexConfig);
+        metricsService.recordLatency("product_index.search", System.nanoTime() - start);
+        return results;
+    }
+
+    @Override
+    public List<ProductResponse> findByIds(Long shopId, List<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return List.of();
+        }
+        return indexFor(shopId).get(productIds);
+    }
+
+    @Override
+    public void upsert(ProductResponse product) {
+        Long shopId = product.getShopId();
+        // Images are never part of a prompt
+        ProductResponse indexed = product.toBuilder().imageBase64(null).build();
+        Transactions.afterCommit(() -> {
+            ShopIndex index = loadedIndex(shopId);
+            if (index == null) {
+                return;
+            }
+            if (Boolean.FALSE.equals(indexed.getActive())) {
+                index.remove(indexed.getId());
+            } else {
+                index.put(indexed, indexConfig);
+            }
+        });
+    }
+
+    @Override
+    public void remove(Long shopId, Long productId) {
+        Transactions.afterCommit(() -> {
+            ShopIndex index = loadedIndex(shopId);
+            if (index != null) {
+                index.remove(productId);
+            }
+        });
+    }
+
+    @Override
+    public void updateStock(Long shopId, Long productId, Integer stock) {
+        Transactions.afterCommit(() -> {
+            ShopIndex index = loadedIndex(shopId);
+            if (index != null) {
+                index.updateStock(productId, stock);
+            }
+        });
+    }
+
+    /**
+     * Get the index of a shop, loading it on this thread when no other thread already is
+     */
+    private ShopIndex indexFor(Long shopId) {
+        CompletableFuture<ShopIndex> created = new CompletableFuture<>();
+        CompletableFuture<ShopIndex> existing = shops.putIfAbsent(shopId, created);
+        if (existing == null) {
+            try {
+                created.complete(load(shopId));
+            } catch (RuntimeException e) {
+                shops.remove(shopId, created);
+                created.completeExceptionally(e);
+                throw e;
+            }
+            return created.join();
+        }
+        try {
+            return existing.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return The index to update in place, or null when the shop is not indexed yet
+     */
+    private ShopIndex loadedIndex(Long shopId) {
+        CompletableFuture<ShopIndex> future = shops.get(shopId);
+        if (future == null) {
+            return null;
+        }
+        if (!future.isDone() || future.isCompletedExceptionally()) {
+            // The load may have read the database before this write; make the next search reload
+            shops.remove(shopId, future);
+            return null;
+        }
+        return future.join();
+    }
+
+    private void refreshInBackground(Long shopId, ShopIndex current) {
+        if (!current.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        long writesBefore = current.writes();
+        refreshExecutor.execute(() -> {
+            try {
+                ShopIndex fresh = load(shopId);
+                CompletableFuture<ShopIndex> currentFuture = shops.get(shopId);
+                // Writes applied to the old index during the reload may be missing from the fresh one
+                if (current.writes() == writesBefore && currentFuture != null
+                        && currentFuture.isDone() && currentFuture.join() == current) {
+                    shops.replace(shopId, currentFuture, CompletableFuture.completedFuture(fresh));
+                    return;
+                }
+            } catch (Exception e) {
+                log.warn("Could not refresh product index for shop {}: {}", shopId, e.getMessage());
+            }
+            current.refreshing.set(false);
+        });
+    }
+
+    private ShopIndex load(Long shopId) {
+        long start = System.nanoTime();
+        ShopIndex index = new ShopIndex();
+        long afterId = 0L;
+        while (true) {
+            List<ProductSummary> batch = productRepository.findSummariesByShopIdAfter(
+                    shopId, afterId, PageRequest.of(0, LOAD_BATCH_SIZE));
+            if (batch.isEmpty()) {
+                break;
+            }
+
+            List<Long> productIds = batch.stream().map(ProductSummary::getId).collect(Collectors.toList());
+            Map<Long, Map<String, String>> customFieldsByProduct = new HashMap<>();
+            for (ProductCustomFieldView field : productRepository.findCustomFieldsByProductIds(productIds)) {
+                customFieldsByProduct.computeIfAbsent(field.getProductId(), id -> new HashMap<>())
+                        .put(field.getFieldName(), field.getFieldValue());
+            }
+            for (ProductSummary summary : batch) {
+                index.put(ProductResponse.fromSummary(summary, customFieldsByProduct.get(summary.getId()),
+                        productImageService.imagePathPrefix()), indexConfig);
+            }
+
+            afterId = batch.get(batch.size() - 1).getId();
+            if (batch.size() < LOAD_BATCH_SIZE) {
+                break;
+            }
+        }
+        index.builtAt = System.currentTimeMillis();
+        metricsService.recordLatency("product_index.load", System.nanoTime() - start);
+        log.info("Indexed {} products of shop {}", index.size(), shopId);
+        return index;
+    }
+
+    /**
+     * Inverted index of one shop. Term frequencies are weighted per field, so a product's length
+     * and frequencies already include the field boosts.
+     */
+    private static final class ShopIndex {
+
+        private final Map<Long, IndexedProduct> products = new HashMap<>();
+        private final Map<String, Map<Long, Integer>> postings = new HashMap<>();
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private long totalLength;
+        private long writeCount;
+        private volatile long builtAt;
+
+        List<ProductResponse> search(List<String> terms, int limit, ProductIndexConfig config) {
+            lock.readLock().lock();
+            try {
+                if (products.isEmpty()) {
+                    return List.of();
+                }
+                int productCount = products.size();
+                double averageLength = (double) totalLength / productCount;
+                Map<Long, Double> scores = new HashMap<>();
+                for (String term : terms.stream().distinct().toList()) {
+                    Map<Long, Integer> posting = postings.get(term);
+                    if (posting == null) {
+                        continue;
+                    }
+                    double idf = Math.log(1 + (productCount - posting.size() + 0.5) / (posting.size() + 0.5));
+                    for (Map.Entry<Long, Integer> entry : posting.entrySet()) {
+                        int frequency = entry.getValue();
+                        int length = products.get(entry.getKey()).length;
+                        double norm = config.getK1() * (1 - config.getB() + config.getB() * length / averageLength);
+                        scores.merge(entry.getKey(), idf * frequency * (config.getK1() + 1) / (frequency + norm), Double::sum);
+                    }
+                }
+
+                // Min-heap of the best `limit` scores
+                PriorityQueue<Map.Entry<Long, Double>> best = new PriorityQueue<>(Map.Entry.comparingByValue());
+                for (Map.Entry<Long, Double> entry : scores.entrySet()) {
+                    best.offer(entry);
+                    if (best.size() > limit) {
+                        best.poll();
+                    }
+                }
+                List<ProductResponse> results = new ArrayList<>(best.size());
+                while (!best.isEmpty()) {
+                    results.add(products.get(best.poll().getKey()).product);
+                }
+                return results.reversed();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        List<ProductResponse> get(List<Long> productIds) {
+            lock.readLock().lock();
+            try {
+                List<ProductResponse> found = new ArrayList<>(productIds.size());
+                for (Long productId : productIds) {
+                    IndexedProduct indexed = products.get(productId);
+                    if (indexed != null) {
+                        found.add(indexed.product);
+                    }
+                }
+                return found;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void put(ProductResponse product, ProductIndexConfig config) {
+            Map<String, Integer> frequencies = new HashMap<>();
+            addField(frequencies, product.getName(), config.getNameWeight());
+            addField(frequencies, product.getCategory(), config.getCategoryWeight());
+            addField(frequencies, product.getDescription(), config.getDescriptionWeight());
+            if (product.getCustomFields() != null) {
+                product.getCustomFields().forEach((field, value) -> {
+                    addField(frequencies, field, config.getCustomFieldWeight());
+                    addField(frequencies, value, config.getCustomFieldWeight());
+                });
+            }
+            int length = frequencies.values().stream().mapToInt(Integer::intValue).sum();
+
+            lock.writeLock().lock();
+            try {
+                removeLocked(product.getId());
+                products.put(product.getId(), new IndexedProduct(product, frequencies, length));
+                frequencies.forEach((term, frequency) ->
+                        postings.computeIfAbsent(term, t -> new HashMap<>()).put(product.getId(), frequency));
+                totalLength += length;
+                writeCount++;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void remove(Long productId) {
+            lock.writeLock().lock();
+            try {
+                removeLocked(productId);
+                writeCount++;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void updateStock(Long productId, Integer stock) {
+            lock.writeLock().lock();
+            try {
+                IndexedProduct current = products.get(productId);
+                if (current != null) {
+                    ProductResponse product = current.product.toBuilder().stock(stock).build();
+                    products.put(productId, new IndexedProduct(product, current.frequencies, current.length));
+                }
+                writeCount++;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        long writes() {
+            lock.readLock().lock();
+            try {
+                return writeCount;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        int size() {
+            lock.readLock().lock();
+            try {
+                return products.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private void removeLocked(Long productId) {
+            IndexedProduct previous = products.remove(productId);
+            if (previous == null) {
+                return;
+            }
+            previous.frequencies.keySet().forEach(term -> {
+                Map<Long, Integer> posting = postings.get(term);
+                if (posting != null && posting.remove(productId) != null && posting.isEmpty()) {
+                    postings.remove(term);
+                }
+            });
+            totalLength -= previous.length;
+        }
+
+        private static void addField(Map<String, Integer> frequencies, String text, int weight) {
+            for (String term : VietnameseTextAnalyzer.analyze(text)) {
+                frequencies.merge(term, weight, Integer::sum);
+            }
+        }
+    }
+
+    private record IndexedProduct(ProductResponse product, Map<String, Integer> frequencies, int length) {
+    }
+}
@@ -0,0 +1,76 @@
+package com.g18.assistant.service.impl;
+
+import com.g18.assistant.service.ProductService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Statement;
+
+/**
+ * Background job that prepares full-text product search on databases set up by ddl-auto: creates the
+ * ngram FULLTEXT index of V13 when it is missing, then fills search_text of older products batch by batch.
+ * Keyword search switches from LIKE to the index only after both steps succeed.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ProductSearchTextJob {
+
+    private static final int BATCH_SIZE = 200;
+
+    private final ProductService productService;
+    private final JdbcTemplate jdbcTemplate;
+
+    // New and updated products always get their search text, so once a full pass finds nothing the job can stop
+    private volatile boolean finished = false;
+
+    @Scheduled(initialDelay = 10000, fixedDelay = 300000) // Run every 5 minutes until done
+    public void prepareSearchText() {
+        if (finished) {
+            return;
+        }
+
+        try {
+            ensureFulltextIndex();
+            Long lastId = 0L;
+            int batches = 0;
+            while ((lastId = productService.backfillSearchText(lastId, BATCH_SIZE)) != null) {
+                batches++;
+            }
+            finished = true;
+            productService.enableFulltextSearch();
+            if (batches > 0) {
+                log.info("Finished filling product search text ({} batches)", batches);
+            }
+        } catch (Exception e) {
+            log.error("Error preparing product search text, will retry on next run", e);
+        }
+    }
+
+    private void ensureFulltextIndex() {
+        Integer existing = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = DATABASE() "
+                        + "AND table_name = 'products' AND index_name = 'ft_products_search_text'", Integer.class);
+        if (existing != null && existing > 0) {
+            return;
+        }
+
+        // The stopword setting is read when the index is created, so both statements need the same connection
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET SESSION innodb_ft_enable_stopword = OFF");
+                try {
+                    statement.execute("ALTER TABLE products ADD FULLTEXT INDEX ft_products_search_text (search_text) WITH PARSER ngram");
+                } finally {
+                    statement.execute("SET SESSION innodb_ft_enable_stopword = ON");
+                }
+            }
+            return null;
+        });
+        log.info("Created FULLTEXT index ft_products_search_text on products");
+    }
+}
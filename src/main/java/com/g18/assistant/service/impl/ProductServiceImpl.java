@@ -7,16 +7,30 @@ import com.g18.assistant.entity.Product;
 import com.g18.assistant.entity.Shop;
 import com.g18.assistant.repository.ProductRepository;
 import com.g18.assistant.repository.ShopRepository;
+import com.g18.assistant.repository.projection.ProductCustomFieldView;
+import com.g18.assistant.repository.projection.ProductSummary;
+import com.g18.assistant.search.ProductSearchText;
+import com.g18.assistant.service.ProductImageService;
+import com.g18.assistant.service.ProductSearchIndex;
 import com.g18.assistant.service.ProductService;
+import com.g18.assistant.service.ProductVectorIndex;
+import com.g18.assistant.service.ResponseCacheService;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
 import java.util.stream.Collectors;
 
 @Service
@@ -26,6 +40,13 @@ public class ProductServiceImpl implements ProductService {
 
     private final ProductRepository productRepository;
     private final ShopRepository shopRepository;
+    private final ResponseCacheService responseCacheService;
+    private final ProductImageService productImageService;
+    private final ProductSearchIndex productSearchIndex;
+    private final ProductVectorIndex productVectorIndex;
+
+    // Set by ProductSearchTextJob; MATCH fails without the index and misses rows without search text
+    private volatile boolean fulltextSearchEnabled = false;
 
     @Override
     @Transactional
@@ -40,14 +61,19 @@ public class ProductServiceImpl implements ProductService {
                 .description(request.getDescription())
                 .category(request.getCategory())
                 .stock(request.getStock())
-                .imageBase64(request.getImageBase64())
+                .imageHash(productImageService.storeBase64(request.getImageBase64()))
                 .customFields(request.getCustomFields())
                 .build();
+        product.setSearchText(ProductSearchText.of(product));
         
         Product savedProduct = productRepository.save(product);
         log.info("Created new product with id: {} for shop: {}", savedProduct.getId(), shopId);
+        responseCacheService.invalidateShop(shopId);
         
-        return ProductResponse.fromEntity(savedProduct);
+        ProductResponse response = ProductResponse.fromEntity(savedProduct, productImageService.imagePathPrefix());
+        productSearchIndex.upsert(response);
+        productVectorIndex.upsert(response);
+        return response;
     }
 
     @Override
@@ -62,14 +88,20 @@ public class ProductServiceImpl implements ProductService {
         product.setCategory(request.getCategory());
         product.setStock(request.getStock());
         if (request.getImageBase64() != null && !request.getImageBase64().isEmpty()) {
-            product.setImageBase64(request.getImageBase64());
+            product.setImageHash(productImageService.storeBase64(request.getImageBase64()));
+            product.setImageBase64(null);
         }
         product.setCustomFields(request.getCustomFields());
+        product.setSearchText(ProductSearchText.of(product));
         
         Product updatedProduct = productRepository.save(product);
         log.info("Updated product with id: {} for shop: {}", productId, shopId);
+        responseCacheService.invalidateShop(shopId);
         
-        return ProductResponse.fromEntity(updatedProduct);
+        ProductResponse response = ProductResponse.fromEntity(updatedProduct, productImageService.imagePathPrefix());
+        productSearchIndex.upsert(response);
+        productVectorIndex.upsert(response);
+        return response;
     }
 
     @Override
@@ -78,7 +110,7 @@ public class ProductServiceImpl implements ProductService {
         Product product = productRepository.findById(productId)
                 .orElseThrow(() -> new EntityNotFoundException("Product not found with id: " + productId));
         
-        return ProductResponse.fromEntity(product);
+        return withImageData(ProductResponse.fromEntity(product, productImageService.imagePathPrefix()));
     }
 
     @Override
@@ -87,7 +119,18 @@ public class ProductServiceImpl implements ProductService {
         Product product = productRepository.findByIdAndShopId(productId, shopId)
                 .orElseThrow(() -> new EntityNotFoundException("Product not found with id: " + productId + " for shop: " + shopId));
         
-        return ProductResponse.fromEntity(product);
+        return withImageData(ProductResponse.fromEntity(product, productImageService.imagePathPrefix()));
+    }
+    
+    /**
+     * Single-product responses still embed the image as base64 for existing clients;
+     * new clients should load imageUrl instead
+     */
+    private ProductResponse withImageData(ProductResponse response) {
+        if (response.getImageBase64() == null && response.getImageHash() != null) {
+            response.setImageBase64(productImageService.readBase64(response.getImageHash()));
+        }
+        return response;
     }
 
     @Override
@@ -100,46 +143,77 @@ public class ProductServiceImpl implements ProductService {
         product.setActive(false);
         productRepository.save(product);
         log.info("Soft deleted product with id: {} for shop: {}", productId, shopId);
+        responseCacheService.invalidateShop(shopId);
+        productSearchIndex.remove(shopId, productId);
+        productVectorIndex.remove(shopId, productId);
     }
 
     @Override
     @Transactional(readOnly = true)
     public PageResponse<ProductResponse> getShopProducts(Long shopId, Pageable pageable) {
-        Page<Product> productPage = productRepository.findByShopIdAndActiveTrue(shopId, pageable);
+        Page<ProductSummary> productPage = productRepository.findSummariesByShopId(shopId, pageable);
         
-        Page<ProductResponse> responsePage = productPage.map(ProductResponse::fromEntityWithoutImage);
-        
-        return PageResponse.from(responsePage);
+        return PageResponse.from(toResponsePage(productPage));
     }
 
     @Override
     @Transactional(readOnly = true)
     public PageResponse<ProductResponse> searchShopProducts(Long shopId, String keyword, Pageable pageable) {
-        Page<Product> productPage = productRepository.searchProducts(shopId, keyword, pageable);
+        if (keyword == null || keyword.isBlank()) {
+            return getShopProducts(shopId, pageable);
+        }
         
-        Page<ProductResponse> responsePage = productPage.map(ProductResponse::fromEntityWithoutImage);
+        if (!fulltextSearchEnabled) {
+            Page<ProductSummary> productPage = productRepository.searchProductSummariesByColumns(
+                    shopId, keyword.trim(), pageable);
+            return PageResponse.from(toResponsePage(productPage));
+        }
+        
+        String query = ProductSearchText.booleanQuery(keyword);
+        if (query == null) {
+            Page<ProductSummary> productPage = productRepository.searchProductSummaries(
+                    shopId, ProductSearchText.foldedKeyword(keyword), pageable);
+            return PageResponse.from(toResponsePage(productPage));
+        }
         
-        return PageResponse.from(responsePage);
+        List<Long> productIds = productRepository.searchShopProductIds(
+                shopId, query, pageable.getPageSize(), pageable.getOffset());
+        return PageResponse.from(toResponsePage(rankedPage(productIds, pageable,
+                () -> productRepository.countShopProductMatches(shopId, query))));
     }
 
     @Override
     @Transactional(readOnly = true)
     public PageResponse<ProductResponse> searchAllProducts(String keyword, Pageable pageable) {
-        Page<Product> productPage = productRepository.searchAllActiveProducts(keyword, pageable);
+        if (keyword == null || keyword.isBlank()) {
+            return PageResponse.from(toResponsePage(productRepository.findActiveSummaries(pageable)));
+        }
         
-        Page<ProductResponse> responsePage = productPage.map(ProductResponse::fromEntityWithoutImage);
+        if (!fulltextSearchEnabled) {
+            Page<ProductSummary> productPage = productRepository.searchAllActiveProductSummariesByColumns(
+                    keyword.trim(), pageable);
+            return PageResponse.from(toResponsePage(productPage));
+        }
+        
+        String query = ProductSearchText.booleanQuery(keyword);
+        if (query == null) {
+            Page<ProductSummary> productPage = productRepository.searchAllActiveProductSummaries(
+                    ProductSearchText.foldedKeyword(keyword), pageable);
+            return PageResponse.from(toResponsePage(productPage));
+        }
         
-        return PageResponse.from(responsePage);
+        List<Long> productIds = productRepository.searchActiveProductIds(
+                query, pageable.getPageSize(), pageable.getOffset());
+        return PageResponse.from(toResponsePage(rankedPage(productIds, pageable,
+                () -> productRepository.countActiveProductMatches(query))));
     }
 
     @Override
     @Transactional(readOnly = true)
     public PageResponse<ProductResponse> getProductsByCategory(String category, Pageable pageable) {
-        Page<Product> productPage = productRepository.findByCategoryAndActiveTrue(category, pageable);
-        
-        Page<ProductResponse> responsePage = productPage.map(ProductResponse::fromEntityWithoutImage);
+        Page<ProductSummary> productPage = productRepository.findSummariesByCategory(category, pageable);
         
-        return PageResponse.from(responsePage);
+        return PageResponse.from(toResponsePage(productPage));
     }
 
     @Override
@@ -148,6 +222,78 @@ public class ProductServiceImpl implements ProductService {
         return productRepository.findAllCategoriesByShopId(shopId);
     }
 
+    /**
+     * Load the summaries of ranked product IDs, keeping the rank order. The count query only runs
+     * when the total cannot be derived from this page.
+     */
+    private Page<ProductSummary> rankedPage(List<Long> productIds, Pageable pageable, LongSupplier total) {
+        if (productIds.isEmpty()) {
+            return PageableExecutionUtils.getPage(List.of(), pageable, total);
+        }
+        Map<Long, ProductSummary> byId = productRepository.findSummariesByIdIn(productIds).stream()
+                .collect(Collectors.toMap(ProductSummary::getId, Function.identity()));
+        List<ProductSummary> ranked = productIds.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        return PageableExecutionUtils.getPage(ranked, pageable, total);
+    }
+    
+    @Override
+    @Transactional
+    public Long backfillSearchText(Long afterId, int batchSize) {
+        List<ProductSummary> products = productRepository
+                .findSummariesWithoutSearchText(afterId, PageRequest.of(0, batchSize));
+        if (products.isEmpty()) {
+            return null;
+        }
+        
+        List<Long> productIds = products.stream().map(ProductSummary::getId).collect(Collectors.toList());
+        Map<Long, Map<String, String>> customFieldsByProduct = new HashMap<>();
+        for (ProductCustomFieldView field : productRepository.findCustomFieldsByProductIds(productIds)) {
+            customFieldsByProduct.computeIfAbsent(field.getProductId(), id -> new HashMap<>())
+                    .put(field.getFieldName(), field.getFieldValue());
+        }
+        
+        // Targeted updates, so edits saved while the batch runs are not overwritten with stale columns
+        for (ProductSummary product : products) {
+            productRepository.fillSearchText(product.getId(), ProductSearchText.of(product.getName(),
+                    product.getCategory(), product.getDescription(), customFieldsByProduct.get(product.getId())));
+        }
+        Long lastId = productIds.get(productIds.size() - 1);
+        log.info("Filled search text of {} products (up to product ID {})", products.size(), lastId);
+        return lastId;
+    }
+
+    @Override
+    public void enableFulltextSearch() {
+        if (!fulltextSearchEnabled) {
+            fulltextSearchEnabled = true;
+            log.info("Product keyword search now uses the FULLTEXT index");
+        }
+    }
+
+    /**
+     * Map a page of summaries to responses, loading custom fields for the whole page in one query
+     */
+    private Page<ProductResponse> toResponsePage(Page<ProductSummary> productPage) {
+        List<Long> productIds = productPage.getContent().stream()
+                .map(ProductSummary::getId)
+                .collect(Collectors.toList());
+        
+        Map<Long, Map<String, String>> customFieldsByProduct = new HashMap<>();
+        if (!productIds.isEmpty()) {
+            for (ProductCustomFieldView field : productRepository.findCustomFieldsByProductIds(productIds)) {
+                customFieldsByProduct.computeIfAbsent(field.getProductId(), id -> new HashMap<>())
+                        .put(field.getFieldName(), field.getFieldValue());
+            }
+        }
+        
+        return productPage.map(summary -> 
+                ProductResponse.fromSummary(summary, customFieldsByProduct.get(summary.getId()),
+                        productImageService.imagePathPrefix()));
+    }
+
     @Override
     @Transactional
     public void updateProductStock(Long shopId, Long productId, Integer quantity) {
@@ -164,5 +310,7 @@ public class ProductServiceImpl implements ProductService {
         
         productRepository.save(product);
         log.info("Updated stock for product id: {}, new stock: {}", productId, product.getStock());
+        responseCacheService.invalidateShop(shopId);
+        productSearchIndex.updateStock(shopId, productId, product.getStock());
     }
 } 
\ No newline at end of file
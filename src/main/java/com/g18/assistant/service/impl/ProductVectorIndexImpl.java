@@ -0,0 +1,342 @@
+package com.g18.assistant.service.impl;
+
+import com.g18.assistant.config.SemanticSearchConfig;
+import com.g18.assistant.dto.response.ProductResponse;
+import com.g18.assistant.repository.ProductRepository;
+import com.g18.assistant.repository.projection.ProductCustomFieldView;
+import com.g18.assistant.repository.projection.ProductSummary;
+import com.g18.assistant.search.HnswIndex;
+import com.g18.assistant.service.EmbeddingProvider;
+import com.g18.assistant.service.MetricsService;
+import com.g18.assistant.service.ProductImageService;
+import com.g18.assistant.service.ProductVectorIndex;
+import com.g18.assistant.util.Transactions;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Each shop has one index file that is opened on first use. Writes to a shop (product upserts, removals,
+ * reconciliation) run one at a time in submission order on a virtual thread, so embedding calls never
+ * block product requests and an older embedding cannot overwrite a newer one. Each vector is stored with a
+ * hash of the text it embeds. Reconciliation re-embeds only products whose text hashes differently, so stock
+ * and price changes cost nothing, and it also builds new indexes and catches up on changes made by other instances.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ProductVectorIndexImpl implements ProductVectorIndex {
+
+    private final SemanticSearchConfig searchConfig;
+    private final EmbeddingProvider embeddingProvider;
+    private final ProductRepository productRepository;
+    private final ProductImageService productImageService;
+    private final MetricsService metricsService;
+
+    private static final int RECONCILE_PAGE_SIZE = 500;
+
+    private final Map<Long, ShopVectors> shops = new ConcurrentHashMap<>();
+    private final ExecutorService indexExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private long providerFingerprint;
+
+    @PostConstruct
+    public void init() {
+        providerFingerprint = fingerprint(embeddingProvider.id());
+        metricsService.registerGauge("product_vectors.shops", shops::size);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        indexExecutor.shutdown();
+        try {
+            indexExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        shops.values().forEach(shop -> {
+            try {
+                shop.index.close();
+            } catch (IOException e) {
+                log.warn("Could not close vector index {}: {}", shop.index.path(), e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public List<Long> search(Long shopId, String query, int limit) {
+        if (!searchConfig.isEnabled() || query == null || query.isBlank() || limit <= 0) {
+            return List.of();
+        }
+        try {
+            HnswIndex index = shopFor(shopId).index;
+            if (index.size() == 0) {
+                return List.of();
+            }
+
+            float[] vector = embeddingProvider.embedQuery(query);
+            long start = System.nanoTime();
+            List<Long> productIds = index.search(vector, limit, searchConfig.getEfSearch()).stream()
+                    .filter(match -> match.score() >= searchConfig.getMinScore())
+                    .map(HnswIndex.Match::productId)
+                    .collect(Collectors.toList());
+            metricsService.recordLatency("product_vectors.search", System.nanoTime() - start);
+            return productIds;
+        } catch (Exception e) {
+            // Semantic matches are an addition to keyword matches, never a reason to fail the message
+            metricsService.increment("product_vectors.search_failed");
+            log.warn("Semantic product search failed for shop {}: {}", shopId, e.getMessage());
+            return List.of();
+        }
+    }
+
+    @Override
+    public void upsert(ProductResponse product) {
+        if (!searchConfig.isEnabled()) {
+            return;
+        }
+        Long shopId = product.getShopId();
+        Transactions.afterCommit(() -> submit(shopId, shop -> {
+            if (Boolean.FALSE.equals(product.getActive())) {
+                shop.index.remove(product.getId());
+                return;
+            }
+            String text = embeddingText(product);
+            float[] vector = embeddingProvider.embedDocuments(List.of(text)).get(0);
+            shop.index.put(product.getId(), fingerprint(text), vector);
+            metricsService.increment("product_vectors.indexed");
+        }));
+    }
+
+    @Override
+    public void remove(Long shopId, Long productId) {
+        if (!searchConfig.isEnabled()) {
+            return;
+        }
+        Transactions.afterCommit(() -> submit(shopId, shop -> shop.index.remove(productId)));
+    }
+
+    /**
+     * Bring every open index in line with the database and persist it
+     */
+    @Scheduled(initialDelay = 600000, fixedDelay = 600000) // Every 10 minutes
+    public void reconcileOpenShops() {
+        if (!searchConfig.isEnabled()) {
+            return;
+        }
+        shops.keySet().forEach(shopId -> submit(shopId, shop -> reconcile(shopId, shop)));
+    }
+
+    private ShopVectors shopFor(Long shopId) {
+        return shops.computeIfAbsent(shopId, id -> {
+            try {
+                Path dir = Paths.get(searchConfig.getDataDir());
+                Files.createDirectories(dir);
+                HnswIndex index = HnswIndex.open(dir.resolve("shop-" + id + ".hnsw"), embeddingProvider.dimensions(),
+                        searchConfig.getM(), searchConfig.getEfConstruction(), providerFingerprint);
+                ShopVectors shop = new ShopVectors(index);
+                // Build or catch up in the background; searches use whatever is indexed meanwhile
+                shop.submit(guarded(id, shop, target -> reconcile(id, target)), indexExecutor);
+                return shop;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void submit(Long shopId, ShopTask task) {
+        ShopVectors shop;
+        try {
+            shop = shopFor(shopId);
+        } catch (UncheckedIOException e) {
+            log.error("Could not open vector index of shop {}: {}", shopId, e.getMessage());
+            return;
+        }
+        shop.submit(guarded(shopId, shop, task), indexExecutor);
+    }
+
+    /**
+     * A failed write must not break the shop's write chain
+     */
+    private Runnable guarded(Long shopId, ShopVectors shop, ShopTask task) {
+        return () -> {
+            try {
+                task.run(shop);
+            } catch (Exception e) {
+                metricsService.increment("product_vectors.update_failed");
+                log.warn("Vector index update failed for shop {}, the next reconciliation retries it: {}",
+                        shopId, e.getMessage());
+            }
+        };
+    }
+
+    private void reconcile(Long shopId, ShopVectors shop) {
+        long start = System.nanoTime();
+        HnswIndex index = shop.index;
+        Map<Long, Long> indexed = index.versions();
+        List<ProductResponse> stale = new ArrayList<>();
+        Long afterId = 0L;
+        List<ProductSummary> page;
+        do {
+            page = productRepository.findSummariesByShopIdAfter(shopId, afterId, PageRequest.of(0, RECONCILE_PAGE_SIZE));
+            for (ProductResponse product : withCustomFields(page)) {
+                Long version = indexed.remove(product.getId());
+                if (version == null || version != fingerprint(embeddingText(product))) {
+                    stale.add(product);
+                }
+            }
+            if (!page.isEmpty()) {
+                afterId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == RECONCILE_PAGE_SIZE);
+        // Whatever is left was deleted or deactivated
+        indexed.keySet().forEach(index::remove);
+
+        int batchSize = searchConfig.getEmbedBatchSize();
+        try {
+            for (int from = 0; from < stale.size(); from += batchSize) {
+                List<ProductResponse> batch = stale.subList(from, Math.min(stale.size(), from + batchSize));
+                List<String> texts = batch.stream().map(ProductVectorIndexImpl::embeddingText).collect(Collectors.toList());
+                List<float[]> vectors = embeddingProvider.embedDocuments(texts);
+                for (int i = 0; i < batch.size(); i++) {
+                    index.put(batch.get(i).getId(), fingerprint(texts.get(i)), vectors.get(i));
+                }
+                metricsService.increment("product_vectors.indexed", batch.size());
+            }
+            if (index.deletedRatio() > searchConfig.getCompactDeletedRatio()) {
+                compact(shopId, shop);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            shop.index.flush();
+        }
+
+        if (!stale.isEmpty()) {
+            metricsService.recordLatency("product_vectors.reconcile", System.nanoTime() - start);
+            log.info("Embedded {} products of shop {} ({} indexed)", stale.size(), shopId, shop.index.size());
+        }
+    }
+
+    /**
+     * Rewrite the index file with only the current nodes; vectors are copied, not embedded again
+     */
+    private void compact(Long shopId, ShopVectors shop) throws IOException {
+        Path path = shop.index.path();
+        Path compactPath = path.resolveSibling(path.getFileName() + ".compact");
+        Files.deleteIfExists(compactPath);
+        try (HnswIndex compacted = HnswIndex.open(compactPath, embeddingProvider.dimensions(),
+                searchConfig.getM(), searchConfig.getEfConstruction(), providerFingerprint)) {
+            IOException[] failure = new IOException[1];
+            shop.index.forEach((productId, version, vector) -> {
+                try {
+                    compacted.put(productId, version, vector);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+        shop.index.close();
+        Files.move(compactPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        shop.index = HnswIndex.open(path, embeddingProvider.dimensions(),
+                searchConfig.getM(), searchConfig.getEfConstruction(), providerFingerprint);
+        log.info("Compacted vector index of shop {}", shopId);
+    }
+
+    /**
+     * Add custom fields to a page of summaries, for embedding
+     */
+    private List<ProductResponse> withCustomFields(List<ProductSummary> summaries) {
+        if (summaries.isEmpty()) {
+            return List.of();
+        }
+        List<Long> productIds = summaries.stream().map(ProductSummary::getId).collect(Collectors.toList());
+        Map<Long, Map<String, String>> customFieldsByProduct = new HashMap<>();
+        for (ProductCustomFieldView field : productRepository.findCustomFieldsByProductIds(productIds)) {
+            customFieldsByProduct.computeIfAbsent(field.getProductId(), id -> new HashMap<>())
+                    .put(field.getFieldName(), field.getFieldValue());
+        }
+        List<ProductResponse> products = new ArrayList<>(summaries.size());
+        for (ProductSummary summary : summaries) {
+            products.add(ProductResponse.fromSummary(summary, customFieldsByProduct.get(summary.getId()),
+                        productImageService.imagePathPrefix()));
+        }
+        return products;
+    }
+
+    private static String embeddingText(ProductResponse product) {
+        StringBuilder text = new StringBuilder(product.getName());
+        if (product.getCategory() != null) {
+            text.append("\nDanh mục: ").append(product.getCategory());
+        }
+        if (product.getDescription() != null && !product.getDescription().isBlank()) {
+            text.append("\n").append(product.getDescription());
+        }
+        if (product.getCustomFields() != null) {
+            product.getCustomFields().forEach((field, value) -> text.append("\n").append(field).append(": ").append(value));
+        }
+        return text.toString();
+    }
+
+    /**
+     * 64 bits of the SHA-256 of a text, used for provider IDs and as the version of embedded text
+     */
+    private static long fingerprint(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ShopTask {
+        void run(ShopVectors shop) throws IOException;
+    }
+
+    private static final class ShopVectors {
+
+        // Replaced by compaction, which only runs on the shop's write chain
+        private volatile HnswIndex index;
+        private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+
+        ShopVectors(HnswIndex index) {
+            this.index = index;
+        }
+
+        /**
+         * Run after every write submitted before it
+         */
+        synchronized void submit(Runnable write, ExecutorService executor) {
+            tail = tail.thenRunAsync(write, executor);
+        }
+    }
+}
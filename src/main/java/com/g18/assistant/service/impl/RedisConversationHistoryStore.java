@@ -0,0 +1,119 @@
+package com.g18.assistant.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.g18.assistant.config.ConversationHistoryConfig;
+import com.g18.assistant.service.ConversationHistoryService.ConversationEntry;
+import com.g18.assistant.service.ConversationHistoryStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * History store shared by all nodes: one Redis list per conversation, newest entry first.
+ * Each append is a single pipelined LPUSH + LTRIM + EXPIRE, so the list stays bounded and an
+ * idle conversation expires on its own when the session times out.
+ */
+@Service
+@ConditionalOnProperty(prefix = "app.conversation-history", name = "store", havingValue = "redis")
+@RequiredArgsConstructor
+@Slf4j
+public class RedisConversationHistoryStore implements ConversationHistoryStore {
+
+    private static final String HISTORY_PREFIX = "conversation_history:";
+
+    private final RedisTemplate<String, String> redisTemplateString;
+    private final ObjectMapper objectMapper;
+    private final ConversationHistoryConfig historyConfig;
+
+    @Override
+    public void append(String key, ConversationEntry entry) {
+        byte[] redisKey = StringRedisSerializer.UTF_8.serialize(HISTORY_PREFIX + key);
+        byte[] value = StringRedisSerializer.UTF_8.serialize(serialize(entry));
+        long maxIndex = historyConfig.getMaxEntries() - 1;
+        long ttlSeconds = historyConfig.getSessionTimeout().toSeconds();
+
+        try {
+            redisTemplateString.executePipelined((RedisCallback<Object>) connection -> {
+                connection.listCommands().lPush(redisKey, value);
+                connection.listCommands().lTrim(redisKey, 0, maxIndex);
+                connection.keyCommands().expire(redisKey, ttlSeconds);
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("Error appending conversation history for {}: {}", key, e.getMessage());
+        }
+    }
+
+    @Override
+    public List<ConversationEntry> getRecent(String key, int limit, long notBeforeMillis) {
+        List<String> values;
+        try {
+            values = redisTemplateString.opsForList().range(HISTORY_PREFIX + key, 0, limit - 1);
+        } catch (Exception e) {
+            log.error("Error reading conversation history for {}: {}", key, e.getMessage());
+            return new ArrayList<>();
+        }
+        if (values == null || values.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<ConversationEntry> entries = new ArrayList<>(values.size());
+        for (String value : values) {
+            ConversationEntry entry = deserialize(value, notBeforeMillis);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        // The list is stored newest first
+        Collections.reverse(entries);
+        return Collections.unmodifiableList(entries);
+    }
+
+    @Override
+    public void clear(String key) {
+        try {
+            redisTemplateString.delete(HISTORY_PREFIX + key);
+        } catch (Exception e) {
+            log.error("Error clearing conversation history for {}: {}", key, e.getMessage());
+        }
+    }
+
+    private String serialize(ConversationEntry entry) {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("role", entry.role);
+        node.put("message", entry.message);
+        node.put("timestamp", entry.timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        return node.toString();
+    }
+
+    /**
+     * @return The entry, or null if it is unreadable or older than notBeforeMillis
+     */
+    private ConversationEntry deserialize(String value, long notBeforeMillis) {
+        try {
+            JsonNode node = objectMapper.readTree(value);
+            long epochMillis = node.path("timestamp").asLong();
+            if (epochMillis < notBeforeMillis) {
+                return null;
+            }
+            LocalDateTime timestamp = LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+            return new ConversationEntry(node.path("role").asText(), node.path("message").asText(), timestamp);
+        } catch (Exception e) {
+            log.warn("Skipping unreadable conversation history entry: {}", e.getMessage());
+            return null;
+        }
+    }
+}
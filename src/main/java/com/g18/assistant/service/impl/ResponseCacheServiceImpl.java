@@ -0,0 +1,245 @@
+package com.g18.assistant.service.impl;
+
+import com.g18.assistant.config.ResponseCacheConfig;
+import com.g18.assistant.service.MetricsService;
+import com.g18.assistant.service.ResponseCacheService;
+import com.g18.assistant.util.Transactions;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ResponseCacheServiceImpl implements ResponseCacheService {
+
+    private static final String RESPONSE_PREFIX = "ai_response:";
+    private static final String VERSION_PREFIX = "ai_catalog_version:";
+
+    // Messages about orders, delivery details or earlier turns depend on the customer, not just the shop
+    private static final Pattern PERSONAL_PATTERN = Pattern.compile(
+        "đơn|don hang|order|đặt|dat hang|mua|hủy|huy|địa chỉ|dia chi|giao đến|giao tới|sđt|sdt|số điện thoại|phone|email|" +
+        "tên tôi|tên mình|tên em|tôi tên|mình tên|em tên|của tôi|của mình|của em|vừa|lúc nãy|trước đó|ở trên|cái đó|cái này|\\d{6,}|@");
+    private static final Pattern PUNCTUATION = Pattern.compile("[\\p{Punct}\\p{So}]+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final int MAX_CACHEABLE_LENGTH = 200;
+
+    private final RedisTemplate<String, String> redisTemplateString;
+    private final ResponseCacheConfig cacheConfig;
+    private final MetricsService metricsService;
+
+    private final Map<Long, CatalogVersion> catalogVersions = new ConcurrentHashMap<>();
+    // Shops whose last version bump failed, with the time of the failure. Their cached replies may
+    // describe the old catalog, so the cache is bypassed until a bump succeeds.
+    private final Map<Long, Long> failedBumps = new ConcurrentHashMap<>();
+    private LocalCache localCache;
+
+    @PostConstruct
+    public void init() {
+        localCache = new LocalCache(cacheConfig.getLocalMaxSize());
+        metricsService.registerGauge("ai.cache.local.size", localCache::size);
+        metricsService.registerGauge("ai.cache.hit_rate", this::hitRate);
+    }
+
+    @Override
+    public boolean isCacheable(String message) {
+        if (!cacheConfig.isEnabled() || message == null) {
+            return false;
+        }
+        String lower = message.toLowerCase(Locale.ROOT);
+        boolean cacheable = !lower.isBlank()
+                && lower.length() <= MAX_CACHEABLE_LENGTH
+                && !PERSONAL_PATTERN.matcher(lower).find();
+        if (!cacheable) {
+            metricsService.increment("ai.cache.bypass");
+        }
+        return cacheable;
+    }
+
+    @Override
+    public String get(Long shopId, String message) {
+        if (!versionReliable(shopId)) {
+            metricsService.increment("ai.cache.bypass");
+            return null;
+        }
+        String key = cacheKey(shopId, message);
+
+        String cached = localCache.get(key);
+        if (cached != null) {
+            metricsService.increment("ai.cache.local.hit");
+            return cached;
+        }
+
+        try {
+            cached = redisTemplateString.opsForValue().get(key);
+        } catch (Exception e) {
+            log.warn("Error reading AI response cache for shop {}: {}", shopId, e.getMessage());
+        }
+        if (cached != null) {
+            metricsService.increment("ai.cache.redis.hit");
+            localCache.put(key, cached, expiresAt());
+            return cached;
+        }
+
+        metricsService.increment("ai.cache.miss");
+        return null;
+    }
+
+    @Override
+    public void put(Long shopId, String message, String response) {
+        if (!versionReliable(shopId)) {
+            return;
+        }
+        String key = cacheKey(shopId, message);
+        localCache.put(key, response, expiresAt());
+        try {
+            redisTemplateString.opsForValue().set(key, response, cacheConfig.getTtl());
+        } catch (Exception e) {
+            log.warn("Error writing AI response cache for shop {}: {}", shopId, e.getMessage());
+        }
+    }
+
+    @Override
+    public void invalidateShop(Long shopId) {
+        // Bump only once the product change is visible, otherwise a concurrent miss could cache the old catalog
+        Transactions.afterCommit(() -> bumpVersion(shopId));
+    }
+
+    private boolean bumpVersion(Long shopId) {
+        Long version;
+        try {
+            version = redisTemplateString.opsForValue().increment(VERSION_PREFIX + shopId);
+        } catch (Exception e) {
+            log.warn("Error bumping catalog version in Redis for shop {}: {}", shopId, e.getMessage());
+            version = null;
+        }
+        if (version == null) {
+            // A local-only version would lose to the older Redis value on the next read and serve stale replies
+            failedBumps.put(shopId, System.nanoTime());
+            metricsService.increment("ai.cache.invalidation_failed");
+            return false;
+        }
+        failedBumps.remove(shopId);
+        catalogVersions.put(shopId, new CatalogVersion(version, System.nanoTime()));
+        metricsService.increment("ai.cache.invalidations");
+        log.info("Invalidated AI response cache for shop {} (catalog version {})", shopId, version);
+        return true;
+    }
+
+    /**
+     * @return false while the shop's last invalidation has not reached Redis; the bump is retried
+     *         at most once per version refresh interval
+     */
+    private boolean versionReliable(Long shopId) {
+        Long failedAt = failedBumps.get(shopId);
+        if (failedAt == null) {
+            return true;
+        }
+        if (System.nanoTime() - failedAt < cacheConfig.getVersionRefreshInterval().toNanos()) {
+            return false;
+        }
+        return bumpVersion(shopId);
+    }
+
+    private long currentVersion(Long shopId) {
+        CatalogVersion local = catalogVersions.get(shopId);
+        if (local != null && System.nanoTime() - local.readAtNanos() < cacheConfig.getVersionRefreshInterval().toNanos()) {
+            return local.version();
+        }
+
+        long version = local != null ? local.version() : 0;
+        try {
+            String stored = redisTemplateString.opsForValue().get(VERSION_PREFIX + shopId);
+            version = stored != null ? Long.parseLong(stored) : 0;
+        } catch (Exception e) {
+            log.warn("Error reading catalog version for shop {}: {}", shopId, e.getMessage());
+        }
+        catalogVersions.put(shopId, new CatalogVersion(version, System.nanoTime()));
+        return version;
+    }
+
+    private String cacheKey(Long shopId, String message) {
+        return RESPONSE_PREFIX + shopId + ":" + currentVersion(shopId) + ":" + sha256(normalize(message));
+    }
+
+    /**
+     * Lowercase, drop punctuation/emoji and collapse whitespace so "Còn hàng không?" and "còn hàng không" share an entry
+     */
+    private static String normalize(String message) {
+        String lower = message.toLowerCase(Locale.ROOT);
+        return WHITESPACE.matcher(PUNCTUATION.matcher(lower).replaceAll(" ")).replaceAll(" ").trim();
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private long expiresAt() {
+        return System.nanoTime() + cacheConfig.getTtl().toNanos();
+    }
+
+    private double hitRate() {
+        long hits = metricsService.getCount("ai.cache.local.hit") + metricsService.getCount("ai.cache.redis.hit");
+        long total = hits + metricsService.getCount("ai.cache.miss");
+        return total > 0 ? (double) hits / total : 0.0;
+    }
+
+    private record CatalogVersion(long version, long readAtNanos) {
+    }
+
+    /**
+     * Size-bounded LRU with per-entry expiry, guarded by its own lock
+     */
+    private static final class LocalCache {
+        private final Map<String, Entry> entries;
+
+        private LocalCache(int maxSize) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        private synchronized String get(String key) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (System.nanoTime() - entry.expiresAtNanos() > 0) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.value();
+        }
+
+        private synchronized void put(String key, String value, long expiresAtNanos) {
+            entries.put(key, new Entry(value, expiresAtNanos));
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+
+        private record Entry(String value, long expiresAtNanos) {
+        }
+    }
+}
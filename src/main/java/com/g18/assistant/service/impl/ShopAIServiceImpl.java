@@ -4,6 +4,8 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.g18.assistant.config.AiPipelineConfig;
+import com.g18.assistant.config.ProductIndexConfig;
 import com.g18.assistant.dto.OrderDTO;
 import com.g18.assistant.dto.request.CreateOrderRequest;
 import com.g18.assistant.dto.request.UpdateOrderStatusRequest;
@@ -12,55 +14,144 @@ import com.g18.assistant.entity.Customer;
 import com.g18.assistant.entity.Order.OrderStatus;
 import com.g18.assistant.entity.Product;
 import com.g18.assistant.entity.Shop;
+import com.g18.assistant.exception.GeminiApiException;
+import com.g18.assistant.gemini.GeminiCodec;
+import com.g18.assistant.gemini.GeminiRequestTemplate;
 import com.g18.assistant.repository.CustomerRepository;
 import com.g18.assistant.repository.ProductRepository;
 import com.g18.assistant.service.ConversationHistoryService;
 import com.g18.assistant.service.CustomerService;
+import com.g18.assistant.service.GeminiClient;
+import com.g18.assistant.service.GeminiContextCache;
+import com.g18.assistant.service.MetricsService;
 import com.g18.assistant.service.OrderService;
 import com.g18.assistant.service.PendingOrderService;
+import com.g18.assistant.service.ProductSearchIndex;
 import com.g18.assistant.service.ProductService;
+import com.g18.assistant.service.ProductVectorIndex;
+import com.g18.assistant.service.ResponseCacheService;
 import com.g18.assistant.service.ShopAIService;
 import com.g18.assistant.service.ShopService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class ShopAIServiceImpl implements ShopAIService {
 
-    private final RestTemplate restTemplate;
+    private final GeminiClient geminiClient;
     private final ObjectMapper objectMapper;
     private final ProductService productService;
+    private final ProductSearchIndex productSearchIndex;
+    private final ProductVectorIndex productVectorIndex;
+    private final ProductIndexConfig productIndexConfig;
     private final ShopService shopService;    private final CustomerRepository customerRepository;
     private final ProductRepository productRepository;
     private final ConversationHistoryService conversationHistoryService;
     private final CustomerService customerService;
     private final OrderService orderService;
     private final PendingOrderService pendingOrderService;
-
-    @Value("${app.gemini.api-key}")
-    private String geminiApiKey;
+    private final AiPipelineConfig aiPipelineConfig;
+    private final MetricsService metricsService;
+    private final ResponseCacheService responseCacheService;
+    private final GeminiContextCache geminiContextCache;
+    private final GeminiCodec geminiCodec;
     
+    // Virtual threads for DB reads that run while Gemini is being called
+    private final ExecutorService prefetchExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private static final Set<String> CACHEABLE_INTENTS = Set.of(
+        "GETPRODUCT", "SEARCHPRODUCT", "SHOWPRODUCT", "SENDIMAGE", "GENERAL_QUERY");
+
+    private static final java.util.regex.Pattern GREETING_PATTERN = java.util.regex.Pattern.compile(
+        "^(xin chào|chào|chao|hello|hi|hey|alo|helo|shop ơi|ad ơi|good (morning|afternoon|evening))\\b");
+
+    // Fields of a reply that concern only the customer it was generated for
+    private static final List<String> SHARED_RESPONSE_EXCLUDED_FIELDS = List.of(
+        "extracted_address", "extracted_phone", "action_required", "action_details",
+        "missing_information", "create_order");
+
+    // Standard reciprocal rank fusion constant; damps the weight of the very top ranks
+    private static final int RANK_FUSION_K = 60;
+
     @Value("${app.gemini.chat-model-id}")
     private String geminiChatModel;
-      @Value("${app.gemini.api-url}")
-    private String geminiApiUrl;
+    
+    // Schemas and generation settings never change, so each request only copies their bytes
+    private GeminiRequestTemplate structuredTemplate;
+    private GeminiRequestTemplate structuredStreamingTemplate;
+    private GeminiRequestTemplate recommendationTemplate;
+    private GeminiRequestTemplate orderProcessingTemplate;
+    private GeminiRequestTemplate deliveryValidationTemplate;
+    private GeminiRequestTemplate intentTemplate;
+    
+    @PostConstruct
+    public void initRequestTemplates() {
+        structuredTemplate = geminiCodec.template(buildStructuredGenerationConfig(false));
+        structuredStreamingTemplate = geminiCodec.template(buildStructuredGenerationConfig(true));
+        recommendationTemplate = geminiCodec.template(buildRecommendationGenerationConfig());
+        orderProcessingTemplate = geminiCodec.template(buildOrderProcessingGenerationConfig());
+        deliveryValidationTemplate = geminiCodec.template(buildDeliveryValidationGenerationConfig());
+        intentTemplate = geminiCodec.template(buildIntentGenerationConfig());
+    }
     
     @Override
     public String processCustomerMessage(Long shopId, String customerId, String customerName, String message) {
+        return processCustomerMessageStreaming(shopId, customerId, customerName, message, null);
+    }
+    
+    @Override
+    public String processCustomerMessageStreaming(Long shopId, String customerId, String customerName, String message,
+                                                  Consumer<String> onPartialText) {
+        AiPipelineConfig.PipelineMode mode = aiPipelineConfig.modeFor(shopId);
+        PipelineTrace trace = new PipelineTrace();
+        long startNanos = System.nanoTime();
+        
+        // Time to first token is what the customer actually waits for in streaming mode
+        Consumer<String> listener = null;
+        if (onPartialText != null) {
+            AtomicBoolean firstToken = new AtomicBoolean(true);
+            listener = text -> {
+                if (firstToken.compareAndSet(true, false)) {
+                    metricsService.recordLatency("ai.stream.first_token", System.nanoTime() - startNanos);
+                }
+                onPartialText.accept(text);
+            };
+        }
+        
+        try {
+            return handleCustomerMessage(shopId, customerId, customerName, message, mode, trace, listener);
+        } finally {
+            String metricName = "ai.pipeline." + mode.name().toLowerCase() + "." + trace.path;
+            metricsService.recordLatency(metricName, System.nanoTime() - startNanos);
+            metricsService.increment("ai.gemini.calls", trace.geminiCalls);
+        }
+    }
+    
+    private String handleCustomerMessage(Long shopId, String customerId, String customerName, String message,
+                                         AiPipelineConfig.PipelineMode mode, PipelineTrace trace,
+                                         Consumer<String> onPartialText) {
         try {
             // Track if an order has been created for this message to prevent duplicates
             boolean orderCreated = false;
@@ -71,34 +162,13 @@ public class ShopAIServiceImpl implements ShopAIService {
             
             // Extract potentially useful customer information from the message
             Map<String, String> extractedInfo = customerService.extractCustomerInfoFromMessage(message);
-              // Find or create a customer record
-            Customer customer = null;
             
-            // For Telegram users, use email pattern: telegram_{username}@example.com
-            String customerEmail = null;
-            if (customerId != null && !customerId.isEmpty()) {
-                // Generate email pattern for Telegram user
-                customerEmail = "telegram_" + customerId + "@example.com";
-                
-                // Try to find by email pattern first
-                customer = customerService.findByEmailAndShopId(customerEmail, shopId);
-                
-                // If still not found, create a new customer with email pattern
-                if (customer == null) {
-                    customer = customerService.createNewCustomer(
-                        shopId, 
-                        customerId, 
-                        customerName,
-                        customerEmail
-                    );
-                }
-                
-                // Update customer with any new information from the message
-                if (!extractedInfo.isEmpty()) {
-                    customerService.updateCustomerInfo(customer.getId(), extractedInfo);
-                    log.info("Updated customer information from message for customer ID: {}, Info: {}", customer.getId(), extractedInfo);
-                }
-            }
+            // Start the customer lookup/creation and the shop context reads on virtual threads right away,
+            // so the DB time overlaps with the Gemini call instead of following it
+            CompletableFuture<Customer> customerFuture = prefetchCustomer(shopId, customerId, customerName);
+            ShopContextPrefetch shopContext = aiPipelineConfig.isPrefetchShopContext() 
+                    ? prefetchShopContext(shopId, message) 
+                    : null;
             
             // Check if the message is about asking what they've asked before or similar queries
             String lowerMessage = message.toLowerCase();
@@ -147,11 +217,30 @@ public class ShopAIServiceImpl implements ShopAIService {
             // Check if this message is likely just providing an address (quick check before AI call)
             boolean isLikelyAddressOnly = isProbablyAddressOnly(message, history);
 
-            // First, analyze the intent without loading all shop data
-            String intentAnalysis = analyzeMessageIntent(message, history);
-            JsonNode analysisJson = objectMapper.readTree(intentAnalysis);
-            if (analysisJson.has("error") && analysisJson.get("error").asBoolean()) {
-                return intentAnalysis;
+            // In fused mode only greetings, order status checks and address replies go through the
+            // intent call; everything else is answered by a single structured request with shop context
+            boolean singleCall = mode == AiPipelineConfig.PipelineMode.FUSED
+                    && !isAnswerableFromIntentCall(message, isLikelyAddressOnly);
+            
+            String intentAnalysis = null;
+            JsonNode analysisJson = objectMapper.createObjectNode();
+            if (!singleCall) {
+                // First, analyze the intent without loading all shop data
+                intentAnalysis = analyzeMessageIntent(message, history);
+                trace.geminiCalls++;
+                analysisJson = objectMapper.readTree(intentAnalysis);
+                if (analysisJson.has("error") && analysisJson.get("error").asBoolean()) {
+                    return intentAnalysis;
+                }
+            }
+            
+            // Join the customer lookup started when the message arrived
+            Customer customer = joinPrefetch(customerFuture);
+            
+            // Update customer with any new information from the message
+            if (customer != null && !extractedInfo.isEmpty()) {
+                customerService.updateCustomerInfo(customer.getId(), extractedInfo);
+                log.info("Updated customer information from message for customer ID: {}, Info: {}", customer.getId(), extractedInfo);
             }
             
             // Extract address and phone from AI's analysis if available
@@ -255,24 +344,23 @@ public class ShopAIServiceImpl implements ShopAIService {
                   // If this is just an address response but no explicit order creation, check for pending orders
                 if (!orderCreated) {
                     if (pendingOrder != null) {
-                        // If no explicit create_order field but we have a pending order, use that
-                        Long productId = pendingOrder.getProductId();
-                        int quantity = pendingOrder.getQuantity();
-                        
                         // Check if we have a valid address now
                         boolean hasValidAddress = extractedAddress != null || 
                                                  (customer.getAddress() != null && 
                                                   !customer.getAddress().isEmpty() && 
                                                   !customer.getAddress().equals("Đang cập nhật"));
                         
-                        if (hasValidAddress) {
+                        // Take the pending order atomically so a retry on another node cannot create it twice
+                        PendingOrderService.PendingOrderInfo takenOrder = hasValidAddress
+                                ? pendingOrderService.takePendingOrder(customerKey) : null;
+                        if (takenOrder != null) {
+                            Long productId = takenOrder.getProductId();
+                            int quantity = takenOrder.getQuantity();
+                            
                             // Create the order using the pending information
                             saveOrderFromAI(customer.getId(), productId, quantity);
                             orderCreated = true;                            log.info("Created order from pending request after address response: Product ID: {}, Quantity: {}", 
                                     productId, quantity);
-                            
-                            // Remove the pending order
-                            pendingOrderService.removePendingOrder(customerKey);
                         }
                     }
                 }
@@ -376,24 +464,61 @@ public class ShopAIServiceImpl implements ShopAIService {
             }
             
             boolean needsShopContext = analysisJson.path("needs_shop_context").asBoolean(false);
-            if (!needsShopContext || "GENERAL_QUERY".equals(detectedIntent)) {
+            if (!singleCall && (!needsShopContext || "GENERAL_QUERY".equals(detectedIntent))) {
                 log.info("Simple query detected, responding without shop context: {}", detectedIntent);
+                if (shopContext != null) {
+                    metricsService.increment("ai.prefetch.wasted");
+                }
                 return intentAnalysis;
             }
-            log.info("Complex query detected, fetching shop context: {}", detectedIntent);
-            Shop shop = shopService.getShopByIdForBotServices(shopId);
-            Pageable pageable = PageRequest.of(0, 5);
-            List<ProductResponse> products = new ArrayList<>(productService.getShopProducts(shopId, pageable).getContent());
-            
-            // Lấy danh sách thể loại sản phẩm
-            List<String> categories = productService.getShopCategories(shopId);
-            // Tạo prompt với lịch sử hội thoại và danh sách thể loại
-            String prompt = historyStr + buildAIPrompt(shop, products, customer, customerName, message, categories);
-            String aiResponse = callGeminiWithStructuredFormat(prompt);
+            if (singleCall) {
+                log.info("Fused pipeline: answering with a single structured request for shop {}", shopId);
+            } else {
+                log.info("Complex query detected, fetching shop context: {}", detectedIntent);
+            }
+            // Generic product questions that open a conversation are shared across customers of the shop;
+            // follow-ups depend on the history and anything tied to a pending order goes to Gemini every time.
+            // The history always holds the message just added. Only the two-call pipeline knows the intent
+            // up front, and only product-info intents are shared, so anything that may order gets the full prompt.
+            boolean cacheable = !singleCall && CACHEABLE_INTENTS.contains(detectedIntent)
+                    && pendingOrder == null && history.size() <= 1 && responseCacheService.isCacheable(message);
+            String aiResponse = cacheable ? responseCacheService.get(shopId, message) : null;
+            boolean cachedReply = aiResponse != null;
+            
+            if (cachedReply) {
+                log.info("Answering from AI response cache for shop {}", shopId);
+                trace.path = "cached";
+            } else {
+                if (shopContext == null) {
+                    shopContext = prefetchShopContext(shopId, message);
+                } else {
+                    metricsService.increment("ai.prefetch.used");
+                }
+                Shop shop = joinPrefetch(shopContext.shop());
+                PromptProducts products = joinPrefetch(shopContext.products());
+                
+                // Lấy danh sách thể loại sản phẩm
+                List<String> categories = joinPrefetch(shopContext.categories());
+                // Tạo prompt với lịch sử hội thoại và danh sách thể loại.
+                // A reply that may be cached is written without this customer's data, since others will see it.
+                ShopPrompt prompt = cacheable
+                        ? buildAIPrompt(shop, products, null, null, message, categories, "")
+                        : buildAIPrompt(shop, products, customer, customerName, message, categories, historyStr);
+                aiResponse = callGeminiWithStructuredFormat(prompt, onPartialText);
+                trace.geminiCalls++;
+                trace.path = singleCall ? "single_call" : "second_call";
+                
+                String shareable = cacheable ? toShareableResponse(aiResponse) : null;
+                if (shareable != null) {
+                    responseCacheService.put(shopId, message, shareable);
+                }
+            }
             
             // Process order if the AI identified the intent as PLACEORDER
             try {
-                aiResponseJson = objectMapper.readTree(aiResponse);
+                // A shared reply, cached or written for the cache, belongs to no customer in particular,
+                // so none of its fields act on this one
+                aiResponseJson = cacheable ? objectMapper.createObjectNode() : objectMapper.readTree(aiResponse);
                 
                 // Check if there are additional address/phone values in the full AI response
                 if (aiResponseJson.has("extracted_address") && !aiResponseJson.get("extracted_address").isNull() 
@@ -486,24 +611,23 @@ public class ShopAIServiceImpl implements ShopAIService {
                             // Remove any pending orders
                             pendingOrderService.removePendingOrder(customerKey);
                         }                    } else if (pendingOrder != null) {
-                        // If no explicit create_order field but we have a pending order, use that
-                        Long productId = pendingOrder.getProductId();
-                        int quantity = pendingOrder.getQuantity();
-                        
                         // Check if we have a valid address now
                         boolean hasValidAddress = extractedAddress != null || 
                                                 (customer.getAddress() != null && 
                                                 !customer.getAddress().isEmpty() && 
                                                 !customer.getAddress().equals("Đang cập nhật"));
                         
-                        if (hasValidAddress) {
+                        // Take the pending order atomically so a retry on another node cannot create it twice
+                        PendingOrderService.PendingOrderInfo takenOrder = hasValidAddress
+                                ? pendingOrderService.takePendingOrder(customerKey) : null;
+                        if (takenOrder != null) {
+                            Long productId = takenOrder.getProductId();
+                            int quantity = takenOrder.getQuantity();
+                            
                             // Create the order using the pending information
                             saveOrderFromAI(customer.getId(), productId, quantity);
                             orderCreated = true;                            log.info("Created order from pending request after full AI address response: Product ID: {}, Quantity: {}", 
                                     productId, quantity);
-                            
-                            // Remove the pending order
-                            pendingOrderService.removePendingOrder(customerKey);
                         }
                     }
                 }
@@ -834,18 +958,13 @@ public class ShopAIServiceImpl implements ShopAIService {
             List<ProductResponse> products = new ArrayList<>(productService.getShopProducts(shopId, pageable).getContent());
             
             // If we have a search query, try to find more specific products
+            List<ProductResponse> searchResults = List.of();
             if (customerQuery != null && !customerQuery.isEmpty()) {
-                List<ProductResponse> searchResults = new ArrayList<>(
-                        productService.searchShopProducts(shopId, customerQuery, pageable).getContent());
-                
-                // If we found specific products, prioritize them
-                if (!searchResults.isEmpty()) {
-                    products = searchResults;
-                }
+                searchResults = findRelevantProducts(shopId, customerQuery);
             }
             
             // Create AI prompt for product recommendations
-            String prompt = buildProductRecommendationPrompt(shop, products, customerQuery);
+            ShopPrompt prompt = buildProductRecommendationPrompt(shop, products, searchResults, customerQuery);
             
             // Call Gemini API with structured product recommendation format
             return callGeminiForProductRecommendations(prompt);
@@ -879,7 +998,7 @@ public class ShopAIServiceImpl implements ShopAIService {
             }
             
             // Create AI prompt for order processing
-            String prompt = buildOrderProcessingPrompt(shop, customer, orderRequest);
+            ShopPrompt prompt = buildOrderProcessingPrompt(shop, customer, orderRequest);
             
             // Call Gemini API with structured order processing format
             return callGeminiForOrderProcessing(prompt);
@@ -906,9 +1025,12 @@ public class ShopAIServiceImpl implements ShopAIService {
     }
     
     /**
-     * Build a comprehensive prompt for the AI with context about the shop, products, and customer
+     * Build a comprehensive prompt for the AI with context about the shop, products, and customer.
+     * Shop, categories and instructions form the shared context; the products selected for this message,
+     * history, customer and message the request.
      */
-    private String buildAIPrompt(Shop shop, List<ProductResponse> products, Customer customer, String customerName, String message, List<String> categories) {
+    private ShopPrompt buildAIPrompt(Shop shop, PromptProducts products, Customer customer, String customerName,
+                                     String message, List<String> categories, String historyStr) {
         StringBuilder prompt = new StringBuilder();
         
         // Shop information context
@@ -925,52 +1047,6 @@ public class ShopAIServiceImpl implements ShopAIService {
             prompt.append("\n");
         }
         
-        // Add products for context
-        if (products != null && !products.isEmpty()) {
-            prompt.append("AVAILABLE PRODUCTS (Sample for context):\n");
-            for (int i = 0; i < Math.min(5, products.size()); i++) {
-                ProductResponse product = products.get(i);
-                prompt.append("- ").append(product.getName())
-                      .append(" (ID: ").append(product.getId()).append(")")
-                      .append("\n  Price: ").append(product.getPrice())
-                      .append("\n  Category: ").append(product.getCategory())
-                      .append("\n  Description: ").append(product.getDescription())
-                      .append("\n  Stock: ").append(product.getStock())
-                      .append("\n");
-            }
-            prompt.append("\n");
-        }
-          // Customer context with personalized approach
-        if (customer != null) {
-            prompt.append("CUSTOMER INFORMATION:\n");
-            prompt.append("Name: ").append(customer.getFullname());
-            prompt.append("\nAddress: ").append(customer.getAddress());
-            prompt.append("\nPhone: ").append(customer.getPhone());
-            prompt.append("\nEmail: ").append(customer.getEmail());
-            prompt.append("\n\n");
-            
-            // Add address validation context
-            String customerAddress = customer.getAddress();
-            if (customerAddress == null || customerAddress.isEmpty() || customerAddress.equals("Đang cập nhật")) {
-                prompt.append("IMPORTANT: Customer has NO VALID ADDRESS. For any PLACEORDER intent:\n");
-                prompt.append("- Set action_required: false\n");
-                prompt.append("- Add 'delivery_address' to missing_information\n");
-                prompt.append("- Ask for delivery address before processing order\n\n");
-            } else {
-                prompt.append("Customer has valid address for delivery.\n\n");
-            }
-            
-            prompt.append("This is a returning customer. Use their name naturally and reference their previous interactions if relevant.\n\n");
-        } else {
-            prompt.append("NEW CUSTOMER:\n");
-            prompt.append("Name: '").append(customerName).append("'\n");
-            prompt.append("This is a new customer with NO ADDRESS INFORMATION. For any PLACEORDER intent:\n");
-            prompt.append("- Set action_required: false\n");
-            prompt.append("- Add 'delivery_address' to missing_information\n");
-            prompt.append("- Ask for delivery address before processing order\n");
-            prompt.append("Be extra welcoming and take initiative to understand their needs.\n\n");
-        }
-        
         // CRITICAL SESSION MANAGEMENT INSTRUCTION
         prompt.append("CRITICAL SESSION MANAGEMENT INSTRUCTION:\n");
         prompt.append("You can ONLY reference messages from the current conversation session. ");
@@ -985,7 +1061,7 @@ public class ShopAIServiceImpl implements ShopAIService {
         prompt.append("   - Example: 'Shop mình chuyên bán các sản phẩm [list exact categories] ạ! Bạn đang quan tâm đến loại nào?'\n\n");
         
         prompt.append("2. When a customer asks about previous conversation:\n");
-        prompt.append("   - Reference the conversation history provided above\n");
+        prompt.append("   - Reference the conversation history provided below\n");
         prompt.append("   - Summarize previous interactions accurately\n");
         prompt.append("   - Example: 'Dạ vừa rồi bạn đã hỏi về [topic] và mình đã giới thiệu [summary]'\n\n");
         
@@ -1076,49 +1152,21 @@ public class ShopAIServiceImpl implements ShopAIService {
         prompt.append("  }\n");
         prompt.append("}\n\n");
         
-        // Thêm ví dụ cho Cocacola
+        // Generic example: the shared context must not depend on which products match the message
         prompt.append("Example - Specific Order (CRITICAL):\n");
-        if (!products.isEmpty()) {
-            ProductResponse exampleProduct = products.get(0);
-            prompt.append(String.format("If customer says: 'Mua 2 %s và giao đến 72 Hương An, Hương Trà, TT Huế'\n", exampleProduct.getName()));
-            prompt.append("You MUST respond with:\n");
-            prompt.append("{\n");
-            prompt.append(String.format("  \"response_text\": \"Vâng, mình xác nhận đơn hàng 2 %s. Shop sẽ giao hàng đến địa chỉ 72 Hương An, Hương Trà, TT Huế!\",\n", exampleProduct.getName()));
-            prompt.append("  \"detected_intent\": \"PLACEORDER\",\n");
-            prompt.append("  \"extracted_address\": \"72 Hương An, Hương Trà, TT Huế\",\n");
-            prompt.append("  \"action_required\": true,\n");
-            prompt.append("  \"action_details\": {\n");
-            prompt.append("    \"action_type\": \"PLACEORDER\",\n");
-            prompt.append(String.format("    \"product_id\": %d,\n", exampleProduct.getId()));
-            prompt.append("    \"quantity\": 2\n");
-            prompt.append("  }\n");
-            prompt.append("}\n\n");
-        } else {
-            prompt.append("If customer says: 'Mua 2 chai nước và giao đến số 72 đường Hương An'\n");
-            prompt.append("You MUST respond with:\n");
-            prompt.append("{\n");
-            prompt.append("  \"response_text\": \"Vâng, mình xác nhận đơn hàng 2 chai nước. Shop sẽ giao hàng đến địa chỉ số 72 đường Hương An!\",\n");
-            prompt.append("  \"detected_intent\": \"PLACEORDER\",\n");
-            prompt.append("  \"extracted_address\": \"số 72 đường Hương An\",\n");
-            prompt.append("  \"action_required\": true,\n");
-            prompt.append("  \"action_details\": {\n");
-            prompt.append("    \"action_type\": \"PLACEORDER\",\n");
-            prompt.append("    \"product_id\": [ID of the most relevant product],\n");
-            prompt.append("    \"quantity\": 2\n");
-            prompt.append("  }\n");
-            prompt.append("}\n\n");
-        }
-        
-        // Product reference table and actions
-        prompt.append("PRODUCT REFERENCE TABLE - USE FOR ORDER PROCESSING:\n");
-        for (ProductResponse product : products) {
-            prompt.append(String.format("ID: %d - %s - Price: %s - Category: %s\n", 
-                                       product.getId(), 
-                                       product.getName(),
-                                       product.getPrice(),
-                                       product.getCategory()));
-        }
-        prompt.append("\n");
+        prompt.append("If customer says: 'Mua 2 chai nước và giao đến số 72 đường Hương An'\n");
+        prompt.append("You MUST respond with:\n");
+        prompt.append("{\n");
+        prompt.append("  \"response_text\": \"Vâng, mình xác nhận đơn hàng 2 chai nước. Shop sẽ giao hàng đến địa chỉ số 72 đường Hương An!\",\n");
+        prompt.append("  \"detected_intent\": \"PLACEORDER\",\n");
+        prompt.append("  \"extracted_address\": \"số 72 đường Hương An\",\n");
+        prompt.append("  \"action_required\": true,\n");
+        prompt.append("  \"action_details\": {\n");
+        prompt.append("    \"action_type\": \"PLACEORDER\",\n");
+        prompt.append("    \"product_id\": [ID of the most relevant product],\n");
+        prompt.append("    \"quantity\": 2\n");
+        prompt.append("  }\n");
+        prompt.append("}\n\n");
         
         // Standard action codes instruction
         prompt.append("ACTION CODES (When system action required):\n");
@@ -1266,22 +1314,101 @@ public class ShopAIServiceImpl implements ShopAIService {
         prompt.append("8. 'follow_up_questions': Array of suggested questions\n");
         prompt.append("9. 'create_order': Boolean indicating if an order should be created (for ADDRESS_RESPONSE intent)\n\n");
         
+        StringBuilder request = new StringBuilder(historyStr);
+        
+        // Products depend on the message, so they stay out of the shared context
+        if (products != null && !products.products().isEmpty()) {
+            request.append(products.matched()
+                    ? "PRODUCTS MATCHING THE CUSTOMER MESSAGE (best match first, use these IDs for orders):\n"
+                    : "AVAILABLE PRODUCTS (Sample for context, use these IDs for orders):\n");
+            for (ProductResponse product : products.products()) {
+                request.append("- ").append(product.getName())
+                       .append(" (ID: ").append(product.getId()).append(")")
+                       .append("\n  Price: ").append(product.getPrice())
+                       .append("\n  Category: ").append(product.getCategory())
+                       .append("\n  Description: ").append(product.getDescription())
+                       .append("\n  Stock: ").append(product.getStock())
+                       .append("\n");
+            }
+            request.append("\n");
+        }
+        
+        // Customer context with personalized approach
+        if (customer != null) {
+            request.append("CUSTOMER INFORMATION:\n");
+            request.append("Name: ").append(customer.getFullname());
+            request.append("\nAddress: ").append(customer.getAddress());
+            request.append("\nPhone: ").append(customer.getPhone());
+            request.append("\nEmail: ").append(customer.getEmail());
+            request.append("\n\n");
+            
+            // Add address validation context
+            String customerAddress = customer.getAddress();
+            if (customerAddress == null || customerAddress.isEmpty() || customerAddress.equals("Đang cập nhật")) {
+                request.append("IMPORTANT: Customer has NO VALID ADDRESS. For any PLACEORDER intent:\n");
+                request.append("- Set action_required: false\n");
+                request.append("- Add 'delivery_address' to missing_information\n");
+                request.append("- Ask for delivery address before processing order\n\n");
+            } else {
+                request.append("Customer has valid address for delivery.\n\n");
+            }
+            
+            request.append("This is a returning customer. Use their name naturally and reference their previous interactions if relevant.\n\n");
+        } else if (customerName == null) {
+            request.append("SHARED ANSWER:\n");
+            request.append("This reply may be shown to any customer of the shop. Do not use a name or any personal details.\n");
+            request.append("For any PLACEORDER intent set action_required: false and ask for the delivery address.\n\n");
+        } else {
+            request.append("NEW CUSTOMER:\n");
+            request.append("Name: '").append(customerName).append("'\n");
+            request.append("This is a new customer with NO ADDRESS INFORMATION. For any PLACEORDER intent:\n");
+            request.append("- Set action_required: false\n");
+            request.append("- Add 'delivery_address' to missing_information\n");
+            request.append("- Ask for delivery address before processing order\n");
+            request.append("Be extra welcoming and take initiative to understand their needs.\n\n");
+        }
+        
         // Customer message
-        prompt.append("CURRENT CUSTOMER MESSAGE: \"").append(message).append("\"\n");
+        request.append("CURRENT CUSTOMER MESSAGE: \"").append(message).append("\"\n");
         
-        return prompt.toString();
+        return new ShopPrompt("chat:" + shop.getId(), prompt.toString(), request.toString());
     }
     
     /**
-     * Build a prompt specifically for product recommendations
+     * Build a prompt specifically for product recommendations. The shop's catalog page is the shared
+     * context; search results for this query go into the request.
      */
-    private String buildProductRecommendationPrompt(Shop shop, List<ProductResponse> products, String query) {
+    private ShopPrompt buildProductRecommendationPrompt(Shop shop, List<ProductResponse> catalog,
+                                                        List<ProductResponse> matches, String query) {
         StringBuilder prompt = new StringBuilder();
         
         prompt.append("You are a product recommendation system for '").append(shop.getName()).append("' shop.\n");
         prompt.append("Based on the customer query and available products, recommend the most relevant items.\n\n");
         
         prompt.append("Available products:\n");
+        appendProductLines(prompt, catalog);
+        
+        prompt.append("\nIMPORTANT: Keep your recommendation_text short, natural and conversational. ")
+              .append("Instead of lengthy formal responses, use casual friendly language as if you're talking to a friend.\n\n");
+        
+        prompt.append("Provide the following in JSON format:\n")
+              .append("1. 'matched_products': Array of matched product IDs in order of relevance\n")
+              .append("2. 'recommendation_text': Brief, friendly text explaining the recommendations\n")
+              .append("3. 'confidence_score': Number between 0-1 indicating confidence in the match\n");
+        
+        StringBuilder request = new StringBuilder();
+        if (!matches.isEmpty()) {
+            // Search results take priority over the general catalog
+            request.append("Products matching the query (prefer these):\n");
+            appendProductLines(request, matches);
+            request.append("\n");
+        }
+        request.append("Customer query: \"").append(query).append("\"\n");
+        
+        return new ShopPrompt("recommend:" + shop.getId(), prompt.toString(), request.toString());
+    }
+    
+    private static void appendProductLines(StringBuilder prompt, List<ProductResponse> products) {
         for (ProductResponse product : products) {
             prompt.append("- ID: ").append(product.getId())
                   .append(", Name: ").append(product.getName())
@@ -1291,36 +1418,16 @@ public class ShopAIServiceImpl implements ShopAIService {
                   .append(", Stock: ").append(product.getStock())
                   .append("\n");
         }
-        
-        prompt.append("\nCustomer query: \"").append(query).append("\"\n\n");
-        
-        prompt.append("IMPORTANT: Keep your recommendation_text short, natural and conversational. ")
-              .append("Instead of lengthy formal responses, use casual friendly language as if you're talking to a friend.\n\n");
-        
-        prompt.append("Provide the following in JSON format:\n")
-              .append("1. 'matched_products': Array of matched product IDs in order of relevance\n")
-              .append("2. 'recommendation_text': Brief, friendly text explaining the recommendations\n")
-              .append("3. 'confidence_score': Number between 0-1 indicating confidence in the match\n");
-        
-        return prompt.toString();
     }
     
     /**
      * Build a prompt for order processing
      */
-    private String buildOrderProcessingPrompt(Shop shop, Customer customer, String orderRequest) {
+    private ShopPrompt buildOrderProcessingPrompt(Shop shop, Customer customer, String orderRequest) {
         StringBuilder prompt = new StringBuilder();
         
         prompt.append("You are processing an order for '").append(shop.getName()).append("' shop.\n\n");
         
-        prompt.append("Customer information:\n")
-              .append("- Name: ").append(customer.getFullname()).append("\n")
-              .append("- Address: ").append(customer.getAddress()).append("\n")
-              .append("- Phone: ").append(customer.getPhone()).append("\n")
-              .append("- Email: ").append(customer.getEmail()).append("\n\n");
-        
-        prompt.append("Order request: \"").append(orderRequest).append("\"\n\n");
-        
         prompt.append("IMPORTANT: Be concise and focused only on extracting order information. ")
               .append("Don't generate any lengthy explanations or justifications.\n\n");
         
@@ -1332,7 +1439,16 @@ public class ShopAIServiceImpl implements ShopAIService {
               .append("5. 'is_valid_order': Boolean indicating if this is a valid order request\n")
               .append("6. 'missing_details': Array of any missing information needed\n");
         
-        return prompt.toString();
+        StringBuilder request = new StringBuilder();
+        request.append("Customer information:\n")
+              .append("- Name: ").append(customer.getFullname()).append("\n")
+              .append("- Address: ").append(customer.getAddress()).append("\n")
+              .append("- Phone: ").append(customer.getPhone()).append("\n")
+              .append("- Email: ").append(customer.getEmail()).append("\n\n");
+        
+        request.append("Order request: \"").append(orderRequest).append("\"\n");
+        
+        return new ShopPrompt("order:" + shop.getId(), prompt.toString(), request.toString());
     }
     
     /**
@@ -1358,219 +1474,21 @@ public class ShopAIServiceImpl implements ShopAIService {
     }
     
     /**
-     * Call Gemini API with structured format for general customer messages
+     * Call Gemini API with structured format for general customer messages.
+     * When a listener is given the response is streamed and response_text is reported as it grows.
      */
-    private String callGeminiWithStructuredFormat(String prompt) {
+    private String callGeminiWithStructuredFormat(ShopPrompt prompt, Consumer<String> onPartialText) {
         try {
-            String apiUrl = String.format("%s/%s:generateContent?key=%s", 
-                geminiApiUrl, geminiChatModel, geminiApiKey);
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            
-            // Create request body with structured response schema for general conversations
-            ObjectNode requestBody = objectMapper.createObjectNode();
-            ArrayNode contents = requestBody.putArray("contents");
-            
-            ObjectNode content = contents.addObject();
-            ArrayNode parts = content.putArray("parts");
-            ObjectNode part = parts.addObject();
-            part.put("text", prompt);
-            
-            // Define the response schema
-            ObjectNode generationConfig = requestBody.putObject("generationConfig");
-            generationConfig.put("response_mime_type", "application/json");
-            generationConfig.put("temperature", 0.4); // Tăng temperature để phản hồi sáng tạo, tự nhiên hơn
-            generationConfig.put("maxOutputTokens", 2048); // Cho phép trả lời dài hơn khi cần thiết
-            
-            ObjectNode responseSchema = generationConfig.putObject("response_schema");
-            responseSchema.put("type", "OBJECT");
-            
-            // Define required fields in the response schema
-            ArrayNode requiredFields = objectMapper.createArrayNode();
-            requiredFields.add("response_text");
-            requiredFields.add("detected_intent");
-            requiredFields.add("action_required");
-            responseSchema.set("required", requiredFields);
-            
-            ObjectNode properties = responseSchema.putObject("properties");
-            
-            // Response text - Always required
-            ObjectNode responseText = properties.putObject("response_text");
-            responseText.put("type", "STRING");
-            responseText.put("description", "Human-like conversational response in Vietnamese (unless customer used English). Be specific, enthusiastic and helpful, never vague.");
-            
-            // Detected intent - Use standardized values
-            ObjectNode detectedIntent = properties.putObject("detected_intent");
-            detectedIntent.put("type", "STRING");
-            detectedIntent.put("description", "The standardized intent detected from the user message");
-            ArrayNode allowedIntents = objectMapper.createArrayNode()
-                .add("GREETING")
-                .add("GETPRODUCT")
-                .add("SEARCHPRODUCT")
-                .add("ADDTOCART")
-                .add("PLACEORDER")
-                .add("CHECKORDER")
-                .add("CANCELORDER")
-                .add("SENDIMAGE")
-                .add("SHOWPRODUCT")
-                .add("CONVERSATION_REFERENCE")
-                .add("ADDRESS_RESPONSE")
-                .add("GENERAL_QUERY");
-            detectedIntent.set("enum", allowedIntents);
-            
-            ObjectNode actionRequired = properties.putObject("action_required");
-            actionRequired.put("type", "BOOLEAN");
-            actionRequired.put("description", "Whether the system needs to take an action based on this message");
-            
-            // Add extracted address property
-            ObjectNode extractedAddress = properties.putObject("extracted_address");
-            extractedAddress.put("type", "STRING");
-            extractedAddress.put("description", "Any delivery address mentioned by the customer, in full detail");
-            
-            // Add extracted phone property
-            ObjectNode extractedPhone = properties.putObject("extracted_phone");
-            extractedPhone.put("type", "STRING");
-            extractedPhone.put("description", "Any phone number mentioned by the customer");
-            
-            // Define action_details with properties
-            ObjectNode actionDetails = properties.putObject("action_details");
-            actionDetails.put("type", "OBJECT");
-            actionDetails.put("description", "Details about the required action, if any");
-            
-            // Define properties for action_details
-            ObjectNode actionDetailsProperties = actionDetails.putObject("properties");
-            
-            // Add action_type property with allowed values
-            ObjectNode actionType = actionDetailsProperties.putObject("action_type");
-            actionType.put("type", "STRING");
-            actionType.put("description", "The standardized action code");
-            ArrayNode allowedActions = objectMapper.createArrayNode()
-                .add("GETPRODUCT")
-                .add("SEARCHPRODUCT")
-                .add("ADDTOCART")
-                .add("PLACEORDER")
-                .add("CHECKORDER")
-                .add("CANCELORDER")
-                .add("SENDIMAGE")
-                .add("SHOWPRODUCT");
-            actionType.set("enum", allowedActions);
-            
-            // Add product_id property
-            ObjectNode productId = actionDetailsProperties.putObject("product_id");
-            productId.put("type", "NUMBER");
-            productId.put("description", "Product ID for order or product details");
-            
-            // Add product_name property
-            ObjectNode productName = actionDetailsProperties.putObject("product_name");
-            productName.put("type", "STRING");
-            productName.put("description", "Product name for reference");
-            
-            // Add quantity property
-            ObjectNode quantity = actionDetailsProperties.putObject("quantity");
-            quantity.put("type", "NUMBER");
-            quantity.put("description", "Quantity for orders");
-            
-            // Add note property
-            ObjectNode note = actionDetailsProperties.putObject("note");
-            note.put("type", "STRING");
-            note.put("description", "Special instructions or notes for orders");
-            
-            // Add search_keywords property
-            ObjectNode searchKeywords = actionDetailsProperties.putObject("search_keywords");
-            searchKeywords.put("type", "STRING");
-            searchKeywords.put("description", "Keywords for product search");
-            
-            // Add order_id property
-            ObjectNode orderId = actionDetailsProperties.putObject("order_id");
-            orderId.put("type", "STRING");
-            orderId.put("description", "Order ID when referencing a specific order, especially for CANCELORDER intent. Omit for cancelling most recent order.");
-            
-            // Add send_product_images property
-            ObjectNode sendProductImages = actionDetailsProperties.putObject("send_product_images");
-            sendProductImages.put("type", "BOOLEAN");
-            sendProductImages.put("description", "Whether to send product images directly to customer");
-            
-            // Add product_ids_for_images property
-            ObjectNode productIdsForImages = actionDetailsProperties.putObject("product_ids_for_images");
-            productIdsForImages.put("type", "ARRAY");
-            productIdsForImages.put("description", "List of product IDs to send images for");
-            ObjectNode imageIdItems = productIdsForImages.putObject("items");
-            imageIdItems.put("type", "NUMBER");
-            
-            // Required fields for action_details when it's included
-            if (actionDetails.has("properties") && actionDetails.get("properties").size() > 0) {
-                ObjectNode actionDetailsSchema = actionDetails;
-                ArrayNode actionRequiredFields = objectMapper.createArrayNode();
-                actionRequiredFields.add("action_type");
-                actionDetailsSchema.set("required", actionRequiredFields);
-            }
-            
-            ObjectNode missingInfo = properties.putObject("missing_information");
-            missingInfo.put("type", "ARRAY");
-            missingInfo.put("description", "List of missing information needed to complete the action");
-            ObjectNode missingItems = missingInfo.putObject("items");
-            missingItems.put("type", "STRING");
-            
-            // Add follow-up questions array property
-            ObjectNode followUpQuestions = properties.putObject("follow_up_questions");
-            followUpQuestions.put("type", "ARRAY");
-            followUpQuestions.put("description", "Suggested follow-up questions to maintain conversation flow");
-            ObjectNode followUpItems = followUpQuestions.putObject("items");
-            followUpItems.put("type", "STRING");
-            
-            // Convert request body to string for sending
-            String requestBodyString = objectMapper.writeValueAsString(requestBody);
-            
-            // Log API request for debugging
-            if (log.isDebugEnabled()) {
-                log.debug("Sending request to Gemini API: {}", requestBodyString);
-            }
-            
-            // Send request to Gemini API
-            HttpEntity<String> entity = new HttpEntity<>(requestBodyString, headers);
-            
-            ResponseEntity<String> response = restTemplate.exchange(
-                apiUrl,
-                HttpMethod.POST,
-                entity,
-                String.class
-            );
-            
-            // Log API response for debugging
-            if (log.isDebugEnabled()) {
-                log.debug("Received response from Gemini API: {}", response.getBody());
-            }
-            
-            // Extract the structured JSON response from Gemini
-            JsonNode responseJson = objectMapper.readTree(response.getBody());
-            JsonNode candidates = responseJson.path("candidates");
-            
-            if (candidates.isArray() && candidates.size() > 0) {
-                JsonNode content1 = candidates.get(0).path("content");
-                JsonNode parts1 = content1.path("parts");
-                
-                if (parts1.isArray() && parts1.size() > 0) {
-                    String result = parts1.get(0).path("text").asText();
-                    // Log the parsed result
-                    if (log.isDebugEnabled()) {
-                        log.debug("Parsed result from Gemini: {}", result);
-                    }
-                    
-                    // Verify the response has the required response_text field
-                    try {
-                        JsonNode resultJson = objectMapper.readTree(result);
-                        if (!resultJson.has("response_text") || resultJson.get("response_text").asText().isEmpty()) {
-                            log.warn("AI response missing required response_text field, adding default response");
-                            ((ObjectNode)resultJson).put("response_text", "Xin lỗi, tôi không hiểu rõ yêu cầu của bạn. Bạn có thể giải thích rõ hơn được không?");
-                            return objectMapper.writeValueAsString(resultJson);
-                        }
-                    } catch (Exception e) {
-                        log.warn("Error parsing AI response: {}", e.getMessage());
-                    }
-                    
-                    return result;
+            Consumer<String> onChunk = onPartialText != null ? new ResponseTextStream(onPartialText)::append : null;
+            GeminiRequestTemplate template = onPartialText != null ? structuredStreamingTemplate : structuredTemplate;
+            String result = generateWithShopContext(prompt, template, onChunk);
+            
+            if (result != null) {
+                // Log the parsed result
+                if (log.isDebugEnabled()) {
+                    log.debug("Parsed result from Gemini: {}", result);
                 }
+                return ensureResponseText(result);
             }
             
             return createErrorResponse("Unable to parse AI response");
@@ -1582,69 +1500,441 @@ public class ShopAIServiceImpl implements ShopAIService {
     }
     
     /**
-     * Call Gemini API for product recommendations with structured format
+     * Send a shop prompt, referencing its shared context through the Gemini context cache when one
+     * is available and inline otherwise. Streams through onChunk when it is given.
+     *
+     * @return The generated text, or null if the response has none
      */
-    private String callGeminiForProductRecommendations(String prompt) {
+    private String generateWithShopContext(ShopPrompt prompt, GeminiRequestTemplate template, Consumer<String> onChunk) throws IOException {
+        String cachedContent = geminiContextCache.resolve(prompt.scope(), geminiChatModel, prompt.shopContext());
         try {
-            String apiUrl = String.format("%s/%s:generateContent?key=%s", 
-                geminiApiUrl, geminiChatModel, geminiApiKey);
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            
-            // Create request body with response schema for product recommendations
-            ObjectNode requestBody = objectMapper.createObjectNode();
-            ArrayNode contents = requestBody.putArray("contents");
-            
-            ObjectNode content = contents.addObject();
-            ArrayNode parts = content.putArray("parts");
-            ObjectNode part = parts.addObject();
-            part.put("text", prompt);
-            
-            // Define the response schema
-            ObjectNode generationConfig = requestBody.putObject("generationConfig");
-            generationConfig.put("response_mime_type", "application/json");
-            
-            ObjectNode responseSchema = generationConfig.putObject("response_schema");
-            responseSchema.put("type", "OBJECT");
-            
-            ObjectNode properties = responseSchema.putObject("properties");
-            
-            // Define matched_products array
-            ObjectNode matchedProducts = properties.putObject("matched_products");
-            matchedProducts.put("type", "ARRAY");
-            ObjectNode idItems = matchedProducts.putObject("items");
-            idItems.put("type", "NUMBER");
-            
-            // Define recommendation_text
-            ObjectNode recommendationText = properties.putObject("recommendation_text");
-            recommendationText.put("type", "STRING");
-            
-            // Define confidence_score
-            ObjectNode confidenceScore = properties.putObject("confidence_score");
-            confidenceScore.put("type", "NUMBER");
-            
-            // Send request to Gemini API
-            HttpEntity<String> entity = new HttpEntity<>(objectMapper.writeValueAsString(requestBody), headers);
-            
-            ResponseEntity<String> response = restTemplate.exchange(
-                apiUrl,
-                HttpMethod.POST,
-                entity,
-                String.class
-            );
-            
-            // Extract the structured JSON response from Gemini
-            JsonNode responseJson = objectMapper.readTree(response.getBody());
-            JsonNode candidates = responseJson.path("candidates");
-            
-            if (candidates.isArray() && candidates.size() > 0) {
-                JsonNode content1 = candidates.get(0).path("content");
-                JsonNode parts1 = content1.path("parts");
-                
-                if (parts1.isArray() && parts1.size() > 0) {
-                    return parts1.get(0).path("text").asText();
+            return generate(prompt, cachedContent, template, onChunk);
+        } catch (GeminiApiException e) {
+            // A cached content that expired or was deleted on Gemini's side is rejected as a client error
+            if (cachedContent == null || e.getStatusCode() / 100 != 4 || e.getStatusCode() == 429) {
+                throw e;
+            }
+            log.warn("Gemini rejected cached content {} with status {}, sending the context inline",
+                    cachedContent, e.getStatusCode());
+            geminiContextCache.invalidate(prompt.scope(), cachedContent);
+            return generate(prompt, null, template, onChunk);
+        }
+    }
+    
+    private String generate(ShopPrompt prompt, String cachedContent, GeminiRequestTemplate template,
+                            Consumer<String> onChunk) throws IOException {
+        String text = cachedContent != null ? prompt.request() : prompt.shopContext() + prompt.request();
+        byte[] requestBody = geminiCodec.encodeRequest(template, cachedContent, text);
+        if (log.isDebugEnabled()) {
+            log.debug("Sending request to Gemini API: {}", new String(requestBody, StandardCharsets.UTF_8));
+        }
+        
+        if (onChunk != null) {
+            try {
+                return geminiClient.streamGenerateContentAsync(geminiChatModel, requestBody, onChunk).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
                 }
+                throw e;
+            }
+        }
+        
+        byte[] responseBody = geminiClient.generateContent(geminiChatModel, requestBody);
+        if (log.isDebugEnabled()) {
+            log.debug("Received response from Gemini API: {}", new String(responseBody, StandardCharsets.UTF_8));
+        }
+        return geminiCodec.extractText(responseBody);
+    }
+    
+    /**
+     * generationConfig for general customer messages; when streaming, response_text is generated first
+     */
+    private ObjectNode buildStructuredGenerationConfig(boolean streaming) {
+        // Define the structured response schema for general conversations
+        ObjectNode generationConfig = objectMapper.createObjectNode();
+        generationConfig.put("response_mime_type", "application/json");
+        generationConfig.put("temperature", 0.4); // Tăng temperature để phản hồi sáng tạo, tự nhiên hơn
+        generationConfig.put("maxOutputTokens", 2048); // Cho phép trả lời dài hơn khi cần thiết
+        
+        ObjectNode responseSchema = generationConfig.putObject("response_schema");
+        responseSchema.put("type", "OBJECT");
+        
+        // Define required fields in the response schema
+        ArrayNode requiredFields = objectMapper.createArrayNode();
+        requiredFields.add("response_text");
+        requiredFields.add("detected_intent");
+        requiredFields.add("action_required");
+        responseSchema.set("required", requiredFields);
+        
+        ObjectNode properties = responseSchema.putObject("properties");
+        
+        // Response text - Always required
+        ObjectNode responseText = properties.putObject("response_text");
+        responseText.put("type", "STRING");
+        responseText.put("description", "Human-like conversational response in Vietnamese (unless customer used English). Be specific, enthusiastic and helpful, never vague.");
+        
+        // Detected intent - Use standardized values
+        ObjectNode detectedIntent = properties.putObject("detected_intent");
+        detectedIntent.put("type", "STRING");
+        detectedIntent.put("description", "The standardized intent detected from the user message");
+        ArrayNode allowedIntents = objectMapper.createArrayNode()
+            .add("GREETING")
+            .add("GETPRODUCT")
+            .add("SEARCHPRODUCT")
+            .add("ADDTOCART")
+            .add("PLACEORDER")
+            .add("CHECKORDER")
+            .add("CANCELORDER")
+            .add("SENDIMAGE")
+            .add("SHOWPRODUCT")
+            .add("CONVERSATION_REFERENCE")
+            .add("ADDRESS_RESPONSE")
+            .add("GENERAL_QUERY");
+        detectedIntent.set("enum", allowedIntents);
+        
+        ObjectNode actionRequired = properties.putObject("action_required");
+        actionRequired.put("type", "BOOLEAN");
+        actionRequired.put("description", "Whether the system needs to take an action based on this message");
+        
+        // Add extracted address property
+        ObjectNode extractedAddress = properties.putObject("extracted_address");
+        extractedAddress.put("type", "STRING");
+        extractedAddress.put("description", "Any delivery address mentioned by the customer, in full detail");
+        
+        // Add extracted phone property
+        ObjectNode extractedPhone = properties.putObject("extracted_phone");
+        extractedPhone.put("type", "STRING");
+        extractedPhone.put("description", "Any phone number mentioned by the customer");
+        
+        // Define action_details with properties
+        ObjectNode actionDetails = properties.putObject("action_details");
+        actionDetails.put("type", "OBJECT");
+        actionDetails.put("description", "Details about the required action, if any");
+        
+        // Define properties for action_details
+        ObjectNode actionDetailsProperties = actionDetails.putObject("properties");
+        
+        // Add action_type property with allowed values
+        ObjectNode actionType = actionDetailsProperties.putObject("action_type");
+        actionType.put("type", "STRING");
+        actionType.put("description", "The standardized action code");
+        ArrayNode allowedActions = objectMapper.createArrayNode()
+            .add("GETPRODUCT")
+            .add("SEARCHPRODUCT")
+            .add("ADDTOCART")
+            .add("PLACEORDER")
+            .add("CHECKORDER")
+            .add("CANCELORDER")
+            .add("SENDIMAGE")
+            .add("SHOWPRODUCT");
+        actionType.set("enum", allowedActions);
+        
+        // Add product_id property
+        ObjectNode productId = actionDetailsProperties.putObject("product_id");
+        productId.put("type", "NUMBER");
+        productId.put("description", "Product ID for order or product details");
+        
+        // Add product_name property
+        ObjectNode productName = actionDetailsProperties.putObject("product_name");
+        productName.put("type", "STRING");
+        productName.put("description", "Product name for reference");
+        
+        // Add quantity property
+        ObjectNode quantity = actionDetailsProperties.putObject("quantity");
+        quantity.put("type", "NUMBER");
+        quantity.put("description", "Quantity for orders");
+        
+        // Add note property
+        ObjectNode note = actionDetailsProperties.putObject("note");
+        note.put("type", "STRING");
+        note.put("description", "Special instructions or notes for orders");
+        
+        // Add search_keywords property
+        ObjectNode searchKeywords = actionDetailsProperties.putObject("search_keywords");
+        searchKeywords.put("type", "STRING");
+        searchKeywords.put("description", "Keywords for product search");
+        
+        // Add order_id property
+        ObjectNode orderId = actionDetailsProperties.putObject("order_id");
+        orderId.put("type", "STRING");
+        orderId.put("description", "Order ID when referencing a specific order, especially for CANCELORDER intent. Omit for cancelling most recent order.");
+        
+        // Add send_product_images property
+        ObjectNode sendProductImages = actionDetailsProperties.putObject("send_product_images");
+        sendProductImages.put("type", "BOOLEAN");
+        sendProductImages.put("description", "Whether to send product images directly to customer");
+        
+        // Add product_ids_for_images property
+        ObjectNode productIdsForImages = actionDetailsProperties.putObject("product_ids_for_images");
+        productIdsForImages.put("type", "ARRAY");
+        productIdsForImages.put("description", "List of product IDs to send images for");
+        ObjectNode imageIdItems = productIdsForImages.putObject("items");
+        imageIdItems.put("type", "NUMBER");
+        
+        // Required fields for action_details when it's included
+        if (actionDetails.has("properties") && actionDetails.get("properties").size() > 0) {
+            ObjectNode actionDetailsSchema = actionDetails;
+            ArrayNode actionRequiredFields = objectMapper.createArrayNode();
+            actionRequiredFields.add("action_type");
+            actionDetailsSchema.set("required", actionRequiredFields);
+        }
+        
+        ObjectNode missingInfo = properties.putObject("missing_information");
+        missingInfo.put("type", "ARRAY");
+        missingInfo.put("description", "List of missing information needed to complete the action");
+        ObjectNode missingItems = missingInfo.putObject("items");
+        missingItems.put("type", "STRING");
+        
+        // Add follow-up questions array property
+        ObjectNode followUpQuestions = properties.putObject("follow_up_questions");
+        followUpQuestions.put("type", "ARRAY");
+        followUpQuestions.put("description", "Suggested follow-up questions to maintain conversation flow");
+        ObjectNode followUpItems = followUpQuestions.putObject("items");
+        followUpItems.put("type", "STRING");
+        
+        if (streaming) {
+            // Generate response_text first so it can be shown while the structured fields are still being produced
+            ArrayNode propertyOrdering = responseSchema.putArray("propertyOrdering");
+            properties.fieldNames().forEachRemaining(propertyOrdering::add);
+        }
+        
+        return generationConfig;
+    }
+    
+    /**
+     * generationConfig for product recommendations
+     */
+    private ObjectNode buildRecommendationGenerationConfig() {
+        // Define the response schema for product recommendations
+        ObjectNode generationConfig = objectMapper.createObjectNode();
+        generationConfig.put("response_mime_type", "application/json");
+        
+        ObjectNode responseSchema = generationConfig.putObject("response_schema");
+        responseSchema.put("type", "OBJECT");
+        
+        ObjectNode properties = responseSchema.putObject("properties");
+        
+        // Define matched_products array
+        ObjectNode matchedProducts = properties.putObject("matched_products");
+        matchedProducts.put("type", "ARRAY");
+        ObjectNode idItems = matchedProducts.putObject("items");
+        idItems.put("type", "NUMBER");
+        
+        // Define recommendation_text
+        ObjectNode recommendationText = properties.putObject("recommendation_text");
+        recommendationText.put("type", "STRING");
+        
+        // Define confidence_score
+        ObjectNode confidenceScore = properties.putObject("confidence_score");
+        confidenceScore.put("type", "NUMBER");
+        
+        return generationConfig;
+    }
+    
+    /**
+     * generationConfig for order processing
+     */
+    private ObjectNode buildOrderProcessingGenerationConfig() {
+        // Define the response schema for order processing
+        ObjectNode generationConfig = objectMapper.createObjectNode();
+        generationConfig.put("response_mime_type", "application/json");
+        
+        ObjectNode responseSchema = generationConfig.putObject("response_schema");
+        responseSchema.put("type", "OBJECT");
+        
+        ObjectNode properties = responseSchema.putObject("properties");
+        
+        // Define product_ids array
+        ObjectNode productIds = properties.putObject("product_ids");
+        productIds.put("type", "ARRAY");
+        ObjectNode idItems = productIds.putObject("items");
+        idItems.put("type", "NUMBER");
+        
+        // Define quantities array
+        ObjectNode quantities = properties.putObject("quantities");
+        quantities.put("type", "ARRAY");
+        ObjectNode quantityItems = quantities.putObject("items");
+        quantityItems.put("type", "NUMBER");
+        
+        // Define special_instructions
+        ObjectNode specialInstructions = properties.putObject("special_instructions");
+        specialInstructions.put("type", "STRING");
+        
+        // Define delivery_preference
+        ObjectNode deliveryPreference = properties.putObject("delivery_preference");
+        deliveryPreference.put("type", "STRING");
+        
+        // Define is_valid_order
+        ObjectNode isValidOrder = properties.putObject("is_valid_order");
+        isValidOrder.put("type", "BOOLEAN");
+        
+        // Define missing_details
+        ObjectNode missingDetails = properties.putObject("missing_details");
+        missingDetails.put("type", "ARRAY");
+        ObjectNode missingItems = missingDetails.putObject("items");
+        missingItems.put("type", "STRING");
+        
+        return generationConfig;
+    }
+    
+    /**
+     * generationConfig for delivery information validation
+     */
+    private ObjectNode buildDeliveryValidationGenerationConfig() {
+        // Define the response schema
+        ObjectNode generationConfig = objectMapper.createObjectNode();
+        generationConfig.put("response_mime_type", "application/json");
+        
+        ObjectNode responseSchema = generationConfig.putObject("response_schema");
+        responseSchema.put("type", "OBJECT");
+        
+        ObjectNode properties = responseSchema.putObject("properties");
+        
+        // Define extracted fields
+        ObjectNode extractedName = properties.putObject("extracted_name");
+        extractedName.put("type", "STRING");
+        
+        ObjectNode extractedPhone = properties.putObject("extracted_phone");
+        extractedPhone.put("type", "STRING");
+        
+        ObjectNode extractedAddress = properties.putObject("extracted_address");
+        extractedAddress.put("type", "STRING");
+        
+        // Define validation fields
+        ObjectNode isNameValid = properties.putObject("is_name_valid");
+        isNameValid.put("type", "BOOLEAN");
+        
+        ObjectNode isPhoneValid = properties.putObject("is_phone_valid");
+        isPhoneValid.put("type", "BOOLEAN");
+        
+        ObjectNode isAddressValid = properties.putObject("is_address_valid");
+        isAddressValid.put("type", "BOOLEAN");
+        
+        // Define missing fields
+        ObjectNode missingFields = properties.putObject("missing_fields");
+        missingFields.put("type", "ARRAY");
+        ObjectNode missingItems = missingFields.putObject("items");
+        missingItems.put("type", "STRING");
+        
+        // Define suggested corrections
+        ObjectNode suggestedCorrections = properties.putObject("suggested_corrections");
+        suggestedCorrections.put("type", "OBJECT");
+        
+        // Define properties for suggested_corrections
+        ObjectNode correctionsProperties = suggestedCorrections.putObject("properties");
+        
+        // Add name correction property
+        ObjectNode nameCorrection = correctionsProperties.putObject("name");
+        nameCorrection.put("type", "STRING");
+        
+        // Add phone correction property
+        ObjectNode phoneCorrection = correctionsProperties.putObject("phone");
+        phoneCorrection.put("type", "STRING");
+        
+        // Add address correction property
+        ObjectNode addressCorrection = correctionsProperties.putObject("address");
+        addressCorrection.put("type", "STRING");
+        
+        return generationConfig;
+    }
+    
+    /**
+     * generationConfig for intent analysis
+     */
+    private ObjectNode buildIntentGenerationConfig() {
+        // Define the response schema
+        ObjectNode generationConfig = objectMapper.createObjectNode();
+        generationConfig.put("response_mime_type", "application/json");
+        generationConfig.put("temperature", 0.3); // Tăng temperature cho trả lời sáng tạo hơn
+        
+        ObjectNode responseSchema = generationConfig.putObject("response_schema");
+        responseSchema.put("type", "OBJECT");
+        
+        // Define required fields in the response schema
+        ArrayNode requiredFields = objectMapper.createArrayNode();
+        requiredFields.add("response_text");
+        requiredFields.add("detected_intent");
+        requiredFields.add("needs_shop_context");
+        responseSchema.set("required", requiredFields);
+        
+        ObjectNode properties = responseSchema.putObject("properties");
+        
+        ObjectNode responseText = properties.putObject("response_text");
+        responseText.put("type", "STRING");
+        
+        ObjectNode detectedIntent = properties.putObject("detected_intent");
+        detectedIntent.put("type", "STRING");
+        ArrayNode allowedIntents = objectMapper.createArrayNode()
+            .add("GREETING")
+            .add("GETPRODUCT")
+            .add("SEARCHPRODUCT")
+            .add("ADDTOCART")
+            .add("PLACEORDER")
+            .add("CHECKORDER")
+            .add("CANCELORDER")
+            .add("SENDIMAGE")
+            .add("SHOWPRODUCT")
+            .add("CONVERSATION_REFERENCE")
+            .add("ADDRESS_RESPONSE")
+            .add("GENERAL_QUERY");
+        detectedIntent.set("enum", allowedIntents);
+        
+        ObjectNode needsShopContext = properties.putObject("needs_shop_context");
+        needsShopContext.put("type", "BOOLEAN");
+        
+        ObjectNode actionRequired = properties.putObject("action_required");
+        actionRequired.put("type", "BOOLEAN");
+        
+        // Add extracted_address property
+        ObjectNode extractedAddress = properties.putObject("extracted_address");
+        extractedAddress.put("type", "STRING");
+        extractedAddress.put("description", "Address extracted from the customer message, if any");
+        
+        // Add extracted_phone property
+        ObjectNode extractedPhone = properties.putObject("extracted_phone");
+        extractedPhone.put("type", "STRING");
+        extractedPhone.put("description", "Phone number extracted from the customer message, if any");
+        
+        // Add follow-up questions array property
+        ObjectNode followUpQuestions = properties.putObject("follow_up_questions");
+        followUpQuestions.put("type", "ARRAY");
+        followUpQuestions.put("description", "Suggested follow-up questions to maintain conversation flow");
+        ObjectNode followUpItems = followUpQuestions.putObject("items");
+        followUpItems.put("type", "STRING");
+        
+        return generationConfig;
+    }
+    
+    /**
+     * Verify the structured response has the required response_text field, adding a default one if not
+     */
+    private String ensureResponseText(String result) {
+        if (geminiCodec.hasNonEmptyField(result, "response_text")) {
+            return result;
+        }
+        try {
+            JsonNode resultJson = objectMapper.readTree(result);
+            if (!resultJson.has("response_text") || resultJson.get("response_text").asText().isEmpty()) {
+                log.warn("AI response missing required response_text field, adding default response");
+                ((ObjectNode)resultJson).put("response_text", "Xin lỗi, tôi không hiểu rõ yêu cầu của bạn. Bạn có thể giải thích rõ hơn được không?");
+                return objectMapper.writeValueAsString(resultJson);
+            }
+        } catch (Exception e) {
+            log.warn("Error parsing AI response: {}", e.getMessage());
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Call Gemini API for product recommendations with structured format
+     */
+    private String callGeminiForProductRecommendations(ShopPrompt prompt) {
+        try {
+            String result = generateWithShopContext(prompt, recommendationTemplate, null);
+            if (result != null) {
+                return result;
             }
             
             return createErrorResponse("Unable to parse product recommendations");
@@ -1658,83 +1948,11 @@ public class ShopAIServiceImpl implements ShopAIService {
     /**
      * Call Gemini API for order processing with structured format
      */
-    private String callGeminiForOrderProcessing(String prompt) {
+    private String callGeminiForOrderProcessing(ShopPrompt prompt) {
         try {
-            String apiUrl = String.format("%s/%s:generateContent?key=%s", 
-                geminiApiUrl, geminiChatModel, geminiApiKey);
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            
-            // Create request body with response schema for order processing
-            ObjectNode requestBody = objectMapper.createObjectNode();
-            ArrayNode contents = requestBody.putArray("contents");
-            
-            ObjectNode content = contents.addObject();
-            ArrayNode parts = content.putArray("parts");
-            ObjectNode part = parts.addObject();
-            part.put("text", prompt);
-            
-            // Define the response schema
-            ObjectNode generationConfig = requestBody.putObject("generationConfig");
-            generationConfig.put("response_mime_type", "application/json");
-            
-            ObjectNode responseSchema = generationConfig.putObject("response_schema");
-            responseSchema.put("type", "OBJECT");
-            
-            ObjectNode properties = responseSchema.putObject("properties");
-            
-            // Define product_ids array
-            ObjectNode productIds = properties.putObject("product_ids");
-            productIds.put("type", "ARRAY");
-            ObjectNode idItems = productIds.putObject("items");
-            idItems.put("type", "NUMBER");
-            
-            // Define quantities array
-            ObjectNode quantities = properties.putObject("quantities");
-            quantities.put("type", "ARRAY");
-            ObjectNode quantityItems = quantities.putObject("items");
-            quantityItems.put("type", "NUMBER");
-            
-            // Define special_instructions
-            ObjectNode specialInstructions = properties.putObject("special_instructions");
-            specialInstructions.put("type", "STRING");
-            
-            // Define delivery_preference
-            ObjectNode deliveryPreference = properties.putObject("delivery_preference");
-            deliveryPreference.put("type", "STRING");
-            
-            // Define is_valid_order
-            ObjectNode isValidOrder = properties.putObject("is_valid_order");
-            isValidOrder.put("type", "BOOLEAN");
-            
-            // Define missing_details
-            ObjectNode missingDetails = properties.putObject("missing_details");
-            missingDetails.put("type", "ARRAY");
-            ObjectNode missingItems = missingDetails.putObject("items");
-            missingItems.put("type", "STRING");
-            
-            // Send request to Gemini API
-            HttpEntity<String> entity = new HttpEntity<>(objectMapper.writeValueAsString(requestBody), headers);
-            
-            ResponseEntity<String> response = restTemplate.exchange(
-                apiUrl,
-                HttpMethod.POST,
-                entity,
-                String.class
-            );
-            
-            // Extract the structured JSON response from Gemini
-            JsonNode responseJson = objectMapper.readTree(response.getBody());
-            JsonNode candidates = responseJson.path("candidates");
-            
-            if (candidates.isArray() && candidates.size() > 0) {
-                JsonNode content1 = candidates.get(0).path("content");
-                JsonNode parts1 = content1.path("parts");
-                
-                if (parts1.isArray() && parts1.size() > 0) {
-                    return parts1.get(0).path("text").asText();
-                }
+            String result = generateWithShopContext(prompt, orderProcessingTemplate, null);
+            if (result != null) {
+                return result;
             }
             
             return createErrorResponse("Unable to parse order processing response");
@@ -1750,96 +1968,13 @@ public class ShopAIServiceImpl implements ShopAIService {
      */
     private String callGeminiForDeliveryValidation(String prompt) {
         try {
-            String apiUrl = String.format("%s/%s:generateContent?key=%s", 
-                geminiApiUrl, geminiChatModel, geminiApiKey);
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            
-            // Create request body with response schema for delivery validation
-            ObjectNode requestBody = objectMapper.createObjectNode();
-            ArrayNode contents = requestBody.putArray("contents");
-            
-            ObjectNode content = contents.addObject();
-            ArrayNode parts = content.putArray("parts");
-            ObjectNode part = parts.addObject();
-            part.put("text", prompt);
-            
-            // Define the response schema
-            ObjectNode generationConfig = requestBody.putObject("generationConfig");
-            generationConfig.put("response_mime_type", "application/json");
-            
-            ObjectNode responseSchema = generationConfig.putObject("response_schema");
-            responseSchema.put("type", "OBJECT");
-            
-            ObjectNode properties = responseSchema.putObject("properties");
-            
-            // Define extracted fields
-            ObjectNode extractedName = properties.putObject("extracted_name");
-            extractedName.put("type", "STRING");
-            
-            ObjectNode extractedPhone = properties.putObject("extracted_phone");
-            extractedPhone.put("type", "STRING");
-            
-            ObjectNode extractedAddress = properties.putObject("extracted_address");
-            extractedAddress.put("type", "STRING");
-            
-            // Define validation fields
-            ObjectNode isNameValid = properties.putObject("is_name_valid");
-            isNameValid.put("type", "BOOLEAN");
-            
-            ObjectNode isPhoneValid = properties.putObject("is_phone_valid");
-            isPhoneValid.put("type", "BOOLEAN");
-            
-            ObjectNode isAddressValid = properties.putObject("is_address_valid");
-            isAddressValid.put("type", "BOOLEAN");
-            
-            // Define missing fields
-            ObjectNode missingFields = properties.putObject("missing_fields");
-            missingFields.put("type", "ARRAY");
-            ObjectNode missingItems = missingFields.putObject("items");
-            missingItems.put("type", "STRING");
-            
-            // Define suggested corrections
-            ObjectNode suggestedCorrections = properties.putObject("suggested_corrections");
-            suggestedCorrections.put("type", "OBJECT");
-            
-            // Define properties for suggested_corrections
-            ObjectNode correctionsProperties = suggestedCorrections.putObject("properties");
-            
-            // Add name correction property
-            ObjectNode nameCorrection = correctionsProperties.putObject("name");
-            nameCorrection.put("type", "STRING");
-            
-            // Add phone correction property
-            ObjectNode phoneCorrection = correctionsProperties.putObject("phone");
-            phoneCorrection.put("type", "STRING");
-            
-            // Add address correction property
-            ObjectNode addressCorrection = correctionsProperties.putObject("address");
-            addressCorrection.put("type", "STRING");
-            
             // Send request to Gemini API
-            HttpEntity<String> entity = new HttpEntity<>(objectMapper.writeValueAsString(requestBody), headers);
-            
-            ResponseEntity<String> response = restTemplate.exchange(
-                apiUrl,
-                HttpMethod.POST,
-                entity,
-                String.class
-            );
-            
-            // Extract the structured JSON response from Gemini
-            JsonNode responseJson = objectMapper.readTree(response.getBody());
-            JsonNode candidates = responseJson.path("candidates");
-            
-            if (candidates.isArray() && candidates.size() > 0) {
-                JsonNode content1 = candidates.get(0).path("content");
-                JsonNode parts1 = content1.path("parts");
-                
-                if (parts1.isArray() && parts1.size() > 0) {
-                    return parts1.get(0).path("text").asText();
-                }
+            byte[] responseBody = geminiClient.generateContent(geminiChatModel,
+                    geminiCodec.encodeRequest(deliveryValidationTemplate, null, prompt));
+            
+            String result = geminiCodec.extractText(responseBody);
+            if (result != null) {
+                return result;
             }
             
             return createErrorResponse("Unable to parse delivery validation response");
@@ -1870,20 +2005,6 @@ public class ShopAIServiceImpl implements ShopAIService {
      */
     private String analyzeMessageIntent(String message, List<ConversationHistoryService.ConversationEntry> history) {
         try {
-            String apiUrl = String.format("%s/%s:generateContent?key=%s", 
-                geminiApiUrl, geminiChatModel, geminiApiKey);
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            
-            // Create a lightweight request body for intent analysis
-            ObjectNode requestBody = objectMapper.createObjectNode();
-            ArrayNode contents = requestBody.putArray("contents");
-            
-            ObjectNode content = contents.addObject();
-            ArrayNode parts = content.putArray("parts");
-            ObjectNode part = parts.addObject();
-            
             StringBuilder prompt = new StringBuilder();
             
             // Check if the last assistant message was asking for address
@@ -2015,107 +2136,28 @@ public class ShopAIServiceImpl implements ShopAIService {
             prompt.append("For simple greetings like 'hello', 'hi', etc., just respond with a friendly greeting. ");
             prompt.append("Avoid lengthy, formal responses.\n\n");
             
-            part.put("text", prompt.toString());
-            
-            // Define the response schema
-            ObjectNode generationConfig = requestBody.putObject("generationConfig");
-            generationConfig.put("response_mime_type", "application/json");
-            generationConfig.put("temperature", 0.3); // Tăng temperature cho trả lời sáng tạo hơn
-            
-            ObjectNode responseSchema = generationConfig.putObject("response_schema");
-            responseSchema.put("type", "OBJECT");
-            
-            // Define required fields in the response schema
-            ArrayNode requiredFields = objectMapper.createArrayNode();
-            requiredFields.add("response_text");
-            requiredFields.add("detected_intent");
-            requiredFields.add("needs_shop_context");
-            responseSchema.set("required", requiredFields);
-            
-            ObjectNode properties = responseSchema.putObject("properties");
-            
-            ObjectNode responseText = properties.putObject("response_text");
-            responseText.put("type", "STRING");
-            
-            ObjectNode detectedIntent = properties.putObject("detected_intent");
-            detectedIntent.put("type", "STRING");
-            ArrayNode allowedIntents = objectMapper.createArrayNode()
-                .add("GREETING")
-                .add("GETPRODUCT")
-                .add("SEARCHPRODUCT")
-                .add("ADDTOCART")
-                .add("PLACEORDER")
-                .add("CHECKORDER")
-                .add("CANCELORDER")
-                .add("SENDIMAGE")
-                .add("SHOWPRODUCT")
-                .add("CONVERSATION_REFERENCE")
-                .add("ADDRESS_RESPONSE")
-                .add("GENERAL_QUERY");
-            detectedIntent.set("enum", allowedIntents);
-            
-            ObjectNode needsShopContext = properties.putObject("needs_shop_context");
-            needsShopContext.put("type", "BOOLEAN");
-            
-            ObjectNode actionRequired = properties.putObject("action_required");
-            actionRequired.put("type", "BOOLEAN");
-            
-            // Add extracted_address property
-            ObjectNode extractedAddress = properties.putObject("extracted_address");
-            extractedAddress.put("type", "STRING");
-            extractedAddress.put("description", "Address extracted from the customer message, if any");
-            
-            // Add extracted_phone property
-            ObjectNode extractedPhone = properties.putObject("extracted_phone");
-            extractedPhone.put("type", "STRING");
-            extractedPhone.put("description", "Phone number extracted from the customer message, if any");
-            
-            // Add follow-up questions array property
-            ObjectNode followUpQuestions = properties.putObject("follow_up_questions");
-            followUpQuestions.put("type", "ARRAY");
-            followUpQuestions.put("description", "Suggested follow-up questions to maintain conversation flow");
-            ObjectNode followUpItems = followUpQuestions.putObject("items");
-            followUpItems.put("type", "STRING");
-            
-            // Convert request body to string for sending
-            String requestBodyString = objectMapper.writeValueAsString(requestBody);
+            byte[] requestBody = geminiCodec.encodeRequest(intentTemplate, null, prompt.toString());
             
             // Log API request for debugging
             if (log.isDebugEnabled()) {
-                log.debug("Sending intent analysis request to Gemini API: {}", requestBodyString);
+                log.debug("Sending intent analysis request to Gemini API: {}", new String(requestBody, StandardCharsets.UTF_8));
             }
             
             // Send request to Gemini API
-            HttpEntity<String> entity = new HttpEntity<>(requestBodyString, headers);
-            
-            ResponseEntity<String> response = restTemplate.exchange(
-                apiUrl,
-                HttpMethod.POST,
-                entity,
-                String.class
-            );
+            byte[] responseBody = geminiClient.generateContent(geminiChatModel, requestBody);
             
             // Log API response for debugging
             if (log.isDebugEnabled()) {
-                log.debug("Received intent analysis response from Gemini API: {}", response.getBody());
+                log.debug("Received intent analysis response from Gemini API: {}", new String(responseBody, StandardCharsets.UTF_8));
             }
             
-            // Extract the structured JSON response from Gemini
-            JsonNode responseJson = objectMapper.readTree(response.getBody());
-            JsonNode candidates = responseJson.path("candidates");
-            
-            if (candidates.isArray() && candidates.size() > 0) {
-                JsonNode content1 = candidates.get(0).path("content");
-                JsonNode parts1 = content1.path("parts");
-                
-                if (parts1.isArray() && parts1.size() > 0) {
-                    String result = parts1.get(0).path("text").asText();
-                    // Log the parsed result
-                    if (log.isDebugEnabled()) {
-                        log.debug("Parsed intent analysis result from Gemini: {}", result);
-                    }
-                    return result;
+            String result = geminiCodec.extractText(responseBody);
+            if (result != null) {
+                // Log the parsed result
+                if (log.isDebugEnabled()) {
+                    log.debug("Parsed intent analysis result from Gemini: {}", result);
                 }
+                return result;
             }
             
             return createErrorResponse("Unable to parse AI response");
@@ -2126,6 +2168,170 @@ public class ShopAIServiceImpl implements ShopAIService {
         }
     }
     
+    /**
+     * Turn a plain informational answer into the copy reused for other customers: extracted customer data
+     * and action fields are removed. Errors and order/checkout actions are never shared.
+     *
+     * @return The reply to cache, or null if it must not be shared
+     */
+    private String toShareableResponse(String aiResponse) {
+        try {
+            JsonNode json = objectMapper.readTree(aiResponse);
+            if (!(json instanceof ObjectNode reply) || json.path("error").asBoolean(false)) {
+                return null;
+            }
+            
+            String intent = json.path("detected_intent").asText("");
+            if (!CACHEABLE_INTENTS.contains(intent)) {
+                return null;
+            }
+            
+            String actionType = json.path("action_details").path("action_type").asText("");
+            if ("PLACEORDER".equals(actionType) || "CANCELORDER".equals(actionType) || "CHECKORDER".equals(actionType)) {
+                return null;
+            }
+            
+            reply.remove(SHARED_RESPONSE_EXCLUDED_FIELDS);
+            return objectMapper.writeValueAsString(reply);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Find or create the customer record for this chat user on a virtual thread
+     */
+    private CompletableFuture<Customer> prefetchCustomer(Long shopId, String customerId, String customerName) {
+        if (customerId == null || customerId.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        return CompletableFuture.supplyAsync(() -> {
+            // For Telegram users, use email pattern: telegram_{username}@example.com
+            String customerEmail = "telegram_" + customerId + "@example.com";
+            
+            // Try to find by email pattern first
+            Customer customer = customerService.findByEmailAndShopId(customerEmail, shopId);
+            
+            // If still not found, create a new customer with email pattern
+            if (customer == null) {
+                customer = customerService.createNewCustomer(shopId, customerId, customerName, customerEmail);
+            }
+            return customer;
+        }, prefetchExecutor);
+    }
+    
+    /**
+     * Speculatively load the shop, the products for this message and categories in parallel on virtual threads.
+     * The results are only joined when the intent needs shop context.
+     */
+    private ShopContextPrefetch prefetchShopContext(Long shopId, String message) {
+        return new ShopContextPrefetch(
+            CompletableFuture.supplyAsync(() -> shopService.getShopByIdForBotServices(shopId), prefetchExecutor),
+            CompletableFuture.supplyAsync(() -> selectPromptProducts(shopId, message), prefetchExecutor),
+            CompletableFuture.supplyAsync(() -> productService.getShopCategories(shopId), prefetchExecutor)
+        );
+    }
+    
+    /**
+     * The products most relevant to the message, or a sample of the catalog when none match
+     * (greetings, questions about the shop itself)
+     */
+    private PromptProducts selectPromptProducts(Long shopId, String message) {
+        List<ProductResponse> matches = findRelevantProducts(shopId, message);
+        if (!matches.isEmpty()) {
+            metricsService.increment("ai.prompt_products.matched");
+            return new PromptProducts(matches, true);
+        }
+        metricsService.increment("ai.prompt_products.sample");
+        return new PromptProducts(productService.getShopProducts(shopId, PageRequest.of(0, 5)).getContent(), false);
+    }
+    
+    /**
+     * Merge keyword (BM25) and semantic matches by reciprocal rank fusion, so a product found by
+     * both ranks first and loosely worded messages still find products that share no keyword
+     */
+    private List<ProductResponse> findRelevantProducts(Long shopId, String text) {
+        int topK = productIndexConfig.getTopK();
+        List<ProductResponse> keywordMatches = productSearchIndex.search(shopId, text, topK);
+        List<Long> semanticMatches = productVectorIndex.search(shopId, text, topK);
+        if (semanticMatches.isEmpty()) {
+            return keywordMatches;
+        }
+        
+        Map<Long, Double> scores = new HashMap<>();
+        for (int i = 0; i < keywordMatches.size(); i++) {
+            scores.merge(keywordMatches.get(i).getId(), 1.0 / (RANK_FUSION_K + i + 1), Double::sum);
+        }
+        for (int i = 0; i < semanticMatches.size(); i++) {
+            scores.merge(semanticMatches.get(i), 1.0 / (RANK_FUSION_K + i + 1), Double::sum);
+        }
+        List<Long> ranked = scores.entrySet().stream()
+                .sorted(Map.Entry.<Long, Double>comparingByValue().reversed())
+                .limit(topK)
+                .map(Map.Entry::getKey)
+                .toList();
+        
+        Map<Long, ProductResponse> byId = new HashMap<>();
+        keywordMatches.forEach(product -> byId.put(product.getId(), product));
+        List<Long> missing = ranked.stream().filter(id -> !byId.containsKey(id)).toList();
+        productSearchIndex.findByIds(shopId, missing).forEach(product -> byId.put(product.getId(), product));
+        if (!missing.isEmpty()) {
+            metricsService.increment("ai.prompt_products.semantic_only", missing.size());
+        }
+        return ranked.stream().map(byId::get).filter(Objects::nonNull).toList();
+    }
+    
+    /**
+     * Wait for a prefetch result, rethrowing the original failure instead of the CompletionException wrapper
+     */
+    private <T> T joinPrefetch(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+    
+    @PreDestroy
+    public void shutdownPrefetchExecutor() {
+        prefetchExecutor.shutdown();
+    }
+    
+    /**
+     * Decide locally, without calling Gemini, whether the intent call alone can answer this message.
+     * True for greetings, order status questions and address replies.
+     */
+    private boolean isAnswerableFromIntentCall(String message, boolean isLikelyAddressOnly) {
+        if (message == null || message.isBlank()) {
+            return true;
+        }
+        if (isLikelyAddressOnly) {
+            return true;
+        }
+        
+        String lowerMessage = message.toLowerCase().trim();
+        
+        // Order status questions
+        if (lowerMessage.contains("đơn hàng") && (lowerMessage.contains("kiểm tra") || lowerMessage.contains("tình trạng")
+                || lowerMessage.contains("thế nào") || lowerMessage.contains("đến đâu") || lowerMessage.contains("xem"))
+            || lowerMessage.contains("order status") || lowerMessage.contains("check my order")
+            || lowerMessage.matches(".*(đơn|order)\\s*(hàng\\s*)?(số\\s*)?#?\\d+.*")) {
+            return true;
+        }
+        
+        // Short greetings with no product or order language
+        if (lowerMessage.length() <= 30 && GREETING_PATTERN.matcher(lowerMessage).find()
+            && !lowerMessage.contains("mua") && !lowerMessage.contains("giá") && !lowerMessage.contains("đặt")) {
+            return true;
+        }
+        
+        return false;
+    }
+    
     /**
      * Checks if the message is likely just providing an address in response to a request
      */
@@ -2631,4 +2837,120 @@ public class ShopAIServiceImpl implements ShopAIService {
                 return "❓";
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * In-flight shop context reads started when the message arrived
+     */
+    /**
+     * A prompt split into the part shared by every request of a shop (cacheable) and the part
+     * specific to this request
+     */
+    private record ShopPrompt(String scope, String shopContext, String request) {
+    }
+    
+    /**
+     * @param matched true if the products were selected by the product index, false for a catalog sample
+     */
+    private record PromptProducts(List<ProductResponse> products, boolean matched) {
+    }
+    
+    private record ShopContextPrefetch(CompletableFuture<Shop> shop,
+                                       CompletableFuture<PromptProducts> products,
+                                       CompletableFuture<List<String>> categories) {
+    }
+    
+    /**
+     * Incrementally decodes the response_text string value out of a streamed structured JSON response.
+     * Chunks may split keys, escapes or characters anywhere, so undecodable tails are kept for the next chunk.
+     */
+    private static final class ResponseTextStream {
+        private static final String KEY = "\"response_text\"";
+        
+        private final Consumer<String> listener;
+        private final StringBuilder raw = new StringBuilder();
+        private final StringBuilder decoded = new StringBuilder();
+        private int position = -1;
+        private boolean complete;
+        
+        private ResponseTextStream(Consumer<String> listener) {
+            this.listener = listener;
+        }
+        
+        private void append(String chunk) {
+            raw.append(chunk);
+            if (complete) {
+                return;
+            }
+            if (position < 0 && !findValueStart()) {
+                return;
+            }
+            
+            int before = decoded.length();
+            while (position < raw.length()) {
+                char c = raw.charAt(position);
+                if (c == '"') {
+                    complete = true;
+                    break;
+                }
+                if (c != '\\') {
+                    decoded.append(c);
+                    position++;
+                    continue;
+                }
+                if (position + 1 >= raw.length()) {
+                    break;
+                }
+                char escape = raw.charAt(position + 1);
+                if (escape == 'u') {
+                    if (position + 6 > raw.length()) {
+                        break;
+                    }
+                    decoded.append((char) Integer.parseInt(raw.substring(position + 2, position + 6), 16));
+                    position += 6;
+                    continue;
+                }
+                decoded.append(switch (escape) {
+                    case 'n' -> '\n';
+                    case 't' -> '\t';
+                    case 'r' -> '\r';
+                    case 'b' -> '\b';
+                    case 'f' -> '\f';
+                    default -> escape;
+                });
+                position += 2;
+            }
+            
+            if (decoded.length() > before) {
+                listener.accept(decoded.toString());
+            }
+        }
+        
+        private boolean findValueStart() {
+            int key = raw.indexOf(KEY);
+            if (key < 0) {
+                return false;
+            }
+            int i = key + KEY.length();
+            while (i < raw.length() && (Character.isWhitespace(raw.charAt(i)) || raw.charAt(i) == ':')) {
+                i++;
+            }
+            if (i >= raw.length()) {
+                return false;
+            }
+            if (raw.charAt(i) != '"') {
+                complete = true;
+                return false;
+            }
+            position = i + 1;
+            return true;
+        }
+    }
+    
+    /**
+     * Records which path a message took through the pipeline, for per-path latency metrics
+     */
+    private static final class PipelineTrace {
+        private String path = "intent_only";
+        private int geminiCalls = 0;
+    }
+}
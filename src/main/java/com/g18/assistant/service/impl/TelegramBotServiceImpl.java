@@ -1,8 +1,14 @@
 package com.g18.assistant.service.impl;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.g18.assistant.dto.KeysetCursor;
+import com.g18.assistant.dto.response.CursorPageResponse;
+import com.g18.assistant.dto.response.TelegramMessageResponse;
 import com.g18.assistant.entity.AccessToken;
 import com.g18.assistant.entity.Shop;
-import com.g18.assistant.entity.TelegramMessage;
 import com.g18.assistant.repository.AccessTokenRepository;
 import com.g18.assistant.repository.TelegramMessageRepository;
 import com.g18.assistant.service.ShopService;
@@ -15,7 +21,8 @@ import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.Collections;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Optional;
 
@@ -24,10 +31,14 @@ import java.util.Optional;
 @Slf4j
 public class TelegramBotServiceImpl implements TelegramBotService {
     
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int EXPORT_CHUNK_SIZE = 500;
+    
     private final ShopService shopService;
     private final AccessTokenRepository accessTokenRepository;
     private final TelegramMessageRepository telegramMessageRepository;
     private final TelegramBotManager telegramBotManager;
+    private final ObjectMapper objectMapper;
     
     @Override
     @Transactional
@@ -52,9 +63,12 @@ public class TelegramBotServiceImpl implements TelegramBotService {
             }
             
             // Start the bot
-            boolean success = telegramBotManager.startBot(shop, tokenOpt.get().getAccessToken());
+            AccessToken token = tokenOpt.get();
+            boolean success = telegramBotManager.startBot(shop, token.getAccessToken());
             
             if (success) {
+                token.setBotEnabled(true);
+                accessTokenRepository.save(token);
                 log.info("Successfully started Telegram bot for shop ID: {}", shopId);
             } else {
                 log.error("Failed to start Telegram bot for shop ID: {}", shopId);
@@ -71,7 +85,15 @@ public class TelegramBotServiceImpl implements TelegramBotService {
     public boolean stopBot(Long shopId, String username) {
         try {
             // Validate shop ownership
-            shopService.validateUserShop(shopId, username);
+            Shop shop = shopService.validateUserShop(shopId, username);
+            
+            // Keep the bot stopped across restarts
+            accessTokenRepository.findByShopAndMethodAndStatus(
+                    shop, AccessToken.TokenMethod.TELEGRAM, AccessToken.TokenStatus.ACTIVE)
+                    .ifPresent(token -> {
+                        token.setBotEnabled(false);
+                        accessTokenRepository.save(token);
+                    });
             
             // Stop the bot
             return telegramBotManager.stopBot(shopId);
@@ -97,25 +119,59 @@ public class TelegramBotServiceImpl implements TelegramBotService {
     
     @Override
     @Transactional(readOnly = true)
-    public List<TelegramMessage> getRecentMessages(Long shopId, String username, int limit) {
-        try {
-            // Validate shop ownership
-            Shop shop = shopService.validateUserShop(shopId, username);
-            
-            // Limit to a reasonable number
-            int actualLimit = Math.min(limit, 100);
-            
-            // Get recent messages
-            return telegramMessageRepository.findByShopOrderByReceivedAtDesc(shop)
-                    .stream()
-                    .limit(actualLimit)
-                    .toList();
-        } catch (Exception e) {
-            log.error("Error retrieving messages for shop {}: {}", shopId, e.getMessage());
-            return Collections.emptyList();
+    public List<TelegramMessageResponse> getRecentMessages(Long shopId, String username, int limit) {
+        return getMessages(shopId, username, null, limit).getContent();
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPageResponse<TelegramMessageResponse> getMessages(Long shopId, String username, String cursor, int limit) {
+        // Validate shop ownership
+        shopService.validateUserShop(shopId, username);
+        
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        int actualLimit = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        
+        // Fetch one extra row to know whether another page follows
+        List<TelegramMessageResponse> rows = fetchAfter(shopId, after, actualLimit + 1);
+        return CursorPageResponse.from(rows, actualLimit, TelegramBotServiceImpl::cursorOf);
+    }
+    
+    @Override
+    public void exportMessages(Long shopId, OutputStream out) throws IOException {
+        // Each chunk is its own short query, so no connection is held open while the client reads
+        ObjectWriter writer = objectMapper.writerFor(TelegramMessageResponse.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            KeysetCursor after = null;
+            List<TelegramMessageResponse> chunk;
+            do {
+                chunk = fetchAfter(shopId, after, EXPORT_CHUNK_SIZE);
+                for (TelegramMessageResponse message : chunk) {
+                    writer.writeValue(generator, message);
+                    generator.writeRaw('\n');
+                }
+                generator.flush();
+                if (!chunk.isEmpty()) {
+                    after = cursorOf(chunk.get(chunk.size() - 1));
+                }
+            } while (chunk.size() == EXPORT_CHUNK_SIZE);
         }
     }
     
+    private List<TelegramMessageResponse> fetchAfter(Long shopId, KeysetCursor after, int limit) {
+        PageRequest page = PageRequest.of(0, limit);
+        return after == null
+                ? telegramMessageRepository.findLatestByShopId(shopId, page)
+                : telegramMessageRepository.findByShopIdBefore(shopId, after.timestamp(), after.id(), page);
+    }
+    
+    private static KeysetCursor cursorOf(TelegramMessageResponse message) {
+        return new KeysetCursor(message.getReceivedAt(), message.getId());
+    }
+    
     @Override
     public boolean sendMessage(Long shopId, String username, Long chatId, String message) {
         try {
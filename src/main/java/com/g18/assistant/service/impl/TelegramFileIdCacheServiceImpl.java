@@ -0,0 +1,75 @@
+package com.g18.assistant.service.impl;
+
+import com.g18.assistant.service.MetricsService;
+import com.g18.assistant.service.TelegramFileIdCacheService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TelegramFileIdCacheServiceImpl implements TelegramFileIdCacheService {
+
+    // One Redis hash per bot, field "<productId>:<imageHash>" -> file_id, kept without expiry
+    private static final String FILE_ID_PREFIX = "telegram_file_id:";
+
+    private final RedisTemplate<String, String> redisTemplateString;
+    private final MetricsService metricsService;
+
+    // File IDs never change for a given upload, so a local copy never goes stale
+    private final Map<String, String> nearCache = new ConcurrentHashMap<>();
+
+    @Override
+    public String get(String botId, Long productId, String imageHash) {
+        String field = field(productId, imageHash);
+        String localKey = botId + ":" + field;
+
+        String fileId = nearCache.get(localKey);
+        if (fileId == null) {
+            try {
+                Object stored = redisTemplateString.opsForHash().get(FILE_ID_PREFIX + botId, field);
+                fileId = stored != null ? stored.toString() : null;
+            } catch (Exception e) {
+                log.warn("Error reading Telegram file_id cache for bot {}: {}", botId, e.getMessage());
+            }
+            if (fileId != null) {
+                nearCache.put(localKey, fileId);
+            }
+        }
+
+        metricsService.increment(fileId != null ? "telegram.file_id.hit" : "telegram.file_id.miss");
+        return fileId;
+    }
+
+    @Override
+    public void put(String botId, Long productId, String imageHash, String fileId) {
+        String field = field(productId, imageHash);
+        nearCache.put(botId + ":" + field, fileId);
+        try {
+            redisTemplateString.opsForHash().put(FILE_ID_PREFIX + botId, field, fileId);
+        } catch (Exception e) {
+            log.warn("Error writing Telegram file_id cache for bot {}: {}", botId, e.getMessage());
+        }
+    }
+
+    @Override
+    public void evict(String botId, Long productId, String imageHash) {
+        String field = field(productId, imageHash);
+        nearCache.remove(botId + ":" + field);
+        metricsService.increment("telegram.file_id.evicted");
+        try {
+            redisTemplateString.opsForHash().delete(FILE_ID_PREFIX + botId, field);
+        } catch (Exception e) {
+            log.warn("Error evicting Telegram file_id for bot {}: {}", botId, e.getMessage());
+        }
+    }
+
+    private static String field(Long productId, String imageHash) {
+        return productId + ":" + imageHash;
+    }
+}
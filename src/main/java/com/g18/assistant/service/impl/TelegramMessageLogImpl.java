@@ -0,0 +1,210 @@
+package com.g18.assistant.service.impl;
+
+import com.g18.assistant.config.TelegramConfig;
+import com.g18.assistant.entity.TelegramMessage;
+import com.g18.assistant.repository.TelegramMessageRepository;
+import com.g18.assistant.service.MetricsService;
+import com.g18.assistant.service.TelegramMessageLog;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers incoming Telegram messages and writes them with JDBC batch inserts, flushing when a
+ * batch is full or the oldest buffered row reaches the flush interval. A failed batch goes back
+ * into the buffer a limited number of times; after that each row is written on its own and
+ * only rows that still fail are given up.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TelegramMessageLogImpl implements TelegramMessageLog {
+
+    // Must match the allocation size of the telegram_message_seq generator
+    private static final int SEQUENCE_ALLOCATION_SIZE = 50;
+
+    private final TelegramMessageRepository messageRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final TelegramConfig telegramConfig;
+    private final MetricsService metricsService;
+
+    private BlockingQueue<PendingRow> buffer;
+    private Thread flusher;
+    private final Object flushLock = new Object();
+
+    @PostConstruct
+    public void init() {
+        alignSequence();
+        buffer = new ArrayBlockingQueue<>(telegramConfig.getMessageLog().getBufferCapacity());
+        flusher = Thread.ofVirtual().name("telegram-message-log").start(this::flushLoop);
+        metricsService.registerGauge("telegram.message_log.buffered", () -> buffer.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.interrupt();
+        flush();
+    }
+
+    @Override
+    public void append(TelegramMessage message) {
+        TelegramConfig.MessageLog config = telegramConfig.getMessageLog();
+        PendingRow row = new PendingRow(message, System.nanoTime(), new CompletableFuture<>(), 0);
+        boolean buffered;
+        try {
+            buffered = buffer.offer(row, config.getAppendTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            buffered = false;
+        }
+
+        if (!buffered) {
+            // Never drop a message: when the buffer stays full, write this one on the caller's thread
+            metricsService.increment("telegram.message_log.overflow");
+            messageRepository.save(message);
+            return;
+        }
+        if (config.getDurability() == TelegramConfig.Durability.SYNC) {
+            row.written.join();
+        }
+    }
+
+    @Override
+    public void flush() {
+        List<PendingRow> batch = new ArrayList<>();
+        while (buffer.drainTo(batch, telegramConfig.getMessageLog().getBatchSize()) > 0) {
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private void flushLoop() {
+        TelegramConfig.MessageLog config = telegramConfig.getMessageLog();
+        List<PendingRow> batch = new ArrayList<>(config.getBatchSize());
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                PendingRow first = buffer.take();
+                batch.add(first);
+                // Collect more rows until the batch is full or the first row has waited long enough
+                long deadline = first.appendedNanos + config.getFlushInterval().toNanos();
+                while (batch.size() < config.getBatchSize()) {
+                    if (buffer.drainTo(batch, config.getBatchSize() - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || !pollInto(batch, remaining)) {
+                        break;
+                    }
+                }
+                boolean written = write(batch);
+                batch.clear();
+                if (!written) {
+                    // Give the database a moment before the re-queued rows come around again
+                    Thread.sleep(config.getFlushInterval().toMillis());
+                }
+            } catch (InterruptedException e) {
+                // Shutting down, keep what was already taken from the buffer
+                write(batch);
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("Error in Telegram message log flusher: {}", e.getMessage(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private boolean pollInto(List<PendingRow> batch, long timeoutNanos) throws InterruptedException {
+        PendingRow row = buffer.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+        if (row == null) {
+            return false;
+        }
+        batch.add(row);
+        return true;
+    }
+
+    /**
+     * @return false if the batch failed and its rows were re-queued or written one by one
+     */
+    private boolean write(List<PendingRow> batch) {
+        if (batch.isEmpty()) {
+            return true;
+        }
+        List<TelegramMessage> messages = new ArrayList<>(batch.size());
+        batch.forEach(row -> messages.add(row.message));
+        try {
+            synchronized (flushLock) {
+                transactionTemplate.executeWithoutResult(status -> messageRepository.saveAll(messages));
+            }
+            long now = System.nanoTime();
+            metricsService.recordLatency("telegram.message_log.flush_lag", now - batch.get(0).appendedNanos);
+            metricsService.increment("telegram.message_log.written", batch.size());
+            batch.forEach(row -> row.written.complete(null));
+            return true;
+        } catch (Exception e) {
+            log.warn("Failed to write {} Telegram messages, retrying: {}", batch.size(), e.getMessage());
+            metricsService.increment("telegram.message_log.retried", batch.size());
+            int maxAttempts = telegramConfig.getMessageLog().getMaxWriteAttempts();
+            for (PendingRow row : batch) {
+                // persist assigned an ID before the rollback; with it saveAll would merge the row
+                // with a SELECT each instead of inserting it in the next JDBC batch
+                row.message.setId(null);
+                PendingRow retry = row.retried();
+                if (retry.attempts >= maxAttempts || !buffer.offer(retry)) {
+                    writeSingle(retry);
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Last resort for a row whose batch kept failing: write it alone so only a bad row is lost
+     */
+    private void writeSingle(PendingRow row) {
+        try {
+            synchronized (flushLock) {
+                transactionTemplate.executeWithoutResult(status -> messageRepository.save(row.message));
+            }
+            metricsService.increment("telegram.message_log.written");
+            row.written.complete(null);
+        } catch (Exception e) {
+            metricsService.increment("telegram.message_log.failed");
+            log.error("Giving up on Telegram message from chat {} after {} attempts: {}",
+                    row.message.getChatId(), row.attempts, e.getMessage(), e);
+            row.written.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * ddl-auto creates the sequence table starting at 1, while rows inserted under IDENTITY already
+     * use low IDs. Move the sequence past them; this is a no-op once it is ahead.
+     */
+    private void alignSequence() {
+        try {
+            jdbcTemplate.update("UPDATE telegram_messages_seq SET next_val = GREATEST(next_val, "
+                    + "(SELECT COALESCE(MAX(id), 0) + ? FROM telegram_messages))", SEQUENCE_ALLOCATION_SIZE + 1);
+        } catch (Exception e) {
+            log.warn("Could not align telegram_messages_seq with existing rows: {}", e.getMessage());
+        }
+    }
+
+    private record PendingRow(TelegramMessage message, long appendedNanos, CompletableFuture<Void> written, int attempts) {
+
+        PendingRow retried() {
+            return new PendingRow(message, appendedNanos, written, attempts + 1);
+        }
+    }
+}
@@ -2,11 +2,13 @@ package com.g18.assistant.telegram;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.g18.assistant.config.AiPipelineConfig;
+import com.g18.assistant.config.TelegramConfig;
 import com.g18.assistant.entity.Product;
 import com.g18.assistant.entity.Shop;
 import com.g18.assistant.entity.TelegramMessage;
-import com.g18.assistant.repository.TelegramMessageRepository;
 import com.g18.assistant.service.ShopAIService;
+import com.g18.assistant.service.TelegramMessageLog;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
@@ -14,47 +16,82 @@ import org.telegram.telegrambots.bots.TelegramLongPollingBot;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
+import org.telegram.telegrambots.meta.api.methods.updates.DeleteWebhook;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
 import org.telegram.telegrambots.meta.api.objects.Document;
 import org.telegram.telegrambots.meta.api.objects.InputFile;
+import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.PhotoSize;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
 import com.g18.assistant.dto.OrderDTO;
 import com.g18.assistant.dto.request.CreateOrderRequest;
 import com.g18.assistant.entity.Customer;
 import com.g18.assistant.repository.CustomerRepository;
+import com.g18.assistant.service.MetricsService;
 import com.g18.assistant.service.OrderService;
 import com.g18.assistant.service.PendingOrderService;
+import com.g18.assistant.service.ProductImageService;
+import com.g18.assistant.service.TelegramFileIdCacheService;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDateTime;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Slf4j
 public class ShopTelegramBot extends TelegramLongPollingBot {
       private final Shop shop;
-    private final TelegramMessageRepository messageRepository;
+    private final TelegramMessageLog messageLog;
     private final ShopAIService shopAIService;
     private final ObjectMapper objectMapper;
     private final CustomerRepository customerRepository;
     private final OrderService orderService;
     private final PendingOrderService pendingOrderService;
+    private final AiPipelineConfig aiPipelineConfig;
+    private final ProductImageService productImageService;
+    private final TelegramFileIdCacheService telegramFileIdCache;
+    private final TelegramUpdateDispatcher updateDispatcher;
+    private final TelegramSendScheduler sendScheduler;
+    private final MetricsService metricsService;
+    private final String botId;
+    
+    // Telegram rejects rapid edits of the same message, so partial replies are throttled
+    private static final long STREAM_EDIT_INTERVAL_NANOS = 1_000_000_000L;
     
     @Getter
     private boolean isRunning = false;
-      public ShopTelegramBot(String botToken, Shop shop, TelegramMessageRepository messageRepository, 
+    private boolean webhook = false;
+      public ShopTelegramBot(String botToken, Shop shop, TelegramMessageLog messageLog, 
                            ShopAIService shopAIService, ObjectMapper objectMapper,
                            CustomerRepository customerRepository, OrderService orderService,
-                           PendingOrderService pendingOrderService) {
+                           PendingOrderService pendingOrderService, AiPipelineConfig aiPipelineConfig,
+                           ProductImageService productImageService, TelegramFileIdCacheService telegramFileIdCache,
+                           TelegramUpdateDispatcher updateDispatcher, TelegramConfig telegramConfig,
+                           MetricsService metricsService) {
         super(botToken);
         this.shop = shop;
-        this.messageRepository = messageRepository;
+        this.messageLog = messageLog;
         this.shopAIService = shopAIService;
         this.objectMapper = objectMapper;
         this.customerRepository = customerRepository;
         this.orderService = orderService;
         this.pendingOrderService = pendingOrderService;
+        this.aiPipelineConfig = aiPipelineConfig;
+        this.productImageService = productImageService;
+        this.telegramFileIdCache = telegramFileIdCache;
+        this.updateDispatcher = updateDispatcher;
+        this.sendScheduler = new TelegramSendScheduler(shop.getId(), this, telegramConfig, metricsService);
+        this.metricsService = metricsService;
+        // The numeric part of the token identifies the bot that owns uploaded file IDs
+        this.botId = botToken.contains(":") ? botToken.substring(0, botToken.indexOf(':')) : "shop_" + shop.getId();
     }
     
     @Override
@@ -62,8 +99,31 @@ public class ShopTelegramBot extends TelegramLongPollingBot {
         return "Shop_" + shop.getId() + "_Bot";
     }
     
+    /**
+     * Hand the update to the bot's worker queue so the polling thread is free for the next one
+     */
     @Override
     public void onUpdateReceived(Update update) {
+        if (!enqueueUpdate(update)) {
+            // Unlike a webhook, long polling has already confirmed the update, so Telegram will not send it again
+            metricsService.increment("telegram.polling.dropped");
+            log.warn("Dropped Telegram update {} for shop {}: the bot is saturated or stopping", 
+                    update.getUpdateId(), shop.getId());
+        }
+    }
+    
+    /**
+     * Queue an update from long polling or the webhook endpoint
+     * 
+     * @param update The Telegram update
+     * @return true if the update was queued, false if the bot is saturated or stopping
+     */
+    public boolean enqueueUpdate(Update update) {
+        Long chatId = update.hasMessage() ? update.getMessage().getChatId() : 0L;
+        return updateDispatcher.submit(chatId, () -> handleUpdate(update));
+    }
+    
+    private void handleUpdate(Update update) {
         if (update.hasMessage()) {
             log.info("Received message from Telegram - Shop ID: {}, Chat ID: {}", 
                     shop.getId(), update.getMessage().getChatId());
@@ -128,15 +188,22 @@ public class ShopTelegramBot extends TelegramLongPollingBot {
                     .receivedAt(LocalDateTime.now())
                     .build();
             
-            messageRepository.save(telegramMessage);
+            messageLog.append(telegramMessage);
             
             log.info("Stored Telegram message - Shop ID: {}, Message: {}", 
                     shop.getId(), messageText);
 
-            // Process message with Gemini AI
+            // Process message with Gemini AI, editing a live reply as text streams in when enabled
+            StreamingReply streamingReply = null;
             try {
                 // Call AI service to get response
-                String aiResponse = shopAIService.processCustomerMessage(shop.getId(), userId, username, messageText);
+                String aiResponse;
+                if (aiPipelineConfig.isStreamingReplies()) {
+                    streamingReply = new StreamingReply(chatId);
+                    aiResponse = shopAIService.processCustomerMessageStreaming(shop.getId(), userId, username, messageText, streamingReply::update);
+                } else {
+                    aiResponse = shopAIService.processCustomerMessage(shop.getId(), userId, username, messageText);
+                }
                 
                 // Parse the AI response
                 JsonNode responseJson = objectMapper.readTree(aiResponse);
@@ -144,7 +211,7 @@ public class ShopTelegramBot extends TelegramLongPollingBot {
                 // Check if there was an error
                 if (responseJson.has("error") && responseJson.get("error").asBoolean()) {
                     log.error("AI error: {}", responseJson.get("message").asText());
-                    sendTextMessage(chatId, "I'm sorry, I'm having trouble understanding your request right now. Please try again later.");
+                    sendReply(chatId, streamingReply, "I'm sorry, I'm having trouble understanding your request right now. Please try again later.");
                     return;
                 }
                 
@@ -154,7 +221,7 @@ public class ShopTelegramBot extends TelegramLongPollingBot {
                         "Thank you for your message. I'll get back to you soon.";
                 
                 // First send the text response to the user
-                sendTextMessage(chatId, responseText);
+                sendReply(chatId, streamingReply, responseText);
                 
                 // Log detected intent for monitoring
                 if (responseJson.has("detected_intent")) {
@@ -238,11 +305,22 @@ public class ShopTelegramBot extends TelegramLongPollingBot {
                 
             } catch (Exception e) {
                 log.error("Error processing message with AI: {}", e.getMessage(), e);
-                sendTextMessage(chatId, "I'm sorry, I couldn't process your request. Please try again later.");
+                sendReply(chatId, streamingReply, "I'm sorry, I couldn't process your request. Please try again later.");
             }
         }
     }
     
+    /**
+     * Send the final reply, turning a streamed partial reply into it instead of leaving it next to a second message
+     */
+    private void sendReply(Long chatId, StreamingReply streamingReply, String text) {
+        if (streamingReply != null && streamingReply.isStarted()) {
+            streamingReply.finish(text);
+        } else {
+            sendTextMessage(chatId, text);
+        }
+    }
+    
     /**
      * Send a text message to a specific chat
      * 
@@ -252,10 +330,7 @@ public class ShopTelegramBot extends TelegramLongPollingBot {
      */
     public boolean sendTextMessage(Long chatId, String text) {
         try {
-            SendMessage message = new SendMessage();
-            message.setChatId(chatId);
-            message.setText(text);
-            execute(message);
+            await(sendScheduler.sendText(chatId, text));
             return true;
         } catch (TelegramApiException e) {
             log.error("Failed to send message to chat {} for shop {}: {}", 
@@ -264,6 +339,102 @@ public class ShopTelegramBot extends TelegramLongPollingBot {
         }
     }
     
+    /**
+     * Wait for a call queued on the send scheduler, surfacing Telegram errors as they were thrown
+     */
+    private <T> T await(CompletableFuture<T> future) throws TelegramApiException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof TelegramApiException telegramError) {
+                throw telegramError;
+            }
+            throw new TelegramApiException(e.getCause());
+        }
+    }
+    
+    /**
+     * Reply that is sent on the first streamed fragment and then edited in place as more text arrives
+     */
+    private final class StreamingReply {
+        private final Long chatId;
+        private Integer messageId;
+        // Updated from the send scheduler once an edit has gone through
+        private volatile String shownText = "";
+        private long lastEditNanos;
+        
+        private StreamingReply(Long chatId) {
+            this.chatId = chatId;
+        }
+        
+        private boolean isStarted() {
+            return messageId != null;
+        }
+        
+        private void update(String text) {
+            if (text.isBlank()) {
+                return;
+            }
+            if (messageId == null) {
+                try {
+                    SendMessage message = new SendMessage();
+                    message.setChatId(chatId);
+                    message.setText(text);
+                    messageId = await(sendScheduler.submit(chatId, sender -> sender.execute(message))).getMessageId();
+                    shownText = text;
+                    lastEditNanos = System.nanoTime();
+                } catch (TelegramApiException e) {
+                    log.error("Failed to send streamed reply to chat {} for shop {}: {}", 
+                            chatId, shop.getId(), e.getMessage());
+                }
+                return;
+            }
+            if (System.nanoTime() - lastEditNanos >= STREAM_EDIT_INTERVAL_NANOS) {
+                // Intermediate edits are not awaited, a newer one replaces it while it waits for its turn
+                edit(text).whenComplete((result, e) -> {
+                    if (e != null) {
+                        log.warn("Failed to edit streamed reply in chat {} for shop {}: {}", 
+                                chatId, shop.getId(), e.getMessage());
+                    }
+                });
+            }
+        }
+        
+        private void finish(String finalText) {
+            if (finalText.equals(shownText)) {
+                return;
+            }
+            try {
+                await(edit(finalText));
+            } catch (TelegramApiException e) {
+                log.warn("Failed to edit streamed reply in chat {} for shop {}, replacing it: {}", 
+                        chatId, shop.getId(), e.getMessage());
+                // Never leave the partial text standing as if it were the answer
+                try {
+                    DeleteMessage delete = new DeleteMessage(String.valueOf(chatId), messageId);
+                    await(sendScheduler.submit(chatId, sender -> sender.execute(delete)));
+                } catch (TelegramApiException deleteError) {
+                    log.warn("Failed to delete streamed reply in chat {} for shop {}: {}", 
+                            chatId, shop.getId(), deleteError.getMessage());
+                }
+                sendTextMessage(chatId, finalText);
+            }
+        }
+        
+        private CompletableFuture<Object> edit(String text) {
+            EditMessageText edit = new EditMessageText();
+            edit.setChatId(chatId);
+            edit.setMessageId(messageId);
+            edit.setText(text);
+            lastEditNanos = System.nanoTime();
+            return sendScheduler.editText(chatId, edit).whenComplete((result, e) -> {
+                if (e == null) {
+                    shownText = text;
+                }
+            });
+        }
+    }
+    
     /**
      * Start the bot
      * 
@@ -284,10 +455,64 @@ public class ShopTelegramBot extends TelegramLongPollingBot {
     }
     
     /**
-     * Stop the bot
+     * Start the bot in webhook mode, so updates arrive through the shared webhook endpoint
+     * instead of a polling session of its own
+     * 
+     * @param url The public webhook URL for this shop
+     * @param secretToken Token Telegram sends back in the X-Telegram-Bot-Api-Secret-Token header
+     * @param maxConnections Parallel connections Telegram may open to the webhook
+     * @return true if the webhook was registered successfully
+     */
+    public boolean startWebhook(String url, String secretToken, int maxConnections) {
+        try {
+            execute(SetWebhook.builder()
+                    .url(url)
+                    .secretToken(secretToken)
+                    .maxConnections(maxConnections)
+                    .allowedUpdates(List.of("message"))
+                    .build());
+            webhook = true;
+            isRunning = true;
+            log.info("Registered Telegram webhook for shop ID: {}", shop.getId());
+            return true;
+        } catch (TelegramApiException e) {
+            log.error("Failed to register Telegram webhook for shop {}: {}", 
+                    shop.getId(), e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Serve a webhook that another node already registered, without calling Telegram
+     */
+    public void attachWebhook() {
+        webhook = true;
+        isRunning = true;
+        log.info("Attached to the Telegram webhook of shop ID: {}", shop.getId());
+    }
+    
+    /**
+     * Stop the bot and unregister its webhook, so Telegram stops delivering updates
      */
     public void stop() {
+        if (webhook && isRunning) {
+            try {
+                execute(new DeleteWebhook());
+            } catch (TelegramApiException e) {
+                log.warn("Failed to delete Telegram webhook for shop {}: {}", shop.getId(), e.getMessage());
+            }
+        }
+        shutdown();
+    }
+    
+    /**
+     * Stop processing updates on this node only. The webhook stays registered, so Telegram keeps
+     * the updates for other nodes or redelivers them after a restart.
+     */
+    public void shutdown() {
         isRunning = false;
+        updateDispatcher.shutdown();
+        sendScheduler.shutdown();
         log.info("Stopped Telegram bot for shop ID: {}", shop.getId());
     }
 
@@ -307,27 +532,12 @@ public class ShopTelegramBot extends TelegramLongPollingBot {
                 return false;
             }
             
-            // If the product has no image, send a message
-            if (product.getImageBase64() == null || product.getImageBase64().isEmpty()) {
+            // Send the photo with caption
+            String caption = product.getName() + " - " + product.getPrice() + " VND";
+            if (!sendProductPhoto(chatId, product, caption, null)) {
+                // If the product has no image, send a message
                 sendTextMessage(chatId, "I'm sorry, this product doesn't have an image.");
-                return true;
             }
-            
-            // Create a photo message with caption
-            SendPhoto photoMessage = new SendPhoto();
-            photoMessage.setChatId(chatId);
-            
-            // Convert base64 to input file
-            byte[] imageBytes = java.util.Base64.getDecoder().decode(product.getImageBase64());
-            InputFile inputFile = new InputFile(
-                new java.io.ByteArrayInputStream(imageBytes), 
-                product.getName() + ".jpg"
-            );
-            photoMessage.setPhoto(inputFile);
-            photoMessage.setCaption(product.getName() + " - " + product.getPrice() + " VND");
-            
-            // Send the photo
-            execute(photoMessage);
             return true;
         } catch (TelegramApiException e) {
             log.error("Failed to send product image to chat {} for shop {}: {}", 
@@ -339,6 +549,87 @@ public class ShopTelegramBot extends TelegramLongPollingBot {
         }
     }
     
+    /**
+     * Send a product photo, referencing the file_id of an earlier upload of the same image
+     * through this bot when there is one, and uploading the bytes otherwise
+     * 
+     * @return true if a photo was sent, false if the product has no image
+     */
+    private boolean sendProductPhoto(Long chatId, Product product, String caption, String parseMode) 
+            throws TelegramApiException {
+        String imageHash = product.getImageHash();
+        
+        if (imageHash != null) {
+            String fileId = telegramFileIdCache.get(botId, product.getId(), imageHash);
+            if (fileId != null) {
+                try {
+                    SendPhoto photo = buildPhotoMessage(chatId, new InputFile(fileId), caption, parseMode);
+                    await(sendScheduler.submit(chatId, sender -> sender.execute(photo)));
+                    return true;
+                } catch (TelegramApiException e) {
+                    // Rate limits and network errors say nothing about the file_id, so it stays cached
+                    if (!isInvalidFileId(e)) {
+                        throw e;
+                    }
+                    // The file may have been purged on Telegram's side, upload it again
+                    log.warn("Cached file_id rejected for product {} in shop {}: {}", 
+                            product.getId(), shop.getId(), e.getMessage());
+                    telegramFileIdCache.evict(botId, product.getId(), imageHash);
+                }
+            }
+        }
+        
+        if (imageHash == null && (product.getImageBase64() == null || product.getImageBase64().isEmpty())) {
+            return false;
+        }
+        // The image is opened inside the call, so a retry after a 429 uploads it from the start again
+        String fileName = product.getName() + ".jpg";
+        Message sent = await(sendScheduler.submit(chatId, sender -> {
+            try (InputStream imageStream = productImageService.openImage(imageHash, product.getImageBase64())) {
+                return sender.execute(buildPhotoMessage(chatId, new InputFile(imageStream, fileName), caption, parseMode));
+            } catch (IOException e) {
+                throw new TelegramApiException("Could not read the image of product " + product.getId(), e);
+            }
+        }));
+        
+        // Remember the largest size Telegram stored, later sends only reference it
+        if (imageHash != null && sent != null && sent.hasPhoto()) {
+            sent.getPhoto().stream()
+                    .max(Comparator.comparing(PhotoSize::getFileSize, Comparator.nullsFirst(Comparator.naturalOrder())))
+                    .ifPresent(photo -> telegramFileIdCache.put(botId, product.getId(), imageHash, photo.getFileId()));
+        }
+        return true;
+    }
+    
+    /**
+     * Telegram answers 400 with e.g. "wrong file identifier" or "wrong remote file identifier specified"
+     * when a file_id can no longer be used
+     */
+    private static boolean isInvalidFileId(TelegramApiException e) {
+        if (!(e instanceof TelegramApiRequestException requestError)
+                || !Integer.valueOf(400).equals(requestError.getErrorCode())) {
+            return false;
+        }
+        String description = requestError.getApiResponse();
+        if (description == null) {
+            return false;
+        }
+        description = description.toLowerCase();
+        return description.contains("file identifier") || description.contains("file_id")
+                || description.contains("file reference");
+    }
+    
+    private SendPhoto buildPhotoMessage(Long chatId, InputFile photo, String caption, String parseMode) {
+        SendPhoto photoMessage = new SendPhoto();
+        photoMessage.setChatId(chatId);
+        photoMessage.setPhoto(photo);
+        photoMessage.setCaption(caption);
+        if (parseMode != null) {
+            photoMessage.setParseMode(parseMode);
+        }
+        return photoMessage;
+    }
+    
     /**
      * Send detailed product information with image to a specific chat
      * 
@@ -370,29 +661,13 @@ public class ShopTelegramBot extends TelegramLongPollingBot {
             String detailsText = detailsBuilder.toString();
             
             // If the product has an image, send with image
-            if (product.getImageBase64() != null && !product.getImageBase64().isEmpty()) {
-                SendPhoto photoMessage = new SendPhoto();
-                photoMessage.setChatId(chatId);
-                
-                // Convert base64 to input file
-                byte[] imageBytes = java.util.Base64.getDecoder().decode(product.getImageBase64());
-                InputFile inputFile = new InputFile(
-                    new java.io.ByteArrayInputStream(imageBytes), 
-                    product.getName() + ".jpg"
-                );
-                photoMessage.setPhoto(inputFile);
-                photoMessage.setCaption(detailsText);
-                photoMessage.setParseMode("Markdown");
-                
-                // Send the photo with details
-                execute(photoMessage);
-            } else {
+            if (!sendProductPhoto(chatId, product, detailsText, "Markdown")) {
                 // If no image, just send text details
                 SendMessage message = new SendMessage();
                 message.setChatId(chatId);
                 message.setText(detailsText);
                 message.setParseMode("Markdown");
-                execute(message);
+                await(sendScheduler.submit(chatId, sender -> sender.execute(message)));
             }
             
             return true;
@@ -558,7 +833,7 @@ public class ShopTelegramBot extends TelegramLongPollingBot {
               sendTextMessage(chatId, "✅ Đã cập nhật địa chỉ giao hàng thành công!");
             
             // Kiểm tra xem có đơn hàng đang chờ không
-            PendingOrderService.PendingOrderInfo pendingOrder = pendingOrderService.getPendingOrder(userId);
+            PendingOrderService.PendingOrderInfo pendingOrder = pendingOrderService.takePendingOrder(userId);
             if (pendingOrder != null) {
                 // Tạo đơn hàng với địa chỉ mới
                 CreateOrderRequest orderRequest = new CreateOrderRequest();
@@ -567,11 +842,15 @@ public class ShopTelegramBot extends TelegramLongPollingBot {
                 orderRequest.setQuantity(pendingOrder.getQuantity());
                 orderRequest.setNote(pendingOrder.getNote());
                 
-                // Gọi service để tạo đơn hàng
-                OrderDTO createdOrder = orderService.createOrder(orderRequest);
-                
-                // Remove the pending order after successful creation
-                pendingOrderService.removePendingOrder(userId);
+                // Gọi service để tạo đơn hàng, trả lại đơn chờ nếu tạo thất bại
+                OrderDTO createdOrder;
+                try {
+                    createdOrder = orderService.createOrder(orderRequest);
+                } catch (RuntimeException e) {
+                    pendingOrderService.storePendingOrder(userId, pendingOrder.getCustomerId(), pendingOrder.getProductId(),
+                            pendingOrder.getQuantity(), pendingOrder.getNote(), pendingOrder.getSource());
+                    throw e;
+                }
                 
                 // Gửi xác nhận đơn hàng
                 String confirmationMessage = String.format(
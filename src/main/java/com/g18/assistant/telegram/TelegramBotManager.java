@@ -1,23 +1,39 @@
 package com.g18.assistant.telegram;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.g18.assistant.config.AiPipelineConfig;
+import com.g18.assistant.config.TelegramConfig;
 import com.g18.assistant.entity.AccessToken;
 import com.g18.assistant.entity.Shop;
-import com.g18.assistant.repository.TelegramMessageRepository;
+import com.g18.assistant.repository.AccessTokenRepository;
 import com.g18.assistant.repository.CustomerRepository;
+import com.g18.assistant.service.MetricsService;
 import com.g18.assistant.service.ShopAIService;
 import com.g18.assistant.service.ShopService;
 import com.g18.assistant.service.OrderService;
 import com.g18.assistant.service.PendingOrderService;
+import com.g18.assistant.service.ProductImageService;
+import com.g18.assistant.service.TelegramFileIdCacheService;
+import com.g18.assistant.service.TelegramMessageLog;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
+import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -29,12 +45,18 @@ import java.util.concurrent.ConcurrentHashMap;
 @RequiredArgsConstructor
 public class TelegramBotManager {
       private final ShopService shopService;
-    private final TelegramMessageRepository messageRepository;
+    private final TelegramMessageLog messageLog;
     private final ShopAIService shopAIService;
     private final ObjectMapper objectMapper;
     private final CustomerRepository customerRepository;
     private final OrderService orderService;
     private final PendingOrderService pendingOrderService;
+    private final AiPipelineConfig aiPipelineConfig;
+    private final ProductImageService productImageService;
+    private final TelegramFileIdCacheService telegramFileIdCacheService;
+    private final TelegramConfig telegramConfig;
+    private final MetricsService metricsService;
+    private final AccessTokenRepository accessTokenRepository;
     
     private TelegramBotsApi telegramBotsApi;
     private final Map<Long, ShopTelegramBot> activeBots = new ConcurrentHashMap<>();
@@ -49,12 +71,36 @@ public class TelegramBotManager {
         }
     }
     
+    /**
+     * Start the bots shop owners left running, so a restart or a new node serves them again
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void restoreBots() {
+        List<AccessToken> tokens;
+        try {
+            tokens = accessTokenRepository.findByMethodAndStatusAndBotEnabledTrue(
+                    AccessToken.TokenMethod.TELEGRAM, AccessToken.TokenStatus.ACTIVE);
+        } catch (Exception e) {
+            log.error("Could not load Telegram bots to restore: {}", e.getMessage());
+            return;
+        }
+        int started = 0;
+        for (AccessToken token : tokens) {
+            if (startBot(token.getShop(), token.getAccessToken())) {
+                started++;
+            }
+        }
+        if (!tokens.isEmpty()) {
+            log.info("Restored {} of {} Telegram bots", started, tokens.size());
+        }
+    }
+    
     @PreDestroy
     public void cleanup() {
-        // Stop all active bots
+        // Only stop local processing; deleting the webhooks here would cut off every other node too
         for (Map.Entry<Long, ShopTelegramBot> entry : activeBots.entrySet()) {
-            entry.getValue().stop();
-            log.info("Stopped Telegram bot for shop ID: {}", entry.getKey());
+            entry.getValue().shutdown();
+            log.info("Shut down Telegram bot for shop ID: {}", entry.getKey());
         }
         activeBots.clear();
         log.info("Cleaned up Telegram Bot Manager");
@@ -74,33 +120,57 @@ public class TelegramBotManager {
             return true;
         }
         
-        try {            // Create and register the bot with the new dependencies
-            ShopTelegramBot bot = new ShopTelegramBot(
-                token, 
-                shop, 
-                messageRepository, 
-                shopAIService, 
-                objectMapper,
-                customerRepository,
-                orderService,
-                pendingOrderService
-            );
-            boolean success = bot.start(telegramBotsApi);
+        ShopTelegramBot bot = null;
+        try {
+            bot = newBot(shop, token);
+            boolean success = telegramConfig.getMode() == TelegramConfig.UpdateMode.WEBHOOK
+                    ? bot.startWebhook(webhookUrl(shop.getId()), webhookSecretToken(shop.getId()), telegramConfig.getWebhookMaxConnections())
+                    : bot.start(telegramBotsApi);
             
             if (success) {
                 activeBots.put(shop.getId(), bot);
                 log.info("Started Telegram bot for shop ID: {}", shop.getId());
                 return true;
             } else {
+                bot.stop();
                 log.error("Failed to start Telegram bot for shop ID: {}", shop.getId());
                 return false;
             }
         } catch (Exception e) {
             log.error("Error starting Telegram bot for shop {}: {}", shop.getId(), e.getMessage());
+            // Release the dispatcher and send scheduler threads and their gauges
+            if (bot != null) {
+                bot.stop();
+            }
             return false;
         }
     }
     
+    private ShopTelegramBot newBot(Shop shop, String token) {
+        TelegramUpdateDispatcher dispatcher = new TelegramUpdateDispatcher(shop.getId(), telegramConfig, metricsService);
+        try {
+            return new ShopTelegramBot(
+                token, 
+                shop, 
+                messageLog, 
+                shopAIService, 
+                objectMapper,
+                customerRepository,
+                orderService,
+                pendingOrderService,
+                aiPipelineConfig,
+                productImageService,
+                telegramFileIdCacheService,
+                dispatcher,
+                telegramConfig,
+                metricsService
+            );
+        } catch (RuntimeException e) {
+            dispatcher.shutdown();
+            throw e;
+        }
+    }
+    
     /**
      * Stop a Telegram bot for a shop
      * 
@@ -130,6 +200,80 @@ public class TelegramBotManager {
         return bot != null && bot.isRunning();
     }
     
+    /**
+     * Route an update received on the shared webhook endpoint to the shop's bot
+     * 
+     * @param shopId The shop ID from the webhook path
+     * @param secretToken The X-Telegram-Bot-Api-Secret-Token header value
+     * @param update The Telegram update
+     * @return Outcome the webhook endpoint maps to an HTTP status
+     */
+    public WebhookResult dispatchWebhookUpdate(Long shopId, String secretToken, Update update) {
+        if (telegramConfig.getMode() != TelegramConfig.UpdateMode.WEBHOOK || secretToken == null
+                || !MessageDigest.isEqual(webhookSecretToken(shopId).getBytes(StandardCharsets.UTF_8),
+                        secretToken.getBytes(StandardCharsets.UTF_8))) {
+            return WebhookResult.UNAUTHORIZED;
+        }
+        ShopTelegramBot bot = activeBots.get(shopId);
+        if (bot == null) {
+            bot = attachWebhookBot(shopId);
+        }
+        if (bot == null || !bot.isRunning()) {
+            return WebhookResult.UNKNOWN_BOT;
+        }
+        return bot.enqueueUpdate(update) ? WebhookResult.ACCEPTED : WebhookResult.BUSY;
+    }
+    
+    /**
+     * Serve a bot that was started on another node after this one came up. The secret token
+     * already proved the webhook is ours, so the bot is only created locally.
+     */
+    private ShopTelegramBot attachWebhookBot(Long shopId) {
+        AccessToken token = accessTokenRepository.findByShopIdAndMethodAndStatusAndBotEnabledTrue(
+                shopId, AccessToken.TokenMethod.TELEGRAM, AccessToken.TokenStatus.ACTIVE).orElse(null);
+        if (token == null) {
+            return null;
+        }
+        return activeBots.computeIfAbsent(shopId, id -> {
+            ShopTelegramBot bot = newBot(token.getShop(), token.getAccessToken());
+            bot.attachWebhook();
+            return bot;
+        });
+    }
+    
+    private String webhookUrl(Long shopId) {
+        String baseUrl = telegramConfig.getWebhookBaseUrl();
+        if (baseUrl == null || baseUrl.isBlank()) {
+            throw new IllegalStateException("app.telegram.webhook-base-url is required in webhook mode");
+        }
+        return baseUrl.replaceAll("/+$", "") + "/telegram/" + shopId;
+    }
+    
+    /**
+     * Per-shop secret token, derived from the master secret so nothing extra has to be stored.
+     * Hex output keeps it within the characters Telegram accepts.
+     */
+    private String webhookSecretToken(Long shopId) {
+        String masterSecret = telegramConfig.getWebhookSecret();
+        if (masterSecret == null || masterSecret.isBlank()) {
+            throw new IllegalStateException("app.telegram.webhook-secret is required in webhook mode");
+        }
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(masterSecret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return HexFormat.of().formatHex(mac.doFinal(String.valueOf(shopId).getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to derive Telegram webhook secret", e);
+        }
+    }
+    
+    public enum WebhookResult {
+        ACCEPTED,
+        UNAUTHORIZED,
+        UNKNOWN_BOT,
+        BUSY
+    }
+    
     /**
      * Send a message to a Telegram chat via a specific shop's bot
      * 
@@ -0,0 +1,400 @@
+package com.g18.assistant.telegram;
+
+import com.g18.assistant.config.TelegramConfig;
+import com.g18.assistant.service.MetricsService;
+import lombok.extern.slf4j.Slf4j;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Outbound scheduler for one bot. A global token bucket keeps the bot under Telegram's
+ * messages-per-second limit, a smaller bucket per chat keeps each chat under its own limit, and
+ * chats with pending messages are served round-robin so one busy chat cannot starve the rest.
+ * A chat has at most one call in flight, which keeps its messages in order. Plain texts still
+ * waiting for the same chat are merged, and a newer edit of a message replaces an older one.
+ */
+@Slf4j
+public class TelegramSendScheduler {
+
+    // Telegram's limit on message text length
+    private static final int MAX_TEXT_LENGTH = 4096;
+    // An idle chat whose bucket is full carries no state worth keeping
+    private static final long CLEANUP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final Long shopId;
+    private final AbsSender sender;
+    private final MetricsService metricsService;
+    private final double globalRate;
+    private final double chatRate;
+    private final double chatBurst;
+    private final int maxAttempts;
+    private final String depthGauge;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Map<Long, ChatState> chats = new HashMap<>();
+    private final Deque<ChatState> ready = new ArrayDeque<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Thread loop;
+
+    private double globalTokens;
+    private long globalRefillNanos = System.nanoTime();
+    // A 429 means the bot as a whole may be over its limit, so it pauses every chat
+    private long globalPausedUntilNanos = System.nanoTime();
+    private long lastCleanupNanos = System.nanoTime();
+    private int depth;
+    private volatile boolean running = true;
+
+    public TelegramSendScheduler(Long shopId, AbsSender sender, TelegramConfig telegramConfig, MetricsService metricsService) {
+        this.shopId = shopId;
+        this.sender = sender;
+        this.metricsService = metricsService;
+        this.globalRate = telegramConfig.getGlobalSendRate();
+        this.chatRate = telegramConfig.getChatSendRate();
+        this.chatBurst = Math.max(1, telegramConfig.getChatSendBurst());
+        this.maxAttempts = telegramConfig.getSendMaxAttempts();
+        this.globalTokens = globalRate;
+        this.depthGauge = "telegram.send.queue.depth." + shopId;
+        metricsService.registerGauge(depthGauge, this::depth);
+        this.loop = Thread.ofVirtual().name("telegram-send-" + shopId).start(this::run);
+    }
+
+    /**
+     * Queue a plain text message, merging it into a text still waiting for the same chat when possible
+     */
+    public CompletableFuture<Object> sendText(Long chatId, String text) {
+        SendMessage message = new SendMessage();
+        message.setChatId(chatId);
+        message.setText(text);
+        return enqueue(chatId, new Outbound(message, null, null));
+    }
+
+    /**
+     * Queue an edit of a message text, replacing an older edit of the same message still waiting
+     */
+    public CompletableFuture<Object> editText(Long chatId, EditMessageText edit) {
+        return enqueue(chatId, new Outbound(null, edit, null));
+    }
+
+    /**
+     * Queue any other call, such as a photo or a formatted message
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> submit(Long chatId, TelegramCall<T> call) {
+        return (CompletableFuture<T>) enqueue(chatId, new Outbound(null, null, (TelegramCall<Object>) call));
+    }
+
+    public void shutdown() {
+        running = false;
+        loop.interrupt();
+        executor.shutdown();
+        lock.lock();
+        try {
+            IllegalStateException stopped = new IllegalStateException("Telegram bot for shop " + shopId + " stopped");
+            chats.values().forEach(chat -> chat.queue.forEach(outbound -> outbound.fail(stopped)));
+            chats.clear();
+            ready.clear();
+        } finally {
+            lock.unlock();
+        }
+        metricsService.removeGauge(depthGauge);
+    }
+
+    private CompletableFuture<Object> enqueue(Long chatId, Outbound outbound) {
+        if (!running) {
+            outbound.fail(new IllegalStateException("Telegram bot for shop " + shopId + " stopped"));
+            return outbound.futures.get(0);
+        }
+        lock.lock();
+        try {
+            ChatState chat = chats.computeIfAbsent(chatId, id -> new ChatState(chatBurst));
+            Outbound target = coalesceTarget(chat, outbound);
+            if (target != null) {
+                target.absorb(outbound);
+                metricsService.increment("telegram.send.coalesced");
+                return outbound.futures.get(0);
+            }
+            chat.queue.add(outbound);
+            depth++;
+            if (!chat.queued) {
+                chat.queued = true;
+                ready.add(chat);
+            }
+            changed.signal();
+            return outbound.futures.get(0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Find a waiting call this one can be folded into. Only the chat's last text can absorb a new
+     * text, so merged messages never jump ahead of something queued between them.
+     */
+    private Outbound coalesceTarget(ChatState chat, Outbound outbound) {
+        if (outbound.text != null) {
+            Outbound last = chat.queue.peekLast();
+            if (last != null && last.text != null && last.attempts == 0
+                    && last.text.getText().length() + 2 + outbound.text.getText().length() <= MAX_TEXT_LENGTH) {
+                return last;
+            }
+        } else if (outbound.edit != null) {
+            for (Outbound waiting : chat.queue) {
+                if (waiting.edit != null && Objects.equals(waiting.edit.getMessageId(), outbound.edit.getMessageId())) {
+                    return waiting;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void run() {
+        while (running) {
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                refillGlobal(now);
+                cleanupIdleChats(now);
+
+                long waitNanos = TimeUnit.SECONDS.toNanos(1);
+                if (now < globalPausedUntilNanos) {
+                    waitNanos = globalPausedUntilNanos - now;
+                } else if (globalTokens < 1) {
+                    waitNanos = (long) ((1 - globalTokens) / globalRate * 1_000_000_000L);
+                } else {
+                    ChatState chat = nextReadyChat(now);
+                    if (chat != null) {
+                        dispatch(chat, now);
+                        continue;
+                    }
+                    waitNanos = Math.min(waitNanos, earliestChatReady(now));
+                }
+                changed.awaitNanos(Math.max(waitNanos, 1_000_000L));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Rotate through chats with queued calls and return the first one allowed to send now
+     */
+    private ChatState nextReadyChat(long now) {
+        for (int i = 0, n = ready.size(); i < n; i++) {
+            ChatState chat = ready.poll();
+            chat.refill(now, chatRate, chatBurst);
+            if (!chat.inFlight && now >= chat.pausedUntilNanos && chat.tokens >= 1) {
+                return chat;
+            }
+            ready.add(chat);
+        }
+        return null;
+    }
+
+    private long earliestChatReady(long now) {
+        long earliest = Long.MAX_VALUE;
+        for (ChatState chat : ready) {
+            if (chat.inFlight) {
+                continue; // Completion signals the loop
+            }
+            long tokenWait = chat.tokens >= 1 ? 0 : (long) ((1 - chat.tokens) / chatRate * 1_000_000_000L);
+            earliest = Math.min(earliest, Math.max(tokenWait, chat.pausedUntilNanos - now));
+        }
+        return earliest;
+    }
+
+    private void dispatch(ChatState chat, long now) {
+        Outbound outbound = chat.queue.poll();
+        depth--;
+        globalTokens -= 1;
+        chat.tokens -= 1;
+        chat.inFlight = true;
+        if (chat.queue.isEmpty()) {
+            chat.queued = false;
+        } else {
+            ready.add(chat);
+        }
+        metricsService.recordLatency("telegram.send.wait", now - outbound.enqueuedNanos);
+        executor.execute(() -> execute(chat, outbound));
+    }
+
+    private void execute(ChatState chat, Outbound outbound) {
+        Object result = null;
+        TelegramApiException error = null;
+        try {
+            result = outbound.call(sender);
+        } catch (TelegramApiException e) {
+            error = e;
+        } catch (Exception e) {
+            error = new TelegramApiException(e);
+        }
+
+        lock.lock();
+        try {
+            chat.inFlight = false;
+            Integer retryAfter = retryAfterSeconds(error);
+            if (retryAfter != null && ++outbound.attempts < maxAttempts) {
+                // Telegram says exactly how long to back off, put the call back in front of its chat. A call is
+                // run again from scratch, so calls that upload a stream must open it inside TelegramCall.
+                metricsService.increment("telegram.send.rate_limited");
+                log.warn("Telegram rate limited shop {}, retrying after {}s", shopId, retryAfter);
+                long pausedUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(retryAfter);
+                chat.pausedUntilNanos = pausedUntil;
+                if (pausedUntil - globalPausedUntilNanos > 0) {
+                    globalPausedUntilNanos = pausedUntil;
+                }
+                chat.queue.addFirst(outbound);
+                depth++;
+                if (!chat.queued) {
+                    chat.queued = true;
+                    ready.add(chat);
+                }
+                outbound = null;
+            }
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        if (outbound == null) {
+            return;
+        }
+        if (error != null) {
+            metricsService.increment("telegram.send.failed");
+            outbound.fail(error);
+        } else {
+            metricsService.increment("telegram.send.sent");
+            outbound.complete(result);
+        }
+    }
+
+    private static Integer retryAfterSeconds(TelegramApiException error) {
+        if (error instanceof TelegramApiRequestException requestError
+                && Integer.valueOf(429).equals(requestError.getErrorCode())) {
+            Integer retryAfter = requestError.getParameters() != null ? requestError.getParameters().getRetryAfter() : null;
+            return retryAfter != null ? retryAfter : 1;
+        }
+        return null;
+    }
+
+    private void refillGlobal(long now) {
+        globalTokens = Math.min(globalRate, globalTokens + (now - globalRefillNanos) / 1_000_000_000.0 * globalRate);
+        globalRefillNanos = now;
+    }
+
+    private void cleanupIdleChats(long now) {
+        if (now - lastCleanupNanos < CLEANUP_INTERVAL_NANOS) {
+            return;
+        }
+        lastCleanupNanos = now;
+        Iterator<ChatState> iterator = chats.values().iterator();
+        while (iterator.hasNext()) {
+            ChatState chat = iterator.next();
+            chat.refill(now, chatRate, chatBurst);
+            if (chat.queue.isEmpty() && !chat.inFlight && chat.tokens >= chatBurst && now >= chat.pausedUntilNanos) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private int depth() {
+        lock.lock();
+        try {
+            return depth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A Telegram API call run by the scheduler. It may run more than once after a 429, so it must
+     * build anything it consumes, such as an upload stream, on each run.
+     */
+    @FunctionalInterface
+    public interface TelegramCall<T> {
+        T call(AbsSender sender) throws TelegramApiException;
+    }
+
+    private static final class ChatState {
+        private final Deque<Outbound> queue = new ArrayDeque<>();
+        private double tokens;
+        private long refillNanos = System.nanoTime();
+        private long pausedUntilNanos = System.nanoTime();
+        private boolean inFlight;
+        private boolean queued;
+
+        private ChatState(double burst) {
+            this.tokens = burst;
+        }
+
+        private void refill(long now, double rate, double burst) {
+            tokens = Math.min(burst, tokens + (now - refillNanos) / 1_000_000_000.0 * rate);
+            refillNanos = now;
+        }
+    }
+
+    private static final class Outbound {
+        private final SendMessage text;
+        private final EditMessageText edit;
+        private final TelegramCall<Object> call;
+        private final long enqueuedNanos = System.nanoTime();
+        // Merged calls share one result
+        private final List<CompletableFuture<Object>> futures = new ArrayList<>(1);
+        private int attempts;
+
+        private Outbound(SendMessage text, EditMessageText edit, TelegramCall<Object> call) {
+            this.text = text;
+            this.edit = edit;
+            this.call = call;
+            this.futures.add(new CompletableFuture<>());
+        }
+
+        private void absorb(Outbound other) {
+            if (text != null) {
+                text.setText(text.getText() + "\n\n" + other.text.getText());
+            } else {
+                edit.setText(other.edit.getText());
+            }
+            futures.addAll(other.futures);
+        }
+
+        private Object call(AbsSender sender) throws TelegramApiException {
+            if (text != null) {
+                return sender.execute(text);
+            }
+            if (edit != null) {
+                return sender.execute(edit);
+            }
+            return call.call(sender);
+        }
+
+        private void complete(Object result) {
+            futures.forEach(future -> future.complete(result));
+        }
+
+        private void fail(Throwable error) {
+            futures.forEach(future -> future.completeExceptionally(error));
+        }
+    }
+}
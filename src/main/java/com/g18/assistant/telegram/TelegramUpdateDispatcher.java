@@ -0,0 +1,100 @@
+package com.g18.assistant.telegram;
+
+import com.g18.assistant.concurrent.KeyedSerialExecutor;
+import com.g18.assistant.config.TelegramConfig;
+import com.g18.assistant.service.MetricsService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded per-bot work queue for Telegram updates. Updates of the same chat run one after another
+ * on a virtual thread, while different chats are processed in parallel. When the bot's capacity
+ * is used up, the submitting thread waits, which slows down polling instead of piling up work.
+ */
+@Slf4j
+public class TelegramUpdateDispatcher {
+
+    private final Long shopId;
+    private final MetricsService metricsService;
+    private final Semaphore capacity;
+    private final long enqueueTimeoutNanos;
+    private final String depthGauge;
+
+    private final KeyedSerialExecutor<Long> chats = new KeyedSerialExecutor<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private volatile boolean accepting = true;
+
+    public TelegramUpdateDispatcher(Long shopId, TelegramConfig telegramConfig, MetricsService metricsService) {
+        this.shopId = shopId;
+        this.metricsService = metricsService;
+        this.capacity = new Semaphore(telegramConfig.getQueueCapacity());
+        this.enqueueTimeoutNanos = telegramConfig.getEnqueueTimeout().toNanos();
+        this.depthGauge = "telegram.queue.depth." + shopId;
+        metricsService.registerGauge(depthGauge, depth::get);
+    }
+
+    /**
+     * Queue work for a chat, waiting for capacity if the bot is saturated
+     *
+     * @param chatId The chat the work belongs to, used for ordering
+     * @param work The work to run
+     * @return true if the work was queued, false if the bot is stopping or stayed full until the timeout
+     */
+    public boolean submit(Long chatId, Runnable work) {
+        if (!accepting) {
+            return false;
+        }
+        try {
+            if (!capacity.tryAcquire(enqueueTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                metricsService.increment("telegram.queue.rejected");
+                log.warn("Telegram update queue for shop {} is full, rejecting update for chat {}", shopId, chatId);
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        long enqueuedNanos = System.nanoTime();
+        depth.incrementAndGet();
+        try {
+            chats.execute(chatId, () -> run(chatId, work, enqueuedNanos));
+        } catch (RejectedExecutionException e) {
+            // The bot was stopped while this update waited for capacity
+            depth.decrementAndGet();
+            capacity.release();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stop accepting updates and give queued ones a short time to finish
+     */
+    public void shutdown() {
+        accepting = false;
+        if (!chats.shutdown(Duration.ofSeconds(10))) {
+            log.warn("Telegram updates for shop {} still running after shutdown timeout", shopId);
+        }
+        metricsService.removeGauge(depthGauge);
+    }
+
+    private void run(Long chatId, Runnable work, long enqueuedNanos) {
+        depth.decrementAndGet();
+        long started = System.nanoTime();
+        metricsService.recordLatency("telegram.queue.lag", started - enqueuedNanos);
+        try {
+            work.run();
+        } catch (Exception e) {
+            log.error("Error processing Telegram update for shop {}, chat {}: {}", shopId, chatId, e.getMessage(), e);
+        } finally {
+            capacity.release();
+            metricsService.recordLatency("telegram.update.process", System.nanoTime() - started);
+        }
+    }
+}
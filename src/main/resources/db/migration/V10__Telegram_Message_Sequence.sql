@@ -0,0 +1,12 @@
+-- Telegram messages move from IDENTITY to a pooled sequence so inserts can be batched.
+-- MySQL has no sequences, Hibernate keeps the next value in a one-row table.
+CREATE TABLE IF NOT EXISTS telegram_messages_seq (
+    next_val BIGINT
+) ENGINE=InnoDB;
+
+INSERT INTO telegram_messages_seq (next_val)
+SELECT 1 FROM DUAL WHERE NOT EXISTS (SELECT 1 FROM telegram_messages_seq);
+
+-- Start past existing rows, leaving room for one allocation block of 50
+UPDATE telegram_messages_seq
+SET next_val = GREATEST(next_val, (SELECT COALESCE(MAX(id), 0) + 51 FROM telegram_messages));
@@ -0,0 +1,2 @@
+-- Message history is paged newest first per shop by seeking on (received_at, id)
+CREATE INDEX idx_telegram_messages_shop_received ON telegram_messages (shop_id, received_at, id);
@@ -0,0 +1,5 @@
+-- Order listings filter by the customers of a shop and seek on (created_at, id_order), newest first.
+-- Each index lets MySQL read only the rows of a customer past the cursor instead of all its orders.
+CREATE INDEX idx_orders_customer_created ON orders (id_customer, created_at, id_order);
+CREATE INDEX idx_orders_customer_status_created ON orders (id_customer, status, created_at, id_order);
+CREATE INDEX idx_customers_shop ON customers (id_shop, id_customer);
@@ -0,0 +1,9 @@
+-- Product search matches a lowercase, diacritic-free copy of name, category, description and custom fields
+-- (filled by the application) through an ngram FULLTEXT index, so "ao khoac" finds "Áo khoác" and
+-- two-letter Vietnamese syllables are indexed. The default stopword list would drop every bigram
+-- containing "a" or "i", so stopwords are disabled for this index.
+ALTER TABLE products ADD COLUMN search_text TEXT NULL;
+
+SET SESSION innodb_ft_enable_stopword = OFF;
+ALTER TABLE products ADD FULLTEXT INDEX ft_products_search_text (search_text) WITH PARSER ngram;
+SET SESSION innodb_ft_enable_stopword = ON;
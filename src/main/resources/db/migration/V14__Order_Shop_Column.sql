@@ -0,0 +1,13 @@
+-- Orders carry their customer's shop, so a shop listing reads (id_shop, created_at, id_order) backwards
+-- and stops after one page instead of sorting all of the shop's orders.
+ALTER TABLE orders ADD COLUMN id_shop BIGINT NULL;
+ALTER TABLE orders ADD CONSTRAINT fk_orders_shop FOREIGN KEY (id_shop) REFERENCES shops (id);
+UPDATE orders o JOIN customers c ON c.id_customer = o.id_customer SET o.id_shop = c.id_shop;
+
+-- Keyset pages compare created_at, which would skip NULL rows. Rows without a time sort after all others.
+UPDATE orders SET created_at = '1970-01-02 00:00:00' WHERE created_at IS NULL;
+ALTER TABLE orders MODIFY created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP;
+
+CREATE INDEX idx_orders_shop_created ON orders (id_shop, created_at, id_order);
+CREATE INDEX idx_orders_shop_status_created ON orders (id_shop, status, created_at, id_order);
+DROP INDEX idx_orders_customer_status_created ON orders;
@@ -0,0 +1,2 @@
+-- Bots the shop owner started, so each node starts them again at startup instead of losing them on a restart
+ALTER TABLE access_tokens ADD COLUMN bot_enabled BOOLEAN NOT NULL DEFAULT FALSE;
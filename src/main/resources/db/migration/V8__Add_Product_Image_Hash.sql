@@ -0,0 +1,4 @@
+-- Product images move to the content-addressed image store; the row keeps only the SHA-256 key
+ALTER TABLE products ADD COLUMN image_hash VARCHAR(64) NULL;
+
+CREATE INDEX idx_products_image_hash ON products (image_hash);
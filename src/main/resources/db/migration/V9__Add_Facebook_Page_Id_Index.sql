@@ -0,0 +1,2 @@
+-- Webhook routing looks up the active configuration by page ID on every incoming message
+CREATE INDEX idx_facebook_page_id_active ON facebook_access_tokens (page_id, is_active);
@@ -0,0 +1,180 @@
+package com.g18.assistant.benchmark;
+
+import com.g18.assistant.config.ConversationHistoryConfig;
+import com.g18.assistant.service.ConversationHistoryService;
+import com.g18.assistant.service.ConversationHistoryService.ConversationEntry;
+import com.g18.assistant.service.impl.ConversationHistoryServiceImpl;
+import com.g18.assistant.service.impl.InMemoryConversationHistoryStore;
+import com.g18.assistant.service.impl.MetricsServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the in-memory ring buffer history store with the synchronized LinkedList it replaced.
+ * Run with {@code mvn -B test-compile} and then
+ * {@code java -cp target/test-classes:target/classes:<test classpath> com.g18.assistant.benchmark.ConversationHistoryBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConversationHistoryBenchmark {
+
+    private static final int CONVERSATIONS = 1000;
+    private static final int MAX_ENTRIES = 20;
+    private static final int RECENT_LIMIT = 10;
+
+    @Param({"linkedList", "ringBuffer"})
+    public String implementation;
+
+    private ConversationHistoryService history;
+
+    @Setup
+    public void setup() {
+        if ("linkedList".equals(implementation)) {
+            history = new LinkedListConversationHistory();
+        } else {
+            ConversationHistoryConfig config = new ConversationHistoryConfig();
+            config.setMaxEntries(MAX_ENTRIES);
+            history = new ConversationHistoryServiceImpl(
+                    new InMemoryConversationHistoryStore(config, new MetricsServiceImpl()), config);
+        }
+        for (int c = 0; c < CONVERSATIONS; c++) {
+            for (int i = 0; i < MAX_ENTRIES; i++) {
+                history.addMessage(1L, "customer-" + c, i % 2 == 0 ? "customer" : "assistant", "message " + i);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        String nextCustomer() {
+            next = (next + 1) % CONVERSATIONS;
+            return "customer-" + next;
+        }
+    }
+
+    @Benchmark
+    public void addMessage(Cursor cursor) {
+        history.addMessage(1L, cursor.nextCustomer(), "customer", "còn hàng không shop");
+    }
+
+    @Benchmark
+    public void getRecentHistory(Cursor cursor, Blackhole blackhole) {
+        consume(history.getRecentHistory(1L, cursor.nextCustomer(), RECENT_LIMIT), blackhole);
+    }
+
+    // One writer and three readers on the same conversations, as when a customer is answered while
+    // other requests read the history
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedWriter(Cursor cursor) {
+        history.addMessage(1L, cursor.nextCustomer(), "assistant", "Dạ shop còn hàng ạ");
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public void mixedReader(Cursor cursor, Blackhole blackhole) {
+        consume(history.getRecentHistory(1L, cursor.nextCustomer(), RECENT_LIMIT), blackhole);
+    }
+
+    private static void consume(List<ConversationEntry> entries, Blackhole blackhole) {
+        for (ConversationEntry entry : entries) {
+            blackhole.consume(entry.message);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ConversationHistoryBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+    /**
+     * The history service as it was before the ring buffer store, kept as the baseline
+     */
+    static class LinkedListConversationHistory implements ConversationHistoryService {
+        private final Map<String, LinkedList<ConversationEntry>> historyMap = new ConcurrentHashMap<>();
+        private static final int MAX_HISTORY = 20;
+        private static final long SESSION_TIMEOUT_HOURS = 6;
+
+        private String key(Long shopId, String customerId) {
+            return shopId + ":" + (customerId == null ? "_" : customerId);
+        }
+
+        @Override
+        public void addMessage(Long shopId, String customerId, String role, String message) {
+            String key = key(shopId, customerId);
+            historyMap.putIfAbsent(key, new LinkedList<>());
+            LinkedList<ConversationEntry> list = historyMap.get(key);
+            synchronized (list) {
+                boolean startNewSession = false;
+                if (!list.isEmpty()) {
+                    LocalDateTime lastMessageTime = list.getLast().timestamp;
+                    if (lastMessageTime != null &&
+                        ChronoUnit.HOURS.between(lastMessageTime, LocalDateTime.now()) >= SESSION_TIMEOUT_HOURS) {
+                        startNewSession = true;
+                    }
+                }
+                if (startNewSession) {
+                    list.clear();
+                }
+                list.add(new ConversationEntry(role, message, LocalDateTime.now()));
+                if (list.size() > MAX_HISTORY) {
+                    list.removeFirst();
+                }
+            }
+        }
+
+        @Override
+        public List<ConversationEntry> getRecentHistory(Long shopId, String customerId, int limit) {
+            String key = key(shopId, customerId);
+            LinkedList<ConversationEntry> list = historyMap.getOrDefault(key, new LinkedList<>());
+            synchronized (list) {
+                LocalDateTime now = LocalDateTime.now();
+                list.removeIf(entry ->
+                    entry.timestamp != null &&
+                    ChronoUnit.HOURS.between(entry.timestamp, now) >= SESSION_TIMEOUT_HOURS);
+                int from = Math.max(0, list.size() - limit);
+                return new ArrayList<>(list.subList(from, list.size()));
+            }
+        }
+
+        @Override
+        public void clearHistory(Long shopId, String customerId) {
+            historyMap.remove(key(shopId, customerId));
+        }
+    }
+}
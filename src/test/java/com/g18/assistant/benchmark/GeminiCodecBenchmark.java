@@ -0,0 +1,131 @@
+package com.g18.assistant.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.g18.assistant.gemini.GeminiCodec;
+import com.g18.assistant.gemini.GeminiRequestTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the precomputed request template and streaming response parser of {@link GeminiCodec} with the
+ * per-request ObjectNode trees they replaced. Look at gc.alloc.rate.norm for the bytes allocated per request.
+ * Run with {@code mvn -B test-compile} and then
+ * {@code java -cp target/test-classes:target/classes:<test classpath> com.g18.assistant.benchmark.GeminiCodecBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GeminiCodecBenchmark {
+
+    private static final String PROMPT = "Bạn là trợ lý bán hàng của shop. Khách hỏi: áo thun cotton màu trắng "
+            + "size M còn hàng không, giá bao nhiêu và có giao hàng trong ngày ở Hà Nội không?";
+
+    private ObjectMapper objectMapper;
+    private GeminiCodec codec;
+    private GeminiRequestTemplate template;
+    private byte[] responseBytes;
+
+    @Setup
+    public void setup() throws IOException {
+        objectMapper = new ObjectMapper();
+        codec = new GeminiCodec(objectMapper);
+        template = codec.template(orderProcessingConfig(objectMapper));
+
+        ObjectNode response = objectMapper.createObjectNode();
+        ObjectNode candidate = response.putArray("candidates").addObject();
+        candidate.putObject("content").put("role", "model").putArray("parts").addObject()
+                .put("text", "{\"product_ids\":[12,40],\"quantities\":[1,2],\"special_instructions\":\"Gói quà giúp em\","
+                        + "\"delivery_preference\":\"Giao buổi sáng\",\"is_valid_order\":true,\"missing_details\":[]}");
+        candidate.put("finishReason", "STOP");
+        candidate.put("index", 0);
+        response.putObject("usageMetadata")
+                .put("promptTokenCount", 1830)
+                .put("candidatesTokenCount", 64)
+                .put("totalTokenCount", 1894);
+        response.put("modelVersion", "gemini-2.0-flash");
+        responseBytes = objectMapper.writeValueAsBytes(response);
+    }
+
+    // The old client sent the body as a String that the HTTP client encoded to UTF-8
+    @Benchmark
+    public byte[] encodeTree() throws IOException {
+        ObjectNode requestBody = objectMapper.createObjectNode();
+        ObjectNode content = requestBody.putArray("contents").addObject();
+        content.put("role", "user");
+        content.putArray("parts").addObject().put("text", PROMPT);
+        requestBody.set("generationConfig", orderProcessingConfig(objectMapper));
+        return objectMapper.writeValueAsString(requestBody).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] encodeTemplate() {
+        return codec.encodeRequest(template, null, PROMPT);
+    }
+
+    // The old client decoded the response bytes to a String before it was parsed
+    @Benchmark
+    public String decodeTree() throws IOException {
+        String body = new String(responseBytes, StandardCharsets.UTF_8);
+        JsonNode parts = objectMapper.readTree(body).path("candidates").path(0).path("content").path("parts");
+        return parts.isArray() && parts.size() > 0 ? parts.get(0).path("text").asText() : null;
+    }
+
+    @Benchmark
+    public String decodeStreaming() throws IOException {
+        return codec.extractText(responseBytes);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(GeminiCodecBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+    /**
+     * The order processing generationConfig, built the way every request used to build it
+     */
+    private static ObjectNode orderProcessingConfig(ObjectMapper objectMapper) {
+        ObjectNode generationConfig = objectMapper.createObjectNode();
+        generationConfig.put("response_mime_type", "application/json");
+
+        ObjectNode responseSchema = generationConfig.putObject("response_schema");
+        responseSchema.put("type", "OBJECT");
+
+        ObjectNode properties = responseSchema.putObject("properties");
+        ObjectNode productIds = properties.putObject("product_ids");
+        productIds.put("type", "ARRAY");
+        productIds.putObject("items").put("type", "NUMBER");
+        ObjectNode quantities = properties.putObject("quantities");
+        quantities.put("type", "ARRAY");
+        quantities.putObject("items").put("type", "NUMBER");
+        properties.putObject("special_instructions").put("type", "STRING");
+        properties.putObject("delivery_preference").put("type", "STRING");
+        properties.putObject("is_valid_order").put("type", "BOOLEAN");
+        ObjectNode missingDetails = properties.putObject("missing_details");
+        missingDetails.put("type", "ARRAY");
+        missingDetails.putObject("items").put("type", "STRING");
+        return generationConfig;
+    }
+}
@@ -0,0 +1,72 @@
+package com.g18.assistant.dto;
+
+import com.g18.assistant.dto.response.CursorPageResponse;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeysetCursorTest {
+
+    @Test
+    void tokensDecodeToTheSamePosition() {
+        KeysetCursor withNanos = new KeysetCursor(LocalDateTime.of(2024, 3, 9, 14, 5, 7, 123_456_000), 42L);
+        assertEquals(withNanos, KeysetCursor.decode(withNanos.encode()));
+
+        // LocalDateTime.toString leaves out zero seconds, the token must still parse
+        KeysetCursor onTheMinute = new KeysetCursor(LocalDateTime.of(2024, 3, 9, 14, 5), 7L);
+        assertEquals(onTheMinute, KeysetCursor.decode(onTheMinute.encode()));
+    }
+
+    @Test
+    void tokensAreUrlSafe() {
+        String token = new KeysetCursor(LocalDateTime.of(2024, 12, 31, 23, 59, 59, 999_999_000), Long.MAX_VALUE).encode();
+        assertTrue(token.matches("[A-Za-z0-9_-]+"), token);
+    }
+
+    @Test
+    void blankTokenMeansFirstPage() {
+        assertNull(KeysetCursor.decode(null));
+        assertNull(KeysetCursor.decode(""));
+        assertNull(KeysetCursor.decode("  "));
+    }
+
+    @Test
+    void foreignTokensAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode("not a cursor"));
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode("bm9zZXBhcmF0b3I"));
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode("eWVzdGVyZGF5fDQy"));
+    }
+
+    @Test
+    void extraRowYieldsCursorOfLastRowShown() {
+        List<KeysetCursor> rows = List.of(
+                new KeysetCursor(LocalDateTime.of(2024, 3, 9, 12, 0), 3L),
+                new KeysetCursor(LocalDateTime.of(2024, 3, 9, 11, 0), 2L),
+                new KeysetCursor(LocalDateTime.of(2024, 3, 9, 10, 0), 1L));
+
+        CursorPageResponse<KeysetCursor> page = CursorPageResponse.from(rows, 2, row -> row);
+
+        assertEquals(rows.subList(0, 2), page.getContent());
+        assertEquals(2, page.getSize());
+        assertFalse(page.isLast());
+        assertEquals(rows.get(1), KeysetCursor.decode(page.getNextCursor()));
+    }
+
+    @Test
+    void lastPageHasNoCursor() {
+        List<KeysetCursor> rows = List.of(new KeysetCursor(LocalDateTime.of(2024, 3, 9, 12, 0), 3L));
+
+        CursorPageResponse<KeysetCursor> page = CursorPageResponse.from(rows, 2, row -> row);
+
+        assertEquals(rows, page.getContent());
+        assertTrue(page.isLast());
+        assertNull(page.getNextCursor());
+    }
+}
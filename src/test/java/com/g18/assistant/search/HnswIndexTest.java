@@ -0,0 +1,181 @@
+package com.g18.assistant.search;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HnswIndexTest {
+
+    private static final int DIMENSIONS = 32;
+    private static final int M = 16;
+    private static final int EF_CONSTRUCTION = 100;
+    private static final long FINGERPRINT = 42L;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void searchFindsMostOfTheBruteForceNeighbors() throws IOException {
+        Random random = new Random(7);
+        float[][] vectors = randomVectors(random, 2000);
+        try (HnswIndex index = open("recall.hnsw")) {
+            for (int i = 0; i < vectors.length; i++) {
+                index.put(i, 1, vectors[i]);
+            }
+
+            int k = 10;
+            int found = 0;
+            int queries = 50;
+            for (int q = 0; q < queries; q++) {
+                float[] query = randomVector(random);
+                Set<Long> expected = bruteForce(vectors, query, k);
+                for (HnswIndex.Match match : index.search(query, k, 64)) {
+                    if (expected.contains(match.productId())) {
+                        found++;
+                    }
+                }
+            }
+            double recall = (double) found / (queries * k);
+            assertTrue(recall >= 0.9, "recall@10 was " + recall);
+        }
+    }
+
+    @Test
+    void removedProductsAreTombstonedAndNeverReturned() throws IOException {
+        Random random = new Random(11);
+        float[][] vectors = randomVectors(random, 200);
+        try (HnswIndex index = open("remove.hnsw")) {
+            for (int i = 0; i < vectors.length; i++) {
+                index.put(i, 1, vectors[i]);
+            }
+            for (int i = 0; i < 50; i++) {
+                assertTrue(index.remove(i));
+            }
+            assertFalse(index.remove(0));
+
+            assertEquals(150, index.size());
+            assertEquals(0.25, index.deletedRatio(), 1e-9);
+            assertTrue(index.versions().keySet().stream().allMatch(id -> id >= 50));
+            for (int i = 0; i < 50; i++) {
+                List<HnswIndex.Match> matches = index.search(vectors[i], 10, 64);
+                assertEquals(10, matches.size());
+                assertTrue(matches.stream().allMatch(match -> match.productId() >= 50));
+            }
+            // The remaining products are still reachable through the tombstoned nodes
+            assertEquals(99L, index.search(vectors[99], 1, 64).get(0).productId());
+        }
+    }
+
+    @Test
+    void putReplacesThePreviousVectorAndVersion() throws IOException {
+        Random random = new Random(13);
+        float[][] vectors = randomVectors(random, 100);
+        try (HnswIndex index = open("replace.hnsw")) {
+            for (int i = 0; i < vectors.length; i++) {
+                index.put(i, 1, vectors[i]);
+            }
+            float[] replacement = randomVector(random);
+            index.put(5, 2, replacement);
+
+            assertEquals(100, index.size());
+            assertEquals(2L, index.versions().get(5L));
+            HnswIndex.Match best = index.search(replacement, 1, 64).get(0);
+            assertEquals(5L, best.productId());
+            assertEquals(1f, best.score(), 1e-4);
+            assertTrue(index.deletedRatio() > 0);
+        }
+    }
+
+    @Test
+    void reopeningTheFileRestoresTheIndex() throws IOException {
+        Random random = new Random(17);
+        float[][] vectors = randomVectors(random, 300);
+        float[] query = randomVector(random);
+        List<HnswIndex.Match> before;
+        Map<Long, Long> versionsBefore;
+        try (HnswIndex index = open("reopen.hnsw")) {
+            for (int i = 0; i < vectors.length; i++) {
+                index.put(i, 1000 + i, vectors[i]);
+            }
+            index.remove(3);
+            before = index.search(query, 10, 64);
+            versionsBefore = index.versions();
+        }
+
+        try (HnswIndex reopened = open("reopen.hnsw")) {
+            assertEquals(299, reopened.size());
+            assertEquals(versionsBefore, reopened.versions());
+            assertEquals(before, reopened.search(query, 10, 64));
+        }
+    }
+
+    @Test
+    void reopeningWithAnotherProviderStartsEmpty() throws IOException {
+        Random random = new Random(19);
+        try (HnswIndex index = open("provider.hnsw")) {
+            for (float[] vector : randomVectors(random, 20)) {
+                index.put(index.size(), 1, vector);
+            }
+        }
+
+        try (HnswIndex reopened = HnswIndex.open(dir.resolve("provider.hnsw"), DIMENSIONS, M, EF_CONSTRUCTION,
+                FINGERPRINT + 1)) {
+            assertEquals(0, reopened.size());
+            assertTrue(reopened.search(randomVector(random), 5, 64).isEmpty());
+        }
+    }
+
+    private HnswIndex open(String file) throws IOException {
+        return HnswIndex.open(dir.resolve(file), DIMENSIONS, M, EF_CONSTRUCTION, FINGERPRINT);
+    }
+
+    private static Set<Long> bruteForce(float[][] vectors, float[] query, int k) {
+        return IntStream.range(0, vectors.length).boxed()
+                .sorted(Comparator.comparingDouble((Integer i) -> cosine(vectors[i], query)).reversed())
+                .limit(k)
+                .map(Integer::longValue)
+                .collect(Collectors.toCollection(HashSet::new));
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+
+    private static float[][] randomVectors(Random random, int count) {
+        float[][] vectors = new float[count][];
+        for (int i = 0; i < count; i++) {
+            vectors[i] = randomVector(random);
+        }
+        return vectors;
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
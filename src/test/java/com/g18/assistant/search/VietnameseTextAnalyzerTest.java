@@ -0,0 +1,47 @@
+package com.g18.assistant.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VietnameseTextAnalyzerTest {
+
+    @Test
+    void foldRemovesDiacriticsAndCase() {
+        assertEquals("ao khoac do", VietnameseTextAnalyzer.fold("Áo khoác đỏ"));
+        assertEquals("dien thoai duong", VietnameseTextAnalyzer.fold("ĐIỆN THOẠI Đường"));
+        // Decomposed input (base letter plus combining marks) folds the same way
+        assertEquals("ao", VietnameseTextAnalyzer.fold("A\u0301o"));
+    }
+
+    @Test
+    void stopWordsAreDroppedButBigramsSpanThem() {
+        assertEquals(List.of("ao", "khoac", "co_ao", "ao_khoac", "khoac_khong"),
+                VietnameseTextAnalyzer.analyze("Shop có áo khoác không?"));
+    }
+
+    @Test
+    void stopWordsAreMatchedBeforeFolding() {
+        // "bàn" and "tỏi" fold like the stop words "bạn" and "tôi" but are product words
+        assertEquals(List.of("ban", "go", "ban_go"), VietnameseTextAnalyzer.analyze("bàn gỗ"));
+        assertEquals(List.of("toi"), VietnameseTextAnalyzer.analyze("tỏi"));
+        assertTrue(VietnameseTextAnalyzer.analyze("bạn ơi").isEmpty());
+        assertTrue(VietnameseTextAnalyzer.analyze("tôi").isEmpty());
+    }
+
+    @Test
+    void decomposedStopWordsAreStillRecognised() {
+        // "có" typed as "co" plus a combining acute accent
+        assertEquals(List.of("ao", "co_ao"), VietnameseTextAnalyzer.analyze("co\u0301 a\u0301o"));
+    }
+
+    @Test
+    void punctuationSplitsWordsAndEmptyTextHasNoTerms() {
+        assertEquals(List.of("size", "m", "size_m"), VietnameseTextAnalyzer.analyze("size:M!!"));
+        assertTrue(VietnameseTextAnalyzer.analyze(null).isEmpty());
+        assertTrue(VietnameseTextAnalyzer.analyze("  ?! ").isEmpty());
+    }
+}
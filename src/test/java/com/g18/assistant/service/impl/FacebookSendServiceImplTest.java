@@ -0,0 +1,153 @@
+package com.g18.assistant.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.g18.assistant.config.FacebookSendConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.SocketTimeoutException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class FacebookSendServiceImplTest {
+
+    private static final String API_URL = "https://graph.test";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final RestTemplate restTemplate = mock(RestTemplate.class);
+    private final MetricsServiceImpl metricsService = new MetricsServiceImpl();
+    // Recipient and text of every message in the order Facebook received them, one entry per request
+    private final List<List<String>> requests = Collections.synchronizedList(new ArrayList<>());
+    private FacebookSendServiceImpl sendService;
+
+    @BeforeEach
+    void setUp() {
+        FacebookSendConfig config = new FacebookSendConfig();
+        // Long enough for every message of a test to join the first batch
+        config.setBatchLinger(Duration.ofMillis(200));
+        config.setRetryBaseDelay(Duration.ofMillis(10));
+        sendService = new FacebookSendServiceImpl(restTemplate, objectMapper, config, metricsService);
+        ReflectionTestUtils.setField(sendService, "facebookApiUrl", API_URL);
+        sendService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        sendService.shutdown();
+    }
+
+    @Test
+    void batchesCarryOneMessagePerRecipientInOrder() throws Exception {
+        whenSendsSucceed();
+
+        CompletableFuture<Void> a1 = sendService.send("token", "a", "a1");
+        CompletableFuture<Void> a2 = sendService.send("token", "a", "a2");
+        CompletableFuture<Void> b1 = sendService.send("token", "b", "b1");
+        CompletableFuture.allOf(a1, a2, b1).get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of(List.of("a:a1", "b:b1"), List.of("a:a2")), requests);
+        assertEquals(1, metricsService.getCount("facebook.send.batch"));
+        assertEquals(3, metricsService.getCount("facebook.send.sent"));
+    }
+
+    @Test
+    void refusedMessageIsRetriedBeforeTheRecipientsNextOne() throws Exception {
+        String graphError = "{\"error\":{\"code\":2,\"message\":\"Service temporarily unavailable\"}}";
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(String.class)))
+                .thenAnswer(invocation -> {
+                    record(invocation.getArgument(0), invocation.getArgument(2));
+                    if (requests.size() == 1) {
+                        throw HttpServerErrorException.create(HttpStatus.INTERNAL_SERVER_ERROR, "Internal Server Error",
+                                new HttpHeaders(), graphError.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+                    }
+                    return ResponseEntity.ok("{}");
+                });
+
+        CompletableFuture<Void> first = sendService.send("token", "a", "first");
+        CompletableFuture<Void> second = sendService.send("token", "a", "second");
+        CompletableFuture.allOf(first, second).get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of(List.of("a:first"), List.of("a:first"), List.of("a:second")), requests);
+        assertEquals(1, metricsService.getCount("facebook.send.retried"));
+    }
+
+    @Test
+    void timedOutMessageIsNotRetried() {
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(String.class)))
+                .thenAnswer(invocation -> {
+                    record(invocation.getArgument(0), invocation.getArgument(2));
+                    throw new ResourceAccessException("Read timed out", new SocketTimeoutException("Read timed out"));
+                });
+
+        CompletableFuture<Void> result = sendService.send("token", "a", "hello");
+
+        assertThrows(CompletionException.class, result::join);
+        assertEquals(1, requests.size());
+        assertEquals(1, metricsService.getCount("facebook.send.unknown"));
+    }
+
+    private void whenSendsSucceed() {
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(String.class)))
+                .thenAnswer(invocation -> {
+                    int messages = record(invocation.getArgument(0), invocation.getArgument(2));
+                    if (messages == 1) {
+                        return ResponseEntity.ok("{}");
+                    }
+                    StringBuilder body = new StringBuilder("[");
+                    for (int i = 0; i < messages; i++) {
+                        body.append(i > 0 ? "," : "").append("{\"code\":200,\"body\":\"{}\"}");
+                    }
+                    return ResponseEntity.ok(body.append(']').toString());
+                });
+    }
+
+    /**
+     * @return Number of messages in the request
+     */
+    @SuppressWarnings("unchecked")
+    private int record(String url, HttpEntity<?> entity) throws Exception {
+        List<String> messages = new ArrayList<>();
+        if (url.equals(API_URL + "/")) {
+            MultiValueMap<String, String> form = (MultiValueMap<String, String>) entity.getBody();
+            for (JsonNode request : objectMapper.readTree(form.getFirst("batch"))) {
+                String body = URLDecoder.decode(request.path("body").asText(), StandardCharsets.UTF_8);
+                String recipient = body.replaceAll(".*recipient=(\\{[^}]*}).*", "$1");
+                String message = body.replaceAll(".*message=(\\{[^}]*}).*", "$1");
+                messages.add(objectMapper.readTree(recipient).path("id").asText() + ":"
+                        + objectMapper.readTree(message).path("text").asText());
+            }
+        } else {
+            JsonNode body = objectMapper.readTree((String) entity.getBody());
+            messages.add(body.path("recipient").path("id").asText() + ":" + body.path("message").path("text").asText());
+        }
+        requests.add(messages);
+        return messages.size();
+    }
+}
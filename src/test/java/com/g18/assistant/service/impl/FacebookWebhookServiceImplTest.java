@@ -0,0 +1,139 @@
+package com.g18.assistant.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.g18.assistant.config.FacebookWebhookConfig;
+import com.g18.assistant.service.FacebookBotService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.when;
+
+class FacebookWebhookServiceImplTest {
+
+    private static final int CAPACITY = 3;
+
+    private final FacebookBotService facebookBotService = mock(FacebookBotService.class);
+    @SuppressWarnings("unchecked")
+    private final RedisTemplate<String, String> redisTemplate = mock(RedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, String> redisValues = mock(ValueOperations.class);
+    private final MetricsServiceImpl metricsService = new MetricsServiceImpl();
+    // Holds every message inside FacebookBotService.processMessage until the test lets it finish
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger processing = new AtomicInteger();
+    private FacebookWebhookServiceImpl webhookService;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        webhookService.shutdown();
+    }
+
+    @Test
+    void rejectsPayloadsOnceMessagesFillTheQueue() {
+        start(CAPACITY);
+
+        for (int i = 1; i <= CAPACITY; i++) {
+            assertTrue(webhookService.enqueue(payload("sender" + i, "mid" + i)));
+            int queued = i;
+            awaitSettled(queued, () -> processing.get() == queued);
+        }
+
+        assertFalse(webhookService.enqueue(payload("sender4", "mid4")));
+        assertEquals(1, metricsService.getCount("facebook.webhook.rejected"));
+
+        release.countDown();
+        await(() -> queueDepth() == 0);
+        assertTrue(webhookService.enqueue(payload("sender5", "mid5")));
+    }
+
+    @Test
+    void messagesWaitingForAWorkerStillCount() {
+        start(1);
+
+        for (int i = 1; i <= CAPACITY; i++) {
+            assertTrue(webhookService.enqueue(payload("sender" + i, "mid" + i)));
+            awaitSettled(i, () -> processing.get() == 1);
+        }
+
+        assertFalse(webhookService.enqueue(payload("sender4", "mid4")));
+
+        release.countDown();
+        await(() -> mockingDetails(facebookBotService).getInvocations().size() == CAPACITY && queueDepth() == 0);
+    }
+
+    @Test
+    void redeliveredMessagesAreDropped() {
+        start(CAPACITY);
+        when(redisValues.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true, false);
+
+        assertTrue(webhookService.enqueue(payload("sender1", "mid1")));
+        assertTrue(webhookService.enqueue(payload("sender1", "mid1")));
+
+        await(() -> metricsService.getCount("facebook.webhook.duplicate") == 1 && processing.get() == 1);
+    }
+
+    private void start(int workerConcurrency) {
+        FacebookWebhookConfig config = new FacebookWebhookConfig();
+        config.setQueueCapacity(CAPACITY);
+        config.setWorkerConcurrency(workerConcurrency);
+
+        when(redisTemplate.opsForValue()).thenReturn(redisValues);
+        when(redisValues.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+        doAnswer(invocation -> {
+            processing.incrementAndGet();
+            release.await();
+            return null;
+        }).when(facebookBotService).processMessage(anyString(), anyString(), anyString());
+
+        webhookService = new FacebookWebhookServiceImpl(facebookBotService, config, new ObjectMapper(),
+                metricsService, redisTemplate);
+        webhookService.init();
+    }
+
+    /**
+     * Wait until the parser has handed over the given number of payloads, so the next enqueue
+     * does not race a payload that is counted twice while its message is being submitted
+     */
+    private void awaitSettled(int payloads, BooleanSupplier workers) {
+        await(() -> mockingDetails(redisValues).getInvocations().size() == payloads
+                && queueDepth() == payloads && workers.getAsBoolean());
+    }
+
+    private int queueDepth() {
+        return ((Number) metricsService.snapshot().get("facebook.webhook.queue.depth")).intValue();
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Condition not reached within 5 seconds");
+            }
+            LockSupport.parkNanos(1_000_000);
+        }
+    }
+
+    private static String payload(String senderId, String mid) {
+        return "{\"object\":\"page\",\"entry\":[{\"id\":\"page1\",\"time\":1,\"messaging\":[{"
+                + "\"sender\":{\"id\":\"" + senderId + "\"},\"recipient\":{\"id\":\"page1\"},\"timestamp\":1,"
+                + "\"message\":{\"mid\":\"" + mid + "\",\"text\":\"Còn hàng không?\"}}]}]}";
+    }
+}
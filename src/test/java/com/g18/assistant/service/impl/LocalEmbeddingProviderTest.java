@@ -0,0 +1,72 @@
+package com.g18.assistant.service.impl;
+
+import com.g18.assistant.config.SemanticSearchConfig;
+import com.g18.assistant.search.HnswIndex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class LocalEmbeddingProviderTest {
+
+    private static final List<String> PRODUCTS = List.of(
+            "Bàn gỗ sồi\nDanh mục: Nội thất",
+            "Áo khoác gió nam\nDanh mục: Thời trang",
+            "Tỏi Lý Sơn\nDanh mục: Thực phẩm",
+            "Giày chạy bộ nhẹ\nDanh mục: Thể thao");
+
+    @TempDir
+    Path dir;
+
+    private final LocalEmbeddingProvider provider = new LocalEmbeddingProvider(config());
+
+    @Test
+    void vectorsAreDeterministic() {
+        float[] first = provider.embedQuery("Áo khoác gió");
+        assertEquals(64, first.length);
+        assertArrayEquals(first, provider.embedQuery("Áo khoác gió"));
+        assertArrayEquals(first, provider.embedDocuments(List.of("Áo khoác gió")).get(0));
+    }
+
+    @Test
+    void productWordsThatFoldLikeStopWordsStillEmbed() {
+        // "bàn" and "tỏi" fold to "ban" and "toi", like the stop words "bạn" and "tôi"
+        assertNotEquals(0f, norm(provider.embedQuery("bàn")));
+        assertNotEquals(0f, norm(provider.embedQuery("tỏi")));
+        assertEquals(0f, norm(provider.embedQuery("bạn ơi")));
+    }
+
+    @Test
+    void queriesFindTheProductsSharingTheirWords() throws IOException {
+        try (HnswIndex index = HnswIndex.open(dir.resolve("local.hnsw"), provider.dimensions(), 16, 100, 1L)) {
+            List<float[]> vectors = provider.embedDocuments(PRODUCTS);
+            for (int i = 0; i < vectors.size(); i++) {
+                index.put(i, 1, vectors.get(i));
+            }
+
+            assertEquals(0L, index.search(provider.embedQuery("shop có bàn gỗ không"), 1, 16).get(0).productId());
+            assertEquals(1L, index.search(provider.embedQuery("áo khoác"), 1, 16).get(0).productId());
+            assertEquals(2L, index.search(provider.embedQuery("tỏi"), 1, 16).get(0).productId());
+        }
+    }
+
+    private static float norm(float[] vector) {
+        float sum = 0;
+        for (float value : vector) {
+            sum += value * value;
+        }
+        return sum;
+    }
+
+    private static SemanticSearchConfig config() {
+        SemanticSearchConfig config = new SemanticSearchConfig();
+        config.setDimensions(64);
+        return config;
+    }
+}
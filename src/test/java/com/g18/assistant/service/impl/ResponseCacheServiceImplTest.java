@@ -0,0 +1,138 @@
+package com.g18.assistant.service.impl;
+
+import com.g18.assistant.config.ResponseCacheConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ResponseCacheServiceImplTest {
+
+    private static final Duration VERSION_REFRESH = Duration.ofMillis(50);
+
+    // Redis shared by every node created in a test
+    private final Map<String, String> redis = new ConcurrentHashMap<>();
+    private final AtomicBoolean redisDown = new AtomicBoolean();
+    private final MetricsServiceImpl metricsService = new MetricsServiceImpl();
+    private ResponseCacheConfig config;
+
+    @BeforeEach
+    void setUp() {
+        config = new ResponseCacheConfig();
+        config.setVersionRefreshInterval(VERSION_REFRESH);
+    }
+
+    @Test
+    void equivalentMessagesShareAnEntry() {
+        ResponseCacheServiceImpl cache = newNode();
+
+        cache.put(1L, "Còn hàng không?", "reply");
+
+        assertEquals("reply", cache.get(1L, "  còn   hàng không "));
+        assertNull(cache.get(2L, "Còn hàng không?"));
+        assertEquals(1, metricsService.getCount("ai.cache.local.hit"));
+    }
+
+    @Test
+    void invalidationHidesOldRepliesOnEveryNode() throws InterruptedException {
+        ResponseCacheServiceImpl node = newNode();
+        ResponseCacheServiceImpl otherNode = newNode();
+        node.put(1L, "giá áo khoác", "old reply");
+        node.put(2L, "giá áo khoác", "other shop");
+        assertEquals("old reply", otherNode.get(1L, "giá áo khoác"));
+        assertEquals(1, metricsService.getCount("ai.cache.redis.hit"));
+
+        node.invalidateShop(1L);
+
+        assertNull(node.get(1L, "giá áo khoác"));
+        assertEquals("other shop", node.get(2L, "giá áo khoác"));
+        // The other node keeps its version until it reads it again
+        Thread.sleep(VERSION_REFRESH.toMillis() * 2);
+        assertNull(otherNode.get(1L, "giá áo khoác"));
+        assertEquals(1, metricsService.getCount("ai.cache.invalidations"));
+    }
+
+    @Test
+    void failedInvalidationBypassesTheCacheUntilABumpSucceeds() throws InterruptedException {
+        ResponseCacheServiceImpl cache = newNode();
+        cache.put(1L, "giá áo khoác", "old reply");
+
+        redisDown.set(true);
+        cache.invalidateShop(1L);
+
+        assertEquals(1, metricsService.getCount("ai.cache.invalidation_failed"));
+        assertNull(cache.get(1L, "giá áo khoác"));
+        cache.put(1L, "giá áo khoác", "skipped");
+        assertNull(cache.get(1L, "giá áo khoác"));
+
+        redisDown.set(false);
+        Thread.sleep(VERSION_REFRESH.toMillis() * 2);
+
+        // The retried bump moves to a new version, so the reply cached before the change stays hidden
+        assertNull(cache.get(1L, "giá áo khoác"));
+        assertEquals(1, metricsService.getCount("ai.cache.invalidations"));
+        cache.put(1L, "giá áo khoác", "new reply");
+        assertEquals("new reply", cache.get(1L, "giá áo khoác"));
+    }
+
+    @Test
+    void personalOrLongMessagesAreNotCacheable() {
+        ResponseCacheServiceImpl cache = newNode();
+
+        assertTrue(cache.isCacheable("Shop còn áo khoác size M không?"));
+        assertFalse(cache.isCacheable("Đơn hàng của tôi đến đâu rồi?"));
+        assertFalse(cache.isCacheable("Giao đến 12 Lê Lợi, sđt 0901234567"));
+        assertFalse(cache.isCacheable("a".repeat(201)));
+        assertFalse(cache.isCacheable(" "));
+
+        config.setEnabled(false);
+        assertFalse(cache.isCacheable("Shop còn áo khoác size M không?"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private ResponseCacheServiceImpl newNode() {
+        RedisTemplate<String, String> redisTemplate = mock(RedisTemplate.class);
+        ValueOperations<String, String> values = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(values);
+        when(values.get(anyString())).thenAnswer(invocation -> {
+            failIfDown();
+            return redis.get(invocation.<String>getArgument(0));
+        });
+        doAnswer(invocation -> {
+            failIfDown();
+            redis.put(invocation.getArgument(0), invocation.getArgument(1));
+            return null;
+        }).when(values).set(anyString(), anyString(), any(Duration.class));
+        when(values.increment(anyString())).thenAnswer(invocation -> {
+            failIfDown();
+            return Long.parseLong(redis.merge(invocation.getArgument(0), "1",
+                    (current, one) -> String.valueOf(Long.parseLong(current) + 1)));
+        });
+
+        ResponseCacheServiceImpl cache = new ResponseCacheServiceImpl(redisTemplate, config, metricsService);
+        cache.init();
+        return cache;
+    }
+
+    private void failIfDown() {
+        if (redisDown.get()) {
+            throw new RedisConnectionFailureException("Redis is down");
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.g18.assistant.telegram;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.g18.assistant.config.TelegramConfig;
+import com.g18.assistant.service.MetricsService;
+import com.g18.assistant.service.impl.MetricsServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.ApiResponse;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class TelegramSendSchedulerTest {
+
+    private static final long RETRY_AFTER_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // Slack for timer granularity when checking that a call waited out retry_after
+    private static final long TOLERANCE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final MetricsService metricsService = new MetricsServiceImpl();
+    private TelegramSendScheduler scheduler;
+
+    @AfterEach
+    void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    void rateLimitedCallRunsAgainAfterRetryAfter() throws Exception {
+        scheduler = newScheduler(3);
+        AtomicInteger runs = new AtomicInteger();
+        AtomicLong firstRun = new AtomicLong();
+        AtomicLong secondRun = new AtomicLong();
+
+        CompletableFuture<String> result = scheduler.submit(1L, sender -> {
+            if (runs.incrementAndGet() == 1) {
+                firstRun.set(System.nanoTime());
+                throw tooManyRequests();
+            }
+            secondRun.set(System.nanoTime());
+            return "sent";
+        });
+
+        assertEquals("sent", result.get(5, TimeUnit.SECONDS));
+        assertEquals(2, runs.get());
+        assertTrue(secondRun.get() - firstRun.get() >= RETRY_AFTER_NANOS - TOLERANCE_NANOS);
+        assertEquals(1, metricsService.getCount("telegram.send.rate_limited"));
+        assertEquals(1, metricsService.getCount("telegram.send.sent"));
+    }
+
+    @Test
+    void rateLimitedCallFailsAfterMaxAttempts() {
+        scheduler = newScheduler(2);
+        AtomicInteger runs = new AtomicInteger();
+
+        CompletableFuture<String> result = scheduler.submit(1L, sender -> {
+            runs.incrementAndGet();
+            throw tooManyRequests();
+        });
+
+        CompletionException error = assertThrows(CompletionException.class, result::join);
+        assertInstanceOf(TelegramApiRequestException.class, error.getCause());
+        assertEquals(2, runs.get());
+        assertEquals(1, metricsService.getCount("telegram.send.failed"));
+    }
+
+    @Test
+    void rateLimitPausesOtherChatsToo() throws Exception {
+        scheduler = newScheduler(3);
+        CountDownLatch limited = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        AtomicLong limitedAt = new AtomicLong();
+
+        CompletableFuture<String> first = scheduler.submit(1L, sender -> {
+            if (runs.incrementAndGet() == 1) {
+                limitedAt.set(System.nanoTime());
+                limited.countDown();
+                throw tooManyRequests();
+            }
+            return "first";
+        });
+        assertTrue(limited.await(5, TimeUnit.SECONDS));
+
+        AtomicLong otherChatRun = new AtomicLong();
+        CompletableFuture<String> other = scheduler.submit(2L, sender -> {
+            otherChatRun.set(System.nanoTime());
+            return "other";
+        });
+
+        assertEquals("other", other.get(5, TimeUnit.SECONDS));
+        assertEquals("first", first.get(5, TimeUnit.SECONDS));
+        assertTrue(otherChatRun.get() - limitedAt.get() >= RETRY_AFTER_NANOS - TOLERANCE_NANOS);
+    }
+
+    @Test
+    void callsOfOneChatKeepTheirOrderAcrossRetries() throws Exception {
+        scheduler = newScheduler(3);
+        StringBuffer order = new StringBuffer();
+        AtomicInteger runs = new AtomicInteger();
+
+        CompletableFuture<String> first = scheduler.submit(1L, sender -> {
+            if (runs.incrementAndGet() == 1) {
+                throw tooManyRequests();
+            }
+            order.append('1');
+            return "1";
+        });
+        CompletableFuture<String> second = scheduler.submit(1L, sender -> {
+            order.append('2');
+            return "2";
+        });
+
+        CompletableFuture.allOf(first, second).get(5, TimeUnit.SECONDS);
+        assertEquals("12", order.toString());
+    }
+
+    private TelegramSendScheduler newScheduler(int maxAttempts) {
+        TelegramConfig config = new TelegramConfig();
+        config.setSendMaxAttempts(maxAttempts);
+        return new TelegramSendScheduler(1L, mock(AbsSender.class), config, metricsService);
+    }
+
+    // Built from a response body the way the Telegram client builds it
+    private static TelegramApiRequestException tooManyRequests() {
+        try {
+            ApiResponse<?> response = new ObjectMapper().readValue(
+                    "{\"ok\":false,\"error_code\":429,\"description\":\"Too Many Requests: retry after 1\","
+                            + "\"parameters\":{\"retry_after\":1}}", ApiResponse.class);
+            return new TelegramApiRequestException("Error sending message", response);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}